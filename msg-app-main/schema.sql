@@ -17,6 +17,150 @@ USE `messaging_app`;
 /*!40101 SET @OLD_SQL_MODE=@@SQL_MODE, SQL_MODE='NO_AUTO_VALUE_ON_ZERO' */;
 /*!40111 SET @OLD_SQL_NOTES=@@SQL_NOTES, SQL_NOTES=0 */;
 
+--
+-- Table structure for table `account_deletions`
+--
+
+DROP TABLE IF EXISTS `account_deletions`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `account_deletions` (
+  `user_id` int NOT NULL,
+  `requested_at` datetime(6) NOT NULL,
+  `restarts` int NOT NULL,
+  `rows_deleted` bigint NOT NULL,
+  `step` enum('ACCOUNT','CHANGE_LOG','FRIENDSHIPS','FRIEND_REQUESTS','GROUP_MEMBERSHIPS','GROUP_MESSAGES','MESSAGES_RECEIVED','MESSAGES_SENT','OWNED_GROUPS','PENDING_DELIVERIES') NOT NULL,
+  `updated_at` datetime(6) NOT NULL,
+  PRIMARY KEY (`user_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Dumping data for table `account_deletions`
+--
+
+LOCK TABLES `account_deletions` WRITE;
+/*!40000 ALTER TABLE `account_deletions` DISABLE KEYS */;
+/*!40000 ALTER TABLE `account_deletions` ENABLE KEYS */;
+UNLOCK TABLES;
+
+--
+-- Table structure for table `activity_rollups`
+--
+
+DROP TABLE IF EXISTS `activity_rollups`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `activity_rollups` (
+  `bucket_start` datetime(6) NOT NULL,
+  `granularity` enum('DAY','HOUR','MINUTE') NOT NULL,
+  `active_senders` int NOT NULL,
+  `friendships_created` bigint NOT NULL,
+  `friendships_removed` bigint NOT NULL,
+  `messages_sent` bigint NOT NULL,
+  PRIMARY KEY (`bucket_start`,`granularity`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Dumping data for table `activity_rollups`
+--
+
+LOCK TABLES `activity_rollups` WRITE;
+/*!40000 ALTER TABLE `activity_rollups` DISABLE KEYS */;
+/*!40000 ALTER TABLE `activity_rollups` ENABLE KEYS */;
+UNLOCK TABLES;
+
+--
+-- Table structure for table `attachments`
+--
+
+DROP TABLE IF EXISTS `attachments`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `attachments` (
+  `attachment_id` int NOT NULL AUTO_INCREMENT,
+  `content_type` varchar(127) NOT NULL,
+  `created_at` datetime(6) NOT NULL,
+  `file_name` varchar(255) NOT NULL,
+  `received` bigint NOT NULL,
+  `sha256` varchar(64) DEFAULT NULL,
+  `size` bigint NOT NULL,
+  `status` enum('COMPLETE','UPLOADING') NOT NULL,
+  `updated_at` datetime(6) NOT NULL,
+  `uploader_id` int NOT NULL,
+  `message_id` int DEFAULT NULL,
+  `thumbnail_height` int DEFAULT NULL,
+  `thumbnail_status` enum('FAILED','PENDING','READY') DEFAULT NULL,
+  `thumbnail_width` int DEFAULT NULL,
+  PRIMARY KEY (`attachment_id`),
+  KEY `idx_attachments_message_updated` (`message_id`,`updated_at`),
+  KEY `idx_attachments_sha256` (`sha256`),
+  CONSTRAINT `FKcf4ta8qdkixetfy7wnqfv3vkv` FOREIGN KEY (`message_id`) REFERENCES `messages` (`message_id`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Dumping data for table `attachments`
+--
+
+LOCK TABLES `attachments` WRITE;
+/*!40000 ALTER TABLE `attachments` DISABLE KEYS */;
+/*!40000 ALTER TABLE `attachments` ENABLE KEYS */;
+UNLOCK TABLES;
+
+--
+-- Table structure for table `chat_groups`
+--
+
+DROP TABLE IF EXISTS `chat_groups`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `chat_groups` (
+  `group_id` int NOT NULL AUTO_INCREMENT,
+  `created_at` datetime(6) DEFAULT NULL,
+  `member_count` int NOT NULL,
+  `name` varchar(255) NOT NULL,
+  `owner_id` int DEFAULT NULL,
+  PRIMARY KEY (`group_id`),
+  KEY `FK4tl38cgdhgngp2sbsx424krao` (`owner_id`),
+  CONSTRAINT `FK4tl38cgdhgngp2sbsx424krao` FOREIGN KEY (`owner_id`) REFERENCES `users` (`user_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Dumping data for table `chat_groups`
+--
+
+LOCK TABLES `chat_groups` WRITE;
+/*!40000 ALTER TABLE `chat_groups` DISABLE KEYS */;
+/*!40000 ALTER TABLE `chat_groups` ENABLE KEYS */;
+UNLOCK TABLES;
+
+--
+-- Table structure for table `conversation_sequences`
+--
+
+DROP TABLE IF EXISTS `conversation_sequences`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `conversation_sequences` (
+  `user_high_id` int NOT NULL,
+  `user_low_id` int NOT NULL,
+  `last_seq` bigint NOT NULL,
+  PRIMARY KEY (`user_high_id`,`user_low_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Dumping data for table `conversation_sequences`
+--
+
+LOCK TABLES `conversation_sequences` WRITE;
+/*!40000 ALTER TABLE `conversation_sequences` DISABLE KEYS */;
+/*!40000 ALTER TABLE `conversation_sequences` ENABLE KEYS */;
+UNLOCK TABLES;
+
 --
 -- Table structure for table `friend_requests`
 --
@@ -30,9 +174,13 @@ CREATE TABLE `friend_requests` (
   `status` enum('ACCEPTED','PENDING','REJECTED') DEFAULT NULL,
   `receiver_id` int DEFAULT NULL,
   `sender_id` int DEFAULT NULL,
+  `user_low_id` int GENERATED ALWAYS AS (least(`sender_id`,`receiver_id`)) STORED,
+  `user_high_id` int GENERATED ALWAYS AS (greatest(`sender_id`,`receiver_id`)) STORED,
   PRIMARY KEY (`request_id`),
+  UNIQUE KEY `uk_friend_requests_pair` (`user_low_id`,`user_high_id`),
   KEY `FKtcmqalc5v4qdt1slgcsa544i5` (`receiver_id`),
   KEY `FKcchlh48b4347amfvmke793bg7` (`sender_id`),
+  KEY `idx_friend_requests_inbox` (`receiver_id`,`status`,`created_at`),
   CONSTRAINT `FKcchlh48b4347amfvmke793bg7` FOREIGN KEY (`sender_id`) REFERENCES `users` (`user_id`),
   CONSTRAINT `FKtcmqalc5v4qdt1slgcsa544i5` FOREIGN KEY (`receiver_id`) REFERENCES `users` (`user_id`)
 ) ENGINE=InnoDB AUTO_INCREMENT=3 DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
@@ -47,6 +195,116 @@ LOCK TABLES `friend_requests` WRITE;
 /*!40000 ALTER TABLE `friend_requests` ENABLE KEYS */;
 UNLOCK TABLES;
 
+--
+-- Table structure for table `friendships`
+--
+
+DROP TABLE IF EXISTS `friendships`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `friendships` (
+  `friend_id` int NOT NULL,
+  `user_id` int NOT NULL,
+  `created_at` datetime(6) DEFAULT NULL,
+  PRIMARY KEY (`friend_id`,`user_id`),
+  KEY `FK4mcscxflf13uk72aupf6uwbgn` (`user_id`),
+  CONSTRAINT `FK4mcscxflf13uk72aupf6uwbgn` FOREIGN KEY (`user_id`) REFERENCES `users` (`user_id`),
+  CONSTRAINT `FKt0mh1j446gu5rqba17rnknuil` FOREIGN KEY (`friend_id`) REFERENCES `users` (`user_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Dumping data for table `friendships`
+--
+
+LOCK TABLES `friendships` WRITE;
+/*!40000 ALTER TABLE `friendships` DISABLE KEYS */;
+/*!40000 ALTER TABLE `friendships` ENABLE KEYS */;
+UNLOCK TABLES;
+
+--
+-- Table structure for table `group_members`
+--
+
+DROP TABLE IF EXISTS `group_members`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `group_members` (
+  `group_id` int NOT NULL,
+  `user_id` int NOT NULL,
+  `joined_at` datetime(6) DEFAULT NULL,
+  `last_read_message_id` int NOT NULL,
+  PRIMARY KEY (`group_id`,`user_id`),
+  KEY `idx_group_members_user` (`user_id`),
+  CONSTRAINT `FKnr9qg33qt2ovmv29g4vc3gtdx` FOREIGN KEY (`user_id`) REFERENCES `users` (`user_id`),
+  CONSTRAINT `FKnyx26vw1b7b6ne5slpuisooxd` FOREIGN KEY (`group_id`) REFERENCES `chat_groups` (`group_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Dumping data for table `group_members`
+--
+
+LOCK TABLES `group_members` WRITE;
+/*!40000 ALTER TABLE `group_members` DISABLE KEYS */;
+/*!40000 ALTER TABLE `group_members` ENABLE KEYS */;
+UNLOCK TABLES;
+
+--
+-- Table structure for table `group_messages`
+--
+
+DROP TABLE IF EXISTS `group_messages`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `group_messages` (
+  `message_id` int NOT NULL AUTO_INCREMENT,
+  `created_at` datetime(6) DEFAULT NULL,
+  `message_text` varchar(255) DEFAULT NULL,
+  `group_id` int NOT NULL,
+  `sender_id` int DEFAULT NULL,
+  PRIMARY KEY (`message_id`),
+  KEY `idx_group_messages_group` (`group_id`,`message_id`),
+  KEY `FKcuf7bhtxj1qc0ajswsjrn9vvd` (`sender_id`),
+  CONSTRAINT `FK1eabq9qdyvxhpnrxj6ngs2vmx` FOREIGN KEY (`group_id`) REFERENCES `chat_groups` (`group_id`),
+  CONSTRAINT `FKcuf7bhtxj1qc0ajswsjrn9vvd` FOREIGN KEY (`sender_id`) REFERENCES `users` (`user_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Dumping data for table `group_messages`
+--
+
+LOCK TABLES `group_messages` WRITE;
+/*!40000 ALTER TABLE `group_messages` DISABLE KEYS */;
+/*!40000 ALTER TABLE `group_messages` ENABLE KEYS */;
+UNLOCK TABLES;
+
+--
+-- Table structure for table `message_bodies`
+--
+
+DROP TABLE IF EXISTS `message_bodies`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `message_bodies` (
+  `message_id` int NOT NULL,
+  `body` mediumblob NOT NULL,
+  `length` int NOT NULL,
+  PRIMARY KEY (`message_id`),
+  CONSTRAINT `FKj04skwhsthlwfxmjbdjr4pjvp` FOREIGN KEY (`message_id`) REFERENCES `messages` (`message_id`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Dumping data for table `message_bodies`
+--
+
+LOCK TABLES `message_bodies` WRITE;
+/*!40000 ALTER TABLE `message_bodies` DISABLE KEYS */;
+/*!40000 ALTER TABLE `message_bodies` ENABLE KEYS */;
+UNLOCK TABLES;
+
 --
 -- Table structure for table `messages`
 --
@@ -61,7 +319,14 @@ CREATE TABLE `messages` (
   `created_at` datetime(6) DEFAULT NULL,
   `receiver_id` int DEFAULT NULL,
   `sender_id` int DEFAULT NULL,
+  `seq` bigint DEFAULT NULL,
+  `user_low_id` int GENERATED ALWAYS AS (least(`sender_id`,`receiver_id`)) STORED,
+  `user_high_id` int GENERATED ALWAYS AS (greatest(`sender_id`,`receiver_id`)) STORED,
+  `client_message_id` varchar(64) DEFAULT NULL,
+  `truncated` bit(1) DEFAULT NULL,
   PRIMARY KEY (`message_id`),
+  UNIQUE KEY `uk_messages_conversation_seq` (`user_low_id`,`user_high_id`,`seq`),
+  UNIQUE KEY `uk_messages_sender_client_id` (`sender_id`,`client_message_id`),
   KEY `FKt05r0b6n0iis8u7dfna4xdh73` (`receiver_id`),
   KEY `FK4ui4nnwntodh6wjvck53dbk9m` (`sender_id`),
   CONSTRAINT `FK4ui4nnwntodh6wjvck53dbk9m` FOREIGN KEY (`sender_id`) REFERENCES `users` (`user_id`),
@@ -78,6 +343,109 @@ LOCK TABLES `messages` WRITE;
 /*!40000 ALTER TABLE `messages` ENABLE KEYS */;
 UNLOCK TABLES;
 
+--
+-- Table structure for table `pending_deliveries`
+--
+
+DROP TABLE IF EXISTS `pending_deliveries`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `pending_deliveries` (
+  `pending_id` bigint NOT NULL AUTO_INCREMENT,
+  `message_id` int NOT NULL,
+  `user_id` int NOT NULL,
+  PRIMARY KEY (`pending_id`),
+  UNIQUE KEY `uk_pending_deliveries_user_message` (`user_id`,`message_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Dumping data for table `pending_deliveries`
+--
+
+LOCK TABLES `pending_deliveries` WRITE;
+/*!40000 ALTER TABLE `pending_deliveries` DISABLE KEYS */;
+/*!40000 ALTER TABLE `pending_deliveries` ENABLE KEYS */;
+UNLOCK TABLES;
+
+--
+-- Table structure for table `purge_checkpoints`
+--
+
+DROP TABLE IF EXISTS `purge_checkpoints`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `purge_checkpoints` (
+  `job` varchar(32) NOT NULL,
+  `last_id` bigint NOT NULL,
+  `purged` bigint NOT NULL,
+  `updated_at` datetime(6) NOT NULL,
+  PRIMARY KEY (`job`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Dumping data for table `purge_checkpoints`
+--
+
+LOCK TABLES `purge_checkpoints` WRITE;
+/*!40000 ALTER TABLE `purge_checkpoints` DISABLE KEYS */;
+/*!40000 ALTER TABLE `purge_checkpoints` ENABLE KEYS */;
+UNLOCK TABLES;
+
+--
+-- Table structure for table `user_change_heads`
+--
+
+DROP TABLE IF EXISTS `user_change_heads`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `user_change_heads` (
+  `user_id` int NOT NULL,
+  `last_seq` bigint NOT NULL,
+  PRIMARY KEY (`user_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Dumping data for table `user_change_heads`
+--
+
+LOCK TABLES `user_change_heads` WRITE;
+/*!40000 ALTER TABLE `user_change_heads` DISABLE KEYS */;
+/*!40000 ALTER TABLE `user_change_heads` ENABLE KEYS */;
+UNLOCK TABLES;
+
+--
+-- Table structure for table `user_changes`
+--
+
+DROP TABLE IF EXISTS `user_changes`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `user_changes` (
+  `change_id` bigint NOT NULL AUTO_INCREMENT,
+  `created_at` datetime(6) NOT NULL,
+  `kind` enum('MESSAGE','PRESENCE','READ','RELATIONSHIP') NOT NULL,
+  `seq` bigint NOT NULL,
+  `subject_id` int NOT NULL,
+  `subject_seq` bigint DEFAULT NULL,
+  `user_id` int NOT NULL,
+  PRIMARY KEY (`change_id`),
+  UNIQUE KEY `uk_user_changes_user_seq` (`user_id`,`seq`),
+  KEY `idx_user_changes_key` (`user_id`,`kind`,`subject_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Dumping data for table `user_changes`
+--
+
+LOCK TABLES `user_changes` WRITE;
+/*!40000 ALTER TABLE `user_changes` DISABLE KEYS */;
+/*!40000 ALTER TABLE `user_changes` ENABLE KEYS */;
+UNLOCK TABLES;
+
 --
 -- Table structure for table `users`
 --
@@ -88,6 +456,7 @@ DROP TABLE IF EXISTS `users`;
 CREATE TABLE `users` (
   `user_id` int NOT NULL AUTO_INCREMENT,
   `created_at` datetime(6) DEFAULT NULL,
+  `deleted_at` datetime(6) DEFAULT NULL,
   `email` varchar(255) DEFAULT NULL,
   `password_hash` varchar(255) DEFAULT NULL,
   `status` enum('OFFLINE','ONLINE') DEFAULT NULL,
@@ -0,0 +1,48 @@
+package com.ma.message_apps.config;
+
+import com.ma.message_apps.repository.FriendshipRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Configuration that runs at application startup
+ * Populates the friendships table from accepted friend requests when it is still empty
+ */
+@Component
+@Slf4j
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class FriendshipBackfillConfig implements ApplicationListener<ApplicationReadyEvent> {
+
+    private final FriendshipRepository friendshipRepository;
+
+    @Autowired
+    public FriendshipBackfillConfig(FriendshipRepository friendshipRepository) {
+        this.friendshipRepository = friendshipRepository;
+    }
+
+    /**
+     * This method runs after the application has started
+     * It copies accepted friend requests into friendships once, on the first start after the table was added
+     */
+    @Override
+    @Transactional
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        try {
+            if (friendshipRepository.count() > 0) {
+                return;
+            }
+            int edges = friendshipRepository.backfillFromAcceptedRequests();
+            if (edges > 0) {
+                log.info("Backfilled {} friendship edges from accepted friend requests", edges);
+            }
+        } catch (Exception e) {
+            log.error("Error backfilling friendships at startup", e);
+        }
+    }
+}
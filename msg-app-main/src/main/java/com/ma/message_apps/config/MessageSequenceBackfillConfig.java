@@ -0,0 +1,114 @@
+package com.ma.message_apps.config;
+
+import com.ma.message_apps.repository.ConversationSequenceRepository;
+import com.ma.message_apps.repository.MessageRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Configuration that runs at application startup
+ * Numbers messages stored before conversation sequence numbers existed
+ *
+ * Runs as a lifecycle phase ahead of the web server, so no send can take a sequence number before the old
+ * messages of its conversation have theirs. Each batch numbers up to batch-size messages of one conversation
+ * after the conversation's counter and moves the counter past them in the same transaction, so an
+ * interrupted backfill resumes on the next start without colliding with numbers already given out.
+ */
+@Component
+@Slf4j
+public class MessageSequenceBackfillConfig implements SmartLifecycle {
+
+    // The embedded web server starts at DEFAULT_PHASE - 2048
+    private static final int PHASE = DEFAULT_PHASE - 4096;
+    private static final int CONVERSATIONS_PER_PAGE = 500;
+
+    private final MessageRepository messageRepository;
+    private final ConversationSequenceRepository conversationSequenceRepository;
+    private final TransactionTemplate transaction;
+    private final int batchSize;
+    private volatile boolean running;
+
+    @Autowired
+    public MessageSequenceBackfillConfig(
+            MessageRepository messageRepository,
+            ConversationSequenceRepository conversationSequenceRepository,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.messages.seq-backfill.batch-size:1000}") int batchSize) {
+        this.messageRepository = messageRepository;
+        this.conversationSequenceRepository = conversationSequenceRepository;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Number every message that has no sequence number yet, before the application takes requests
+     */
+    @Override
+    public void start() {
+        running = true;
+        try {
+            if (!messageRepository.existsUnsequenced()) {
+                return;
+            }
+            long start = System.currentTimeMillis();
+            int messages = 0;
+            int conversations = 0;
+            int afterLowId = 0;
+            int afterHighId = 0;
+            List<Object[]> page;
+            do {
+                page = messageRepository.findUnsequencedConversations(afterLowId, afterHighId, CONVERSATIONS_PER_PAGE);
+                for (Object[] row : page) {
+                    afterLowId = ((Number) row[0]).intValue();
+                    afterHighId = ((Number) row[1]).intValue();
+                    int numbered;
+                    do {
+                        numbered = numberBatch(afterLowId, afterHighId);
+                        messages += numbered;
+                    } while (numbered == batchSize);
+                    conversations++;
+                }
+            } while (page.size() == CONVERSATIONS_PER_PAGE);
+            log.info("Backfilled sequence numbers for {} messages in {} conversations in {} ms",
+                    messages, conversations, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            // Finished batches are committed with their counters; the next start picks up the rest
+            log.error("Error backfilling message sequence numbers at startup", e);
+        }
+    }
+
+    private int numberBatch(int userLowId, int userHighId) {
+        Integer numbered = transaction.execute(status -> {
+            conversationSequenceRepository.lockAndSeed(userLowId, userHighId);
+            long lastSeq = conversationSequenceRepository.findLastSeq(userLowId, userHighId).orElse(0L);
+            int count = messageRepository.numberUnsequenced(userLowId, userHighId, lastSeq, batchSize);
+            if (count > 0) {
+                conversationSequenceRepository.advance(userLowId, userHighId, count);
+            }
+            return count;
+        });
+        return numbered == null ? 0 : numbered;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+}
@@ -0,0 +1,38 @@
+package com.ma.message_apps.config;
+
+import com.ma.message_apps.websocket.ChatWebSocketHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.support.HttpSessionHandshakeInterceptor;
+
+/**
+ * Registers the realtime endpoint used by the dashboard
+ */
+@Configuration
+@EnableWebSocket
+public class WebSocketConfig implements WebSocketConfigurer {
+
+    private final ChatWebSocketHandler chatWebSocketHandler;
+    private final String[] allowedOrigins;
+
+    @Autowired
+    public WebSocketConfig(
+            ChatWebSocketHandler chatWebSocketHandler,
+            @Value("${app.websocket.allowed-origins:}") String[] allowedOrigins) {
+        this.chatWebSocketHandler = chatWebSocketHandler;
+        this.allowedOrigins = allowedOrigins;
+    }
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        // Copies the HTTP session attributes (userId, username) into the socket session. The session cookie
+        // makes the handshake authenticated, so only the app's own origin (plus any configured) may open it.
+        registry.addHandler(chatWebSocketHandler, "/ws")
+                .addInterceptors(new HttpSessionHandshakeInterceptor())
+                .setAllowedOrigins(allowedOrigins);
+    }
+}
@@ -0,0 +1,23 @@
+package com.ma.message_apps.dto;
+
+import java.sql.Timestamp;
+
+/**
+ * Progress of one account deletion
+ *
+ * @param step Step currently running
+ * @param stepsDone Steps already finished
+ * @param stepsTotal Number of steps
+ * @param rowsDeleted Rows removed or updated so far
+ * @param restarts Times the steps started over; past the limit the deletion waits for an operator
+ */
+public record AccountDeletionDto(
+        Integer userId,
+        String step,
+        int stepsDone,
+        int stepsTotal,
+        Long rowsDeleted,
+        Timestamp requestedAt,
+        Timestamp updatedAt,
+        int restarts) {
+}
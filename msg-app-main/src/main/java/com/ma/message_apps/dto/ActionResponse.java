@@ -0,0 +1,21 @@
+package com.ma.message_apps.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Response of an operation that only reports whether it succeeded: "message" on success, "error" otherwise
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ActionResponse(
+        boolean success,
+        String message,
+        String error) {
+
+    public static ActionResponse ok(String message) {
+        return new ActionResponse(true, message, null);
+    }
+
+    public static ActionResponse failed(String error) {
+        return new ActionResponse(false, null, error);
+    }
+}
@@ -0,0 +1,14 @@
+package com.ma.message_apps.dto;
+
+import java.sql.Timestamp;
+
+/**
+ * One bucket of messaging activity, built directly by the query
+ */
+public record ActivityRollupDto(
+        Timestamp bucketStart,
+        Long messagesSent,
+        Integer activeSenders,
+        Long friendshipsCreated,
+        Long friendshipsRemoved) {
+}
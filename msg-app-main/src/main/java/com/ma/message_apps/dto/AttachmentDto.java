@@ -0,0 +1,25 @@
+package com.ma.message_apps.dto;
+
+/**
+ * An attachment as shown to its uploader and to the participants of its message
+ *
+ * @param messageId Message it was sent with, null while unsent
+ * @param size Size in bytes
+ * @param received Bytes uploaded so far; the next chunk starts here
+ * @param complete Whether all bytes are in and the attachment can be sent and downloaded
+ * @param thumbnailStatus PENDING, READY or FAILED for images, null otherwise
+ * @param thumbnailUrl Where the thumbnail is fetched from, once ready; show it instead of the full image
+ */
+public record AttachmentDto(
+        Integer attachmentId,
+        Integer messageId,
+        String fileName,
+        String contentType,
+        Long size,
+        Long received,
+        boolean complete,
+        String thumbnailStatus,
+        String thumbnailUrl,
+        Integer thumbnailWidth,
+        Integer thumbnailHeight) {
+}
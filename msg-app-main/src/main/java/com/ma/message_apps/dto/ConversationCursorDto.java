@@ -0,0 +1,9 @@
+package com.ma.message_apps.dto;
+
+/**
+ * A position in a one-to-one conversation: the other user and a conversation sequence number
+ */
+public record ConversationCursorDto(
+        Integer withUserId,
+        Long seq) {
+}
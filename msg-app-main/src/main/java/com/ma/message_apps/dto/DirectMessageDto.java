@@ -0,0 +1,17 @@
+package com.ma.message_apps.dto;
+
+import java.sql.Timestamp;
+
+/**
+ * A one-to-one message as delivered to clients, with its position in the conversation.
+ * A truncated message carries a preview; the full text is fetched from /api/messages/{id}/body.
+ */
+public record DirectMessageDto(
+        Integer messageId,
+        Long seq,
+        Integer senderId,
+        Integer receiverId,
+        String messageText,
+        Timestamp createdAt,
+        Boolean truncated) {
+}
@@ -0,0 +1,35 @@
+package com.ma.message_apps.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.ma.message_apps.enumDto.FriendRequestOutcome;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Response of a bulk friend request operation.
+ * Bulk responses carry the processed request IDs, bulk sends the outcome per recipient;
+ * "skipped" lists the given IDs that were not processed.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record FriendRequestBatchResponse(
+        boolean success,
+        String message,
+        String error,
+        List<Integer> requestIds,
+        Map<Integer, FriendRequestOutcome> results,
+        Collection<Integer> skipped) {
+
+    public static FriendRequestBatchResponse responded(String message, List<Integer> requestIds, Collection<Integer> skipped) {
+        return new FriendRequestBatchResponse(true, message, null, requestIds, null, skipped);
+    }
+
+    public static FriendRequestBatchResponse sent(Map<Integer, FriendRequestOutcome> results, Collection<Integer> skipped) {
+        return new FriendRequestBatchResponse(true, null, null, null, results, skipped);
+    }
+
+    public static FriendRequestBatchResponse failed(String error) {
+        return new FriendRequestBatchResponse(false, null, error, null, null, null);
+    }
+}
@@ -0,0 +1,9 @@
+package com.ma.message_apps.dto;
+
+/**
+ * Minimal reference to a friend request: its ID and who sent it
+ */
+public record FriendRequestRefDto(
+        Integer requestId,
+        Integer senderId) {
+}
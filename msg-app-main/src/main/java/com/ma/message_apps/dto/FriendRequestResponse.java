@@ -0,0 +1,23 @@
+package com.ma.message_apps.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Response of sending, accepting, rejecting or cancelling one friend request;
+ * "request" is the row it ended on, where there is one to show
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record FriendRequestResponse(
+        boolean success,
+        String message,
+        String error,
+        FriendRequestsDto request) {
+
+    public static FriendRequestResponse ok(String message, FriendRequestsDto request) {
+        return new FriendRequestResponse(true, message, null, request);
+    }
+
+    public static FriendRequestResponse failed(String error) {
+        return new FriendRequestResponse(false, null, error, null);
+    }
+}
@@ -0,0 +1,19 @@
+package com.ma.message_apps.dto;
+
+import com.ma.message_apps.enumDto.FriendStatus;
+
+/**
+ * State of the request row of a user pair: who sent it and where it stands
+ */
+public record FriendRequestStateDto(
+        Integer senderId,
+        Integer receiverId,
+        FriendStatus status) {
+
+    /**
+     * The user of the pair that is not the given one
+     */
+    public Integer otherUserId(Integer userId) {
+        return userId.equals(senderId) ? receiverId : senderId;
+    }
+}
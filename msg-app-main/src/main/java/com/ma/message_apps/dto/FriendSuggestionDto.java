@@ -0,0 +1,10 @@
+package com.ma.message_apps.dto;
+
+/**
+ * A "people you may know" entry: a friend of a friend and how many friends they share with the viewer
+ */
+public record FriendSuggestionDto(
+        Integer userId,
+        String username,
+        int mutualFriends) {
+}
@@ -0,0 +1,24 @@
+package com.ma.message_apps.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * Response listing a user's friends
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record FriendsResponse(
+        boolean success,
+        String message,
+        String error,
+        List<UserDto> friends) {
+
+    public static FriendsResponse ok(String message, List<UserDto> friends) {
+        return new FriendsResponse(true, message, null, friends);
+    }
+
+    public static FriendsResponse failed(String error) {
+        return new FriendsResponse(false, null, error, null);
+    }
+}
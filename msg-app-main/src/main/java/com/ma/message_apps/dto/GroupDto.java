@@ -0,0 +1,18 @@
+package com.ma.message_apps.dto;
+
+import com.ma.message_apps.enumDto.GroupFanoutStrategy;
+
+import java.sql.Timestamp;
+
+/**
+ * A group as seen by one member, with their unread count
+ */
+public record GroupDto(
+        Integer groupId,
+        String name,
+        Integer ownerId,
+        Integer memberCount,
+        Timestamp createdAt,
+        Long unreadCount,
+        GroupFanoutStrategy delivery) {
+}
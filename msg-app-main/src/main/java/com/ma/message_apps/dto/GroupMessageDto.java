@@ -0,0 +1,15 @@
+package com.ma.message_apps.dto;
+
+import java.sql.Timestamp;
+
+/**
+ * A group message, built directly by the query (no entity graph)
+ */
+public record GroupMessageDto(
+        Integer messageId,
+        Integer groupId,
+        Integer senderId,
+        String senderUsername,
+        String messageText,
+        Timestamp createdAt) {
+}
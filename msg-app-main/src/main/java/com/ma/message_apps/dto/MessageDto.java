@@ -8,6 +8,7 @@ import lombok.NoArgsConstructor;
 import lombok.ToString;
 
 import java.sql.Timestamp;
+import java.util.List;
 
 @Data
 @AllArgsConstructor
@@ -20,6 +21,11 @@ public class MessageDto {
     @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
     private User receiver;
     private String messageText;
+    private Boolean truncated;
     private Boolean isRead;
     private Timestamp createdAt;
+    private Long seq;
+    private String clientMessageId;
+    // Filled in where the service looks them up (history pages and send results)
+    private List<AttachmentDto> attachments;
 }
@@ -0,0 +1,30 @@
+package com.ma.message_apps.dto;
+
+import com.ma.message_apps.enumDto.FriendStatus;
+
+import java.sql.Timestamp;
+
+/**
+ * Read-only row of a user's friend request inbox, built directly by the query.
+ * mutualFriends is filled in afterwards from the in-memory friend graph.
+ */
+public record PendingFriendRequestDto(
+        Integer requestId,
+        Integer senderId,
+        String senderUsername,
+        FriendStatus status,
+        Timestamp createdAt,
+        Integer mutualFriends) {
+
+    /**
+     * Constructor used by the JPQL constructor expression
+     */
+    public PendingFriendRequestDto(Integer requestId, Integer senderId, String senderUsername,
+                                   FriendStatus status, Timestamp createdAt) {
+        this(requestId, senderId, senderUsername, status, createdAt, null);
+    }
+
+    public PendingFriendRequestDto withMutualFriends(Integer mutualFriends) {
+        return new PendingFriendRequestDto(requestId, senderId, senderUsername, status, createdAt, mutualFriends);
+    }
+}
@@ -0,0 +1,23 @@
+package com.ma.message_apps.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * Response listing a user's friend request inbox
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record PendingFriendRequestsResponse(
+        boolean success,
+        String error,
+        List<PendingFriendRequestDto> requests) {
+
+    public static PendingFriendRequestsResponse ok(List<PendingFriendRequestDto> requests) {
+        return new PendingFriendRequestsResponse(true, null, requests);
+    }
+
+    public static PendingFriendRequestsResponse failed(String error) {
+        return new PendingFriendRequestsResponse(false, error, null);
+    }
+}
@@ -0,0 +1,17 @@
+package com.ma.message_apps.dto;
+
+/**
+ * Current relationship between the caller and another user, as reported by the sync endpoint
+ *
+ * @param friend Whether the two are friends
+ * @param requestId Pending friend request between them, if any
+ * @param incoming Whether that request was sent to the caller (null without a pending request)
+ */
+public record RelationshipDto(
+        Integer userId,
+        String username,
+        String status,
+        boolean friend,
+        Integer requestId,
+        Boolean incoming) {
+}
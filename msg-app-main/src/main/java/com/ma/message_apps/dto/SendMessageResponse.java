@@ -0,0 +1,27 @@
+package com.ma.message_apps.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Response of sending a direct message: the stored message, and whether the send repeated
+ * a client message ID and was answered with the message stored the first time
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record SendMessageResponse(
+        boolean success,
+        String error,
+        MessageDto message,
+        Boolean duplicate) {
+
+    public static SendMessageResponse sent(MessageDto message) {
+        return new SendMessageResponse(true, null, message, false);
+    }
+
+    public static SendMessageResponse duplicate(MessageDto message) {
+        return new SendMessageResponse(true, null, message, true);
+    }
+
+    public static SendMessageResponse failed(String error) {
+        return new SendMessageResponse(false, error, null, null);
+    }
+}
@@ -0,0 +1,22 @@
+package com.ma.message_apps.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Response of an operation on one user account (login, registration, profile update, lookup)
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record UserResponse(
+        boolean success,
+        String message,
+        String error,
+        UserDto user) {
+
+    public static UserResponse ok(String message, UserDto user) {
+        return new UserResponse(true, message, null, user);
+    }
+
+    public static UserResponse failed(String error) {
+        return new UserResponse(false, null, error, null);
+    }
+}
@@ -0,0 +1,42 @@
+package com.ma.message_apps.entity;
+
+import com.ma.message_apps.enumDto.DeletionStep;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.sql.Timestamp;
+
+/**
+ * A deleted account whose rows are still being removed. The current step is saved with every chunk,
+ * so the job resumes where it stopped after a restart.
+ */
+@Entity
+@Table(name = "account_deletions")
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class AccountDeletion {
+
+    @Id
+    @Column(name = "user_id")
+    private Integer userId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "step", nullable = false, length = 24)
+    private DeletionStep step;
+
+    @Column(name = "rows_deleted", nullable = false)
+    private Long rowsDeleted;
+
+    @Column(name = "requested_at", nullable = false)
+    private Timestamp requestedAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private Timestamp updatedAt;
+
+    // Times the steps started over because the user row was still referenced
+    @Column(name = "restarts", nullable = false)
+    private Integer restarts;
+}
@@ -0,0 +1,44 @@
+package com.ma.message_apps.entity;
+
+import com.ma.message_apps.enumDto.RollupGranularity;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.sql.Timestamp;
+
+/**
+ * Messaging activity over one minute, hour or day. Written only by the in-process counters
+ * (see ActivityRollupService), so analytics never have to aggregate messages or friend_requests.
+ */
+@Entity
+@Table(name = "activity_rollups")
+@IdClass(ActivityRollupId.class)
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class ActivityRollup {
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(name = "granularity", length = 8)
+    private RollupGranularity granularity;
+
+    @Id
+    @Column(name = "bucket_start")
+    private Timestamp bucketStart;
+
+    @Column(name = "messages_sent", nullable = false)
+    private Long messagesSent;
+
+    // Distinct senders in the bucket (direct and group messages)
+    @Column(name = "active_senders", nullable = false)
+    private Integer activeSenders;
+
+    @Column(name = "friendships_created", nullable = false)
+    private Long friendshipsCreated;
+
+    @Column(name = "friendships_removed", nullable = false)
+    private Long friendshipsRemoved;
+}
@@ -0,0 +1,20 @@
+package com.ma.message_apps.entity;
+
+import com.ma.message_apps.enumDto.RollupGranularity;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.sql.Timestamp;
+
+/**
+ * Composite primary key of {@link ActivityRollup}
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ActivityRollupId implements Serializable {
+    private RollupGranularity granularity;
+    private Timestamp bucketStart;
+}
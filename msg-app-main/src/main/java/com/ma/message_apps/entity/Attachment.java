@@ -0,0 +1,84 @@
+package com.ma.message_apps.entity;
+
+import com.ma.message_apps.enumDto.AttachmentStatus;
+import com.ma.message_apps.enumDto.ThumbnailStatus;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.sql.Timestamp;
+
+/**
+ * A file uploaded by a user, linked to the direct message it was sent with. The bytes live in the
+ * content-addressed blob store under their SHA-256; identical files share one blob.
+ */
+@Entity
+@Table(name = "attachments", indexes = {
+        // Attachments of a message, and expiry of abandoned (never sent) uploads
+        @Index(name = "idx_attachments_message_updated", columnList = "message_id, updated_at"),
+        // Blob store sweep (is a blob still referenced) and thumbnails (every attachment with that content)
+        @Index(name = "idx_attachments_sha256", columnList = "sha256")
+})
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@ToString(exclude = "message")
+public class Attachment {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "attachment_id")
+    private Integer attachmentId;
+
+    // Null until sent; removed by the database together with its message, whichever job deletes that
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "message_id")
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private Message message;
+
+    // No foreign key: unsent uploads of a deleted account simply expire
+    @Column(name = "uploader_id", nullable = false)
+    private Integer uploaderId;
+
+    @Column(name = "file_name", nullable = false)
+    private String fileName;
+
+    @Column(name = "content_type", nullable = false, length = 127)
+    private String contentType;
+
+    @Column(name = "size", nullable = false)
+    private Long size;
+
+    // Bytes stored so far; an interrupted upload resumes from here
+    @Column(name = "received", nullable = false)
+    private Long received;
+
+    // Hex SHA-256 of the content, set when the upload completes
+    @Column(name = "sha256", length = 64)
+    private String sha256;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 16)
+    private AttachmentStatus status;
+
+    @Column(name = "created_at", nullable = false)
+    private Timestamp createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private Timestamp updatedAt;
+
+    // Null for attachments that are not images
+    @Enumerated(EnumType.STRING)
+    @Column(name = "thumbnail_status", length = 16)
+    private ThumbnailStatus thumbnailStatus;
+
+    @Column(name = "thumbnail_width")
+    private Integer thumbnailWidth;
+
+    @Column(name = "thumbnail_height")
+    private Integer thumbnailHeight;
+}
@@ -0,0 +1,41 @@
+package com.ma.message_apps.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.sql.Timestamp;
+
+/**
+ * A group conversation. Messages live in group_messages (one row per message) and
+ * each member keeps its own read cursor in group_members.
+ */
+@Entity
+@Table(name = "chat_groups")
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@ToString(exclude = {"owner"})
+public class ChatGroup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "group_id")
+    private Integer groupId;
+
+    @Column(name = "name", nullable = false)
+    private String name;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "owner_id", referencedColumnName = "user_id")
+    private User owner;
+
+    // Maintained on join/leave so the delivery strategy can be chosen without counting members
+    @Column(name = "member_count", nullable = false)
+    private Integer memberCount;
+
+    @Column(name = "created_at")
+    private Timestamp createdAt;
+}
@@ -0,0 +1,30 @@
+package com.ma.message_apps.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Last sequence number handed out in a one-to-one conversation, keyed by the normalized user pair.
+ * Incremented with a single-row upsert, so senders in different conversations never contend.
+ */
+@Entity
+@Table(name = "conversation_sequences")
+@IdClass(ConversationSequenceId.class)
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class ConversationSequence {
+
+    @Id
+    @Column(name = "user_low_id")
+    private Integer userLowId;
+
+    @Id
+    @Column(name = "user_high_id")
+    private Integer userHighId;
+
+    @Column(name = "last_seq", nullable = false)
+    private Long lastSeq;
+}
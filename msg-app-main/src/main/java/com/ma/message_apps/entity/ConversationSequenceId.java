@@ -0,0 +1,18 @@
+package com.ma.message_apps.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * Composite primary key of {@link ConversationSequence}
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ConversationSequenceId implements Serializable {
+    private Integer userLowId;
+    private Integer userHighId;
+}
@@ -9,7 +9,13 @@ import java.sql.Timestamp;
 
 @Data
 @Entity
-@Table(name = "friend_requests")
+@Table(name = "friend_requests", indexes = {
+        // Request inbox: equality on receiver/status, newest first
+        @Index(name = "idx_friend_requests_inbox", columnList = "receiver_id, status, created_at")
+}, uniqueConstraints = {
+        // At most one row per unordered user pair, whichever direction it was sent in
+        @UniqueConstraint(name = "uk_friend_requests_pair", columnNames = {"user_low_id", "user_high_id"})
+})
 public class FriendRequests {
 
     @Id
@@ -30,4 +36,13 @@ public class FriendRequests {
 
     @Column(name = "created_at")
     private Timestamp createdAt;
+
+    // Normalized pair computed by MySQL, never written by Hibernate
+    @Column(name = "user_low_id", insertable = false, updatable = false,
+            columnDefinition = "int GENERATED ALWAYS AS (least(`sender_id`,`receiver_id`)) STORED")
+    private Integer userLowId;
+
+    @Column(name = "user_high_id", insertable = false, updatable = false,
+            columnDefinition = "int GENERATED ALWAYS AS (greatest(`sender_id`,`receiver_id`)) STORED")
+    private Integer userHighId;
 }
@@ -0,0 +1,44 @@
+package com.ma.message_apps.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.sql.Timestamp;
+
+/**
+ * One directed edge of an accepted friendship. Every friendship is stored as two rows,
+ * (a, b) and (b, a), so a user's friend list is a single range read on the primary key.
+ * Hibernate lays the key out as (friend_id, user_id); because the edges are symmetric
+ * either column can lead the lookup.
+ */
+@Entity
+@Table(name = "friendships")
+@IdClass(FriendshipId.class)
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@ToString(exclude = {"user", "friend"})
+public class Friendship {
+
+    @Id
+    @Column(name = "user_id")
+    private Integer userId;
+
+    @Id
+    @Column(name = "friend_id")
+    private Integer friendId;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", referencedColumnName = "user_id", insertable = false, updatable = false)
+    private User user;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "friend_id", referencedColumnName = "user_id", insertable = false, updatable = false)
+    private User friend;
+
+    @Column(name = "created_at")
+    private Timestamp createdAt;
+}
@@ -0,0 +1,18 @@
+package com.ma.message_apps.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * Composite primary key of {@link Friendship}
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class FriendshipId implements Serializable {
+    private Integer userId;
+    private Integer friendId;
+}
@@ -0,0 +1,48 @@
+package com.ma.message_apps.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.sql.Timestamp;
+
+/**
+ * Membership of a user in a group, keyed by (group_id, user_id).
+ * lastReadMessageId is the member's read cursor: everything above it in the group is unread.
+ */
+@Entity
+@Table(name = "group_members", indexes = {
+        // "My groups" lookups
+        @Index(name = "idx_group_members_user", columnList = "user_id")
+})
+@IdClass(GroupMemberId.class)
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@ToString(exclude = {"group", "user"})
+public class GroupMember {
+
+    @Id
+    @Column(name = "group_id")
+    private Integer groupId;
+
+    @Id
+    @Column(name = "user_id")
+    private Integer userId;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "group_id", referencedColumnName = "group_id", insertable = false, updatable = false)
+    private ChatGroup group;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", referencedColumnName = "user_id", insertable = false, updatable = false)
+    private User user;
+
+    @Column(name = "last_read_message_id", nullable = false)
+    private Integer lastReadMessageId;
+
+    @Column(name = "joined_at")
+    private Timestamp joinedAt;
+}
@@ -0,0 +1,43 @@
+package com.ma.message_apps.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.sql.Timestamp;
+
+/**
+ * A message posted to a group. Stored once, whatever the group size.
+ */
+@Entity
+@Table(name = "group_messages", indexes = {
+        // Group history and unread counts: range on message_id within a group
+        @Index(name = "idx_group_messages_group", columnList = "group_id, message_id")
+})
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@ToString(exclude = {"group", "sender"})
+public class GroupMessage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "message_id")
+    private Integer messageId;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "group_id", referencedColumnName = "group_id", nullable = false)
+    private ChatGroup group;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "sender_id", referencedColumnName = "user_id")
+    private User sender;
+
+    @Column(name = "message_text")
+    private String messageText;
+
+    @Column(name = "created_at")
+    private Timestamp createdAt;
+}
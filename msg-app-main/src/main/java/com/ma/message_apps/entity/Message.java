@@ -10,7 +10,12 @@ import lombok.ToString;
 import java.sql.Timestamp;
 
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", uniqueConstraints = {
+        // Conversation history in order, and resume after a given sequence number
+        @UniqueConstraint(name = "uk_messages_conversation_seq", columnNames = {"user_low_id", "user_high_id", "seq"}),
+        // A retried send with the same client message ID finds the stored message instead of inserting again
+        @UniqueConstraint(name = "uk_messages_sender_client_id", columnNames = {"sender_id", "client_message_id"})
+})
 @AllArgsConstructor
 @NoArgsConstructor
 @Data
@@ -30,15 +35,33 @@ public class Message {
     @JoinColumn(name = "receiver_id", referencedColumnName = "user_id")
     private User receiver;
 
+    // Whole text, or a preview of it when truncated is set (full text in message_bodies)
     @Column(name = "message_text")
     private String messageText;
 
+    @Column(name = "truncated")
+    private Boolean truncated;
+
     @Column(name = "is_read")
     private Boolean isRead;
 
     @Column(name = "created_at")
     private Timestamp createdAt;
 
+    // Position within the conversation, allocated from conversation_sequences on send (1, 2, 3, ...)
+    @Column(name = "seq")
+    private Long seq;
+
+    // Optional ID chosen by the sending client and reused on retries (unique per sender)
+    @Column(name = "client_message_id", length = 64)
+    private String clientMessageId;
 
+    // Normalized pair computed by MySQL, never written by Hibernate
+    @Column(name = "user_low_id", insertable = false, updatable = false,
+            columnDefinition = "int GENERATED ALWAYS AS (least(`sender_id`,`receiver_id`)) STORED")
+    private Integer userLowId;
 
+    @Column(name = "user_high_id", insertable = false, updatable = false,
+            columnDefinition = "int GENERATED ALWAYS AS (greatest(`sender_id`,`receiver_id`)) STORED")
+    private Integer userHighId;
 }
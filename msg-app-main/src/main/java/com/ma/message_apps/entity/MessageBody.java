@@ -0,0 +1,41 @@
+package com.ma.message_apps.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+/**
+ * Full text of a message too long to be stored inline; messages.message_text then holds a preview.
+ * Kept out of the messages rows so conversation pages stay small however much users paste.
+ */
+@Entity
+@Table(name = "message_bodies")
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@ToString(exclude = {"message", "body"})
+public class MessageBody {
+
+    @Id
+    @Column(name = "message_id")
+    private Integer messageId;
+
+    // Removed by the database together with its message, whichever job deletes that
+    @OneToOne(fetch = FetchType.LAZY)
+    @MapsId
+    @JoinColumn(name = "message_id")
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private Message message;
+
+    // Deflate-compressed UTF-8
+    @Column(name = "body", nullable = false, columnDefinition = "mediumblob")
+    private byte[] body;
+
+    // Length of the full text in characters
+    @Column(name = "length", nullable = false)
+    private Integer length;
+}
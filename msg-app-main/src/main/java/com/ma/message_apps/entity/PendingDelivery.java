@@ -0,0 +1,32 @@
+package com.ma.message_apps.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A message waiting to be pushed to a user who was offline when it was sent.
+ * Only holds the overflow of the in-memory offline queue (and its contents across restarts).
+ */
+@Entity
+@Table(name = "pending_deliveries", uniqueConstraints = {
+        // Drain in message order per user; also makes spilling idempotent
+        @UniqueConstraint(name = "uk_pending_deliveries_user_message", columnNames = {"user_id", "message_id"})
+})
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class PendingDelivery {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "pending_id")
+    private Long pendingId;
+
+    @Column(name = "user_id", nullable = false)
+    private Integer userId;
+
+    @Column(name = "message_id", nullable = false)
+    private Integer messageId;
+}
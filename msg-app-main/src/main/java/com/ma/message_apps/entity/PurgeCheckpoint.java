@@ -0,0 +1,34 @@
+package com.ma.message_apps.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.sql.Timestamp;
+
+/**
+ * Progress of a background purge job: everything up to {@code lastId} has been handled,
+ * so a restarted or interrupted run continues from there instead of rescanning the table.
+ */
+@Entity
+@Table(name = "purge_checkpoints")
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class PurgeCheckpoint {
+
+    @Id
+    @Column(name = "job", length = 32)
+    private String job;
+
+    @Column(name = "last_id", nullable = false)
+    private Long lastId;
+
+    // Rows removed by the job since it was first run
+    @Column(name = "purged", nullable = false)
+    private Long purged;
+
+    @Column(name = "updated_at", nullable = false)
+    private Timestamp updatedAt;
+}
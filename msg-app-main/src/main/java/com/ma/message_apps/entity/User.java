@@ -5,11 +5,18 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 
 import java.sql.Timestamp;
 
 @Entity
 @Table(name = "users")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "users")
+@NaturalIdCache(region = "users-by-username")
 @AllArgsConstructor
 @NoArgsConstructor
 @Data
@@ -20,6 +27,8 @@ public class User {
     @Column(name = "user_id")
     private Integer userId;
 
+    // Usernames can be changed from the profile page, so the natural id is mutable
+    @NaturalId(mutable = true)
     @Column(name = "username")
     private String username;
 
@@ -36,5 +45,8 @@ public class User {
     @Column(name = "created_at")
     private Timestamp createdAt;
 
+    // Set when the account is deleted; the rows are removed in the background (see AccountDeletionService)
+    @Column(name = "deleted_at")
+    private Timestamp deletedAt;
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,51 @@
+package com.ma.message_apps.entity;
+
+import com.ma.message_apps.enumDto.ChangeKind;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.sql.Timestamp;
+
+/**
+ * One entry of a user's change log, numbered by a per-user sequence (see {@link UserChangeHead}).
+ * Entries only say what changed; the sync endpoint reads the current state of the subject.
+ */
+@Entity
+@Table(name = "user_changes", uniqueConstraints = {
+        // Sync reads a range of this per user
+        @UniqueConstraint(name = "uk_user_changes_user_seq", columnNames = {"user_id", "seq"})
+}, indexes = {
+        // Compaction finds older entries with the same key
+        @Index(name = "idx_user_changes_key", columnList = "user_id, kind, subject_id")
+})
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class UserChange {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "change_id")
+    private Long changeId;
+
+    @Column(name = "user_id", nullable = false)
+    private Integer userId;
+
+    @Column(name = "seq", nullable = false)
+    private Long seq;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "kind", nullable = false, length = 16)
+    private ChangeKind kind;
+
+    @Column(name = "subject_id", nullable = false)
+    private Integer subjectId;
+
+    @Column(name = "subject_seq")
+    private Long subjectSeq;
+
+    @Column(name = "created_at", nullable = false)
+    private Timestamp createdAt;
+}
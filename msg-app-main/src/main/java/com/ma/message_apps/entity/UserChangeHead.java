@@ -0,0 +1,25 @@
+package com.ma.message_apps.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Last change log sequence number of a user. Bumped in the transaction that records the change,
+ * so the row lock orders a user's entries by commit and a sync token never skips one still in flight.
+ */
+@Entity
+@Table(name = "user_change_heads")
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class UserChangeHead {
+
+    @Id
+    @Column(name = "user_id")
+    private Integer userId;
+
+    @Column(name = "last_seq", nullable = false)
+    private Long lastSeq;
+}
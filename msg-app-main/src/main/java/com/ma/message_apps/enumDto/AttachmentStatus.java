@@ -0,0 +1,10 @@
+package com.ma.message_apps.enumDto;
+
+/**
+ * Life cycle of an attachment: its bytes arrive in chunks while UPLOADING, and once all of them are
+ * in, the file moves to the blob store and the attachment is COMPLETE (ready to link and download).
+ */
+public enum AttachmentStatus {
+    UPLOADING,
+    COMPLETE
+}
@@ -0,0 +1,21 @@
+package com.ma.message_apps.enumDto;
+
+/**
+ * What an entry of a user's change log is about. Every kind is keyed by one other user (the subject);
+ * compaction keeps only the latest entry per (kind, subject).
+ */
+public enum ChangeKind {
+
+    MESSAGE("New messages in the conversation with the subject; subjectSeq is its last sequence number"),
+    READ("The subject read our messages; subjectSeq is the last sequence number read"),
+    RELATIONSHIP("Friendship or friend request with the subject changed"),
+    PRESENCE("The subject (a friend) changed status");
+
+    private final String description;
+    ChangeKind(String description) {
+        this.description = description;
+    }
+    public String getDescription() {
+        return description;
+    }
+}
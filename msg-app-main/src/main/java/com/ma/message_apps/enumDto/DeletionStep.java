@@ -0,0 +1,29 @@
+package com.ma.message_apps.enumDto;
+
+/**
+ * Steps of an account deletion, in the order they run. Each step removes rows in bounded chunks
+ * until none are left; rows referencing the user must be gone before the user row itself.
+ * Friend requests and friendships go first, so nobody can start a conversation with the account
+ * while its messages are being removed.
+ */
+public enum DeletionStep {
+
+    PENDING_DELIVERIES("Offline deliveries queued for the user"),
+    FRIEND_REQUESTS("Friend requests sent or received by the user"),
+    FRIENDSHIPS("Both directions of the user's friendships"),
+    MESSAGES_SENT("Direct messages the user sent"),
+    MESSAGES_RECEIVED("Direct messages the user received, then the user's archived conversations"),
+    OWNED_GROUPS("Groups owned by the user: handed to the longest-standing member, or removed when empty"),
+    GROUP_MEMBERSHIPS("The user's group memberships"),
+    GROUP_MESSAGES("Group messages the user sent"),
+    CHANGE_LOG("The user's change log and conversation counters"),
+    ACCOUNT("The user row itself");
+
+    private final String description;
+    DeletionStep(String description) {
+        this.description = description;
+    }
+    public String getDescription() {
+        return description;
+    }
+}
@@ -0,0 +1,21 @@
+package com.ma.message_apps.enumDto;
+
+/**
+ * State transition produced by sending a friend request for a user pair
+ */
+public enum FriendRequestOutcome {
+
+    SENT("New request created"),
+    RESENT("Rejected request moved back to pending"),
+    ALREADY_SENT("Request from the sender is still pending"),
+    ALREADY_RECEIVED("Request from the recipient is still pending"),
+    ALREADY_FRIENDS("Request was already accepted");
+
+    private final String description;
+    FriendRequestOutcome(String description) {
+        this.description = description;
+    }
+    public String getDescription() {
+        return description;
+    }
+}
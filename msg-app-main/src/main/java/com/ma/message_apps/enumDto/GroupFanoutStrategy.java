@@ -0,0 +1,18 @@
+package com.ma.message_apps.enumDto;
+
+/**
+ * How a new group message reaches the members
+ */
+public enum GroupFanoutStrategy {
+
+    PUSH("Send the message to every online member's socket"),
+    PULL("Store only; members fetch on read and see unread counts from their cursor");
+
+    private final String description;
+    GroupFanoutStrategy(String description) {
+        this.description = description;
+    }
+    public String getDescription() {
+        return description;
+    }
+}
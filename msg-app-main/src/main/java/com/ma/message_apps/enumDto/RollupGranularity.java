@@ -0,0 +1,31 @@
+package com.ma.message_apps.enumDto;
+
+/**
+ * Bucket size of an activity rollup. Buckets are aligned to UTC.
+ */
+public enum RollupGranularity {
+
+    MINUTE("One row per minute", 60_000L),
+    HOUR("One row per hour", 3_600_000L),
+    DAY("One row per UTC day", 86_400_000L);
+
+    private final String description;
+    private final long millis;
+    RollupGranularity(String description, long millis) {
+        this.description = description;
+        this.millis = millis;
+    }
+    public String getDescription() {
+        return description;
+    }
+    public long getMillis() {
+        return millis;
+    }
+
+    /**
+     * Start of the bucket containing a point in time
+     */
+    public long bucketStart(long epochMillis) {
+        return epochMillis - Math.floorMod(epochMillis, millis);
+    }
+}
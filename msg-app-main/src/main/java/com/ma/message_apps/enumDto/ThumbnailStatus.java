@@ -0,0 +1,11 @@
+package com.ma.message_apps.enumDto;
+
+/**
+ * Thumbnail of an image attachment: PENDING from the end of the upload until a worker has rendered
+ * it, then READY, or FAILED when the image cannot be decoded. Attachments that are not images have none.
+ */
+public enum ThumbnailStatus {
+    PENDING,
+    READY,
+    FAILED
+}
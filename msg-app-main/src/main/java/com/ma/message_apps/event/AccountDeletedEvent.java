@@ -0,0 +1,10 @@
+package com.ma.message_apps.event;
+
+/**
+ * Published when an account is marked deleted, before its rows are removed in the background.
+ * Listeners drop in-memory state for the user.
+ *
+ * @param userId The deleted user
+ */
+public record AccountDeletedEvent(Integer userId) {
+}
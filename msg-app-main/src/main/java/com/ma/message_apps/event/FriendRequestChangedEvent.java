@@ -0,0 +1,17 @@
+package com.ma.message_apps.event;
+
+import java.util.List;
+
+/**
+ * Published when friend requests are sent, rejected or cancelled (acceptance publishes
+ * {@link FriendshipChangedEvent} instead). Bulk operations publish one event for all the requests they touched.
+ *
+ * @param userId The user on one side of every request
+ * @param otherUserIds The users on the other side
+ */
+public record FriendRequestChangedEvent(Integer userId, List<Integer> otherUserIds) {
+
+    public static FriendRequestChangedEvent of(Integer userId, Integer otherUserId) {
+        return new FriendRequestChangedEvent(userId, List.of(otherUserId));
+    }
+}
@@ -0,0 +1,19 @@
+package com.ma.message_apps.event;
+
+import java.util.List;
+
+/**
+ * Published when friendships are created (requests accepted) or removed (unfriend).
+ * Bulk operations publish one event for all the friendships they touched.
+ * Listeners that keep derived state in memory consume it after the transaction commits.
+ *
+ * @param userId The user on one side of every friendship
+ * @param friendIds The users on the other side
+ * @param created true when the friendships were created, false when they were removed
+ */
+public record FriendshipChangedEvent(Integer userId, List<Integer> friendIds, boolean created) {
+
+    public static FriendshipChangedEvent of(Integer userId, Integer friendId, boolean created) {
+        return new FriendshipChangedEvent(userId, List.of(friendId), created);
+    }
+}
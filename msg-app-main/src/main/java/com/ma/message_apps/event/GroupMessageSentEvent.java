@@ -0,0 +1,12 @@
+package com.ma.message_apps.event;
+
+import com.ma.message_apps.dto.GroupMessageDto;
+
+/**
+ * Published when a message is stored in a group; delivery happens after the transaction commits
+ *
+ * @param message The stored message
+ * @param memberCount Group size at send time, used to pick the delivery strategy
+ */
+public record GroupMessageSentEvent(GroupMessageDto message, int memberCount) {
+}
@@ -0,0 +1,11 @@
+package com.ma.message_apps.event;
+
+import com.ma.message_apps.dto.DirectMessageDto;
+
+/**
+ * Published when a one-to-one message is stored; delivery happens after the transaction commits
+ *
+ * @param message The stored message, with its conversation sequence number
+ */
+public record MessageSentEvent(DirectMessageDto message) {
+}
@@ -0,0 +1,11 @@
+package com.ma.message_apps.event;
+
+/**
+ * Published when a user marks a one-to-one conversation as read
+ *
+ * @param readerId User who read the messages
+ * @param senderId The other side of the conversation, whose messages were read
+ * @param upToSeq Last conversation sequence number read
+ */
+public record MessagesReadEvent(Integer readerId, Integer senderId, long upToSeq) {
+}
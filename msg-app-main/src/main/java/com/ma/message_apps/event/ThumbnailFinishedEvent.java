@@ -0,0 +1,16 @@
+package com.ma.message_apps.event;
+
+/**
+ * Published when the thumbnail of an attachment already sent with a message is rendered (or fails)
+ *
+ * @param ready Whether the thumbnail can be fetched; width and height are only set then
+ */
+public record ThumbnailFinishedEvent(
+        Integer attachmentId,
+        Integer messageId,
+        Integer senderId,
+        Integer receiverId,
+        boolean ready,
+        Integer width,
+        Integer height) {
+}
@@ -0,0 +1,12 @@
+package com.ma.message_apps.event;
+
+import com.ma.message_apps.enumDto.UserStatus;
+
+/**
+ * Published when a user's status (online, away, offline) changes
+ *
+ * @param userId User whose status changed
+ * @param status The new status
+ */
+public record UserStatusChangedEvent(Integer userId, UserStatus status) {
+}
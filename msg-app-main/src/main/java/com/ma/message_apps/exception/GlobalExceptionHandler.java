@@ -2,12 +2,15 @@ package com.ma.message_apps.exception;
 
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.context.request.WebRequest;
 
+import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -19,6 +22,9 @@ import java.util.Map;
 @Slf4j
 public class GlobalExceptionHandler {
 
+    // ER_NO_REFERENCED_ROW_2: insert/update referenced a parent row that does not exist
+    private static final int MYSQL_NO_REFERENCED_ROW = 1452;
+
     /**
      * Handle ResourceNotFoundException
      */
@@ -46,6 +52,24 @@ public class GlobalExceptionHandler {
         return createErrorResponse(HttpStatus.FORBIDDEN, ex.getMessage(), request);
     }
 
+    /**
+     * Handle DataIntegrityViolationException.
+     * Write paths attach users by reference and rely on the foreign keys to reject unknown ids,
+     * so a foreign key failure is reported the same way as a missing resource.
+     */
+    @ExceptionHandler(DataIntegrityViolationException.class)
+    public ResponseEntity<Object> handleDataIntegrityViolationException(DataIntegrityViolationException ex, WebRequest request) {
+        Throwable cause = NestedExceptionUtils.getMostSpecificCause(ex);
+        if (cause instanceof SQLException sqlException && sqlException.getErrorCode() == MYSQL_NO_REFERENCED_ROW) {
+            String message = describeMissingReference(sqlException.getMessage());
+            log.warn("RESOURCE_NOT_FOUND: {}", message);
+            return createErrorResponse(HttpStatus.NOT_FOUND, message, request);
+        }
+
+        log.warn("DATA_INTEGRITY_VIOLATION: {}", cause.getMessage());
+        return createErrorResponse(HttpStatus.CONFLICT, "The request conflicts with existing data", request);
+    }
+
     /**
      * Handle general exceptions
      */
@@ -59,6 +83,21 @@ public class GlobalExceptionHandler {
         );
     }
 
+    /**
+     * Map the failing foreign key column from the MySQL error text to a user-facing message
+     */
+    private String describeMissingReference(String sqlMessage) {
+        if (sqlMessage != null) {
+            if (sqlMessage.contains("FOREIGN KEY (`sender_id`)")) {
+                return "Sender not found";
+            }
+            if (sqlMessage.contains("FOREIGN KEY (`receiver_id`)")) {
+                return "Recipient not found";
+            }
+        }
+        return "Referenced user not found";
+    }
+
     /**
      * Create consistent error response structure
      */
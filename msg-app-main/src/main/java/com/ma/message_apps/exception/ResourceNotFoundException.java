@@ -1,7 +1,12 @@
 package com.ma.message_apps.exception;
 
+/**
+ * Exception thrown when a requested resource does not exist.
+ * Thrown on routine paths (unknown IDs, failed logins) and only ever reported by its message,
+ * so it carries no stack trace.
+ */
 public class ResourceNotFoundException extends RuntimeException {
     public ResourceNotFoundException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 }
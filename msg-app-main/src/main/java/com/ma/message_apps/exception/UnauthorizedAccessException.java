@@ -1,10 +1,11 @@
 package com.ma.message_apps.exception;
 
 /**
- * Exception thrown when a user attempts to access resources they're not authorized for
+ * Exception thrown when a user attempts to access resources they're not authorized for.
+ * Carries no stack trace, like {@link ResourceNotFoundException}.
  */
 public class UnauthorizedAccessException extends RuntimeException {
     public UnauthorizedAccessException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 }
@@ -1,7 +1,11 @@
 package com.ma.message_apps.exception;
 
+/**
+ * Exception thrown when a username or email is already taken.
+ * Carries no stack trace, like {@link ResourceNotFoundException}.
+ */
 public class UserAlreadyExistsException extends RuntimeException {
     public UserAlreadyExistsException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 }
@@ -3,11 +3,14 @@ package com.ma.message_apps.mapper;
 import com.ma.message_apps.dto.FriendRequestsDto;
 import com.ma.message_apps.entity.FriendRequests;
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
 
 @Mapper(componentModel = "spring")
 public interface FriendRequestsConversion {
 
     FriendRequestsDto fromEntity(FriendRequests friendRequests);
+    @Mapping(target = "userLowId", ignore = true)
+    @Mapping(target = "userHighId", ignore = true)
     FriendRequests toEntity(FriendRequestsDto friendRequestsDto);
 
 }
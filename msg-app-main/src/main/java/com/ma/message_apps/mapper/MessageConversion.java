@@ -3,10 +3,14 @@ package com.ma.message_apps.mapper;
 import com.ma.message_apps.dto.MessageDto;
 import com.ma.message_apps.entity.Message;
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
 
 @Mapper(componentModel = "spring")
 public interface MessageConversion {
 
+    @Mapping(target = "attachments", ignore = true)
     MessageDto toMessageDto(Message message);
+    @Mapping(target = "userLowId", ignore = true)
+    @Mapping(target = "userHighId", ignore = true)
     Message toMessage(MessageDto messageDto);
 }
@@ -19,6 +19,7 @@ public interface UserConversion {
     @Mapping(target = "userId", source = "userId")
     @Mapping(target = "createdAt", source = "createdAt", qualifiedByName = "localDateTimeToTimestamp")
     @Mapping(target = "status", source = "userStatus")
+    @Mapping(target = "deletedAt", ignore = true)
     User toUser(UserDto userDto);
 
     // Custom mapping methods for date conversion
@@ -0,0 +1,35 @@
+package com.ma.message_apps.repository;
+
+import com.ma.message_apps.entity.AccountDeletion;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface AccountDeletionRepository extends JpaRepository<AccountDeletion, Integer> {
+
+    /**
+     * Deletions still in progress, oldest request first
+     */
+    @Query("SELECT d FROM AccountDeletion d ORDER BY d.requestedAt, d.userId")
+    List<AccountDeletion> findOldest(Pageable pageable);
+
+    /**
+     * Deletions still worked on (restarted at most the given number of times), oldest request first
+     */
+    @Query("SELECT d FROM AccountDeletion d WHERE d.restarts <= :maxRestarts ORDER BY d.requestedAt, d.userId")
+    List<AccountDeletion> findRunnable(@Param("maxRestarts") int maxRestarts, Pageable pageable);
+
+    /**
+     * Number of deletions at each step, as (step, count) rows
+     */
+    @Query("SELECT d.step, COUNT(d) FROM AccountDeletion d GROUP BY d.step")
+    List<Object[]> countByStep();
+
+    /**
+     * Number of deletions restarted more than the given number of times
+     */
+    long countByRestartsGreaterThan(int restarts);
+}
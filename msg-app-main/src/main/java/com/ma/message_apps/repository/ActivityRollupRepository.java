@@ -0,0 +1,59 @@
+package com.ma.message_apps.repository;
+
+import com.ma.message_apps.dto.ActivityRollupDto;
+import com.ma.message_apps.entity.ActivityRollup;
+import com.ma.message_apps.entity.ActivityRollupId;
+import com.ma.message_apps.enumDto.RollupGranularity;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+public interface ActivityRollupRepository extends JpaRepository<ActivityRollup, ActivityRollupId> {
+
+    /**
+     * Add counts to a bucket, creating it if needed.
+     * Counters are added; active senders is a distinct count, so it only ever grows to the larger value.
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "activity_rollups"))
+    @Query(value = "INSERT INTO activity_rollups " +
+           "(granularity, bucket_start, messages_sent, active_senders, friendships_created, friendships_removed) " +
+           "VALUES (:granularity, :bucketStart, :messagesSent, :activeSenders, :friendshipsCreated, :friendshipsRemoved) " +
+           "ON DUPLICATE KEY UPDATE messages_sent = messages_sent + VALUES(messages_sent), " +
+           "active_senders = GREATEST(active_senders, VALUES(active_senders)), " +
+           "friendships_created = friendships_created + VALUES(friendships_created), " +
+           "friendships_removed = friendships_removed + VALUES(friendships_removed)", nativeQuery = true)
+    int add(@Param("granularity") String granularity,
+            @Param("bucketStart") Timestamp bucketStart,
+            @Param("messagesSent") long messagesSent,
+            @Param("activeSenders") int activeSenders,
+            @Param("friendshipsCreated") long friendshipsCreated,
+            @Param("friendshipsRemoved") long friendshipsRemoved);
+
+    /**
+     * Buckets of one granularity in [from, to), oldest first (range scan of the primary key, which leads with bucket_start)
+     */
+    @Query("SELECT new com.ma.message_apps.dto.ActivityRollupDto(r.bucketStart, r.messagesSent, r.activeSenders, " +
+           "r.friendshipsCreated, r.friendshipsRemoved) FROM ActivityRollup r " +
+           "WHERE r.granularity = :granularity AND r.bucketStart >= :from AND r.bucketStart < :to " +
+           "ORDER BY r.bucketStart")
+    List<ActivityRollupDto> findRange(@Param("granularity") RollupGranularity granularity,
+                                      @Param("from") Timestamp from,
+                                      @Param("to") Timestamp to,
+                                      Pageable pageable);
+
+    /**
+     * Drop buckets of one granularity that started before a cutoff
+     */
+    @Modifying
+    @Query("DELETE FROM ActivityRollup r WHERE r.granularity = :granularity AND r.bucketStart < :before")
+    int deleteBefore(@Param("granularity") RollupGranularity granularity, @Param("before") Timestamp before);
+}
@@ -0,0 +1,91 @@
+package com.ma.message_apps.repository;
+
+import com.ma.message_apps.entity.Attachment;
+import com.ma.message_apps.entity.Message;
+import com.ma.message_apps.enumDto.ThumbnailStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface AttachmentRepository extends JpaRepository<Attachment, Integer> {
+
+    /**
+     * An attachment with its message (if sent), for the access check
+     */
+    @Query("SELECT a FROM Attachment a LEFT JOIN FETCH a.message WHERE a.attachmentId = :attachmentId")
+    Optional<Attachment> findWithMessage(@Param("attachmentId") Integer attachmentId);
+
+    /**
+     * Attachments of several messages, in upload order
+     */
+    @Query("SELECT a FROM Attachment a WHERE a.message.messageId IN (:messageIds) ORDER BY a.attachmentId ASC")
+    List<Attachment> findByMessageIds(@Param("messageIds") Collection<Integer> messageIds);
+
+    /**
+     * Number of the given attachments a user uploaded completely and has not sent yet
+     */
+    @Query("SELECT COUNT(a) FROM Attachment a WHERE a.attachmentId IN (:attachmentIds) AND a.uploaderId = :uploaderId " +
+           "AND a.status = com.ma.message_apps.enumDto.AttachmentStatus.COMPLETE AND a.message IS NULL")
+    long countLinkable(@Param("attachmentIds") Collection<Integer> attachmentIds, @Param("uploaderId") Integer uploaderId);
+
+    /**
+     * Link unsent, complete attachments of a user to a message; the conditions make a concurrent
+     * second send of the same attachment update nothing
+     */
+    @Modifying
+    @Query("UPDATE Attachment a SET a.message = :message, a.updatedAt = :now " +
+           "WHERE a.attachmentId IN (:attachmentIds) AND a.uploaderId = :uploaderId " +
+           "AND a.status = com.ma.message_apps.enumDto.AttachmentStatus.COMPLETE AND a.message IS NULL")
+    int linkToMessage(@Param("attachmentIds") Collection<Integer> attachmentIds, @Param("uploaderId") Integer uploaderId,
+                      @Param("message") Message message, @Param("now") Timestamp now);
+
+    /**
+     * IDs of attachments never sent with a message and untouched since a given time (abandoned uploads)
+     */
+    @Query("SELECT a.attachmentId FROM Attachment a WHERE a.message IS NULL AND a.updatedAt < :before")
+    List<Integer> findUnsentIdsUpdatedBefore(@Param("before") Timestamp before, Pageable pageable);
+
+    /**
+     * Those of the given hashes that some attachment still references
+     */
+    @Query("SELECT DISTINCT a.sha256 FROM Attachment a WHERE a.sha256 IN (:hashes)")
+    List<String> findReferencedHashes(@Param("hashes") Collection<String> hashes);
+
+    /**
+     * Content hashes with a thumbnail still to render
+     */
+    @Query("SELECT DISTINCT a.sha256 FROM Attachment a " +
+           "WHERE a.thumbnailStatus = com.ma.message_apps.enumDto.ThumbnailStatus.PENDING")
+    List<String> findPendingThumbnailHashes(Pageable pageable);
+
+    /**
+     * Attachments with the given content waiting for its thumbnail, with their messages (if sent)
+     */
+    @Query("SELECT a FROM Attachment a LEFT JOIN FETCH a.message WHERE a.sha256 = :sha256 " +
+           "AND a.thumbnailStatus = com.ma.message_apps.enumDto.ThumbnailStatus.PENDING")
+    List<Attachment> findPendingThumbnails(@Param("sha256") String sha256);
+
+    /**
+     * Record the outcome of a thumbnail for attachments still waiting for it
+     */
+    @Modifying
+    @Query("UPDATE Attachment a SET a.thumbnailStatus = :status, a.thumbnailWidth = :width, a.thumbnailHeight = :height " +
+           "WHERE a.attachmentId IN (:attachmentIds) " +
+           "AND a.thumbnailStatus = com.ma.message_apps.enumDto.ThumbnailStatus.PENDING")
+    int finishThumbnails(@Param("attachmentIds") Collection<Integer> attachmentIds, @Param("status") ThumbnailStatus status,
+                         @Param("width") Integer width, @Param("height") Integer height);
+
+    /**
+     * Delete attachments by primary key
+     */
+    @Modifying
+    @Query("DELETE FROM Attachment a WHERE a.attachmentId IN (:attachmentIds)")
+    int deleteByAttachmentIds(@Param("attachmentIds") Collection<Integer> attachmentIds);
+}
@@ -0,0 +1,51 @@
+package com.ma.message_apps.repository;
+
+import com.ma.message_apps.entity.ChatGroup;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface ChatGroupRepository extends JpaRepository<ChatGroup, Integer> {
+
+    /**
+     * Adjust the stored member count after members joined (positive) or left (negative)
+     */
+    @Modifying
+    @Query("UPDATE ChatGroup g SET g.memberCount = g.memberCount + :delta WHERE g.groupId = :groupId")
+    int adjustMemberCount(@Param("groupId") Integer groupId, @Param("delta") int delta);
+
+    /**
+     * Hand up to {@code limit} groups owned by a user to their longest-standing other member;
+     * groups without another member are left as they are
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "chat_groups"))
+    @Query(value = "UPDATE chat_groups g SET g.owner_id = (" +
+           "SELECT gm.user_id FROM group_members gm WHERE gm.group_id = g.group_id AND gm.user_id <> :userId " +
+           "ORDER BY gm.joined_at, gm.user_id LIMIT 1) " +
+           "WHERE g.owner_id = :userId AND EXISTS (" +
+           "SELECT 1 FROM group_members other WHERE other.group_id = g.group_id AND other.user_id <> :userId) " +
+           "LIMIT :limit", nativeQuery = true)
+    int transferOwnership(@Param("userId") Integer userId, @Param("limit") int limit);
+
+    /**
+     * IDs of groups still owned by a user
+     */
+    @Query("SELECT g.groupId FROM ChatGroup g WHERE g.owner.userId = :userId ORDER BY g.groupId")
+    List<Integer> findIdsOwnedBy(@Param("userId") Integer userId, Pageable pageable);
+
+    /**
+     * Take a member off the stored member count of several groups
+     */
+    @Modifying
+    @Query("UPDATE ChatGroup g SET g.memberCount = g.memberCount - 1 WHERE g.groupId IN (:groupIds)")
+    int decrementMemberCounts(@Param("groupIds") Collection<Integer> groupIds);
+}
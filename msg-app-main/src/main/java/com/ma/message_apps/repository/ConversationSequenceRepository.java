@@ -0,0 +1,78 @@
+package com.ma.message_apps.repository;
+
+import com.ma.message_apps.entity.ConversationSequence;
+import com.ma.message_apps.entity.ConversationSequenceId;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Optional;
+
+public interface ConversationSequenceRepository extends JpaRepository<ConversationSequence, ConversationSequenceId> {
+
+    /**
+     * Allocate the next sequence number of a conversation.
+     * Must run inside the sending transaction: the row lock taken by the upsert is held until commit,
+     * so sends in the same conversation commit in sequence order and a rollback gives the number back.
+     *
+     * @return the allocated sequence number
+     */
+    default long nextSeq(Integer userLowId, Integer userHighId) {
+        incrementLastSeq(userLowId, userHighId);
+        return lastInsertId();
+    }
+
+    /**
+     * Create or bump the counter row, leaving the new value in LAST_INSERT_ID() of this connection
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "conversation_sequences"))
+    @Query(value = "INSERT INTO conversation_sequences (user_low_id, user_high_id, last_seq) " +
+           "VALUES (:userLowId, :userHighId, LAST_INSERT_ID(1)) " +
+           "ON DUPLICATE KEY UPDATE last_seq = LAST_INSERT_ID(last_seq + 1)", nativeQuery = true)
+    int incrementLastSeq(@Param("userLowId") Integer userLowId, @Param("userHighId") Integer userHighId);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "conversation_sequences"))
+    @Query(value = "SELECT LAST_INSERT_ID()", nativeQuery = true)
+    long lastInsertId();
+
+    /**
+     * Last sequence number of a conversation (primary key lookup)
+     */
+    @Query("SELECT s.lastSeq FROM ConversationSequence s WHERE s.userLowId = :userLowId AND s.userHighId = :userHighId")
+    Optional<Long> findLastSeq(@Param("userLowId") Integer userLowId, @Param("userHighId") Integer userHighId);
+
+    /**
+     * Create a conversation's counter, or raise it to the highest sequence number its messages already
+     * have. Locks the counter row until commit, so sends in the conversation wait for the backfill batch.
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "conversation_sequences"))
+    @Query(value = "INSERT INTO conversation_sequences (user_low_id, user_high_id, last_seq) " +
+           "SELECT :userLowId, :userHighId, COALESCE(MAX(seq), 0) FROM messages " +
+           "WHERE user_low_id = :userLowId AND user_high_id = :userHighId " +
+           "ON DUPLICATE KEY UPDATE last_seq = GREATEST(last_seq, VALUES(last_seq))", nativeQuery = true)
+    int lockAndSeed(@Param("userLowId") Integer userLowId, @Param("userHighId") Integer userHighId);
+
+    /**
+     * Move a conversation's counter past sequence numbers given out by the backfill
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "conversation_sequences"))
+    @Query(value = "UPDATE conversation_sequences SET last_seq = last_seq + :count " +
+           "WHERE user_low_id = :userLowId AND user_high_id = :userHighId", nativeQuery = true)
+    int advance(@Param("userLowId") Integer userLowId, @Param("userHighId") Integer userHighId, @Param("count") int count);
+
+    /**
+     * Delete up to {@code limit} counters of conversations a user took part in (account deletion)
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "conversation_sequences"))
+    @Query(value = "DELETE FROM conversation_sequences WHERE user_high_id = :userId OR user_low_id = :userId " +
+           "LIMIT :limit", nativeQuery = true)
+    int deleteForUser(@Param("userId") Integer userId, @Param("limit") int limit);
+}
@@ -1,93 +1,176 @@
 package com.ma.message_apps.repository;
 
+import com.ma.message_apps.dto.FriendRequestRefDto;
+import com.ma.message_apps.dto.FriendRequestStateDto;
+import com.ma.message_apps.dto.PendingFriendRequestDto;
 import com.ma.message_apps.entity.FriendRequests;
 import com.ma.message_apps.entity.User;
 import com.ma.message_apps.enumDto.FriendStatus;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 
 public interface FriendRequestsRepository extends JpaRepository<FriendRequests,Integer> {
+    @EntityGraph(attributePaths = {"sender", "receiver"})
     List<FriendRequests> findByReceiver_UserId(Integer userId);
     boolean existsBySender_UserIdAndReceiver_UserId(Integer senderId, Integer receiverId);
 
     // Find friend request by sender, receiver and status
     Optional<FriendRequests> findBySenderAndReceiverAndStatus(User sender, User receiver, FriendStatus status);
 
-    @Query("SELECT fr.sender FROM FriendRequests fr WHERE fr.receiver.userId = :userId AND fr.status = com.ma.message_apps.enumDto.FriendStatus.ACCEPTED UNION SELECT fr.receiver FROM FriendRequests fr WHERE fr.sender.userId = :userId AND fr.status = com.ma.message_apps.enumDto.FriendStatus.ACCEPTED")
-    List<User> findAcceptedFriends(@Param("userId") Integer userId);
-
-    List<FriendRequests> findByReceiverUserIdAndStatus(Integer userId, FriendStatus friendStatus);
+    /**
+     * Find a request with both users fetched in the same query
+     */
+    @Query("SELECT fr FROM FriendRequests fr JOIN FETCH fr.sender JOIN FETCH fr.receiver WHERE fr.requestId = :requestId")
+    Optional<FriendRequests> findWithUsersById(@Param("requestId") Integer requestId);
 
-    Optional<FriendRequests> findBySenderUserIdAndReceiverUserId(Integer fromUserId, Integer toUserId);
+    /**
+     * Find requests received by a user in the given status, with both users fetched in the same query
+     */
+    @Query("SELECT fr FROM FriendRequests fr JOIN FETCH fr.sender JOIN FETCH fr.receiver " +
+           "WHERE fr.receiver.userId = :userId AND fr.status = :status " +
+           "ORDER BY fr.createdAt DESC")
+    List<FriendRequests> findWithUsersByReceiverUserIdAndStatus(@Param("userId") Integer userId,
+                                                                @Param("status") FriendStatus status);
 
     /**
-     * Check if there's a pending friend request between two users
+     * Create a pending request for the pair, or move a rejected one back to pending, in one statement.
+     * Pending and accepted rows are left untouched. The unique pair key makes this race-free and
+     * LAST_INSERT_ID() points at the affected row either way (see {@link #findLastUpsertedRequest()}).
+     *
+     * @return MySQL affected rows (the datasource sets useAffectedRows): 1 when inserted, 2 when a rejected
+     *         row was reset, 0 when the row was left unchanged
      */
-    @Query("SELECT COUNT(fr) > 0 FROM FriendRequests fr WHERE " +
-           "((fr.sender.userId = :fromUserId AND fr.receiver.userId = :toUserId) OR " +
-           "(fr.sender.userId = :toUserId AND fr.receiver.userId = :fromUserId)) " +
-           "AND fr.status = com.ma.message_apps.enumDto.FriendStatus.PENDING")
-    boolean existsPendingRequest(@Param("fromUserId") Integer fromUserId, @Param("toUserId") Integer toUserId);
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "friend_requests"))
+    @Query(value = "INSERT INTO friend_requests (sender_id, receiver_id, status, created_at) " +
+           "VALUES (:fromUserId, :toUserId, 'PENDING', :createdAt) " +
+           "ON DUPLICATE KEY UPDATE " +
+           "request_id = LAST_INSERT_ID(request_id), " +
+           "sender_id = IF(status = 'REJECTED', VALUES(sender_id), sender_id), " +
+           "receiver_id = IF(status = 'REJECTED', VALUES(receiver_id), receiver_id), " +
+           "created_at = IF(status = 'REJECTED', VALUES(created_at), created_at), " +
+           "status = IF(status = 'REJECTED', 'PENDING', status)", nativeQuery = true)
+    int upsertPendingRequest(@Param("fromUserId") Integer fromUserId,
+                             @Param("toUserId") Integer toUserId,
+                             @Param("createdAt") Timestamp createdAt);
 
     /**
-     * Create a new friend request
+     * Bulk form of {@link #upsertPendingRequest}: one statement for every recipient, skipping unknown and
+     * deleted users in the same SELECT so no check can go stale before the write.
+     *
+     * @return MySQL affected rows summed over the recipients (1 per insert, 2 per reset rejected row)
      */
     @Modifying
-    @Transactional
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "friend_requests"))
     @Query(value = "INSERT INTO friend_requests (sender_id, receiver_id, status, created_at) " +
-           "VALUES (:fromUserId, :toUserId, 'PENDING', CURRENT_TIMESTAMP)", nativeQuery = true)
-    void insertFriendRequest(@Param("fromUserId") Integer fromUserId, @Param("toUserId") Integer toUserId);
+           "SELECT :fromUserId, u.user_id, 'PENDING', :createdAt FROM users u " +
+           "WHERE u.user_id IN (:toUserIds) AND u.deleted_at IS NULL " +
+           "ON DUPLICATE KEY UPDATE " +
+           "sender_id = IF(friend_requests.status = 'REJECTED', VALUES(sender_id), friend_requests.sender_id), " +
+           "receiver_id = IF(friend_requests.status = 'REJECTED', VALUES(receiver_id), friend_requests.receiver_id), " +
+           "created_at = IF(friend_requests.status = 'REJECTED', VALUES(created_at), friend_requests.created_at), " +
+           "status = IF(friend_requests.status = 'REJECTED', 'PENDING', friend_requests.status)", nativeQuery = true)
+    int upsertPendingRequests(@Param("fromUserId") Integer fromUserId,
+                              @Param("toUserIds") Collection<Integer> toUserIds,
+                              @Param("createdAt") Timestamp createdAt);
 
     /**
-     * Helper method to create a friend request
+     * Lock the request rows between a user and the given others, in either direction, before a bulk upsert.
+     * Pairs without a row are absent from the result.
      */
-    default boolean createFriendRequest(Integer fromUserId, Integer toUserId) {
-        try {
-            insertFriendRequest(fromUserId, toUserId);
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
-    }
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT new com.ma.message_apps.dto.FriendRequestStateDto(fr.sender.userId, fr.receiver.userId, fr.status) " +
+           "FROM FriendRequests fr " +
+           "WHERE (fr.sender.userId = :userId AND fr.receiver.userId IN :otherUserIds) " +
+           "OR (fr.receiver.userId = :userId AND fr.sender.userId IN :otherUserIds)")
+    List<FriendRequestStateDto> lockRequestsBetween(@Param("userId") Integer userId,
+                                                    @Param("otherUserIds") Collection<Integer> otherUserIds);
 
     /**
-     * Find pending friend requests for a user
+     * Request rows between a user and the given others that are not deleted, in either direction
      */
-    @Query("SELECT new map(fr.id as requestId, " +
-           "fr.sender.userId as senderId, " +
-           "fr.sender.username as senderUsername, " +
-           "fr.status as status, " +
-           "fr.createdAt as createdAt) " +
+    @Query("SELECT new com.ma.message_apps.dto.FriendRequestStateDto(fr.sender.userId, fr.receiver.userId, fr.status) " +
            "FROM FriendRequests fr " +
+           "WHERE (fr.sender.userId = :userId AND fr.receiver.userId IN :otherUserIds AND fr.receiver.deletedAt IS NULL) " +
+           "OR (fr.receiver.userId = :userId AND fr.sender.userId IN :otherUserIds AND fr.sender.deletedAt IS NULL)")
+    List<FriendRequestStateDto> findRequestsWithActiveUsers(@Param("userId") Integer userId,
+                                                            @Param("otherUserIds") Collection<Integer> otherUserIds);
+
+    /**
+     * Read back the row touched by {@link #upsertPendingRequest} on the same connection (primary key lookup)
+     */
+    @Query(value = "SELECT * FROM friend_requests WHERE request_id = LAST_INSERT_ID()", nativeQuery = true)
+    Optional<FriendRequests> findLastUpsertedRequest();
+
+    /**
+     * Find pending friend requests for a user.
+     * Served by idx_friend_requests_inbox (receiver_id, status, created_at) without a filesort.
+     */
+    @Query("SELECT new com.ma.message_apps.dto.PendingFriendRequestDto(" +
+           "fr.requestId, s.userId, s.username, fr.status, fr.createdAt) " +
+           "FROM FriendRequests fr JOIN fr.sender s " +
            "WHERE fr.receiver.userId = :userId AND fr.status = com.ma.message_apps.enumDto.FriendStatus.PENDING " +
            "ORDER BY fr.createdAt DESC")
-    List<Map<String, Object>> findPendingRequestsForUser(@Param("userId") Integer userId);
+    List<PendingFriendRequestDto> findPendingRequestsForUser(@Param("userId") Integer userId);
 
     /**
-     * Update friend request status
+     * Lock the pending requests received by a user, restricted to the given IDs.
+     * IDs that belong to someone else or are no longer pending are simply absent from the result.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT new com.ma.message_apps.dto.FriendRequestRefDto(fr.requestId, fr.sender.userId) " +
+           "FROM FriendRequests fr " +
+           "WHERE fr.requestId IN :requestIds AND fr.receiver.userId = :userId " +
+           "AND fr.status = com.ma.message_apps.enumDto.FriendStatus.PENDING")
+    List<FriendRequestRefDto> lockPendingRequestsForReceiver(@Param("userId") Integer userId,
+                                                             @Param("requestIds") Collection<Integer> requestIds);
+
+    /**
+     * Lock every pending request received by a user (uses idx_friend_requests_inbox)
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT new com.ma.message_apps.dto.FriendRequestRefDto(fr.requestId, fr.sender.userId) " +
+           "FROM FriendRequests fr " +
+           "WHERE fr.receiver.userId = :userId " +
+           "AND fr.status = com.ma.message_apps.enumDto.FriendStatus.PENDING")
+    List<FriendRequestRefDto> lockAllPendingRequestsForReceiver(@Param("userId") Integer userId);
+
+    /**
+     * Move many pending requests to a new status in one statement. created_at keeps the time the request was sent.
      */
     @Modifying
-    @Transactional
-    @Query("UPDATE FriendRequests fr SET fr.status = :status WHERE fr.id = :requestId")
-    int updateFriendRequestStatusQuery(@Param("requestId") Integer requestId, @Param("status") FriendStatus status);
+    @Query("UPDATE FriendRequests fr SET fr.status = :status " +
+           "WHERE fr.requestId IN :requestIds AND fr.status = com.ma.message_apps.enumDto.FriendStatus.PENDING")
+    int updatePendingRequestsStatus(@Param("requestIds") Collection<Integer> requestIds,
+                                    @Param("status") FriendStatus status);
 
     /**
-     * Helper method to update friend request status
+     * Answer a pending request as its receiver. Requests that are not pending, or that were sent to
+     * someone else, are left untouched.
+     *
+     * @return 1 if the request was answered, 0 otherwise
      */
-    default boolean updateFriendRequestStatus(Integer requestId, FriendStatus status) {
-        try {
-            return updateFriendRequestStatusQuery(requestId, status) > 0;
-        } catch (Exception e) {
-            return false;
-        }
-    }
+    @Modifying
+    @Query("UPDATE FriendRequests fr SET fr.status = :status " +
+           "WHERE fr.requestId = :requestId AND fr.receiver.userId = :receiverId " +
+           "AND fr.status = com.ma.message_apps.enumDto.FriendStatus.PENDING")
+    int answerPendingRequest(@Param("requestId") Integer requestId,
+                             @Param("receiverId") Integer receiverId,
+                             @Param("status") FriendStatus status);
 
     /**
      * Check if there's a pending friend request between two users (either direction)
@@ -97,4 +180,31 @@ public interface FriendRequestsRepository extends JpaRepository<FriendRequests,I
            "(fr.sender.userId = :userId2 AND fr.receiver.userId = :userId1)) " +
            "AND fr.status = com.ma.message_apps.enumDto.FriendStatus.PENDING")
     boolean existsPendingRequestBetweenUsers(@Param("userId1") Integer userId1, @Param("userId2") Integer userId2);
+
+    /**
+     * Pending requests between a user and any of the given users, in either direction
+     */
+    @Query("SELECT fr FROM FriendRequests fr WHERE fr.status = com.ma.message_apps.enumDto.FriendStatus.PENDING AND (" +
+           "(fr.sender.userId = :userId AND fr.receiver.userId IN :otherUserIds) OR " +
+           "(fr.receiver.userId = :userId AND fr.sender.userId IN :otherUserIds))")
+    List<FriendRequests> findPendingBetween(@Param("userId") Integer userId,
+                                            @Param("otherUserIds") Collection<Integer> otherUserIds);
+
+    /**
+     * Delete the request row for a pair of users, whatever its direction or status (unique pair key lookup)
+     */
+    @Modifying
+    @Query("DELETE FROM FriendRequests fr WHERE fr.userLowId = :lowId AND fr.userHighId = :highId")
+    int deleteByUserPair(@Param("lowId") Integer lowId, @Param("highId") Integer highId);
+
+    /**
+     * Requests sent or received by a user, as (request ID, other user ID) pairs (account deletion)
+     */
+    @Query("SELECT r.requestId, CASE WHEN r.sender.userId = :userId THEN r.receiver.userId ELSE r.sender.userId END " +
+           "FROM FriendRequests r WHERE r.sender.userId = :userId OR r.receiver.userId = :userId")
+    List<Object[]> findRequestsOf(@Param("userId") Integer userId, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM FriendRequests r WHERE r.requestId IN (:requestIds)")
+    int deleteByRequestIds(@Param("requestIds") Collection<Integer> requestIds);
 }
@@ -0,0 +1,100 @@
+package com.ma.message_apps.repository;
+
+import com.ma.message_apps.entity.Friendship;
+import com.ma.message_apps.entity.FriendshipId;
+import com.ma.message_apps.entity.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+public interface FriendshipRepository extends JpaRepository<Friendship, FriendshipId> {
+
+    /**
+     * Find the friends of a user. Edges exist in both directions, so this reads the rows pointing
+     * at the user: a range read on the leading friend_id column of the primary key, joined to users.
+     */
+    @Query("SELECT u FROM Friendship f JOIN f.user u WHERE f.friendId = :userId")
+    List<User> findFriendsOf(@Param("userId") Integer userId);
+
+    /**
+     * Stream every edge in primary key order (friend_id, user_id), i.e. grouped by user with friends ascending.
+     * Must be consumed inside a transaction.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT f.friendId, f.userId FROM Friendship f ORDER BY f.friendId, f.userId")
+    Stream<Object[]> streamAllEdges();
+
+    /**
+     * Which of the given users are friends of a user (primary key lookups)
+     */
+    @Query("SELECT f.userId FROM Friendship f WHERE f.friendId = :userId AND f.userId IN :otherUserIds")
+    List<Integer> findFriendIdsAmong(@Param("userId") Integer userId,
+                                     @Param("otherUserIds") Collection<Integer> otherUserIds);
+
+    /**
+     * Check if two users are friends
+     */
+    boolean existsByUserIdAndFriendId(Integer userId, Integer friendId);
+
+    /**
+     * Write both edges for each accepted friend request in the list
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "friendships"))
+    @Query(value = "INSERT INTO friendships (user_id, friend_id, created_at) " +
+           "SELECT sender_id, receiver_id, :createdAt FROM friend_requests " +
+           "WHERE request_id IN (:requestIds) AND status = 'ACCEPTED' " +
+           "UNION ALL " +
+           "SELECT receiver_id, sender_id, :createdAt FROM friend_requests " +
+           "WHERE request_id IN (:requestIds) AND status = 'ACCEPTED' " +
+           "ON DUPLICATE KEY UPDATE created_at = friendships.created_at", nativeQuery = true)
+    int insertEdgesForAcceptedRequests(@Param("requestIds") Collection<Integer> requestIds,
+                                       @Param("createdAt") Timestamp createdAt);
+
+    /**
+     * Remove both edges between two users
+     */
+    @Modifying
+    @Query("DELETE FROM Friendship f WHERE (f.userId = :userId1 AND f.friendId = :userId2) " +
+           "OR (f.userId = :userId2 AND f.friendId = :userId1)")
+    int deleteEdges(@Param("userId1") Integer userId1, @Param("userId2") Integer userId2);
+
+    /**
+     * Populate edges from every accepted friend request (one-off migration of existing data)
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "friendships"))
+    @Query(value = "INSERT INTO friendships (user_id, friend_id, created_at) " +
+           "SELECT sender_id, receiver_id, created_at FROM friend_requests WHERE status = 'ACCEPTED' " +
+           "UNION ALL " +
+           "SELECT receiver_id, sender_id, created_at FROM friend_requests WHERE status = 'ACCEPTED' " +
+           "ON DUPLICATE KEY UPDATE created_at = friendships.created_at", nativeQuery = true)
+    int backfillFromAcceptedRequests();
+
+    /**
+     * A page of a user's friend IDs (range on the primary key, which leads with friend_id)
+     */
+    @Query("SELECT f.userId FROM Friendship f WHERE f.friendId = :userId")
+    List<Integer> findFriendIds(@Param("userId") Integer userId, Pageable pageable);
+
+    /**
+     * Remove both directions of the friendships between a user and some of their friends
+     */
+    @Modifying
+    @Query("DELETE FROM Friendship f WHERE (f.friendId = :userId AND f.userId IN (:friendIds)) " +
+           "OR (f.userId = :userId AND f.friendId IN (:friendIds))")
+    int deleteEdges(@Param("userId") Integer userId, @Param("friendIds") Collection<Integer> friendIds);
+}
@@ -0,0 +1,93 @@
+package com.ma.message_apps.repository;
+
+import com.ma.message_apps.dto.GroupDto;
+import com.ma.message_apps.entity.GroupMember;
+import com.ma.message_apps.entity.GroupMemberId;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
+
+public interface GroupMemberRepository extends JpaRepository<GroupMember, GroupMemberId> {
+
+    /**
+     * Check if a user is a member of a group (primary key lookup)
+     */
+    boolean existsByGroupIdAndUserId(Integer groupId, Integer userId);
+
+    /**
+     * Member IDs of a group (primary key range read)
+     */
+    @Query("SELECT gm.userId FROM GroupMember gm WHERE gm.groupId = :groupId")
+    List<Integer> findUserIdsByGroupId(@Param("groupId") Integer groupId);
+
+    /**
+     * Groups of a user with the number of messages above the user's read cursor, in one query
+     */
+    @Query("SELECT new com.ma.message_apps.dto.GroupDto(g.groupId, g.name, g.owner.userId, g.memberCount, g.createdAt, " +
+           "(SELECT COUNT(m) FROM GroupMessage m WHERE m.group.groupId = g.groupId AND m.messageId > gm.lastReadMessageId), " +
+           "null) " +
+           "FROM GroupMember gm JOIN gm.group g WHERE gm.userId = :userId ORDER BY g.groupId")
+    List<GroupDto> findGroupsForUser(@Param("userId") Integer userId);
+
+    /**
+     * Add existing users to a group; unknown IDs, deleted accounts and existing members are skipped.
+     * New members start with everything already in the group marked as read.
+     *
+     * @return number of members actually added
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "group_members"))
+    @Query(value = "INSERT IGNORE INTO group_members (group_id, user_id, last_read_message_id, joined_at) " +
+           "SELECT :groupId, u.user_id, " +
+           "(SELECT COALESCE(MAX(m.message_id), 0) FROM group_messages m WHERE m.group_id = :groupId), :joinedAt " +
+           "FROM users u WHERE u.user_id IN (:userIds) AND u.deleted_at IS NULL", nativeQuery = true)
+    int addMembers(@Param("groupId") Integer groupId,
+                   @Param("userIds") Collection<Integer> userIds,
+                   @Param("joinedAt") Timestamp joinedAt);
+
+    /**
+     * Remove a member from a group
+     */
+    @Modifying
+    @Query("DELETE FROM GroupMember gm WHERE gm.groupId = :groupId AND gm.userId = :userId")
+    int removeMember(@Param("groupId") Integer groupId, @Param("userId") Integer userId);
+
+    /**
+     * Move a member's read cursor forward (never backwards)
+     */
+    @Modifying
+    @Query("UPDATE GroupMember gm SET gm.lastReadMessageId = :messageId " +
+           "WHERE gm.groupId = :groupId AND gm.userId = :userId AND gm.lastReadMessageId < :messageId")
+    int advanceReadCursor(@Param("groupId") Integer groupId,
+                          @Param("userId") Integer userId,
+                          @Param("messageId") Integer messageId);
+
+    /**
+     * A page of the IDs of the groups a user belongs to (range on idx_group_members_user)
+     */
+    @Query("SELECT gm.groupId FROM GroupMember gm WHERE gm.userId = :userId ORDER BY gm.groupId")
+    List<Integer> findGroupIdsForUser(@Param("userId") Integer userId, Pageable pageable);
+
+    /**
+     * Remove a user from several groups
+     */
+    @Modifying
+    @Query("DELETE FROM GroupMember gm WHERE gm.userId = :userId AND gm.groupId IN (:groupIds)")
+    int removeMemberships(@Param("userId") Integer userId, @Param("groupIds") Collection<Integer> groupIds);
+
+    /**
+     * Remove every member of a group
+     */
+    @Modifying
+    @Query("DELETE FROM GroupMember gm WHERE gm.groupId = :groupId")
+    int removeAll(@Param("groupId") Integer groupId);
+}
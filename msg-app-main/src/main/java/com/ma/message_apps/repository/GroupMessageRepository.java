@@ -0,0 +1,55 @@
+package com.ma.message_apps.repository;
+
+import com.ma.message_apps.dto.GroupMessageDto;
+import com.ma.message_apps.entity.GroupMessage;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface GroupMessageRepository extends JpaRepository<GroupMessage, Integer> {
+
+    /**
+     * Messages of a group after a given message ID, oldest first (range on idx_group_messages_group)
+     */
+    @Query("SELECT new com.ma.message_apps.dto.GroupMessageDto(m.messageId, m.group.groupId, s.userId, s.username, " +
+           "m.messageText, m.createdAt) " +
+           "FROM GroupMessage m JOIN m.sender s " +
+           "WHERE m.group.groupId = :groupId AND m.messageId > :afterId ORDER BY m.messageId ASC")
+    List<GroupMessageDto> findAfter(@Param("groupId") Integer groupId,
+                                    @Param("afterId") Integer afterId,
+                                    Pageable pageable);
+
+    /**
+     * Messages of a group before a given message ID, newest first (for scrolling back)
+     */
+    @Query("SELECT new com.ma.message_apps.dto.GroupMessageDto(m.messageId, m.group.groupId, s.userId, s.username, " +
+           "m.messageText, m.createdAt) " +
+           "FROM GroupMessage m JOIN m.sender s " +
+           "WHERE m.group.groupId = :groupId AND m.messageId < :beforeId ORDER BY m.messageId DESC")
+    List<GroupMessageDto> findBefore(@Param("groupId") Integer groupId,
+                                     @Param("beforeId") Integer beforeId,
+                                     Pageable pageable);
+
+    /**
+     * Delete up to {@code limit} messages of a group (range on idx_group_messages_group)
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "group_messages"))
+    @Query(value = "DELETE FROM group_messages WHERE group_id = :groupId LIMIT :limit", nativeQuery = true)
+    int deleteInGroup(@Param("groupId") Integer groupId, @Param("limit") int limit);
+
+    /**
+     * Delete up to {@code limit} group messages sent by a user (account deletion, FK index on sender_id)
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "group_messages"))
+    @Query(value = "DELETE FROM group_messages WHERE sender_id = :userId LIMIT :limit", nativeQuery = true)
+    int deleteSentBy(@Param("userId") Integer userId, @Param("limit") int limit);
+}
@@ -0,0 +1,7 @@
+package com.ma.message_apps.repository;
+
+import com.ma.message_apps.entity.MessageBody;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface MessageBodyRepository extends JpaRepository<MessageBody, Integer> {
+}
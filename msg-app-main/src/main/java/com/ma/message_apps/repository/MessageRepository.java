@@ -1,18 +1,152 @@
 package com.ma.message_apps.repository;
 
+import com.ma.message_apps.dto.DirectMessageDto;
 import com.ma.message_apps.entity.Message;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface MessageRepository extends JpaRepository<Message,Integer> {
-    @Query("SELECT m FROM Message m WHERE (m.sender.userId = :fromUserId AND m.receiver.userId = :toUserId) OR (m.sender.userId = :toUserId AND m.receiver.userId = :fromUserId) ORDER BY m.createdAt ASC")
+    @Query("SELECT m FROM Message m JOIN FETCH m.sender JOIN FETCH m.receiver " +
+           "WHERE (m.sender.userId = :fromUserId AND m.receiver.userId = :toUserId) OR (m.sender.userId = :toUserId AND m.receiver.userId = :fromUserId) ORDER BY m.createdAt ASC")
     List<Message> findChatMessages(@Param("fromUserId") Integer fromUserId, @Param("toUserId") Integer toUserId);
 
-    @Query("SELECT m FROM Message m WHERE (m.sender.userId = :userId1 AND m.receiver.userId = :userId2) OR (m.sender.userId = :userId2 AND m.receiver.userId = :userId1) ORDER BY m.createdAt ASC")
-    List<Message> findMessagesBetweenUsers(@Param("userId1") Integer userId1, @Param("userId2") Integer userId2);
+    /**
+     * Whole conversation of a normalized user pair in sequence order (range on uk_messages_conversation_seq),
+     * with both users fetched in the same query
+     */
+    @Query("SELECT m FROM Message m JOIN FETCH m.sender JOIN FETCH m.receiver WHERE m.userLowId = :userLowId AND m.userHighId = :userHighId ORDER BY m.seq ASC")
+    List<Message> findMessagesBetweenUsers(@Param("userLowId") Integer userLowId, @Param("userHighId") Integer userHighId);
 
+    /**
+     * Newest messages of a conversation before a sequence number, newest first (range on uk_messages_conversation_seq),
+     * with both users fetched in the same query
+     */
+    @Query("SELECT m FROM Message m JOIN FETCH m.sender JOIN FETCH m.receiver " +
+           "WHERE m.userLowId = :userLowId AND m.userHighId = :userHighId AND m.seq < :beforeSeq " +
+           "ORDER BY m.seq DESC")
+    List<Message> findBeforeSeq(@Param("userLowId") Integer userLowId,
+                                @Param("userHighId") Integer userHighId,
+                                @Param("beforeSeq") Long beforeSeq,
+                                Pageable pageable);
+
+    @EntityGraph(attributePaths = {"sender", "receiver"})
     List<Message> findBySenderUserIdOrReceiverUserId(Integer userId, Integer userId1);
+
+    /**
+     * The message a sender stored under a client message ID (lookup on uk_messages_sender_client_id)
+     */
+    @Query("SELECT m FROM Message m JOIN FETCH m.sender JOIN FETCH m.receiver " +
+           "WHERE m.sender.userId = :senderId AND m.clientMessageId = :clientMessageId")
+    Optional<Message> findByClientMessageId(@Param("senderId") Integer senderId,
+                                            @Param("clientMessageId") String clientMessageId);
+
+    /**
+     * Messages of a conversation after a given sequence number, in order
+     */
+    @Query("SELECT new com.ma.message_apps.dto.DirectMessageDto(m.messageId, m.seq, m.sender.userId, m.receiver.userId, " +
+           "m.messageText, m.createdAt, m.truncated) " +
+           "FROM Message m WHERE m.userLowId = :userLowId AND m.userHighId = :userHighId AND m.seq > :afterSeq " +
+           "ORDER BY m.seq ASC")
+    List<DirectMessageDto> findAfterSeq(@Param("userLowId") Integer userLowId,
+                                        @Param("userHighId") Integer userHighId,
+                                        @Param("afterSeq") Long afterSeq,
+                                        Pageable pageable);
+
+    /**
+     * The next conversations (in key order, after the given one) holding messages stored before sequence
+     * numbers existed, as (user_low_id, user_high_id) rows
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "messages"))
+    @Query(value = "SELECT DISTINCT user_low_id, user_high_id FROM messages " +
+           "WHERE seq IS NULL AND (user_low_id > :afterLowId OR (user_low_id = :afterLowId AND user_high_id > :afterHighId)) " +
+           "ORDER BY user_low_id, user_high_id LIMIT :limit", nativeQuery = true)
+    List<Object[]> findUnsequencedConversations(@Param("afterLowId") Integer afterLowId,
+                                                @Param("afterHighId") Integer afterHighId,
+                                                @Param("limit") int limit);
+
+    /**
+     * Number the oldest {@code limit} unnumbered messages of a conversation, in creation order, as
+     * lastSeq + 1, lastSeq + 2, ...
+     *
+     * @return number of messages numbered
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "messages"))
+    @Query(value = "UPDATE messages m JOIN (" +
+           "SELECT message_id, ROW_NUMBER() OVER (ORDER BY created_at, message_id) AS rn FROM messages " +
+           "WHERE user_low_id = :userLowId AND user_high_id = :userHighId AND seq IS NULL " +
+           "ORDER BY created_at, message_id LIMIT :limit) numbered ON numbered.message_id = m.message_id " +
+           "SET m.seq = :lastSeq + numbered.rn", nativeQuery = true)
+    int numberUnsequenced(@Param("userLowId") Integer userLowId,
+                          @Param("userHighId") Integer userHighId,
+                          @Param("lastSeq") long lastSeq,
+                          @Param("limit") int limit);
+
+    /**
+     * Mark the messages a user received in a conversation as read, up to a sequence number
+     * (range on uk_messages_conversation_seq)
+     *
+     * @return number of messages that were unread
+     */
+    @Modifying
+    @Query("UPDATE Message m SET m.isRead = true WHERE m.userLowId = :userLowId AND m.userHighId = :userHighId " +
+           "AND m.seq <= :upToSeq AND m.receiver.userId = :readerId AND (m.isRead IS NULL OR m.isRead = false)")
+    int markRead(@Param("userLowId") Integer userLowId,
+                 @Param("userHighId") Integer userHighId,
+                 @Param("readerId") Integer readerId,
+                 @Param("upToSeq") Long upToSeq);
+
+    /**
+     * IDs and creation times of the messages after a given ID, in ID order (range on the primary key).
+     * Used by the retention purge, which relies on IDs growing with creation time.
+     */
+    @Query("SELECT m.messageId, m.createdAt FROM Message m WHERE m.messageId > :afterId ORDER BY m.messageId ASC")
+    List<Object[]> findIdsAndCreatedAtAfter(@Param("afterId") Integer afterId, Pageable pageable);
+
+    /**
+     * Whole rows of the messages after a given ID, in ID order (range on the primary key), for the archive:
+     * ID, sender ID, receiver ID, seq, created at, is read, text, client message ID, truncated.
+     * Messages with attachments stay in the table, as their attachments go with the row.
+     */
+    @Query("SELECT m.messageId, m.sender.userId, m.receiver.userId, m.seq, m.createdAt, m.isRead, m.messageText, " +
+           "m.clientMessageId, m.truncated FROM Message m WHERE m.messageId > :afterId " +
+           "AND NOT EXISTS (SELECT 1 FROM Attachment a WHERE a.message = m) ORDER BY m.messageId ASC")
+    List<Object[]> findForArchiveAfter(@Param("afterId") Integer afterId, Pageable pageable);
+
+    /**
+     * Delete messages by primary key; only the listed rows are locked
+     */
+    @Modifying
+    @Query("DELETE FROM Message m WHERE m.messageId IN (:messageIds)")
+    int deleteByMessageIds(@Param("messageIds") Collection<Integer> messageIds);
+
+    @Query("SELECT COUNT(m) > 0 FROM Message m WHERE m.seq IS NULL AND m.userLowId IS NOT NULL")
+    boolean existsUnsequenced();
+
+    /**
+     * Delete up to {@code limit} messages sent by a user (account deletion, FK index on sender_id)
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "messages"))
+    @Query(value = "DELETE FROM messages WHERE sender_id = :userId LIMIT :limit", nativeQuery = true)
+    int deleteSentBy(@Param("userId") Integer userId, @Param("limit") int limit);
+
+    /**
+     * Delete up to {@code limit} messages received by a user (account deletion, FK index on receiver_id)
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "messages"))
+    @Query(value = "DELETE FROM messages WHERE receiver_id = :userId LIMIT :limit", nativeQuery = true)
+    int deleteReceivedBy(@Param("userId") Integer userId, @Param("limit") int limit);
 }
@@ -0,0 +1,69 @@
+package com.ma.message_apps.repository;
+
+import com.ma.message_apps.dto.DirectMessageDto;
+import com.ma.message_apps.entity.PendingDelivery;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface PendingDeliveryRepository extends JpaRepository<PendingDelivery, Long> {
+
+    /**
+     * Store pending messages of a user in one statement; entries already stored are skipped
+     *
+     * @return number of entries added
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "pending_deliveries"))
+    @Query(value = "INSERT IGNORE INTO pending_deliveries (user_id, message_id) " +
+           "SELECT :userId, m.message_id FROM messages m WHERE m.message_id IN (:messageIds)", nativeQuery = true)
+    int insertAll(@Param("userId") Integer userId, @Param("messageIds") Collection<Integer> messageIds);
+
+    /**
+     * Oldest pending messages of a user (range on uk_pending_deliveries_user_message)
+     */
+    @Query("SELECT new com.ma.message_apps.dto.DirectMessageDto(m.messageId, m.seq, m.sender.userId, m.receiver.userId, " +
+           "m.messageText, m.createdAt, m.truncated) " +
+           "FROM PendingDelivery p JOIN Message m ON m.messageId = p.messageId " +
+           "WHERE p.userId = :userId ORDER BY p.messageId ASC")
+    List<DirectMessageDto> findPending(@Param("userId") Integer userId, Pageable pageable);
+
+    /**
+     * Remove everything up to and including an acknowledged message
+     */
+    @Modifying
+    @Query("DELETE FROM PendingDelivery p WHERE p.userId = :userId AND p.messageId <= :messageId")
+    int deleteUpTo(@Param("userId") Integer userId, @Param("messageId") Integer messageId);
+
+    /**
+     * Remove entries whose message no longer exists (purged by retention)
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "pending_deliveries"))
+    @Query(value = "DELETE p FROM pending_deliveries p LEFT JOIN messages m ON m.message_id = p.message_id " +
+           "WHERE m.message_id IS NULL", nativeQuery = true)
+    int deleteOrphaned();
+
+    boolean existsByUserId(Integer userId);
+
+    long countByUserId(Integer userId);
+
+    @Query("SELECT DISTINCT p.userId FROM PendingDelivery p")
+    List<Integer> findUserIdsWithPending();
+
+    /**
+     * Remove up to {@code limit} entries of a user (account deletion)
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "pending_deliveries"))
+    @Query(value = "DELETE FROM pending_deliveries WHERE user_id = :userId LIMIT :limit", nativeQuery = true)
+    int deleteForUser(@Param("userId") Integer userId, @Param("limit") int limit);
+}
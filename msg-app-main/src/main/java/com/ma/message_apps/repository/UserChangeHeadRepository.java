@@ -0,0 +1,40 @@
+package com.ma.message_apps.repository;
+
+import com.ma.message_apps.entity.UserChangeHead;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.Optional;
+
+public interface UserChangeHeadRepository extends JpaRepository<UserChangeHead, Integer> {
+
+    /**
+     * Advance the head of each user by one, creating missing heads; unknown user IDs are ignored.
+     * Rows are locked in user ID order, so concurrent bumps of overlapping sets cannot deadlock.
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "user_change_heads"))
+    @Query(value = "INSERT INTO user_change_heads (user_id, last_seq) " +
+           "SELECT u.user_id, 1 FROM users u WHERE u.user_id IN (:userIds) ORDER BY u.user_id " +
+           "ON DUPLICATE KEY UPDATE last_seq = user_change_heads.last_seq + 1", nativeQuery = true)
+    int bump(@Param("userIds") Collection<Integer> userIds);
+
+    /**
+     * Advance the head of every friend of a user (range on the friendships primary key)
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "user_change_heads"))
+    @Query(value = "INSERT INTO user_change_heads (user_id, last_seq) " +
+           "SELECT f.user_id, 1 FROM friendships f WHERE f.friend_id = :userId ORDER BY f.user_id " +
+           "ON DUPLICATE KEY UPDATE last_seq = user_change_heads.last_seq + 1", nativeQuery = true)
+    int bumpFriendsOf(@Param("userId") Integer userId);
+
+    @Query("SELECT h.lastSeq FROM UserChangeHead h WHERE h.userId = :userId")
+    Optional<Long> findLastSeq(@Param("userId") Integer userId);
+}
@@ -0,0 +1,91 @@
+package com.ma.message_apps.repository;
+
+import com.ma.message_apps.entity.UserChange;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The append methods number entries with the users' current heads, so they must run in the same
+ * transaction as (and right after) the matching {@link UserChangeHeadRepository} bump.
+ */
+public interface UserChangeRepository extends JpaRepository<UserChange, Long> {
+
+    /**
+     * Append the same entry to the log of each user
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "user_changes"))
+    @Query(value = "INSERT INTO user_changes (user_id, seq, kind, subject_id, subject_seq, created_at) " +
+           "SELECT h.user_id, h.last_seq, :kind, :subjectId, :subjectSeq, :createdAt " +
+           "FROM user_change_heads h WHERE h.user_id IN (:userIds)", nativeQuery = true)
+    int append(@Param("userIds") Collection<Integer> userIds,
+               @Param("kind") String kind,
+               @Param("subjectId") Integer subjectId,
+               @Param("subjectSeq") Long subjectSeq,
+               @Param("createdAt") Timestamp createdAt);
+
+    /**
+     * Append an entry to the logs of two users, each having the other as subject
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "user_changes"))
+    @Query(value = "INSERT INTO user_changes (user_id, seq, kind, subject_id, subject_seq, created_at) " +
+           "SELECT h.user_id, h.last_seq, :kind, IF(h.user_id = :userId1, :userId2, :userId1), :subjectSeq, :createdAt " +
+           "FROM user_change_heads h WHERE h.user_id IN (:userId1, :userId2)", nativeQuery = true)
+    int appendForPair(@Param("userId1") Integer userId1,
+                      @Param("userId2") Integer userId2,
+                      @Param("kind") String kind,
+                      @Param("subjectSeq") Long subjectSeq,
+                      @Param("createdAt") Timestamp createdAt);
+
+    /**
+     * Append an entry about a user to the log of each of their friends
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "user_changes"))
+    @Query(value = "INSERT INTO user_changes (user_id, seq, kind, subject_id, subject_seq, created_at) " +
+           "SELECT h.user_id, h.last_seq, :kind, :userId, NULL, :createdAt " +
+           "FROM friendships f JOIN user_change_heads h ON h.user_id = f.user_id " +
+           "WHERE f.friend_id = :userId", nativeQuery = true)
+    int appendForFriendsOf(@Param("userId") Integer userId,
+                           @Param("kind") String kind,
+                           @Param("createdAt") Timestamp createdAt);
+
+    /**
+     * Entries of a user after a sequence number (range on uk_user_changes_user_seq)
+     */
+    @Query("SELECT c FROM UserChange c WHERE c.userId = :userId AND c.seq > :afterSeq ORDER BY c.seq ASC")
+    List<UserChange> findAfter(@Param("userId") Integer userId, @Param("afterSeq") Long afterSeq, Pageable pageable);
+
+    /**
+     * Delete entries that have a newer entry with the same key, for users in an ID range.
+     * A client whose token predates a deleted entry still sees the newer one, so no token is invalidated.
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "user_changes"))
+    @Query(value = "DELETE c FROM user_changes c JOIN user_changes n " +
+           "ON n.user_id = c.user_id AND n.kind = c.kind AND n.subject_id = c.subject_id AND n.seq > c.seq " +
+           "WHERE c.user_id BETWEEN :fromUserId AND :toUserId", nativeQuery = true)
+    int deleteSuperseded(@Param("fromUserId") Integer fromUserId, @Param("toUserId") Integer toUserId);
+
+    @Query("SELECT MAX(c.userId) FROM UserChange c")
+    Integer findMaxUserId();
+
+    /**
+     * Delete up to {@code limit} entries of a user's log (account deletion)
+     */
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "user_changes"))
+    @Query(value = "DELETE FROM user_changes WHERE user_id = :userId LIMIT :limit", nativeQuery = true)
+    int deleteForUser(@Param("userId") Integer userId, @Param("limit") int limit);
+}
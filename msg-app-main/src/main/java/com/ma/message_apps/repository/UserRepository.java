@@ -1,26 +1,26 @@
 package com.ma.message_apps.repository;
 import com.ma.message_apps.entity.User;
 import com.ma.message_apps.enumDto.UserStatus;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface UserRepository extends JpaRepository<User, Integer> {
+public interface UserRepository extends JpaRepository<User, Integer>, UserRepositoryCustom {
 
     /**
-     * Find user by username
-     */
-    Optional<User> findByUsername(String username);
-
-    /**
-     * Find user by email
+     * Find user by email (result cached in the query cache, entity served from the "users" region)
      */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     Optional<User> findByEmail(String email);
 
     /**
@@ -56,15 +56,18 @@ public interface UserRepository extends JpaRepository<User, Integer> {
     void updateUserStatus(@Param("userId") Integer userId, @Param("status") UserStatus status);
 
     /**
-     * Find users who are friends with the given user
+     * Whether a user is marked deleted (its rows are being removed in the background). Served from the
+     * second-level cache, so write paths can check it on every call; unknown IDs are left to the foreign keys.
+     */
+    default boolean isDeleted(Integer userId) {
+        return findById(userId).map(user -> user.getDeletedAt() != null).orElse(false);
+    }
+
+    /**
+     * Keep only the IDs that belong to existing users not marked deleted
      */
-    @Query("SELECT u FROM User u WHERE u.userId IN " +
-           "(SELECT CASE WHEN fr.sender.userId = :userId THEN fr.receiver.userId " +
-           "ELSE fr.sender.userId END " +
-           "FROM FriendRequests fr " +
-           "WHERE (fr.sender.userId = :userId OR fr.receiver.userId = :userId) " +
-           "AND fr.status = 'ACCEPTED')")
-    List<User> findFriendsByUserId(@Param("userId") Integer userId);
+    @Query("SELECT u.userId FROM User u WHERE u.userId IN :userIds AND u.deletedAt IS NULL")
+    List<Integer> findExistingUserIds(@Param("userIds") Collection<Integer> userIds);
 
     List<User> findByUsernameContainingOrEmailContaining(String query, String query1);
 }
@@ -0,0 +1,16 @@
+package com.ma.message_apps.repository;
+
+import com.ma.message_apps.entity.User;
+
+import java.util.Optional;
+
+/**
+ * Lookups that bypass derived queries so they can be served from the second-level cache
+ */
+public interface UserRepositoryCustom {
+
+    /**
+     * Find user by username through the natural-id cache
+     */
+    Optional<User> findByUsername(String username);
+}
@@ -0,0 +1,37 @@
+package com.ma.message_apps.restcontroller;
+
+import com.ma.message_apps.service.AccountDeletionService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.SecurityContext;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Admin endpoint for account deletions still in progress, served by actuator on the management port at /actuator/accountdeletions
+ */
+@Component
+@Endpoint(id = "accountdeletions")
+public class AccountDeletionEndpoint {
+
+    // Role allowed to see which users are being deleted; everyone else gets counts only
+    private static final String OPERATOR_ROLE = "OPERATOR";
+
+    private final AccountDeletionService accountDeletionService;
+
+    @Autowired
+    public AccountDeletionEndpoint(AccountDeletionService accountDeletionService) {
+        this.accountDeletionService = accountDeletionService;
+    }
+
+    /**
+     * Get the number of deletions in progress, per step and waiting for an operator.
+     * Operators also get the oldest deletions with their user IDs and the step each is at.
+     */
+    @ReadOperation
+    public Map<String, Object> deletions(SecurityContext securityContext) {
+        return accountDeletionService.getProgress(securityContext.isUserInRole(OPERATOR_ROLE));
+    }
+}
@@ -0,0 +1,44 @@
+package com.ma.message_apps.restcontroller;
+
+import com.ma.message_apps.service.ActivityRollupService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Admin endpoint for messaging activity, served by actuator on the management port at /actuator/activity
+ * (exposed through management.endpoints.web.exposure, like health and metrics)
+ */
+@Component
+@Endpoint(id = "activity")
+public class ActivityEndpoint {
+
+    private final ActivityRollupService activityRollupService;
+
+    @Autowired
+    public ActivityEndpoint(ActivityRollupService activityRollupService) {
+        this.activityRollupService = activityRollupService;
+    }
+
+    /**
+     * Get messages sent, active senders and friendships created/removed over time
+     *
+     * @param granularity minute, hour or day (default hour)
+     * @param from Start of the range, ISO-8601 instant (default: 60 buckets back)
+     * @param to End of the range, exclusive, ISO-8601 instant (default: now)
+     * @return Success status and the non-empty buckets, oldest first
+     */
+    @ReadOperation
+    public WebEndpointResponse<Map<String, Object>> activity(
+            @Nullable String granularity, @Nullable String from, @Nullable String to) {
+        Map<String, Object> result = activityRollupService.getRollups(granularity, from, to);
+        boolean isSuccess = (boolean) result.getOrDefault("success", false);
+        return new WebEndpointResponse<>(result,
+                isSuccess ? WebEndpointResponse.STATUS_OK : WebEndpointResponse.STATUS_BAD_REQUEST);
+    }
+}
@@ -0,0 +1,225 @@
+package com.ma.message_apps.restcontroller;
+
+import com.ma.message_apps.service.AttachmentService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.*;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * REST controller for attachment uploads and downloads of the current user
+ */
+@RestController
+@RequestMapping("/api/attachments")
+public class AttachmentController {
+
+    // Tomcat sendfile: the connector writes the file range itself once the request thread has returned
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    // Shown in the browser; anything else is downloaded, so uploaded HTML or SVG never runs on this origin
+    private static final Set<String> INLINE_TYPES = Set.of("image/png", "image/jpeg", "image/gif", "image/webp");
+
+    private final AttachmentService attachmentService;
+
+    @Autowired
+    public AttachmentController(AttachmentService attachmentService) {
+        this.attachmentService = attachmentService;
+    }
+
+    /**
+     * Start an upload; its bytes follow with PUT /{attachmentId}/content
+     */
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> createUpload(
+            @RequestParam String fileName,
+            @RequestParam(required = false) String contentType,
+            @RequestParam Long size,
+            HttpSession session) {
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            return unauthorized();
+        }
+        Map<String, Object> result = attachmentService.createUpload(userId, fileName, contentType, size);
+        boolean isSuccess = (boolean) result.getOrDefault("success", false);
+        return ResponseEntity.status(isSuccess ? HttpStatus.CREATED : HttpStatus.BAD_REQUEST).body(result);
+    }
+
+    /**
+     * Get an attachment; for an unfinished upload, "received" is where the next chunk starts
+     */
+    @GetMapping("/{attachmentId}")
+    public ResponseEntity<Map<String, Object>> getAttachment(
+            @PathVariable Integer attachmentId,
+            HttpSession session) {
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            return unauthorized();
+        }
+        return ResponseEntity.ok(attachmentService.getAttachment(userId, attachmentId));
+    }
+
+    /**
+     * Upload a chunk of an attachment, starting at the byte the upload has reached.
+     * Answers 409 with the position to resume from if the offset is wrong, and 503 with Retry-After
+     * when too many chunks are being received at once.
+     */
+    @PutMapping(value = "/{attachmentId}/content", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<Map<String, Object>> uploadChunk(
+            @PathVariable Integer attachmentId,
+            @RequestParam long offset,
+            HttpSession session,
+            HttpServletRequest request) throws IOException {
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            return unauthorized();
+        }
+        Map<String, Object> result = attachmentService.writeChunk(userId, attachmentId, offset, request.getInputStream());
+        if ((boolean) result.getOrDefault("success", false)) {
+            return ResponseEntity.ok(result);
+        }
+        if (result.containsKey("retryAfter")) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(result.get("retryAfter")))
+                    .body(result);
+        }
+        return ResponseEntity.status(result.containsKey("received") ? HttpStatus.CONFLICT : HttpStatus.BAD_REQUEST)
+                .body(result);
+    }
+
+    /**
+     * Download an attachment. Supports a single byte range and conditional requests on the strong
+     * ETag (the content's SHA-256). The bytes go from the file to the socket with sendfile where the
+     * connector offers it, and otherwise through FileChannel.transferTo on the async request executor;
+     * the request thread is released either way.
+     */
+    @GetMapping("/{attachmentId}/content")
+    public ResponseEntity<StreamingResponseBody> download(
+            @PathVariable Integer attachmentId,
+            @RequestHeader HttpHeaders headers,
+            HttpSession session,
+            HttpServletRequest request) throws IOException {
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return serve(attachmentService.findDownload(userId, attachmentId), headers, request);
+    }
+
+    /**
+     * Download the thumbnail of an image attachment (a JPEG, served like the content);
+     * 404 until it is rendered
+     */
+    @GetMapping("/{attachmentId}/thumbnail")
+    public ResponseEntity<StreamingResponseBody> downloadThumbnail(
+            @PathVariable Integer attachmentId,
+            @RequestHeader HttpHeaders headers,
+            HttpSession session,
+            HttpServletRequest request) throws IOException {
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return serve(attachmentService.findThumbnail(userId, attachmentId), headers, request);
+    }
+
+    private ResponseEntity<StreamingResponseBody> serve(
+            AttachmentService.Download download,
+            HttpHeaders headers,
+            HttpServletRequest request) throws IOException {
+        String etag = download.etag();
+
+        // The content behind an attachment never changes
+        HttpHeaders responseHeaders = new HttpHeaders();
+        responseHeaders.setETag(etag);
+        responseHeaders.setCacheControl(CacheControl.maxAge(Duration.ofDays(365)).cachePrivate().immutable());
+        responseHeaders.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (headers.getIfNoneMatch().stream().anyMatch(tag -> tag.equals(etag) || tag.equals("*"))) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(responseHeaders).build();
+        }
+
+        long size = download.size();
+        long start = 0;
+        long end = size;
+        HttpStatus status = HttpStatus.OK;
+        List<HttpRange> ranges = parseRanges(headers);
+        String ifRange = headers.getFirst(HttpHeaders.IF_RANGE);
+        // Several ranges (or a range against stale content) get the whole file, which a server may always send
+        if (ranges.size() == 1 && (ifRange == null || ifRange.equals(etag))) {
+            HttpRange range = ranges.get(0);
+            start = range.getRangeStart(size);
+            end = range.getRangeEnd(size) + 1;
+            if (start >= end) {
+                responseHeaders.set(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE).headers(responseHeaders).build();
+            }
+            status = HttpStatus.PARTIAL_CONTENT;
+            responseHeaders.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + size);
+        }
+
+        responseHeaders.setContentType(MediaType.parseMediaType(download.contentType()));
+        ContentDisposition.Builder disposition =
+                ContentDisposition.builder(INLINE_TYPES.contains(download.contentType()) ? "inline" : "attachment");
+        String fileName = download.fileName();
+        responseHeaders.setContentDisposition(StandardCharsets.US_ASCII.newEncoder().canEncode(fileName)
+                ? disposition.filename(fileName).build()
+                : disposition.filename(fileName, StandardCharsets.UTF_8).build());
+        responseHeaders.set("X-Content-Type-Options", "nosniff");
+        responseHeaders.setContentLength(end - start);
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(status).headers(responseHeaders);
+
+        if (HttpMethod.HEAD.matches(request.getMethod())) {
+            return response.build();
+        }
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, download.path().toRealPath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end);
+            return response.build();
+        }
+        Path path = download.path();
+        long from = start;
+        long to = end;
+        return response.body(out -> {
+            try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+                WritableByteChannel target = Channels.newChannel(out);
+                for (long position = from; position < to; ) {
+                    position += file.transferTo(position, to - position, target);
+                }
+            }
+        });
+    }
+
+    private static List<HttpRange> parseRanges(HttpHeaders headers) {
+        try {
+            return headers.getRange();
+        } catch (IllegalArgumentException e) {
+            // A malformed Range header is ignored
+            return List.of();
+        }
+    }
+
+    private ResponseEntity<Map<String, Object>> unauthorized() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("error", "No authenticated user found");
+        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(response);
+    }
+}
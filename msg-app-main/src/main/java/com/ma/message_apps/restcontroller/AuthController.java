@@ -1,6 +1,8 @@
 package com.ma.message_apps.restcontroller;
 
+import com.ma.message_apps.dto.ActionResponse;
 import com.ma.message_apps.dto.UserDto;
+import com.ma.message_apps.service.AuthService;
 import com.ma.message_apps.service.UserService;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -22,6 +24,9 @@ public class AuthController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private AuthService authService;
+
     /**
      * User registration endpoint
      */
@@ -102,26 +107,11 @@ public class AuthController {
     public ResponseEntity<Map<String, Object>> logout(HttpSession session) {
         Map<String, Object> response = new HashMap<>();
 
-        try {
-            // Get user before invalidating session
-            UserDto user = (UserDto) session.getAttribute("loggedInUser");
-
-            // Invalidate session
-            session.invalidate();
-
-            // Update user status if needed
-            if (user != null) {
-                userService.updateUserStatus(user.getUserId(), com.ma.message_apps.enumDto.UserStatus.OFFLINE);
-            }
-
-            response.put("success", true);
-            response.put("message", "Logout successful");
-            return ResponseEntity.ok(response);
-        } catch (Exception e) {
-            response.put("success", false);
-            response.put("message", "Error during logout: " + e.getMessage());
-            return ResponseEntity.ok(response);
-        }
+        // Marks the user offline, closes the sockets opened from this session and invalidates it
+        ActionResponse result = authService.logout(session);
+        response.put("success", result.success());
+        response.put("message", result.success() ? result.message() : result.error());
+        return ResponseEntity.ok(response);
     }
 
     /**
@@ -1,6 +1,9 @@
 package com.ma.message_apps.restcontroller;
 
+import com.ma.message_apps.dto.FriendRequestBatchResponse;
+import com.ma.message_apps.dto.FriendRequestResponse;
 import com.ma.message_apps.dto.FriendRequestsDto;
+import com.ma.message_apps.enumDto.FriendStatus;
 import com.ma.message_apps.service.FriendRequestService;
 import jakarta.servlet.http.HttpSession;
 import lombok.extern.slf4j.Slf4j;
@@ -86,12 +89,11 @@ public class FriendRequestRestController {
      * Send a friend request
      */
     @PostMapping("/send")
-    public ResponseEntity<Map<String, Object>> sendFriendRequest(
+    public ResponseEntity<FriendRequestResponse> sendFriendRequest(
             @RequestParam Integer fromUserId,
             @RequestParam Integer toUserId) {
-        Map<String, Object> result = friendRequestService.sendFriendRequest(fromUserId, toUserId);
-        boolean isSuccess = (boolean) result.getOrDefault("success", false);
-        return ResponseEntity.status(isSuccess ? HttpStatus.CREATED : HttpStatus.BAD_REQUEST)
+        FriendRequestResponse result = friendRequestService.sendFriendRequest(fromUserId, toUserId);
+        return ResponseEntity.status(result.success() ? HttpStatus.CREATED : HttpStatus.BAD_REQUEST)
                 .body(result);
     }
 
@@ -99,10 +101,9 @@ public class FriendRequestRestController {
      * Accept a friend request
      */
     @PostMapping("/accept")
-    public ResponseEntity<Map<String, Object>> acceptFriendRequest(@RequestParam Integer requestId) {
-        Map<String, Object> result = friendRequestService.acceptFriendRequest(requestId);
-        boolean isSuccess = (boolean) result.getOrDefault("success", false);
-        return ResponseEntity.status(isSuccess ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
+    public ResponseEntity<FriendRequestResponse> acceptFriendRequest(@RequestParam Integer requestId) {
+        FriendRequestResponse result = friendRequestService.acceptFriendRequest(requestId);
+        return ResponseEntity.status(result.success() ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
                 .body(result);
     }
 
@@ -110,10 +111,9 @@ public class FriendRequestRestController {
      * Reject a friend request
      */
     @PostMapping("/reject")
-    public ResponseEntity<Map<String, Object>> rejectFriendRequest(@RequestParam Integer requestId) {
-        Map<String, Object> result = friendRequestService.rejectFriendRequest(requestId);
-        boolean isSuccess = (boolean) result.getOrDefault("success", false);
-        return ResponseEntity.status(isSuccess ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
+    public ResponseEntity<FriendRequestResponse> rejectFriendRequest(@RequestParam Integer requestId) {
+        FriendRequestResponse result = friendRequestService.rejectFriendRequest(requestId);
+        return ResponseEntity.status(result.success() ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
                 .body(result);
     }
 
@@ -121,10 +121,74 @@ public class FriendRequestRestController {
      * Cancel a sent friend request
      */
     @PostMapping("/cancel")
-    public ResponseEntity<Map<String, Object>> cancelFriendRequest(@RequestParam Integer requestId) {
-        Map<String, Object> result = friendRequestService.cancelFriendRequest(requestId);
-        boolean isSuccess = (boolean) result.getOrDefault("success", false);
-        return ResponseEntity.status(isSuccess ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
+    public ResponseEntity<FriendRequestResponse> cancelFriendRequest(@RequestParam Integer requestId) {
+        FriendRequestResponse result = friendRequestService.cancelFriendRequest(requestId);
+        return ResponseEntity.status(result.success() ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
+                .body(result);
+    }
+
+    /**
+     * Accept every pending friend request of the current user
+     */
+    @PostMapping("/accept-all")
+    public ResponseEntity<FriendRequestBatchResponse> acceptAllFriendRequests(HttpSession session) {
+        return respondToFriendRequests(session, null, FriendStatus.ACCEPTED);
+    }
+
+    /**
+     * Reject every pending friend request of the current user
+     */
+    @PostMapping("/reject-all")
+    public ResponseEntity<FriendRequestBatchResponse> rejectAllFriendRequests(HttpSession session) {
+        return respondToFriendRequests(session, null, FriendStatus.REJECTED);
+    }
+
+    /**
+     * Accept several friend requests of the current user
+     */
+    @PostMapping("/bulk-accept")
+    public ResponseEntity<FriendRequestBatchResponse> acceptFriendRequests(
+            @RequestParam List<Integer> requestIds,
+            HttpSession session) {
+        return respondToFriendRequests(session, requestIds, FriendStatus.ACCEPTED);
+    }
+
+    /**
+     * Reject several friend requests of the current user
+     */
+    @PostMapping("/bulk-reject")
+    public ResponseEntity<FriendRequestBatchResponse> rejectFriendRequests(
+            @RequestParam List<Integer> requestIds,
+            HttpSession session) {
+        return respondToFriendRequests(session, requestIds, FriendStatus.REJECTED);
+    }
+
+    /**
+     * Send friend requests from the current user to several users
+     */
+    @PostMapping("/send-bulk")
+    public ResponseEntity<FriendRequestBatchResponse> sendFriendRequests(
+            @RequestParam List<Integer> toUserIds,
+            HttpSession session) {
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(FriendRequestBatchResponse.failed("No authenticated user found"));
+        }
+        FriendRequestBatchResponse result = friendRequestService.sendFriendRequests(userId, toUserIds);
+        return ResponseEntity.status(result.success() ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
+                .body(result);
+    }
+
+    private ResponseEntity<FriendRequestBatchResponse> respondToFriendRequests(
+            HttpSession session, List<Integer> requestIds, FriendStatus status) {
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(FriendRequestBatchResponse.failed("No authenticated user found"));
+        }
+        FriendRequestBatchResponse result = friendRequestService.respondToFriendRequests(userId, requestIds, status);
+        return ResponseEntity.status(result.success() ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
                 .body(result);
     }
 }
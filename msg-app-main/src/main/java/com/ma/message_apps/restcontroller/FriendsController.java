@@ -1,7 +1,12 @@
 package com.ma.message_apps.restcontroller;
 
-import com.ma.message_apps.dto.UserDto;
+import com.ma.message_apps.dto.ActionResponse;
+import com.ma.message_apps.dto.FriendsResponse;
+import com.ma.message_apps.dto.PendingFriendRequestsResponse;
+import com.ma.message_apps.dto.UserResponse;
 import com.ma.message_apps.service.FriendService;
+import com.ma.message_apps.service.FriendSuggestionService;
+import com.ma.message_apps.service.MutualFriendService;
 import jakarta.servlet.http.HttpSession;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -9,6 +14,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -19,14 +25,19 @@ public class FriendsController {
     @Autowired
     private FriendService friendService;
 
+    @Autowired
+    private FriendSuggestionService friendSuggestionService;
+
+    @Autowired
+    private MutualFriendService mutualFriendService;
+
     /**
      * Get user's friend list
      */
     @GetMapping("/list")
-    public ResponseEntity<Map<String, Object>> getFriendsList(HttpSession session) {
-        Map<String, Object> response = friendService.getFriendsList(session, null);
-        boolean isSuccess = (boolean) response.getOrDefault("success", false);
-        return ResponseEntity.status(isSuccess ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
+    public ResponseEntity<FriendsResponse> getFriendsList(HttpSession session) {
+        FriendsResponse response = friendService.getFriendsList(session, null);
+        return ResponseEntity.status(response.success() ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
                 .body(response);
     }
 
@@ -34,12 +45,11 @@ public class FriendsController {
      * Get friend list for a specific user
      */
     @GetMapping("/list/{userId}")
-    public ResponseEntity<Map<String, Object>> getFriendsListForUser(
+    public ResponseEntity<FriendsResponse> getFriendsListForUser(
             @PathVariable Integer userId,
             HttpSession session) {
-        Map<String, Object> response = friendService.getFriendsList(session, userId);
-        boolean isSuccess = (boolean) response.getOrDefault("success", false);
-        return ResponseEntity.status(isSuccess ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
+        FriendsResponse response = friendService.getFriendsList(session, userId);
+        return ResponseEntity.status(response.success() ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
                 .body(response);
     }
 
@@ -67,10 +77,9 @@ public class FriendsController {
      * Find a user by username or email
      */
     @GetMapping("/find")
-    public ResponseEntity<Map<String, Object>> findUser(@RequestParam String query) {
-        Map<String, Object> response = friendService.findUserByUsernameOrEmail(query);
-        boolean isSuccess = (boolean) response.getOrDefault("success", false);
-        return ResponseEntity.status(isSuccess ? HttpStatus.OK : HttpStatus.NOT_FOUND)
+    public ResponseEntity<UserResponse> findUser(@RequestParam String query) {
+        UserResponse response = friendService.findUserByUsernameOrEmail(query);
+        return ResponseEntity.status(response.success() ? HttpStatus.OK : HttpStatus.NOT_FOUND)
                 .body(response);
     }
 
@@ -78,12 +87,11 @@ public class FriendsController {
      * Send a friend request
      */
     @PostMapping("/request")
-    public ResponseEntity<Map<String, Object>> sendFriendRequest(
+    public ResponseEntity<ActionResponse> sendFriendRequest(
             @RequestParam Integer fromUserId,
             @RequestParam Integer toUserId) {
-        Map<String, Object> response = friendService.sendFriendRequest(fromUserId, toUserId);
-        boolean isSuccess = (boolean) response.getOrDefault("success", false);
-        return ResponseEntity.status(isSuccess ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
+        ActionResponse response = friendService.sendFriendRequest(fromUserId, toUserId);
+        return ResponseEntity.status(response.success() ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
                 .body(response);
     }
 
@@ -91,18 +99,15 @@ public class FriendsController {
      * Get friend requests for the current user
      */
     @GetMapping("/requests")
-    public ResponseEntity<Map<String, Object>> getFriendRequests(HttpSession session) {
+    public ResponseEntity<PendingFriendRequestsResponse> getFriendRequests(HttpSession session) {
         Integer userId = (Integer) session.getAttribute("userId");
         if (userId == null) {
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", false);
-            response.put("error", "No authenticated user found");
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(response);
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(PendingFriendRequestsResponse.failed("No authenticated user found"));
         }
 
-        Map<String, Object> response = friendService.getFriendRequests(userId);
-        boolean isSuccess = (boolean) response.getOrDefault("success", false);
-        return ResponseEntity.status(isSuccess ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
+        PendingFriendRequestsResponse response = friendService.getFriendRequests(userId);
+        return ResponseEntity.status(response.success() ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
                 .body(response);
     }
 
@@ -110,12 +115,16 @@ public class FriendsController {
      * Accept a friend request
      */
     @PostMapping("/request/{requestId}/accept")
-    public ResponseEntity<Map<String, Object>> acceptFriendRequest(
+    public ResponseEntity<ActionResponse> acceptFriendRequest(
             @PathVariable Integer requestId,
             HttpSession session) {
-        Map<String, Object> response = friendService.acceptFriendRequest(requestId);
-        boolean isSuccess = (boolean) response.getOrDefault("success", false);
-        return ResponseEntity.status(isSuccess ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(ActionResponse.failed("No authenticated user found"));
+        }
+
+        ActionResponse response = friendService.acceptFriendRequest(userId, requestId);
+        return ResponseEntity.status(response.success() ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
                 .body(response);
     }
 
@@ -123,12 +132,75 @@ public class FriendsController {
      * Reject a friend request
      */
     @PostMapping("/request/{requestId}/reject")
-    public ResponseEntity<Map<String, Object>> rejectFriendRequest(
+    public ResponseEntity<ActionResponse> rejectFriendRequest(
             @PathVariable Integer requestId,
             HttpSession session) {
-        Map<String, Object> response = friendService.rejectFriendRequest(requestId);
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(ActionResponse.failed("No authenticated user found"));
+        }
+
+        ActionResponse response = friendService.rejectFriendRequest(userId, requestId);
+        return ResponseEntity.status(response.success() ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
+                .body(response);
+    }
+
+    /**
+     * Get "people you may know" suggestions for the current user, ranked by mutual friends
+     */
+    @GetMapping("/suggestions")
+    public ResponseEntity<Map<String, Object>> getFriendSuggestions(
+            @RequestParam(defaultValue = "20") int limit,
+            HttpSession session) {
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("error", "No authenticated user found");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(response);
+        }
+
+        Map<String, Object> response = friendSuggestionService.getSuggestions(userId, limit);
         boolean isSuccess = (boolean) response.getOrDefault("success", false);
         return ResponseEntity.status(isSuccess ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
                 .body(response);
     }
+
+    /**
+     * Count mutual friends between the current user and each of the given users
+     */
+    @GetMapping("/mutual")
+    public ResponseEntity<Map<String, Object>> getMutualFriendCounts(
+            @RequestParam List<Integer> ids,
+            HttpSession session) {
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("error", "No authenticated user found");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(response);
+        }
+
+        Map<String, Object> response = mutualFriendService.getMutualFriendCounts(userId, ids);
+        boolean isSuccess = (boolean) response.getOrDefault("success", false);
+        return ResponseEntity.status(isSuccess ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
+                .body(response);
+    }
+
+    /**
+     * Remove a friend of the current user
+     */
+    @DeleteMapping("/{friendId}")
+    public ResponseEntity<ActionResponse> removeFriend(
+            @PathVariable Integer friendId,
+            HttpSession session) {
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(ActionResponse.failed("No authenticated user found"));
+        }
+
+        ActionResponse response = friendService.removeFriend(userId, friendId);
+        return ResponseEntity.status(response.success() ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
+                .body(response);
+    }
 }
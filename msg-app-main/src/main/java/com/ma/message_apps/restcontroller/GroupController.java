@@ -0,0 +1,161 @@
+package com.ma.message_apps.restcontroller;
+
+import com.ma.message_apps.service.GroupService;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * REST controller for group conversations of the current user
+ */
+@RestController
+@RequestMapping("/api/groups")
+public class GroupController {
+
+    private final GroupService groupService;
+
+    @Autowired
+    public GroupController(GroupService groupService) {
+        this.groupService = groupService;
+    }
+
+    /**
+     * Create a group owned by the current user
+     */
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> createGroup(
+            @RequestParam String name,
+            @RequestParam(required = false) List<Integer> memberIds,
+            HttpSession session) {
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            return unauthorized();
+        }
+        return toResponse(groupService.createGroup(userId, name, memberIds));
+    }
+
+    /**
+     * Get the current user's groups with unread counts
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getGroups(HttpSession session) {
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            return unauthorized();
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("groups", groupService.getGroupsForUser(userId));
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Get the members of a group
+     */
+    @GetMapping("/{groupId}/members")
+    public ResponseEntity<Map<String, Object>> getMembers(
+            @PathVariable Integer groupId,
+            HttpSession session) {
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            return unauthorized();
+        }
+        return toResponse(groupService.getMembers(groupId, userId));
+    }
+
+    /**
+     * Add members to a group (owner only)
+     */
+    @PostMapping("/{groupId}/members")
+    public ResponseEntity<Map<String, Object>> addMembers(
+            @PathVariable Integer groupId,
+            @RequestParam List<Integer> userIds,
+            HttpSession session) {
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            return unauthorized();
+        }
+        return toResponse(groupService.addMembers(groupId, userId, userIds));
+    }
+
+    /**
+     * Remove a member from a group (the member themselves, or the owner)
+     */
+    @DeleteMapping("/{groupId}/members/{memberId}")
+    public ResponseEntity<Map<String, Object>> removeMember(
+            @PathVariable Integer groupId,
+            @PathVariable Integer memberId,
+            HttpSession session) {
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            return unauthorized();
+        }
+        return toResponse(groupService.removeMember(groupId, userId, memberId));
+    }
+
+    /**
+     * Post a message to a group
+     */
+    @PostMapping("/{groupId}/messages")
+    public ResponseEntity<Map<String, Object>> sendMessage(
+            @PathVariable Integer groupId,
+            @RequestParam String content,
+            HttpSession session) {
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            return unauthorized();
+        }
+        return toResponse(groupService.sendMessage(groupId, userId, content));
+    }
+
+    /**
+     * Get a page of group messages, oldest first
+     */
+    @GetMapping("/{groupId}/messages")
+    public ResponseEntity<Map<String, Object>> getMessages(
+            @PathVariable Integer groupId,
+            @RequestParam(required = false) Integer afterId,
+            @RequestParam(required = false) Integer beforeId,
+            @RequestParam(required = false) Integer limit,
+            HttpSession session) {
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            return unauthorized();
+        }
+        return toResponse(groupService.getMessages(groupId, userId, afterId, beforeId, limit));
+    }
+
+    /**
+     * Mark a group as read up to a message
+     */
+    @PostMapping("/{groupId}/read")
+    public ResponseEntity<Map<String, Object>> markRead(
+            @PathVariable Integer groupId,
+            @RequestParam Integer messageId,
+            HttpSession session) {
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            return unauthorized();
+        }
+        return toResponse(groupService.markRead(groupId, userId, messageId));
+    }
+
+    private ResponseEntity<Map<String, Object>> toResponse(Map<String, Object> result) {
+        boolean isSuccess = (boolean) result.getOrDefault("success", false);
+        return ResponseEntity.status(isSuccess ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
+                .body(result);
+    }
+
+    private ResponseEntity<Map<String, Object>> unauthorized() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("error", "No authenticated user found");
+        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(response);
+    }
+}
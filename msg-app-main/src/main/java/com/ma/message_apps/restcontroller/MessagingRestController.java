@@ -1,6 +1,7 @@
 package com.ma.message_apps.restcontroller;
 
 import com.ma.message_apps.dto.MessageDto;
+import com.ma.message_apps.dto.SendMessageResponse;
 import com.ma.message_apps.dto.UserDto;
 import com.ma.message_apps.exception.UnauthorizedAccessException;
 import com.ma.message_apps.service.MessagingService;
@@ -8,6 +9,7 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -84,19 +86,24 @@ public class MessagingRestController {
      *
      * @param userId1 First user ID
      * @param userId2 Second user ID
+     * @param beforeSeq Only messages before this sequence number (optional)
+     * @param limit Maximum number of messages, the newest before {@code beforeSeq} (optional)
      * @param session HTTP session for authorization
      * @param request HTTP request for audit logging
-     * @return List of message DTOs
+     * @return List of message DTOs, the whole conversation unless paged
      */
     @GetMapping("/messages/{userId1}/{userId2}")
     public ResponseEntity<List<MessageDto>> getMessages(
             @PathVariable Integer userId1,
             @PathVariable Integer userId2,
+            @RequestParam(required = false) Long beforeSeq,
+            @RequestParam(required = false) Integer limit,
             HttpSession session,
             HttpServletRequest request) {
         try {
             log.info("Retrieving messages between users {} and {}", userId1, userId2);
-            List<MessageDto> messages = messagingService.getMessagesBetweenUsers(userId1, userId2, session, request);
+            List<MessageDto> messages = messagingService.getMessagesBetweenUsers(
+                    userId1, userId2, beforeSeq, limit, session, request);
             return ResponseEntity.ok(messages);
         } catch (UnauthorizedAccessException e) {
             log.warn("Unauthorized access attempt: {}", e.getMessage());
@@ -112,24 +119,40 @@ public class MessagingRestController {
      *
      * @param fromUserId Sender user ID
      * @param toUserId Recipient user ID
-     * @param content Message content
+     * @param content Message content (may be empty when attachments are sent)
+     * @param clientMessageId ID chosen by the client, reused when it retries (optional)
+     * @param attachmentIds Uploaded attachments to send with the message (optional)
      * @param session HTTP session for authorization
      * @param request HTTP request for audit logging
-     * @return Success status
+     * @return Success status; 201 for a new message, 200 with the stored one for a repeated client message ID
      */
     @PostMapping("/messages/send")
-    public ResponseEntity<Map<String, Object>> sendMessage(
+    public ResponseEntity<SendMessageResponse> sendMessage(
             @RequestParam Integer fromUserId,
             @RequestParam Integer toUserId,
-            @RequestParam String content,
+            @RequestParam(defaultValue = "") String content,
+            @RequestParam(required = false) String clientMessageId,
+            @RequestParam(required = false) List<Integer> attachmentIds,
             HttpSession session,
             HttpServletRequest request) {
-        Map<String, Object> result = messagingService.sendMessage(fromUserId, toUserId, content, session, request);
-        boolean isSuccess = (boolean) result.getOrDefault("success", false);
+        SendMessageResponse result;
+        try {
+            result = messagingService.sendMessage(fromUserId, toUserId, content, clientMessageId, attachmentIds,
+                    session, request);
+        } catch (DataIntegrityViolationException e) {
+            // A concurrent retry may have stored the same client message ID first; answer with that message
+            if (clientMessageId == null) {
+                throw e;
+            }
+            result = messagingService.findSentMessage(fromUserId, clientMessageId);
+            if (!result.success()) {
+                throw e;
+            }
+        }
 
         HttpStatus status;
-        if (!isSuccess) {
-            String error = (String) result.getOrDefault("error", "");
+        if (!result.success()) {
+            String error = result.error();
             if (error.contains("Not authorized") || error.contains("Unauthorized")) {
                 status = HttpStatus.FORBIDDEN;
             } else if (error.contains("not found")) {
@@ -138,12 +161,79 @@ public class MessagingRestController {
                 status = HttpStatus.BAD_REQUEST;
             }
         } else {
-            status = HttpStatus.CREATED;
+            status = result.duplicate() ? HttpStatus.OK : HttpStatus.CREATED;
         }
 
         return ResponseEntity.status(status).body(result);
     }
 
+    /**
+     * Returns the full text of a message listed with a truncated preview
+     *
+     * @param messageId Message ID
+     * @param session HTTP session for authorization
+     * @return The message ID and its full text; 404 unless the current user sent or received it
+     */
+    @GetMapping("/messages/{messageId}/body")
+    public ResponseEntity<Map<String, Object>> getMessageBody(
+            @PathVariable Integer messageId,
+            HttpSession session) {
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("success", false, "error", "No authenticated user found"));
+        }
+        return ResponseEntity.ok(messagingService.getMessageBody(userId, messageId));
+    }
+
+    /**
+     * Returns the messages of a conversation after the last sequence number the client has
+     *
+     * @param withUserId The other side of the conversation
+     * @param afterSeq Last sequence number the client has (0 for none)
+     * @param limit Maximum number of messages (optional)
+     * @param session HTTP session for authorization
+     * @return Messages in sequence order, the conversation's last sequence number and whether more remain
+     */
+    @GetMapping("/messages/resume")
+    public ResponseEntity<Map<String, Object>> resumeConversation(
+            @RequestParam Integer withUserId,
+            @RequestParam(defaultValue = "0") Long afterSeq,
+            @RequestParam(required = false) Integer limit,
+            HttpSession session) {
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("success", false, "error", "No authenticated user found"));
+        }
+        Map<String, Object> result = messagingService.resumeConversation(userId, withUserId, afterSeq, limit);
+        boolean isSuccess = (boolean) result.getOrDefault("success", false);
+        return ResponseEntity.status(isSuccess ? HttpStatus.OK : HttpStatus.BAD_REQUEST).body(result);
+    }
+
+    /**
+     * Marks the messages received in a conversation as read
+     *
+     * @param withUserId The other side of the conversation
+     * @param upToSeq Last sequence number the client has shown
+     * @param session HTTP session for authorization
+     * @return Success status and the number of messages marked
+     */
+    @PostMapping("/messages/read")
+    public ResponseEntity<Map<String, Object>> markConversationRead(
+            @RequestParam Integer withUserId,
+            @RequestParam Long upToSeq,
+            HttpSession session) {
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("success", false, "error", "No authenticated user found"));
+        }
+        Map<String, Object> result = messagingService.markConversationRead(userId, withUserId, upToSeq);
+        boolean isSuccess = (boolean) result.getOrDefault("success", false);
+        return ResponseEntity.status(isSuccess ? HttpStatus.OK : HttpStatus.BAD_REQUEST).body(result);
+    }
+
     /**
      * Gets all messages for a user (both sent and received)
      *
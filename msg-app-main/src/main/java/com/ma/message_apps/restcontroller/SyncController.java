@@ -0,0 +1,51 @@
+package com.ma.message_apps.restcontroller;
+
+import com.ma.message_apps.service.SyncService;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * REST controller for the current user's change feed
+ */
+@RestController
+@RequestMapping("/api/sync")
+public class SyncController {
+
+    private final SyncService syncService;
+
+    @Autowired
+    public SyncController(SyncService syncService) {
+        this.syncService = syncService;
+    }
+
+    /**
+     * Get what changed for the current user since a sync token
+     *
+     * @param since Token returned by the previous call (omit on first load)
+     * @param limit Maximum number of changes to consume (optional)
+     * @param session HTTP session for authorization
+     * @return The new token, whether the client must reload, whether more changes remain, and the changes
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> sync(
+            @RequestParam(required = false) Long since,
+            @RequestParam(required = false) Integer limit,
+            HttpSession session) {
+        Integer userId = (Integer) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("success", false, "error", "No authenticated user found"));
+        }
+        Map<String, Object> result = syncService.sync(userId, since, limit);
+        boolean isSuccess = (boolean) result.getOrDefault("success", false);
+        return ResponseEntity.status(isSuccess ? HttpStatus.OK : HttpStatus.BAD_REQUEST).body(result);
+    }
+}
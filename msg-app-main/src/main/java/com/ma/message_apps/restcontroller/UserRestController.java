@@ -1,10 +1,13 @@
 package com.ma.message_apps.restcontroller;
 
+import com.ma.message_apps.dto.ActionResponse;
 import com.ma.message_apps.dto.UserDto;
+import com.ma.message_apps.dto.UserResponse;
 import com.ma.message_apps.dto.UserStatusDto;
 import com.ma.message_apps.enumDto.UserStatus;
 import com.ma.message_apps.exception.ResourceNotFoundException;
 import com.ma.message_apps.service.UserService;
+import jakarta.servlet.http.HttpSession;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -37,10 +40,10 @@ public class UserRestController {
      * @return User DTO if found, otherwise appropriate error response
      */
     @GetMapping("/find")
-    public ResponseEntity<Map<String, Object>> findUser(@RequestParam("query") String query) {
+    public ResponseEntity<Map<String, Object>> findUser(@RequestParam("query") String query, HttpSession session) {
         try {
             log.info("Controller: Searching for user with query: {}", query);
-            Map<String, Object> result = userService.findUsersByUsernameOrEmail(query);
+            Map<String, Object> result = userService.findUsersByUsernameOrEmail(query, (Integer) session.getAttribute("userId"));
             boolean isSuccess = (boolean) result.getOrDefault("success", false);
             return ResponseEntity.status(isSuccess ? HttpStatus.OK : HttpStatus.NOT_FOUND).body(result);
         } catch (Exception e) {
@@ -119,12 +122,11 @@ public class UserRestController {
      * @return Updated user information
      */
     @PutMapping("/{userId}")
-    public ResponseEntity<Map<String, Object>> updateUser(
+    public ResponseEntity<UserResponse> updateUser(
             @PathVariable Integer userId,
             @RequestBody UserDto userDto) {
-        Map<String, Object> result = userService.updateUserProfile(userId, userDto);
-        boolean isSuccess = (boolean) result.getOrDefault("success", false);
-        return ResponseEntity.status(isSuccess ? HttpStatus.OK : HttpStatus.BAD_REQUEST).body(result);
+        UserResponse result = userService.updateUserProfile(userId, userDto);
+        return ResponseEntity.status(result.success() ? HttpStatus.OK : HttpStatus.BAD_REQUEST).body(result);
     }
 
     /**
@@ -134,10 +136,9 @@ public class UserRestController {
      * @return Success/failure message
      */
     @DeleteMapping("/{userId}")
-    public ResponseEntity<Map<String, Object>> deleteUser(@PathVariable Integer userId) {
-        Map<String, Object> result = userService.deleteUserAccount(userId);
-        boolean isSuccess = (boolean) result.getOrDefault("success", false);
-        return ResponseEntity.status(isSuccess ? HttpStatus.OK : HttpStatus.NOT_FOUND).body(result);
+    public ResponseEntity<ActionResponse> deleteUser(@PathVariable Integer userId) {
+        ActionResponse result = userService.deleteUserAccount(userId);
+        return ResponseEntity.status(result.success() ? HttpStatus.OK : HttpStatus.NOT_FOUND).body(result);
     }
 
     /**
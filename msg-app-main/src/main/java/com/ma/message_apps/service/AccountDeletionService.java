@@ -0,0 +1,368 @@
+package com.ma.message_apps.service;
+
+import com.ma.message_apps.dto.AccountDeletionDto;
+import com.ma.message_apps.entity.AccountDeletion;
+import com.ma.message_apps.enumDto.DeletionStep;
+import com.ma.message_apps.event.FriendRequestChangedEvent;
+import com.ma.message_apps.event.FriendshipChangedEvent;
+import com.ma.message_apps.repository.AccountDeletionRepository;
+import com.ma.message_apps.repository.ChatGroupRepository;
+import com.ma.message_apps.repository.ConversationSequenceRepository;
+import com.ma.message_apps.repository.FriendRequestsRepository;
+import com.ma.message_apps.repository.FriendshipRepository;
+import com.ma.message_apps.repository.GroupMemberRepository;
+import com.ma.message_apps.repository.GroupMessageRepository;
+import com.ma.message_apps.repository.MessageRepository;
+import com.ma.message_apps.repository.PendingDeliveryRepository;
+import com.ma.message_apps.repository.UserChangeHeadRepository;
+import com.ma.message_apps.repository.UserChangeRepository;
+import com.ma.message_apps.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Removes the rows of deleted accounts in the background.
+ *
+ * Deleting an account only marks the user (users.deleted_at) and records an account_deletions row.
+ * This job then works through the {@link DeletionStep}s, removing at most a chunk of rows per
+ * transaction, so a heavy user never holds one transaction across millions of rows. The current step
+ * is saved with every chunk, which makes the job resumable after a restart; every step is idempotent.
+ *
+ * Friendship and friend request removals publish the usual events, so the friend graph and the
+ * other side's change log stay in step. Write paths refuse deleted accounts, but a write racing the
+ * deletion can still add a row referencing the user after its step ran; deleting the user row then
+ * fails and the steps start over. After a bounded number of restarts the deletion is left for an
+ * operator (it stays listed with its restart count) instead of looping.
+ */
+@Service
+@Slf4j
+public class AccountDeletionService {
+
+    private static final DeletionStep[] STEPS = DeletionStep.values();
+    private static final int MAX_LISTED = 100;
+
+    private final AccountDeletionRepository accountDeletionRepository;
+    private final UserRepository userRepository;
+    private final PendingDeliveryRepository pendingDeliveryRepository;
+    private final MessageRepository messageRepository;
+    private final FriendRequestsRepository friendRequestsRepository;
+    private final FriendshipRepository friendshipRepository;
+    private final ChatGroupRepository chatGroupRepository;
+    private final GroupMemberRepository groupMemberRepository;
+    private final GroupMessageRepository groupMessageRepository;
+    private final UserChangeRepository userChangeRepository;
+    private final UserChangeHeadRepository userChangeHeadRepository;
+    private final ConversationSequenceRepository conversationSequenceRepository;
+    private final MessageArchive messageArchive;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transaction;
+    private final int chunkSize;
+    private final long pauseMs;
+    private final long maxRunMs;
+    private final int maxRestarts;
+
+    private final Counter completedCounter;
+    private final Counter rowsCounter;
+    private final AtomicLong pending = new AtomicLong();
+
+    @Autowired
+    public AccountDeletionService(
+            AccountDeletionRepository accountDeletionRepository,
+            UserRepository userRepository,
+            PendingDeliveryRepository pendingDeliveryRepository,
+            MessageRepository messageRepository,
+            FriendRequestsRepository friendRequestsRepository,
+            FriendshipRepository friendshipRepository,
+            ChatGroupRepository chatGroupRepository,
+            GroupMemberRepository groupMemberRepository,
+            GroupMessageRepository groupMessageRepository,
+            UserChangeRepository userChangeRepository,
+            UserChangeHeadRepository userChangeHeadRepository,
+            ConversationSequenceRepository conversationSequenceRepository,
+            MessageArchive messageArchive,
+            ApplicationEventPublisher eventPublisher,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${app.account-deletion.chunk-size:500}") int chunkSize,
+            @Value("${app.account-deletion.pause-ms:50}") long pauseMs,
+            @Value("${app.account-deletion.max-run-ms:10000}") long maxRunMs,
+            @Value("${app.account-deletion.max-restarts:5}") int maxRestarts) {
+        this.accountDeletionRepository = accountDeletionRepository;
+        this.userRepository = userRepository;
+        this.pendingDeliveryRepository = pendingDeliveryRepository;
+        this.messageRepository = messageRepository;
+        this.friendRequestsRepository = friendRequestsRepository;
+        this.friendshipRepository = friendshipRepository;
+        this.chatGroupRepository = chatGroupRepository;
+        this.groupMemberRepository = groupMemberRepository;
+        this.groupMessageRepository = groupMessageRepository;
+        this.userChangeRepository = userChangeRepository;
+        this.userChangeHeadRepository = userChangeHeadRepository;
+        this.conversationSequenceRepository = conversationSequenceRepository;
+        this.messageArchive = messageArchive;
+        this.eventPublisher = eventPublisher;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+        this.pauseMs = pauseMs;
+        this.maxRunMs = maxRunMs;
+        this.maxRestarts = maxRestarts;
+        this.completedCounter = Counter.builder("accounts.deletion.completed")
+                .description("Deleted accounts whose rows have all been removed")
+                .register(meterRegistry);
+        this.rowsCounter = Counter.builder("accounts.deletion.rows")
+                .description("Rows removed or updated by account deletions")
+                .register(meterRegistry);
+        Gauge.builder("accounts.deletion.pending", pending, AtomicLong::get)
+                .description("Account deletions still in progress")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queue the removal of a user's rows. Must run in the transaction that marks the user deleted.
+     */
+    public void schedule(Integer userId) {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        accountDeletionRepository.save(new AccountDeletion(userId, STEPS[0], 0L, now, now, 0));
+    }
+
+    /**
+     * Get the deletions still in progress
+     *
+     * @param includeUsers Also list the oldest deletions with their user IDs (operators only)
+     * @return Map containing the number of deletions in progress, per step and waiting for an operator,
+     *         and with includeUsers the oldest ones with their current step
+     */
+    public Map<String, Object> getProgress(boolean includeUsers) {
+        Map<String, Object> response = new HashMap<>();
+        Map<String, Long> steps = new LinkedHashMap<>();
+        for (DeletionStep step : STEPS) {
+            steps.put(step.name().toLowerCase(), 0L);
+        }
+        for (Object[] row : accountDeletionRepository.countByStep()) {
+            steps.put(((DeletionStep) row[0]).name().toLowerCase(), (Long) row[1]);
+        }
+        response.put("success", true);
+        response.put("pending", steps.values().stream().mapToLong(Long::longValue).sum());
+        response.put("steps", steps);
+        response.put("waitingForOperator", accountDeletionRepository.countByRestartsGreaterThan(maxRestarts));
+        if (includeUsers) {
+            List<AccountDeletionDto> deletions = accountDeletionRepository.findOldest(PageRequest.ofSize(MAX_LISTED)).stream()
+                    .map(d -> new AccountDeletionDto(d.getUserId(), d.getStep().name().toLowerCase(), d.getStep().ordinal(),
+                            STEPS.length, d.getRowsDeleted(), d.getRequestedAt(), d.getUpdatedAt(), d.getRestarts()))
+                    .toList();
+            response.put("deletions", deletions);
+        }
+        return response;
+    }
+
+    /**
+     * Work through pending deletions, oldest first, for up to the run's time budget
+     */
+    @Scheduled(initialDelayString = "${app.account-deletion.interval-ms:5000}",
+               fixedDelayString = "${app.account-deletion.interval-ms:5000}")
+    public void run() {
+        long start = System.currentTimeMillis();
+        try {
+            List<AccountDeletion> deletions = accountDeletionRepository.findRunnable(maxRestarts, PageRequest.ofSize(MAX_LISTED));
+            pending.set(accountDeletionRepository.count());
+            for (AccountDeletion deletion : deletions) {
+                boolean finished = false;
+                while (!finished && deletion.getRestarts() <= maxRestarts && System.currentTimeMillis() - start < maxRunMs) {
+                    finished = runChunk(deletion);
+                    if (!finished && pauseMs > 0) {
+                        Thread.sleep(pauseMs);
+                    }
+                }
+                if (deletion.getRestarts() > maxRestarts) {
+                    continue;
+                }
+                if (!finished) {
+                    return;
+                }
+                pending.decrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Error removing deleted accounts", e);
+        }
+    }
+
+    /**
+     * Run one chunk of a deletion's current step in its own transaction
+     *
+     * @return true once the user row is gone
+     */
+    private boolean runChunk(AccountDeletion deletion) {
+        try {
+            return Boolean.TRUE.equals(transaction.execute(status -> {
+                int rows = runStep(deletion.getUserId(), deletion.getStep());
+                deletion.setRowsDeleted(deletion.getRowsDeleted() + rows);
+                deletion.setUpdatedAt(new Timestamp(System.currentTimeMillis()));
+                rowsCounter.increment(rows);
+                if (rows == 0) {
+                    int next = deletion.getStep().ordinal() + 1;
+                    if (next == STEPS.length) {
+                        accountDeletionRepository.delete(deletion);
+                        completedCounter.increment();
+                        log.info("Account {} deleted: {} rows removed in {} ms", deletion.getUserId(),
+                                deletion.getRowsDeleted(),
+                                deletion.getUpdatedAt().getTime() - deletion.getRequestedAt().getTime());
+                        return true;
+                    }
+                    deletion.setStep(STEPS[next]);
+                }
+                accountDeletionRepository.save(deletion);
+                return false;
+            }));
+        } catch (DataIntegrityViolationException e) {
+            deletion.setRestarts(deletion.getRestarts() + 1);
+            if (deletion.getRestarts() > maxRestarts) {
+                log.error("Account {} is still referenced after {} restarts, leaving its deletion at {}: {}",
+                        deletion.getUserId(), maxRestarts, deletion.getStep(), e.getMessage());
+            } else {
+                log.warn("Account {} is still referenced, restarting its deletion: {}", deletion.getUserId(), e.getMessage());
+                deletion.setStep(STEPS[0]);
+            }
+            deletion.setUpdatedAt(new Timestamp(System.currentTimeMillis()));
+            transaction.executeWithoutResult(status -> accountDeletionRepository.save(deletion));
+            return false;
+        }
+    }
+
+    /**
+     * Remove one chunk of a step
+     *
+     * @return number of rows removed or updated; 0 when the step is done
+     */
+    private int runStep(Integer userId, DeletionStep step) {
+        return switch (step) {
+            case PENDING_DELIVERIES -> pendingDeliveryRepository.deleteForUser(userId, chunkSize);
+            case MESSAGES_SENT -> messageRepository.deleteSentBy(userId, chunkSize);
+            case MESSAGES_RECEIVED -> deleteReceivedMessages(userId);
+            case FRIEND_REQUESTS -> deleteFriendRequests(userId);
+            case FRIENDSHIPS -> deleteFriendships(userId);
+            case OWNED_GROUPS -> releaseOwnedGroups(userId);
+            case GROUP_MEMBERSHIPS -> leaveGroups(userId);
+            case GROUP_MESSAGES -> groupMessageRepository.deleteSentBy(userId, chunkSize);
+            case CHANGE_LOG -> deleteChangeLog(userId);
+            case ACCOUNT -> deleteAccount(userId);
+        };
+    }
+
+    /**
+     * Received messages from the table, then the user's conversations from the {@link MessageArchive},
+     * a month per chunk (archive blocks count as rows). Part of this step rather than one of its own,
+     * as existing account_deletions.step columns do not take new values.
+     */
+    private int deleteReceivedMessages(Integer userId) {
+        int deleted = messageRepository.deleteReceivedBy(userId, chunkSize);
+        if (deleted > 0) {
+            return deleted;
+        }
+        try {
+            return messageArchive.removeConversationsOf(userId);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot remove archived conversations of user " + userId, e);
+        }
+    }
+
+    private int deleteFriendRequests(Integer userId) {
+        List<Object[]> requests = friendRequestsRepository.findRequestsOf(userId, PageRequest.ofSize(chunkSize));
+        if (requests.isEmpty()) {
+            return 0;
+        }
+        List<Integer> requestIds = new ArrayList<>(requests.size());
+        List<Integer> otherUserIds = new ArrayList<>(requests.size());
+        for (Object[] request : requests) {
+            requestIds.add((Integer) request[0]);
+            otherUserIds.add((Integer) request[1]);
+        }
+        int deleted = friendRequestsRepository.deleteByRequestIds(requestIds);
+        eventPublisher.publishEvent(new FriendRequestChangedEvent(userId, otherUserIds));
+        return deleted;
+    }
+
+    private int deleteFriendships(Integer userId) {
+        List<Integer> friendIds = friendshipRepository.findFriendIds(userId, PageRequest.ofSize(chunkSize));
+        if (friendIds.isEmpty()) {
+            return 0;
+        }
+        int deleted = friendshipRepository.deleteEdges(userId, friendIds);
+        eventPublisher.publishEvent(new FriendshipChangedEvent(userId, friendIds, false));
+        return deleted;
+    }
+
+    /**
+     * Hand owned groups to another member; a group nobody else is in is removed, its messages a chunk at a time
+     */
+    private int releaseOwnedGroups(Integer userId) {
+        int transferred = chatGroupRepository.transferOwnership(userId, chunkSize);
+        if (transferred > 0) {
+            return transferred;
+        }
+        List<Integer> owned = chatGroupRepository.findIdsOwnedBy(userId, PageRequest.ofSize(1));
+        if (owned.isEmpty()) {
+            return 0;
+        }
+        Integer groupId = owned.get(0);
+        int deleted = groupMessageRepository.deleteInGroup(groupId, chunkSize);
+        if (deleted > 0) {
+            return deleted;
+        }
+        deleted = groupMemberRepository.removeAll(groupId);
+        chatGroupRepository.deleteById(groupId);
+        return deleted + 1;
+    }
+
+    private int leaveGroups(Integer userId) {
+        List<Integer> groupIds = groupMemberRepository.findGroupIdsForUser(userId, PageRequest.ofSize(chunkSize));
+        if (groupIds.isEmpty()) {
+            return 0;
+        }
+        chatGroupRepository.decrementMemberCounts(groupIds);
+        return groupMemberRepository.removeMemberships(userId, groupIds);
+    }
+
+    private int deleteChangeLog(Integer userId) {
+        int deleted = userChangeRepository.deleteForUser(userId, chunkSize);
+        if (deleted == 0) {
+            deleted = conversationSequenceRepository.deleteForUser(userId, chunkSize);
+        }
+        if (deleted == 0 && userChangeHeadRepository.existsById(userId)) {
+            userChangeHeadRepository.deleteById(userId);
+            deleted = 1;
+        }
+        return deleted;
+    }
+
+    /**
+     * Delete the user row (through the entity, so the second-level cache forgets it) and offline
+     * deliveries of other users that pointed at the user's messages
+     */
+    private int deleteAccount(Integer userId) {
+        pendingDeliveryRepository.deleteOrphaned();
+        userRepository.findById(userId).ifPresent(user -> {
+            userRepository.delete(user);
+            userRepository.flush();
+        });
+        return 0;
+    }
+}
@@ -0,0 +1,242 @@
+package com.ma.message_apps.service;
+
+import com.ma.message_apps.dto.ActivityRollupDto;
+import com.ma.message_apps.enumDto.RollupGranularity;
+import com.ma.message_apps.event.FriendshipChangedEvent;
+import com.ma.message_apps.event.GroupMessageSentEvent;
+import com.ma.message_apps.event.MessageSentEvent;
+import com.ma.message_apps.repository.ActivityRollupRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Messaging activity counters: messages sent, distinct senders, and friendships created and removed,
+ * per minute, hour and UTC day.
+ *
+ * The send and friendship paths only bump an in-memory bucket for the current minute. A scheduled
+ * flush writes every finished minute to activity_rollups and adds it to its hour and day rows, one
+ * transaction per flush, so analytics read a handful of rollup rows instead of grouping the
+ * messages and friend_requests tables.
+ *
+ * Distinct senders cannot be summed, so the sets for the open hour and day are kept in memory and
+ * their size is written with GREATEST; after a restart those two rows only count senders seen since.
+ */
+@Service
+@Slf4j
+public class ActivityRollupService {
+
+    private static final int MAX_BUCKETS = 1440;
+
+    private final ActivityRollupRepository activityRollupRepository;
+    private final TransactionTemplate transaction;
+    private final long minuteRetentionMs;
+    private final long hourRetentionMs;
+
+    private final Map<Long, MinuteBucket> minutes = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Integer>> hourSenders = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Integer>> daySenders = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ActivityRollupService(
+            ActivityRollupRepository activityRollupRepository,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.analytics.minute-retention-hours:48}") long minuteRetentionHours,
+            @Value("${app.analytics.hour-retention-days:90}") long hourRetentionDays) {
+        this.activityRollupRepository = activityRollupRepository;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.minuteRetentionMs = minuteRetentionHours * RollupGranularity.HOUR.getMillis();
+        this.hourRetentionMs = hourRetentionDays * RollupGranularity.DAY.getMillis();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageSent(MessageSentEvent event) {
+        recordMessage(event.message().senderId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onGroupMessageSent(GroupMessageSentEvent event) {
+        recordMessage(event.message().senderId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFriendshipChanged(FriendshipChangedEvent event) {
+        if (event.friendIds() == null || event.friendIds().isEmpty()) {
+            return;
+        }
+        int count = event.friendIds().size();
+        bucket(System.currentTimeMillis(), b -> {
+            if (event.created()) {
+                b.friendshipsCreated += count;
+            } else {
+                b.friendshipsRemoved += count;
+            }
+        });
+    }
+
+    /**
+     * Get the activity buckets of a granularity in a time range
+     *
+     * @param granularity minute, hour or day (default hour)
+     * @param from Start of the range, ISO-8601 (default: 60 buckets before {@code to})
+     * @param to End of the range, exclusive, ISO-8601 (default: now)
+     * @return Map containing success status and the buckets, oldest first; empty buckets are omitted
+     */
+    public Map<String, Object> getRollups(String granularity, String from, String to) {
+        Map<String, Object> response = new HashMap<>();
+
+        RollupGranularity size;
+        Instant end;
+        Instant start;
+        try {
+            size = granularity == null ? RollupGranularity.HOUR : RollupGranularity.valueOf(granularity.toUpperCase());
+            end = to == null ? Instant.now() : Instant.parse(to);
+            start = from == null ? end.minusMillis(60 * size.getMillis()) : Instant.parse(from);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            response.put("success", false);
+            response.put("error", "granularity must be minute, hour or day and from/to ISO-8601 instants");
+            return response;
+        }
+        if (!start.isBefore(end)) {
+            response.put("success", false);
+            response.put("error", "from must be before to");
+            return response;
+        }
+
+        List<ActivityRollupDto> buckets = activityRollupRepository.findRange(
+                size, new Timestamp(size.bucketStart(start.toEpochMilli())), Timestamp.from(end),
+                PageRequest.ofSize(MAX_BUCKETS));
+        response.put("success", true);
+        response.put("granularity", size.name().toLowerCase());
+        response.put("buckets", buckets);
+        return response;
+    }
+
+    /**
+     * Write finished minutes to the rollup tables and drop expired minute and hour rows
+     */
+    @Scheduled(initialDelayString = "${app.analytics.flush-ms:10000}", fixedDelayString = "${app.analytics.flush-ms:10000}")
+    public void flush() {
+        flushBefore(RollupGranularity.MINUTE.bucketStart(System.currentTimeMillis()));
+    }
+
+    /**
+     * Write everything counted so far, including the current minute, before the application stops
+     */
+    @PreDestroy
+    public void flushAll() {
+        flushBefore(Long.MAX_VALUE);
+    }
+
+    private synchronized void flushBefore(long minuteLimit) {
+        List<Long> due = new ArrayList<>();
+        for (Long minute : minutes.keySet()) {
+            if (minute < minuteLimit) {
+                due.add(minute);
+            }
+        }
+        Collections.sort(due);
+
+        // Removed under the map's lock for that key, so no update can land in a bucket after it is taken
+        Map<Long, MinuteBucket> taken = new LinkedHashMap<>();
+        for (Long minute : due) {
+            MinuteBucket bucket = minutes.remove(minute);
+            if (bucket != null) {
+                taken.put(minute, bucket);
+            }
+        }
+
+        try {
+            Map<Long, MinuteBucket> hours = new TreeMap<>();
+            Map<Long, MinuteBucket> days = new TreeMap<>();
+            for (Map.Entry<Long, MinuteBucket> entry : taken.entrySet()) {
+                hours.computeIfAbsent(RollupGranularity.HOUR.bucketStart(entry.getKey()), k -> new MinuteBucket())
+                        .addCounts(entry.getValue());
+                days.computeIfAbsent(RollupGranularity.DAY.bucketStart(entry.getKey()), k -> new MinuteBucket())
+                        .addCounts(entry.getValue());
+            }
+
+            long now = System.currentTimeMillis();
+            transaction.executeWithoutResult(status -> {
+                taken.forEach((minute, bucket) -> write(RollupGranularity.MINUTE, minute, bucket, bucket.senders.size()));
+                hours.forEach((hour, bucket) -> write(RollupGranularity.HOUR, hour, bucket, sizeOf(hourSenders.get(hour))));
+                days.forEach((day, bucket) -> write(RollupGranularity.DAY, day, bucket, sizeOf(daySenders.get(day))));
+                activityRollupRepository.deleteBefore(RollupGranularity.MINUTE, new Timestamp(now - minuteRetentionMs));
+                activityRollupRepository.deleteBefore(RollupGranularity.HOUR, new Timestamp(now - hourRetentionMs));
+            });
+
+            // Sender sets of closed hours and days have been written for the last time
+            hourSenders.keySet().removeIf(hour -> hour < RollupGranularity.HOUR.bucketStart(minuteLimit));
+            daySenders.keySet().removeIf(day -> day < RollupGranularity.DAY.bucketStart(minuteLimit));
+        } catch (Exception e) {
+            // Put the counts back for the next flush
+            taken.forEach((minute, bucket) -> minutes.merge(minute, bucket, MinuteBucket::merge));
+            log.error("Error flushing activity rollups", e);
+        }
+    }
+
+    private void write(RollupGranularity granularity, long bucketStart, MinuteBucket bucket, int activeSenders) {
+        activityRollupRepository.add(granularity.name(), new Timestamp(bucketStart), bucket.messagesSent,
+                activeSenders, bucket.friendshipsCreated, bucket.friendshipsRemoved);
+    }
+
+    private void recordMessage(Integer senderId) {
+        long now = System.currentTimeMillis();
+        bucket(now, b -> {
+            b.messagesSent++;
+            b.senders.add(senderId);
+        });
+        hourSenders.computeIfAbsent(RollupGranularity.HOUR.bucketStart(now), k -> ConcurrentHashMap.newKeySet()).add(senderId);
+        daySenders.computeIfAbsent(RollupGranularity.DAY.bucketStart(now), k -> ConcurrentHashMap.newKeySet()).add(senderId);
+    }
+
+    private void bucket(long at, Consumer<MinuteBucket> update) {
+        minutes.compute(RollupGranularity.MINUTE.bucketStart(at), (minute, bucket) -> {
+            if (bucket == null) {
+                bucket = new MinuteBucket();
+            }
+            update.accept(bucket);
+            return bucket;
+        });
+    }
+
+    private static int sizeOf(Set<Integer> senders) {
+        return senders == null ? 0 : senders.size();
+    }
+
+    /**
+     * Counts of one minute; only touched inside {@code minutes.compute} or after being removed from the map
+     */
+    private static final class MinuteBucket {
+        long messagesSent;
+        long friendshipsCreated;
+        long friendshipsRemoved;
+        final Set<Integer> senders = new HashSet<>();
+
+        void addCounts(MinuteBucket other) {
+            messagesSent += other.messagesSent;
+            friendshipsCreated += other.friendshipsCreated;
+            friendshipsRemoved += other.friendshipsRemoved;
+        }
+
+        static MinuteBucket merge(MinuteBucket a, MinuteBucket b) {
+            a.addCounts(b);
+            a.senders.addAll(b.senders);
+            return a;
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package com.ma.message_apps.service;
+
+import com.ma.message_apps.dto.AttachmentDto;
+import com.ma.message_apps.entity.Attachment;
+import com.ma.message_apps.entity.Message;
+import com.ma.message_apps.enumDto.AttachmentStatus;
+import com.ma.message_apps.enumDto.ThumbnailStatus;
+import com.ma.message_apps.exception.ResourceNotFoundException;
+import com.ma.message_apps.repository.AttachmentRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Attachments: resumable chunked uploads into the {@link BlobStore}, linking to direct messages,
+ * access checks for downloads, and expiry of what was never sent. Completed images are handed to the
+ * {@link ThumbnailService}.
+ *
+ * An upload is created with its size, then its bytes are sent in chunks, each at the offset the server
+ * has reached (see {@link #getAttachment}); a chunk that fails is simply sent again. Chunk requests hold
+ * a request thread while the body arrives, so only a few are served at once and the rest are told to
+ * retry, leaving the threads to chat traffic.
+ */
+@Service
+@Slf4j
+public class AttachmentService {
+
+    private static final int MAX_FILE_NAME_LENGTH = 255;
+    private static final int MAX_CONTENT_TYPE_LENGTH = 127;
+    private static final int MAX_ATTACHMENTS_PER_MESSAGE = 10;
+    private static final int EXPIRY_BATCH_SIZE = 500;
+    // Blobs written this recently are not swept, whatever the rows say
+    private static final long BLOB_GRACE_MS = 3_600_000L;
+
+    private final AttachmentRepository attachmentRepository;
+    private final BlobStore blobStore;
+    private final ThumbnailService thumbnailService;
+    private final TransactionTemplate transaction;
+    private final long maxSize;
+    private final long chunkSize;
+    private final long expiryMs;
+
+    private final Semaphore uploadSlots;
+    // Uploads with a chunk being written, so two chunks of one upload never interleave
+    private final Set<Integer> writing = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public AttachmentService(
+            AttachmentRepository attachmentRepository,
+            BlobStore blobStore,
+            ThumbnailService thumbnailService,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.attachments.max-size:104857600}") long maxSize,
+            @Value("${app.attachments.chunk-size:4194304}") long chunkSize,
+            @Value("${app.attachments.max-concurrent-uploads:4}") int maxConcurrentUploads,
+            @Value("${app.attachments.expiry-ms:86400000}") long expiryMs) {
+        this.attachmentRepository = attachmentRepository;
+        this.blobStore = blobStore;
+        this.thumbnailService = thumbnailService;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.maxSize = maxSize;
+        this.chunkSize = chunkSize;
+        this.expiryMs = expiryMs;
+        this.uploadSlots = new Semaphore(maxConcurrentUploads);
+    }
+
+    /**
+     * Where a download is served from, once access is granted
+     *
+     * @param etag Strong entity tag, quoted
+     */
+    public record Download(Path path, long size, String etag, String fileName, String contentType) {
+    }
+
+    /**
+     * Start an upload
+     *
+     * @param userId Uploading user
+     * @param fileName Name of the file (any directory part is dropped)
+     * @param contentType MIME type of the file (optional)
+     * @param size Size in bytes
+     * @return Map containing success status, the attachment and the largest accepted chunk, or an error
+     */
+    public Map<String, Object> createUpload(Integer userId, String fileName, String contentType, Long size) {
+        Map<String, Object> response = new HashMap<>();
+
+        String name = fileName == null ? "" : fileName.substring(Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf('\\')) + 1).trim();
+        if (name.isEmpty()) {
+            response.put("success", false);
+            response.put("error", "File name cannot be empty");
+            return response;
+        }
+        if (size == null || size <= 0) {
+            response.put("success", false);
+            response.put("error", "Attachment is empty");
+            return response;
+        }
+        if (size > maxSize) {
+            response.put("success", false);
+            response.put("error", "Attachment is too large (at most " + maxSize + " bytes)");
+            return response;
+        }
+
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        Attachment attachment = attachmentRepository.save(new Attachment(null, null, userId,
+                name.length() > MAX_FILE_NAME_LENGTH ? name.substring(0, MAX_FILE_NAME_LENGTH) : name,
+                normalizeContentType(contentType), size, 0L, null, AttachmentStatus.UPLOADING, now, now, null, null, null));
+        log.info("Service: Upload {} of {} bytes started by user {}", attachment.getAttachmentId(), size, userId);
+
+        response.put("success", true);
+        response.put("attachment", toDto(attachment));
+        response.put("chunkSize", chunkSize);
+        return response;
+    }
+
+    /**
+     * Get an attachment, e.g. to learn where an interrupted upload resumes
+     *
+     * @param userId Current user ID (must be the uploader or take part in the attachment's message)
+     * @param attachmentId Attachment ID
+     * @return Map containing success status and the attachment
+     * @throws ResourceNotFoundException if the attachment does not exist or the user may not see it
+     */
+    public Map<String, Object> getAttachment(Integer userId, Integer attachmentId) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("attachment", toDto(findVisible(userId, attachmentId)));
+        return response;
+    }
+
+    /**
+     * Store a chunk of an upload. The chunk must start where the upload stands; the last chunk
+     * completes the attachment.
+     *
+     * @param userId Current user ID (must be the uploader)
+     * @param attachmentId Attachment ID
+     * @param offset Position of the chunk in the file
+     * @param in Chunk bytes
+     * @return Map containing success status and the attachment; on failure an error, plus the position
+     * to resume from ("received") or a delay in seconds before retrying ("retryAfter")
+     * @throws ResourceNotFoundException if the upload does not exist or belongs to another user
+     */
+    public Map<String, Object> writeChunk(Integer userId, Integer attachmentId, long offset, InputStream in) throws IOException {
+        Map<String, Object> response = new HashMap<>();
+
+        if (!uploadSlots.tryAcquire()) {
+            response.put("success", false);
+            response.put("error", "Too many uploads in progress, retry shortly");
+            response.put("retryAfter", 1);
+            return response;
+        }
+        try {
+            Attachment attachment = attachmentRepository.findById(attachmentId)
+                .filter(a -> userId.equals(a.getUploaderId()))
+                .orElseThrow(() -> new ResourceNotFoundException("Attachment not found with ID: " + attachmentId));
+            if (!writing.add(attachmentId)) {
+                response.put("success", false);
+                response.put("error", "Another chunk of this upload is in progress");
+                response.put("received", attachment.getReceived());
+                return response;
+            }
+            try {
+                return writeChunk(attachment, offset, in);
+            } finally {
+                writing.remove(attachmentId);
+            }
+        } finally {
+            uploadSlots.release();
+        }
+    }
+
+    private Map<String, Object> writeChunk(Attachment attachment, long offset, InputStream in) throws IOException {
+        Map<String, Object> response = new HashMap<>();
+        Integer attachmentId = attachment.getAttachmentId();
+
+        // A repeated last chunk whose answer was lost
+        if (attachment.getStatus() == AttachmentStatus.COMPLETE) {
+            response.put("success", true);
+            response.put("attachment", toDto(attachment));
+            return response;
+        }
+        if (offset != attachment.getReceived()) {
+            response.put("success", false);
+            response.put("error", "Upload continues at byte " + attachment.getReceived());
+            response.put("received", attachment.getReceived());
+            return response;
+        }
+
+        if (blobStore.uploadedLength(attachmentId) < offset) {
+            // The partial file was lost (e.g. removed as expired): start over
+            Attachment reset = transaction.execute(status -> {
+                attachment.setReceived(0L);
+                attachment.setUpdatedAt(new Timestamp(System.currentTimeMillis()));
+                return attachmentRepository.save(attachment);
+            });
+            response.put("success", false);
+            response.put("error", "Upload continues at byte 0");
+            response.put("received", reset.getReceived());
+            return response;
+        }
+
+        long max = Math.min(chunkSize, attachment.getSize() - offset);
+        long written = blobStore.write(attachmentId, offset, max, in);
+        if (in.read() != -1) {
+            // The bytes past the limit were not accepted; nothing is counted
+            response.put("success", false);
+            response.put("error", "Chunk is too large (at most " + max + " bytes from offset " + offset + ")");
+            return response;
+        }
+
+        long received = offset + written;
+        String sha256 = received == attachment.getSize() ? blobStore.commit(attachmentId, received) : null;
+        Attachment saved = transaction.execute(status -> {
+            attachment.setReceived(received);
+            if (sha256 != null) {
+                attachment.setSha256(sha256);
+                attachment.setStatus(AttachmentStatus.COMPLETE);
+                if (thumbnailService.supports(attachment.getContentType())) {
+                    attachment.setThumbnailStatus(ThumbnailStatus.PENDING);
+                }
+            }
+            attachment.setUpdatedAt(new Timestamp(System.currentTimeMillis()));
+            return attachmentRepository.save(attachment);
+        });
+        if (sha256 != null) {
+            log.info("Service: Upload {} complete, {} bytes, blob {}", attachmentId, received, sha256);
+            if (saved.getThumbnailStatus() == ThumbnailStatus.PENDING) {
+                thumbnailService.request(sha256);
+            }
+        }
+
+        response.put("success", true);
+        response.put("attachment", toDto(saved));
+        return response;
+    }
+
+    /**
+     * Check that attachments can be sent by a user: uploaded by them, complete and not sent yet
+     *
+     * @return Error message, or null if all of them can be sent
+     */
+    public String checkSendable(Integer userId, List<Integer> attachmentIds) {
+        if (attachmentIds.size() > MAX_ATTACHMENTS_PER_MESSAGE) {
+            return "At most " + MAX_ATTACHMENTS_PER_MESSAGE + " attachments per message";
+        }
+        Set<Integer> distinct = new HashSet<>(attachmentIds);
+        if (attachmentRepository.countLinkable(distinct, userId) != distinct.size()) {
+            return "Attachment not found, not fully uploaded or already sent";
+        }
+        return null;
+    }
+
+    /**
+     * Link attachments checked with {@link #checkSendable} to the message they are sent with.
+     * Runs in the caller's transaction.
+     *
+     * @return The linked attachments
+     * @throws DataIntegrityViolationException if a concurrent send took one of them first
+     */
+    public List<AttachmentDto> linkToMessage(Integer userId, List<Integer> attachmentIds, Message message) {
+        Set<Integer> distinct = new HashSet<>(attachmentIds);
+        int linked = attachmentRepository.linkToMessage(distinct, userId, message,
+            new Timestamp(System.currentTimeMillis()));
+        if (linked != distinct.size()) {
+            throw new DataIntegrityViolationException("Attachment already sent with another message");
+        }
+        return attachmentsOf(List.of(message.getMessageId())).getOrDefault(message.getMessageId(), List.of());
+    }
+
+    /**
+     * Attachments of several messages, by message ID (messages without any are left out)
+     */
+    public Map<Integer, List<AttachmentDto>> attachmentsOf(Collection<Integer> messageIds) {
+        if (messageIds.isEmpty()) {
+            return Map.of();
+        }
+        Map<Integer, List<AttachmentDto>> byMessage = new HashMap<>();
+        for (Attachment attachment : attachmentRepository.findByMessageIds(messageIds)) {
+            AttachmentDto dto = toDto(attachment);
+            byMessage.computeIfAbsent(dto.messageId(), id -> new ArrayList<>()).add(dto);
+        }
+        return byMessage;
+    }
+
+    /**
+     * Locate the bytes of a complete attachment for a user allowed to download it
+     *
+     * @throws ResourceNotFoundException if the attachment does not exist, is not complete or the user may not see it
+     */
+    public Download findDownload(Integer userId, Integer attachmentId) {
+        Attachment attachment = findVisible(userId, attachmentId);
+        if (attachment.getStatus() != AttachmentStatus.COMPLETE) {
+            throw new ResourceNotFoundException("Attachment not found with ID: " + attachmentId);
+        }
+        return new Download(blobStore.blobPath(attachment.getSha256()), attachment.getSize(),
+            "\"" + attachment.getSha256() + "\"", attachment.getFileName(), attachment.getContentType());
+    }
+
+    /**
+     * Locate the thumbnail of an image attachment for a user allowed to download it
+     *
+     * @throws ResourceNotFoundException if the attachment does not exist, has no thumbnail (yet) or the user may not see it
+     */
+    public Download findThumbnail(Integer userId, Integer attachmentId) throws IOException {
+        Attachment attachment = findVisible(userId, attachmentId);
+        if (attachment.getThumbnailStatus() != ThumbnailStatus.READY) {
+            throw new ResourceNotFoundException("Thumbnail not found for attachment ID: " + attachmentId);
+        }
+        Path thumbnail = blobStore.thumbnailPath(attachment.getSha256());
+        String name = attachment.getFileName();
+        int dot = name.lastIndexOf('.');
+        return new Download(thumbnail, Files.size(thumbnail), "\"" + attachment.getSha256() + "-thumb\"",
+            (dot > 0 ? name.substring(0, dot) : name) + ".jpg", "image/jpeg");
+    }
+
+    /**
+     * Remove uploads never sent with a message within the expiry period, then the blobs and partial
+     * files nothing refers to any more (including those of messages deleted since the last run)
+     */
+    @Scheduled(initialDelayString = "${app.attachments.cleanup-ms:3600000}",
+               fixedDelayString = "${app.attachments.cleanup-ms:3600000}")
+    public void cleanUp() {
+        try {
+            long start = System.currentTimeMillis();
+            Timestamp expired = new Timestamp(start - expiryMs);
+            int attachments = 0;
+            List<Integer> ids;
+            do {
+                ids = attachmentRepository.findUnsentIdsUpdatedBefore(expired, PageRequest.ofSize(EXPIRY_BATCH_SIZE));
+                if (!ids.isEmpty()) {
+                    List<Integer> batch = ids;
+                    attachments += transaction.execute(status -> attachmentRepository.deleteByAttachmentIds(batch));
+                }
+            } while (ids.size() == EXPIRY_BATCH_SIZE);
+
+            int parts = blobStore.deleteUploadsOlderThan(expired.getTime());
+            int blobs = blobStore.sweep(attachmentRepository::findReferencedHashes, start - BLOB_GRACE_MS);
+            if (attachments > 0 || parts > 0 || blobs > 0) {
+                log.info("Attachments: {} expired uploads, {} partial files and {} unreferenced blobs removed in {} ms",
+                        attachments, parts, blobs, System.currentTimeMillis() - start);
+            }
+        } catch (Exception e) {
+            log.error("Error cleaning up attachments", e);
+        }
+    }
+
+    private Attachment findVisible(Integer userId, Integer attachmentId) {
+        return attachmentRepository.findWithMessage(attachmentId)
+            .filter(a -> userId.equals(a.getUploaderId()) || (a.getMessage() != null
+                && (userId.equals(a.getMessage().getSender().getUserId())
+                    || userId.equals(a.getMessage().getReceiver().getUserId()))))
+            .orElseThrow(() -> new ResourceNotFoundException("Attachment not found with ID: " + attachmentId));
+    }
+
+    private static String normalizeContentType(String contentType) {
+        if (contentType == null || contentType.isBlank() || contentType.length() > MAX_CONTENT_TYPE_LENGTH) {
+            return MediaType.APPLICATION_OCTET_STREAM_VALUE;
+        }
+        try {
+            return MediaType.parseMediaType(contentType).toString();
+        } catch (InvalidMediaTypeException e) {
+            return MediaType.APPLICATION_OCTET_STREAM_VALUE;
+        }
+    }
+
+    private static AttachmentDto toDto(Attachment attachment) {
+        return new AttachmentDto(attachment.getAttachmentId(),
+            attachment.getMessage() == null ? null : attachment.getMessage().getMessageId(),
+            attachment.getFileName(), attachment.getContentType(), attachment.getSize(), attachment.getReceived(),
+            attachment.getStatus() == AttachmentStatus.COMPLETE,
+            attachment.getThumbnailStatus() == null ? null : attachment.getThumbnailStatus().name(),
+            attachment.getThumbnailStatus() == ThumbnailStatus.READY
+                ? "/api/attachments/" + attachment.getAttachmentId() + "/thumbnail" : null,
+            attachment.getThumbnailWidth(), attachment.getThumbnailHeight());
+    }
+}
@@ -1,19 +1,20 @@
 package com.ma.message_apps.service;
 
+import com.ma.message_apps.dto.ActionResponse;
 import com.ma.message_apps.dto.UserDto;
+import com.ma.message_apps.dto.UserResponse;
 import com.ma.message_apps.entity.User;
 import com.ma.message_apps.enumDto.UserStatus;
-import com.ma.message_apps.exception.ResourceNotFoundException;
+import com.ma.message_apps.event.UserStatusChangedEvent;
 import com.ma.message_apps.mapper.UserConversion;
 import com.ma.message_apps.repository.UserRepository;
 import jakarta.servlet.http.HttpSession;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.sql.Timestamp;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -25,11 +26,19 @@ public class AuthService {
 
     private final UserRepository userRepository;
     private final UserConversion userConversion;
+    private final MessageDeliveryService messageDeliveryService;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Autowired
-    public AuthService(UserRepository userRepository, UserConversion userConversion) {
+    public AuthService(
+            UserRepository userRepository,
+            UserConversion userConversion,
+            MessageDeliveryService messageDeliveryService,
+            ApplicationEventPublisher eventPublisher) {
         this.userRepository = userRepository;
         this.userConversion = userConversion;
+        this.messageDeliveryService = messageDeliveryService;
+        this.eventPublisher = eventPublisher;
     }
 
     /**
@@ -39,23 +48,24 @@ public class AuthService {
      * @param session HTTP session
      * @return User data with authentication result
      */
-    public Map<String, Object> login(UserDto userDto, HttpSession session) {
-        Map<String, Object> response = new HashMap<>();
-
+    public UserResponse login(UserDto userDto, HttpSession session) {
         try {
-            // Find user by username
-            User user = userRepository.findByUsername(userDto.getUsername())
-                    .orElseThrow(() -> new ResourceNotFoundException("Invalid username or password"));
+            // Find user by username; an unknown name and a wrong password get the same answer
+            User user = userRepository.findByUsername(userDto.getUsername()).orElse(null);
 
             // Basic password verification
-            if (!userDto.getPasswordHash().equals(user.getPasswordHash())) {
+            if (user == null || !userDto.getPasswordHash().equals(user.getPasswordHash()) || user.getDeletedAt() != null) {
                 log.warn("Failed login attempt for username: {}", userDto.getUsername());
-                throw new ResourceNotFoundException("Invalid username or password");
+                return UserResponse.failed("Invalid username or password");
             }
 
             // Update user status to online
+            UserStatus previousStatus = user.getStatus();
             user.setStatus(UserStatus.ONLINE);
             userRepository.save(user);
+            if (previousStatus != UserStatus.ONLINE) {
+                eventPublisher.publishEvent(new UserStatusChangedEvent(user.getUserId(), UserStatus.ONLINE));
+            }
 
             // Store user in session
             UserDto userDtoResponse = userConversion.toUserDto(user);
@@ -63,23 +73,17 @@ public class AuthService {
             session.setAttribute("userId", user.getUserId());
             session.setAttribute("username", user.getUsername());
 
-            // Create success response
-            response.put("success", true);
-            response.put("message", "Login successful");
-            response.put("user", userDtoResponse);
-
             log.info("User {} logged in successfully", userDto.getUsername());
-        } catch (ResourceNotFoundException e) {
-            response.put("success", false);
-            response.put("error", e.getMessage());
-            log.warn("Failed login attempt for username: {}", userDto.getUsername());
+
+            // Sockets that stayed open in other tabs get what arrived while the user was away;
+            // otherwise the queue is drained when the dashboard connects
+            messageDeliveryService.drainToOpenSessions(user.getUserId());
+
+            return UserResponse.ok("Login successful", userDtoResponse);
         } catch (Exception e) {
-            response.put("success", false);
-            response.put("error", "An error occurred during login");
             log.error("Login error: ", e);
+            return UserResponse.failed("An error occurred during login");
         }
-
-        return response;
     }
 
     /**
@@ -88,22 +92,16 @@ public class AuthService {
      * @param userDto User registration data
      * @return Registration result
      */
-    public Map<String, Object> register(UserDto userDto) {
-        Map<String, Object> response = new HashMap<>();
-
+    public UserResponse register(UserDto userDto) {
         try {
             // Validate unique username
             if (userRepository.findByUsername(userDto.getUsername()).isPresent()) {
-                response.put("success", false);
-                response.put("error", "Username already exists");
-                return response;
+                return UserResponse.failed("Username already exists");
             }
 
             // Validate unique email
             if (userRepository.findByEmail(userDto.getEmail()).isPresent()) {
-                response.put("success", false);
-                response.put("error", "Email already exists");
-                return response;
+                return UserResponse.failed("Email already exists");
             }
 
             // Create and save user (with plaintext password for now - not secure)
@@ -115,45 +113,33 @@ public class AuthService {
             user.setCreatedAt(new Timestamp(System.currentTimeMillis()));
 
             User savedUser = userRepository.save(user);
-
-            // Return success response
-            response.put("success", true);
-            response.put("message", "Registration successful");
-            response.put("user", userConversion.toUserDto(savedUser));
             log.info("New user registered: {}", userDto.getUsername());
+
+            return UserResponse.ok("Registration successful", userConversion.toUserDto(savedUser));
         } catch (Exception e) {
-            response.put("success", false);
-            response.put("error", "An error occurred during registration");
             log.error("Registration error: ", e);
+            return UserResponse.failed("An error occurred during registration");
         }
-
-        return response;
     }
 
     /**
      * Get the currently logged in user
      *
      * @param session HTTP session
-     * @return Current user data or null
+     * @return Current user data or an error
      */
-    public Map<String, Object> getCurrentUser(HttpSession session) {
-        Map<String, Object> response = new HashMap<>();
+    public UserResponse getCurrentUser(HttpSession session) {
         UserDto loggedInUser = (UserDto) session.getAttribute("loggedInUser");
 
         if (loggedInUser != null) {
             // Check if the user data in session is still valid
             Optional<User> userOpt = userRepository.findById(loggedInUser.getUserId());
-            if (userOpt.isPresent()) {
-                User user = userOpt.get();
-                response.put("success", true);
-                response.put("user", userConversion.toUserDto(user));
-                return response;
+            if (userOpt.isPresent() && userOpt.get().getDeletedAt() == null) {
+                return UserResponse.ok(null, userConversion.toUserDto(userOpt.get()));
             }
         }
 
-        response.put("success", false);
-        response.put("error", "No authenticated user found");
-        return response;
+        return UserResponse.failed("No authenticated user found");
     }
 
     /**
@@ -162,9 +148,7 @@ public class AuthService {
      * @param session HTTP session
      * @return Logout result
      */
-    public Map<String, Object> logout(HttpSession session) {
-        Map<String, Object> response = new HashMap<>();
-
+    public ActionResponse logout(HttpSession session) {
         try {
             UserDto loggedInUser = (UserDto) session.getAttribute("loggedInUser");
 
@@ -173,24 +157,29 @@ public class AuthService {
                 Optional<User> userOpt = userRepository.findById(loggedInUser.getUserId());
                 if (userOpt.isPresent()) {
                     User user = userOpt.get();
+                    UserStatus previousStatus = user.getStatus();
                     user.setStatus(UserStatus.OFFLINE);
                     userRepository.save(user);
+                    if (previousStatus != UserStatus.OFFLINE) {
+                        eventPublisher.publishEvent(new UserStatusChangedEvent(user.getUserId(), UserStatus.OFFLINE));
+                    }
                     log.info("User {} logged out", loggedInUser.getUsername());
                 }
             }
 
+            // Sockets opened from this session stop receiving pushes
+            if (loggedInUser != null) {
+                messageDeliveryService.disconnect(loggedInUser.getUserId(), session.getId());
+            }
+
             // Invalidate the session
             session.invalidate();
 
-            response.put("success", true);
-            response.put("message", "Logout successful");
+            return ActionResponse.ok("Logout successful");
         } catch (Exception e) {
-            response.put("success", false);
-            response.put("error", "An error occurred during logout");
             log.error("Logout error: ", e);
+            return ActionResponse.failed("An error occurred during logout");
         }
-
-        return response;
     }
 
     /**
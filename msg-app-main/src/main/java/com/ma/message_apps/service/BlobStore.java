@@ -0,0 +1,225 @@
+package com.ma.message_apps.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Local filesystem store for attachment bytes.
+ *
+ * Finished files are content-addressed: a blob lives at {@code blobs/ab/cd/<sha256>}, so identical
+ * uploads share one file and a blob never changes once written. Uploads in progress are written to
+ * {@code uploads/<attachmentId>.part} at the offsets the client sends, forced to disk after every chunk,
+ * and hashed and moved into place when the last byte is in. Files derived from a blob (thumbnails) sit
+ * next to it as {@code <sha256>.<kind>} and are removed with it.
+ *
+ * Bytes are moved with {@link FileChannel} transfers through small fixed buffers, never collected in the heap.
+ */
+@Component
+public class BlobStore {
+
+    private static final String PART_SUFFIX = ".part";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String THUMBNAIL_SUFFIX = ".thumb.jpg";
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+    private static final int SWEEP_BATCH_SIZE = 500;
+
+    private final Path blobs;
+    private final Path uploads;
+
+    @Autowired
+    public BlobStore(@Value("${app.attachments.dir:data/attachments}") String dir) {
+        Path root = Paths.get(dir);
+        this.blobs = root.resolve("blobs");
+        this.uploads = root.resolve("uploads");
+    }
+
+    /**
+     * Path of the blob with the given hex SHA-256
+     */
+    public Path blobPath(String sha256) {
+        return blobs.resolve(sha256.substring(0, 2)).resolve(sha256.substring(2, 4)).resolve(sha256);
+    }
+
+    /**
+     * Path of the thumbnail of the blob with the given hex SHA-256
+     */
+    public Path thumbnailPath(String sha256) {
+        return blobPath(sha256).resolveSibling(sha256 + THUMBNAIL_SUFFIX);
+    }
+
+    /**
+     * Empty scratch file to write a derived file into before {@link #storeThumbnail} moves it in place
+     */
+    public Path newTempFile() throws IOException {
+        Files.createDirectories(uploads);
+        return Files.createTempFile(uploads, "derived-", TEMP_SUFFIX);
+    }
+
+    /**
+     * Move a rendered thumbnail written to a {@link #newTempFile} next to its blob
+     */
+    public void storeThumbnail(String sha256, Path file) throws IOException {
+        Path thumbnail = thumbnailPath(sha256);
+        Files.createDirectories(thumbnail.getParent());
+        Files.move(file, thumbnail, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Number of bytes in the partial file of an upload (0 if there is none)
+     */
+    public long uploadedLength(int attachmentId) throws IOException {
+        Path part = partPath(attachmentId);
+        return Files.exists(part) ? Files.size(part) : 0;
+    }
+
+    /**
+     * Write up to {@code max} bytes of a stream into an upload at an offset, and force them to disk
+     *
+     * @return Number of bytes written (less than max if the stream ended first)
+     */
+    public long write(int attachmentId, long offset, long max, InputStream in) throws IOException {
+        Files.createDirectories(uploads);
+        ReadableByteChannel source = Channels.newChannel(in);
+        try (FileChannel part = FileChannel.open(partPath(attachmentId),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long written = 0;
+            while (written < max) {
+                long n = part.transferFrom(source, offset + written, max - written);
+                if (n <= 0) {
+                    break;
+                }
+                written += n;
+            }
+            part.force(false);
+            return written;
+        }
+    }
+
+    /**
+     * Move a fully received upload into the store under its SHA-256. If the store already holds the
+     * same content, the upload is dropped and the existing blob kept.
+     *
+     * @return Hex SHA-256 of the content
+     */
+    public String commit(int attachmentId, long size) throws IOException {
+        Path part = partPath(attachmentId);
+        String sha256;
+        try (FileChannel channel = FileChannel.open(part, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // A retried chunk may have left bytes past the end
+            channel.truncate(size);
+            sha256 = hash(channel);
+        }
+
+        Path blob = blobPath(sha256);
+        if (Files.exists(blob)) {
+            Files.delete(part);
+            // Keeps the blob clear of the sweep's grace period until the attachment row points at it
+            Files.setLastModifiedTime(blob, FileTime.fromMillis(System.currentTimeMillis()));
+        } else {
+            Files.createDirectories(blob.getParent());
+            Files.move(part, blob, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return sha256;
+    }
+
+    /**
+     * Remove the partial file of an upload, if any
+     */
+    public void deleteUpload(int attachmentId) throws IOException {
+        Files.deleteIfExists(partPath(attachmentId));
+    }
+
+    /**
+     * Remove partial uploads (and scratch files) not written to since a given time
+     *
+     * @return Number of files removed
+     */
+    public int deleteUploadsOlderThan(long millis) throws IOException {
+        if (!Files.isDirectory(uploads)) {
+            return 0;
+        }
+        int deleted = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(uploads, "*{" + PART_SUFFIX + "," + TEMP_SUFFIX + "}")) {
+            for (Path file : files) {
+                if (Files.getLastModifiedTime(file).toMillis() < millis && Files.deleteIfExists(file)) {
+                    deleted++;
+                }
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Remove blobs (and their derived files) older than a given time that no attachment references any more
+     *
+     * @param referenced Returns which of a batch of hashes are still referenced
+     * @return Number of blobs removed
+     */
+    public int sweep(Function<Collection<String>, Collection<String>> referenced, long olderThanMillis) throws IOException {
+        if (!Files.isDirectory(blobs)) {
+            return 0;
+        }
+        int deleted = 0;
+        try (Stream<Path> files = Files.find(blobs, 3, (path, attributes) -> attributes.isRegularFile()
+                && attributes.lastModifiedTime().toMillis() < olderThanMillis)) {
+            // hash -> the blob and its derived files
+            Map<String, List<Path>> batch = new HashMap<>();
+            for (Iterator<Path> it = files.iterator(); it.hasNext(); ) {
+                Path file = it.next();
+                String name = file.getFileName().toString();
+                int dot = name.indexOf('.');
+                batch.computeIfAbsent(dot < 0 ? name : name.substring(0, dot), h -> new ArrayList<>()).add(file);
+                if (batch.size() == SWEEP_BATCH_SIZE || !it.hasNext()) {
+                    batch.keySet().removeAll(referenced.apply(batch.keySet()));
+                    for (List<Path> unreferenced : batch.values()) {
+                        for (Path path : unreferenced) {
+                            if (Files.deleteIfExists(path)) {
+                                deleted++;
+                            }
+                        }
+                    }
+                    batch.clear();
+                }
+            }
+        }
+        return deleted;
+    }
+
+    private Path partPath(int attachmentId) {
+        return uploads.resolve(attachmentId + PART_SUFFIX);
+    }
+
+    private static String hash(FileChannel channel) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_BUFFER_SIZE);
+        long position = 0;
+        int n;
+        while ((n = channel.read(buffer, position)) > 0) {
+            position += n;
+            buffer.flip();
+            digest.update(buffer);
+            buffer.clear();
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
@@ -0,0 +1,411 @@
+package com.ma.message_apps.service;
+
+import com.ma.message_apps.dto.AttachmentDto;
+import com.ma.message_apps.dto.MessageDto;
+import com.ma.message_apps.entity.Message;
+import com.ma.message_apps.entity.User;
+import com.ma.message_apps.event.AccountDeletedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * The newest messages of the busiest conversations, so recent history pages are answered from memory.
+ *
+ * Each cached conversation keeps its tail in a fixed-size ring: loaded from the table when the
+ * conversation is admitted, then extended by every send once it commits, dropping the oldest entry when
+ * full. A page is served only if the ring covers it completely; older pages go to the table as before.
+ *
+ * Admission is by frequency: reads are counted in a small count-min sketch (halved now and then, so old
+ * popularity fades), a conversation gets in once it has been read often enough, and when the cache is
+ * full only if it is read more often than the least recently used conversation it would replace.
+ * A one-off look at an old conversation therefore never pushes out an active one.
+ */
+@Component
+public class ConversationTailCache {
+
+    private final int capacity;
+    private final int maxConversations;
+    private final int admitAfter;
+
+    // Access order, so the eldest entry is the least recently used conversation; guarded by this
+    private final LinkedHashMap<Long, Tail> tails = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch frequency;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    @Autowired
+    public ConversationTailCache(
+            MeterRegistry meterRegistry,
+            @Value("${app.messages.cache.conversations:2000}") int maxConversations,
+            @Value("${app.messages.cache.messages-per-conversation:64}") int capacity,
+            @Value("${app.messages.cache.admit-after:2}") int admitAfter) {
+        this.capacity = capacity;
+        this.maxConversations = capacity > 0 ? Math.max(0, maxConversations) : 0;
+        this.admitAfter = Math.max(1, admitAfter);
+        this.frequency = new FrequencySketch(Math.max(1, this.maxConversations));
+        this.hitCounter = Counter.builder("messages.cache.hits")
+                .description("History pages answered from the conversation cache")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("messages.cache.misses")
+                .description("History pages read from the table")
+                .register(meterRegistry);
+        Gauge.builder("messages.cache.conversations", this, ConversationTailCache::size)
+                .description("Conversations held in the conversation cache")
+                .register(meterRegistry);
+    }
+
+    /**
+     * The newest messages of a conversation before a sequence number, in conversation order, or null
+     * if the cache does not hold all of them. A conversation admitted by this read is loaded first.
+     *
+     * @param limit Page size (Integer.MAX_VALUE for the whole conversation)
+     * @param loader Reads the given number of newest messages of the conversation from the table, newest first
+     */
+    public List<Entry> page(int userLowId, int userHighId, long beforeSeq, int limit, IntFunction<List<Entry>> loader) {
+        if (maxConversations == 0) {
+            return null;
+        }
+        long key = key(userLowId, userHighId);
+        Tail tail;
+        synchronized (this) {
+            int count = frequency.increment(key);
+            tail = tails.get(key);
+            if (tail == null) {
+                if (!admit(count)) {
+                    missCounter.increment();
+                    return null;
+                }
+                tail = new Tail(capacity);
+                tails.put(key, tail);
+            }
+        }
+
+        List<Entry> page;
+        synchronized (tail) {
+            // Sends committing meanwhile wait for the lock and are merged in after the load
+            if (!tail.loaded) {
+                tail.fill(loader.apply(capacity));
+            }
+            page = tail.before(beforeSeq, limit);
+        }
+        (page == null ? missCounter : hitCounter).increment();
+        return page;
+    }
+
+    /**
+     * Add a sent message to its conversation, if cached, once the current transaction commits
+     */
+    public void appendAfterCommit(int userLowId, int userHighId, Entry entry) {
+        afterCommit(() -> {
+            Tail tail = find(userLowId, userHighId);
+            if (tail != null) {
+                synchronized (tail) {
+                    if (tail.loaded) {
+                        tail.add(entry);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Mark the messages a reader received in a conversation read up to a sequence number, once the
+     * current transaction commits
+     */
+    public void markReadAfterCommit(int userLowId, int userHighId, int readerId, long upToSeq) {
+        afterCommit(() -> {
+            Tail tail = find(userLowId, userHighId);
+            if (tail != null) {
+                synchronized (tail) {
+                    tail.markRead(readerId, upToSeq);
+                }
+            }
+        });
+    }
+
+    /**
+     * Unload conversations holding messages created before a time, after they were deleted from the
+     * table; the next read loads them again
+     */
+    public void dropOlderThan(Timestamp cutoff) {
+        List<Tail> cached;
+        synchronized (this) {
+            cached = new ArrayList<>(tails.values());
+        }
+        for (Tail tail : cached) {
+            synchronized (tail) {
+                if (tail.oldestBefore(cutoff)) {
+                    tail.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Forget the conversations of a deleted account; their rows are removed in the background
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAccountDeleted(AccountDeletedEvent event) {
+        long userId = event.userId();
+        synchronized (this) {
+            tails.keySet().removeIf(key -> key >>> 32 == userId || (key & 0xFFFFFFFFL) == userId);
+        }
+    }
+
+    private synchronized int size() {
+        return tails.size();
+    }
+
+    private synchronized Tail find(int userLowId, int userHighId) {
+        return tails.get(key(userLowId, userHighId));
+    }
+
+    /**
+     * Whether a conversation read this often gets in, evicting the least recently used one if the
+     * cache is full and that one is read less often. Called holding the lock.
+     */
+    private boolean admit(int count) {
+        if (count < admitAfter) {
+            return false;
+        }
+        if (tails.size() < maxConversations) {
+            return true;
+        }
+        Map.Entry<Long, Tail> eldest = tails.entrySet().iterator().next();
+        if (count <= frequency.frequency(eldest.getKey())) {
+            return false;
+        }
+        tails.remove(eldest.getKey());
+        return true;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static long key(int userLowId, int userHighId) {
+        return ((long) userLowId << 32) | (userHighId & 0xFFFFFFFFL);
+    }
+
+    /**
+     * A cached message: the row as stored (a truncated text is the preview) and whether it has attachments,
+     * which are looked up when the page is served
+     */
+    public record Entry(Integer messageId, Long seq, Integer senderId, Integer receiverId, String messageText,
+                        Boolean truncated, Boolean isRead, Timestamp createdAt, String clientMessageId,
+                        boolean hasAttachments) {
+
+        public static Entry of(Message message, boolean hasAttachments) {
+            return new Entry(message.getMessageId(), message.getSeq(), message.getSender().getUserId(),
+                    message.getReceiver().getUserId(), message.getMessageText(), message.getTruncated(),
+                    message.getIsRead(), message.getCreatedAt(), message.getClientMessageId(), hasAttachments);
+        }
+
+        /**
+         * The message for a history page, with the two participants (in either order) and the attachments found
+         */
+        public MessageDto toMessageDto(User user1, User user2, Map<Integer, List<AttachmentDto>> attachments) {
+            return new MessageDto(messageId,
+                    senderId.equals(user1.getUserId()) ? user1 : user2,
+                    receiverId.equals(user1.getUserId()) ? user1 : user2,
+                    messageText, truncated, isRead, createdAt, seq, clientMessageId,
+                    attachments.getOrDefault(messageId, List.of()));
+        }
+
+        private Entry read() {
+            return new Entry(messageId, seq, senderId, receiverId, messageText, truncated, true, createdAt,
+                    clientMessageId, hasAttachments);
+        }
+    }
+
+    /**
+     * The newest messages of one conversation in seq order, in a ring that overwrites the oldest.
+     * Holds every message from its oldest entry on; guarded by its own lock.
+     */
+    private static final class Tail {
+
+        private final Entry[] ring;
+        private int head;
+        private int size;
+        private boolean loaded;
+        // Nothing older is in the table (there may be in the archive)
+        private boolean complete;
+
+        Tail(int capacity) {
+            this.ring = new Entry[capacity];
+        }
+
+        void fill(List<Entry> newestFirst) {
+            clear();
+            for (int i = newestFirst.size() - 1; i >= 0; i--) {
+                ring[size++] = newestFirst.get(i);
+            }
+            complete = size < ring.length;
+            loaded = true;
+        }
+
+        void clear() {
+            Arrays.fill(ring, null);
+            head = 0;
+            size = 0;
+            loaded = false;
+            complete = false;
+        }
+
+        /**
+         * Add a message, in seq order. Sends of a conversation commit in seq order, but their
+         * after-commit callbacks may still arrive slightly out of order.
+         */
+        void add(Entry entry) {
+            int i = size;
+            while (i > 0 && get(i - 1).seq() >= entry.seq()) {
+                if (get(i - 1).seq().equals(entry.seq())) {
+                    // Already loaded with the tail
+                    return;
+                }
+                i--;
+            }
+            // Before the oldest entry only if nothing in between can be missing
+            if (i == 0 && size > 0 && (!complete || size == ring.length)) {
+                return;
+            }
+            if (size == ring.length) {
+                head = (head + 1) % ring.length;
+                size--;
+                i--;
+                complete = false;
+            }
+            for (int j = size; j > i; j--) {
+                set(j, get(j - 1));
+            }
+            set(i, entry);
+            size++;
+        }
+
+        /**
+         * The newest {@code limit} entries before a seq, or null if the ring may be missing some of them
+         */
+        List<Entry> before(long beforeSeq, int limit) {
+            int end = size;
+            while (end > 0 && get(end - 1).seq() >= beforeSeq) {
+                end--;
+            }
+            int start = Math.max(0, end - limit);
+            if (end - start < limit && !complete) {
+                return null;
+            }
+            List<Entry> page = new ArrayList<>(end - start);
+            for (int i = start; i < end; i++) {
+                page.add(get(i));
+            }
+            return page;
+        }
+
+        void markRead(int readerId, long upToSeq) {
+            for (int i = 0; i < size && get(i).seq() <= upToSeq; i++) {
+                Entry entry = get(i);
+                if (entry.receiverId() == readerId && !Boolean.TRUE.equals(entry.isRead())) {
+                    set(i, entry.read());
+                }
+            }
+        }
+
+        boolean oldestBefore(Timestamp cutoff) {
+            for (int i = 0; i < size; i++) {
+                Timestamp createdAt = get(i).createdAt();
+                if (createdAt != null && createdAt.before(cutoff)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private Entry get(int i) {
+            return ring[(head + i) % ring.length];
+        }
+
+        private void set(int i, Entry entry) {
+            ring[(head + i) % ring.length] = entry;
+        }
+    }
+
+    /**
+     * Approximate read counts of conversations: four rows of 4-bit-range counters, halved after
+     * every ten reads per cached conversation. Guarded by the cache's lock.
+     */
+    private static final class FrequencySketch {
+
+        private static final int MAX_COUNT = 15;
+        private static final long[] SEEDS = {0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L};
+
+        private final byte[][] table;
+        private final int mask;
+        private final int resetAfter;
+        private int additions;
+
+        FrequencySketch(int expected) {
+            int width = Integer.highestOneBit(Math.max(64, expected * 2) - 1) << 1;
+            this.table = new byte[SEEDS.length][width];
+            this.mask = width - 1;
+            this.resetAfter = expected * 10;
+        }
+
+        int increment(long key) {
+            int count = MAX_COUNT;
+            for (int row = 0; row < SEEDS.length; row++) {
+                int i = index(key, row);
+                if (table[row][i] < MAX_COUNT) {
+                    table[row][i]++;
+                }
+                count = Math.min(count, table[row][i]);
+            }
+            if (++additions >= resetAfter) {
+                for (byte[] counters : table) {
+                    for (int i = 0; i < counters.length; i++) {
+                        counters[i] >>= 1;
+                    }
+                }
+                additions = 0;
+            }
+            return count;
+        }
+
+        int frequency(long key) {
+            int count = MAX_COUNT;
+            for (int row = 0; row < SEEDS.length; row++) {
+                count = Math.min(count, table[row][index(key, row)]);
+            }
+            return count;
+        }
+
+        private int index(long key, int row) {
+            long h = (key ^ SEEDS[row]) * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package com.ma.message_apps.service;
+
+import com.ma.message_apps.event.FriendshipChangedEvent;
+import com.ma.message_apps.repository.FriendshipRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * In-memory copy of the accepted-friendship graph.
+ *
+ * The bulk of the graph is a CSR (compressed sparse row) snapshot: the friends of user u are
+ * {@code targets[offsets[u] .. offsets[u + 1])}, sorted ascending. Users whose friends changed since
+ * the snapshot was built get a full replacement array in an overlay map. The overlay is folded back
+ * into a new CSR once it grows past a threshold, and the whole graph is reloaded from the friendships
+ * table on a fixed delay to correct any drift.
+ *
+ * Reads are lock-free: every write (friendship event, compaction, reload) builds a new state, overlay
+ * included, and publishes it with a single volatile write. Writes are serialized on this object.
+ */
+@Component
+@Slf4j
+public class FriendGraph {
+
+    private static final int[] NO_FRIENDS = new int[0];
+
+    private final FriendshipRepository friendshipRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int compactThreshold;
+
+    private volatile State state = new State(Csr.EMPTY, Map.of(), 0);
+
+    // Changes seen while a reload is reading the table; re-applied to the freshly loaded graph
+    private boolean reloading;
+    private final List<FriendshipChangedEvent> changesDuringReload = new ArrayList<>();
+
+    @Autowired
+    public FriendGraph(
+            FriendshipRepository friendshipRepository,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.friends.graph.compact-threshold:10000}") int compactThreshold) {
+        this.friendshipRepository = friendshipRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.compactThreshold = compactThreshold;
+    }
+
+    /**
+     * Sorted view of a user's friends. Backed by the graph arrays, so it must not be modified.
+     */
+    public record Neighbors(int[] ids, int from, int to) {
+        public int size() {
+            return to - from;
+        }
+
+        public int get(int i) {
+            return ids[from + i];
+        }
+    }
+
+    /**
+     * Get the friends of a user, sorted by user ID
+     *
+     * @param userId User ID
+     * @return Friends of the user (empty if the user has none)
+     */
+    public Neighbors friendsOf(int userId) {
+        State current = state;
+        int[] changed = current.overlay.get(userId);
+        if (changed != null) {
+            return new Neighbors(changed, 0, changed.length);
+        }
+        return current.csr.neighbors(userId);
+    }
+
+    /**
+     * Whether two users are friends (a binary search in the first one's friends)
+     */
+    public boolean areFriends(int userId, int otherUserId) {
+        Neighbors friends = friendsOf(userId);
+        return Arrays.binarySearch(friends.ids(), friends.from(), friends.to(), otherUserId) >= 0;
+    }
+
+    /**
+     * Count the friends two users have in common.
+     * Walks the smaller sorted list and gallops through the larger one, so the cost is
+     * proportional to the smaller friend set (times the log of the gap between matches).
+     *
+     * @param userId First user ID
+     * @param otherUserId Second user ID
+     * @return Number of mutual friends
+     */
+    public int mutualFriendCount(int userId, int otherUserId) {
+        Neighbors small = friendsOf(userId);
+        Neighbors large = friendsOf(otherUserId);
+        if (small.size() > large.size()) {
+            Neighbors swap = small;
+            small = large;
+            large = swap;
+        }
+
+        int[] ids = large.ids();
+        int pos = large.from();
+        int count = 0;
+        for (int i = 0; i < small.size() && pos < large.to(); i++) {
+            int target = small.get(i);
+            // Exponential search for the first element >= target, then binary search inside that window
+            int bound = 1;
+            while (pos + bound < large.to() && ids[pos + bound] < target) {
+                bound <<= 1;
+            }
+            int found = Arrays.binarySearch(ids, pos + (bound >> 1), Math.min(pos + bound + 1, large.to()), target);
+            if (found >= 0) {
+                count++;
+                pos = found + 1;
+            } else {
+                pos = -found - 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Apply an accept/unfriend once its transaction has committed
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFriendshipChanged(FriendshipChangedEvent event) {
+        apply(event);
+    }
+
+    /**
+     * Load the graph once the application is up (after the friendships backfill has run)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void loadOnStartup() {
+        reload();
+    }
+
+    /**
+     * Rebuild the graph from the friendships table
+     */
+    @Scheduled(initialDelayString = "${app.friends.graph.reload-ms:1800000}",
+               fixedDelayString = "${app.friends.graph.reload-ms:1800000}")
+    public void reload() {
+        synchronized (this) {
+            if (reloading) {
+                return;
+            }
+            reloading = true;
+            changesDuringReload.clear();
+        }
+        try {
+            long start = System.currentTimeMillis();
+            Csr csr = readOnlyTransaction.execute(status -> {
+                try (Stream<Object[]> edges = friendshipRepository.streamAllEdges()) {
+                    return Csr.fromSortedEdges(edges);
+                }
+            });
+            synchronized (this) {
+                State next = new State(csr, Map.of(), csr.maxUserId());
+                for (FriendshipChangedEvent change : changesDuringReload) {
+                    next = applyTo(next, change);
+                }
+                state = next;
+            }
+            log.info("Friend graph loaded: {} edges in {} ms", csr.targets.length, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("Error loading friend graph", e);
+        } finally {
+            synchronized (this) {
+                reloading = false;
+                changesDuringReload.clear();
+            }
+        }
+    }
+
+    private synchronized void apply(FriendshipChangedEvent event) {
+        if (event.userId() == null || event.friendIds() == null || event.friendIds().isEmpty()) {
+            return;
+        }
+        if (reloading) {
+            changesDuringReload.add(event);
+        }
+        State next = applyTo(state, event);
+        if (next.overlay.size() > compactThreshold) {
+            next = new State(Csr.compact(next), Map.of(), next.maxUserId);
+        }
+        state = next;
+    }
+
+    /**
+     * Add or remove both directions of each edge, into a copy of the overlay so the published state is never
+     * modified. Idempotent, so replaying a change the reload already saw is harmless.
+     */
+    private State applyTo(State current, FriendshipChangedEvent event) {
+        Map<Integer, int[]> overlay = new HashMap<>(current.overlay);
+        int a = event.userId();
+        int maxUserId = Math.max(current.maxUserId, a);
+        for (Integer friendId : event.friendIds()) {
+            int b = friendId;
+            overlay.put(a, updated(current.csr, overlay, a, b, event.created()));
+            overlay.put(b, updated(current.csr, overlay, b, a, event.created()));
+            maxUserId = Math.max(maxUserId, b);
+        }
+        return new State(current.csr, overlay, maxUserId);
+    }
+
+    private int[] updated(Csr csr, Map<Integer, int[]> overlay, int userId, int friendId, boolean add) {
+        int[] existing = overlay.get(userId);
+        if (existing == null) {
+            Neighbors n = csr.neighbors(userId);
+            existing = Arrays.copyOfRange(n.ids(), n.from(), n.to());
+        }
+        int pos = Arrays.binarySearch(existing, friendId);
+        if (add == (pos >= 0)) {
+            return existing;
+        }
+        int[] result = new int[existing.length + (add ? 1 : -1)];
+        if (add) {
+            int insertAt = -pos - 1;
+            System.arraycopy(existing, 0, result, 0, insertAt);
+            result[insertAt] = friendId;
+            System.arraycopy(existing, insertAt, result, insertAt + 1, existing.length - insertAt);
+        } else {
+            System.arraycopy(existing, 0, result, 0, pos);
+            System.arraycopy(existing, pos + 1, result, pos, existing.length - pos - 1);
+        }
+        return result;
+    }
+
+    private record State(Csr csr, Map<Integer, int[]> overlay, int maxUserId) {
+    }
+
+    /**
+     * Immutable compressed sparse row adjacency, indexed directly by user ID
+     */
+    private static final class Csr {
+
+        static final Csr EMPTY = new Csr(new int[]{0}, NO_FRIENDS);
+
+        final int[] offsets;
+        final int[] targets;
+
+        Csr(int[] offsets, int[] targets) {
+            this.offsets = offsets;
+            this.targets = targets;
+        }
+
+        int maxUserId() {
+            return offsets.length - 2;
+        }
+
+        Neighbors neighbors(int userId) {
+            if (userId < 0 || userId + 1 >= offsets.length) {
+                return new Neighbors(NO_FRIENDS, 0, 0);
+            }
+            return new Neighbors(targets, offsets[userId], offsets[userId + 1]);
+        }
+
+        /**
+         * Build from (user, friend) rows ordered by user then friend
+         */
+        static Csr fromSortedEdges(Stream<Object[]> edges) {
+            int[] offsets = new int[1024];
+            int[] targets = new int[1024];
+            int edgeCount = 0;
+            int lastUserId = -1;
+            Iterator<Object[]> rows = edges.iterator();
+            while (rows.hasNext()) {
+                Object[] row = rows.next();
+                int userId = ((Number) row[0]).intValue();
+                int friendId = ((Number) row[1]).intValue();
+                // Users without friends in between get an empty range
+                while (lastUserId < userId) {
+                    lastUserId++;
+                    if (lastUserId >= offsets.length) {
+                        offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                    }
+                    offsets[lastUserId] = edgeCount;
+                }
+                if (edgeCount == targets.length) {
+                    targets = Arrays.copyOf(targets, targets.length * 2);
+                }
+                targets[edgeCount++] = friendId;
+            }
+            int users = lastUserId + 1;
+            int[] finalOffsets = Arrays.copyOf(offsets, users + 1);
+            finalOffsets[users] = edgeCount;
+            return new Csr(finalOffsets, Arrays.copyOf(targets, edgeCount));
+        }
+
+        /**
+         * Fold an overlay back into a fresh CSR
+         */
+        static Csr compact(State state) {
+            int users = state.maxUserId + 1;
+            int[] offsets = new int[users + 1];
+            for (int u = 0; u < users; u++) {
+                int[] changed = state.overlay.get(u);
+                offsets[u + 1] = offsets[u] + (changed != null ? changed.length : state.csr.neighbors(u).size());
+            }
+            int[] targets = new int[offsets[users]];
+            for (int u = 0; u < users; u++) {
+                int[] changed = state.overlay.get(u);
+                if (changed != null) {
+                    System.arraycopy(changed, 0, targets, offsets[u], changed.length);
+                } else {
+                    Neighbors n = state.csr.neighbors(u);
+                    System.arraycopy(n.ids(), n.from(), targets, offsets[u], n.size());
+                }
+            }
+            return new Csr(offsets, targets);
+        }
+    }
+}
@@ -1,23 +1,33 @@
 package com.ma.message_apps.service;
 
+import com.ma.message_apps.dto.FriendRequestBatchResponse;
+import com.ma.message_apps.dto.FriendRequestRefDto;
+import com.ma.message_apps.dto.FriendRequestResponse;
+import com.ma.message_apps.dto.FriendRequestStateDto;
 import com.ma.message_apps.dto.FriendRequestsDto;
 import com.ma.message_apps.entity.FriendRequests;
 import com.ma.message_apps.entity.User;
+import com.ma.message_apps.enumDto.FriendRequestOutcome;
 import com.ma.message_apps.enumDto.FriendStatus;
+import com.ma.message_apps.event.FriendRequestChangedEvent;
+import com.ma.message_apps.event.FriendshipChangedEvent;
 import com.ma.message_apps.exception.ResourceNotFoundException;
 import com.ma.message_apps.mapper.FriendRequestsConversion;
 import com.ma.message_apps.repository.FriendRequestsRepository;
+import com.ma.message_apps.repository.FriendshipRepository;
 import com.ma.message_apps.repository.UserRepository;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
 import java.sql.Timestamp;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Optional;
+import java.util.*;
 import java.util.stream.Collectors;
 
 /**
@@ -28,17 +38,26 @@ import java.util.stream.Collectors;
 public class FriendRequestService {
 
     private final FriendRequestsRepository friendRequestsRepository;
+    private final FriendshipRepository friendshipRepository;
     private final UserRepository userRepository;
     private final FriendRequestsConversion friendRequestsConversion;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int maxBulkSize;
 
     @Autowired
     public FriendRequestService(
             FriendRequestsRepository friendRequestsRepository,
+            FriendshipRepository friendshipRepository,
             UserRepository userRepository,
-            FriendRequestsConversion friendRequestsConversion) {
+            FriendRequestsConversion friendRequestsConversion,
+            ApplicationEventPublisher eventPublisher,
+            @Value("${app.friend-requests.max-bulk-size:500}") int maxBulkSize) {
         this.friendRequestsRepository = friendRequestsRepository;
+        this.friendshipRepository = friendshipRepository;
         this.userRepository = userRepository;
         this.friendRequestsConversion = friendRequestsConversion;
+        this.eventPublisher = eventPublisher;
+        this.maxBulkSize = maxBulkSize;
     }
 
     /**
@@ -54,7 +73,7 @@ public class FriendRequestService {
         userRepository.findById(userId)
             .orElseThrow(() -> new ResourceNotFoundException("User not found with ID: " + userId));
 
-        List<FriendRequests> requests = friendRequestsRepository.findByReceiverUserIdAndStatus(userId, FriendStatus.PENDING);
+        List<FriendRequests> requests = friendRequestsRepository.findWithUsersByReceiverUserIdAndStatus(userId, FriendStatus.PENDING);
 
         return requests.stream()
             .map(friendRequestsConversion::fromEntity)
@@ -62,221 +81,359 @@ public class FriendRequestService {
     }
 
     /**
-     * Send a friend request from one user to another
+     * Result of {@link #upsertFriendRequest}: the transition that happened and the row it ended on
+     */
+    public record UpsertResult(FriendRequestOutcome outcome, FriendRequests request) {
+    }
+
+    /**
+     * Apply a friend request for a user pair with a single upsert and report the resulting state.
+     * Unknown user IDs are rejected by the foreign keys, deleted accounts with a ResourceNotFoundException.
      *
      * @param fromUserId Sender user ID
      * @param toUserId Recipient user ID
-     * @return Map containing success status and details
+     * @return Outcome and the stored request row
      */
     @Transactional
-    public Map<String, Object> sendFriendRequest(Integer fromUserId, Integer toUserId) {
-        Map<String, Object> response = new HashMap<>();
+    public UpsertResult upsertFriendRequest(Integer fromUserId, Integer toUserId) {
+        for (Integer userId : List.of(fromUserId, toUserId)) {
+            if (userRepository.isDeleted(userId)) {
+                throw new ResourceNotFoundException("User not found with ID: " + userId);
+            }
+        }
+        int affectedRows = friendRequestsRepository.upsertPendingRequest(
+                fromUserId, toUserId, new Timestamp(System.currentTimeMillis()));
+
+        FriendRequests request = friendRequestsRepository.findLastUpsertedRequest()
+            .orElseThrow(() -> new IllegalStateException("Upserted friend request row not found"));
+
+        FriendRequestOutcome outcome;
+        if (affectedRows == 1) {
+            outcome = FriendRequestOutcome.SENT;
+        } else if (affectedRows == 2) {
+            outcome = FriendRequestOutcome.RESENT;
+        } else if (request.getStatus() == FriendStatus.ACCEPTED) {
+            outcome = FriendRequestOutcome.ALREADY_FRIENDS;
+        } else if (fromUserId.equals(request.getSender().getUserId())) {
+            outcome = FriendRequestOutcome.ALREADY_SENT;
+        } else {
+            outcome = FriendRequestOutcome.ALREADY_RECEIVED;
+        }
+
+        if (outcome == FriendRequestOutcome.SENT || outcome == FriendRequestOutcome.RESENT) {
+            eventPublisher.publishEvent(FriendRequestChangedEvent.of(fromUserId, toUserId));
+        }
+
+        return new UpsertResult(outcome, request);
+    }
 
+    /**
+     * Send a friend request from one user to another
+     *
+     * @param fromUserId Sender user ID
+     * @param toUserId Recipient user ID
+     * @return Success status and details
+     */
+    @Transactional
+    public FriendRequestResponse sendFriendRequest(Integer fromUserId, Integer toUserId) {
         try {
             log.info("Sending friend request from user {} to user {}", fromUserId, toUserId);
 
             // Cannot send request to self
             if (fromUserId.equals(toUserId)) {
-                response.put("success", false);
-                response.put("error", "Cannot send friend request to yourself");
-                return response;
-            }
-
-            // Check if sender exists
-            User fromUser = userRepository.findById(fromUserId)
-                .orElseThrow(() -> new ResourceNotFoundException("Sender not found with ID: " + fromUserId));
-
-            // Check if recipient exists
-            User toUser = userRepository.findById(toUserId)
-                .orElseThrow(() -> new ResourceNotFoundException("Recipient not found with ID: " + toUserId));
-
-            // Check if request already exists
-            Optional<FriendRequests> existingRequest = friendRequestsRepository
-                .findBySenderUserIdAndReceiverUserId(fromUserId, toUserId);
-
-            if (existingRequest.isPresent()) {
-                FriendRequests request = existingRequest.get();
-
-                // If already accepted, we're done
-                if (request.getStatus() == FriendStatus.ACCEPTED) {
-                    response.put("success", true);
-                    response.put("message", "Already friends");
-                    return response;
-                }
-
-                // If rejected, allow sending again
-                if (request.getStatus() == FriendStatus.REJECTED) {
-                    request.setStatus(FriendStatus.PENDING);
-                    request.setCreatedAt(new Timestamp(System.currentTimeMillis()));
-                    friendRequestsRepository.save(request);
-                    response.put("success", true);
-                    response.put("message", "Friend request sent again");
-                    return response;
-                }
-
-                // If pending, don't allow sending again
-                response.put("success", false);
-                response.put("error", "Friend request already sent");
-                return response;
+                return FriendRequestResponse.failed("Cannot send friend request to yourself");
             }
 
-            // Create new friend request
-            FriendRequests friendRequest = new FriendRequests();
-            friendRequest.setSender(fromUser);
-            friendRequest.setReceiver(toUser);
-            friendRequest.setStatus(FriendStatus.PENDING);
-            friendRequest.setCreatedAt(new Timestamp(System.currentTimeMillis()));
-
-            friendRequestsRepository.save(friendRequest);
+            UpsertResult result = upsertFriendRequest(fromUserId, toUserId);
 
-            response.put("success", true);
-            response.put("message", "Friend request sent successfully");
-            response.put("request", friendRequestsConversion.fromEntity(friendRequest));
+            return switch (result.outcome()) {
+                case ALREADY_FRIENDS -> FriendRequestResponse.ok("Already friends", null);
+                case RESENT -> FriendRequestResponse.ok("Friend request sent again", null);
+                case SENT -> FriendRequestResponse.ok("Friend request sent successfully", withUsers(result.request()));
+                case ALREADY_SENT -> FriendRequestResponse.failed("Friend request already sent");
+                case ALREADY_RECEIVED -> FriendRequestResponse.failed("This user has already sent you a friend request");
+            };
 
-        } catch (ResourceNotFoundException e) {
-            response.put("success", false);
-            response.put("error", e.getMessage());
-            log.warn(e.getMessage());
+        } catch (DataIntegrityViolationException e) {
+            // Unknown sender/recipient - let the transaction roll back and GlobalExceptionHandler answer 404
+            throw e;
         } catch (Exception e) {
-            response.put("success", false);
-            response.put("error", "Failed to send friend request: " + e.getMessage());
             log.error("Error sending friend request", e);
+            return FriendRequestResponse.failed("Failed to send friend request: " + e.getMessage());
         }
-
-        return response;
     }
 
     /**
      * Accept a friend request
      *
      * @param requestId Friend request ID
-     * @return Map containing success status and details
+     * @return Success status and details
      */
     @Transactional
-    public Map<String, Object> acceptFriendRequest(Integer requestId) {
-        Map<String, Object> response = new HashMap<>();
-
+    public FriendRequestResponse acceptFriendRequest(Integer requestId) {
         try {
             log.info("Accepting friend request with ID: {}", requestId);
 
-            FriendRequests request = friendRequestsRepository.findById(requestId)
-                .orElseThrow(() -> new ResourceNotFoundException("Friend request not found with ID: " + requestId));
+            // The response shows both users
+            FriendRequests request = friendRequestsRepository.findWithUsersById(requestId).orElse(null);
+            if (request == null) {
+                log.warn("Friend request not found with ID: {}", requestId);
+                return FriendRequestResponse.failed("Friend request not found with ID: " + requestId);
+            }
 
             // Only PENDING requests can be accepted
             if (request.getStatus() != FriendStatus.PENDING) {
-                response.put("success", false);
-                response.put("error", "Friend request is not pending");
-                return response;
+                return FriendRequestResponse.failed("Friend request is not pending");
             }
 
-            // Update status
+            // Update status; created_at keeps the time the request was sent
             request.setStatus(FriendStatus.ACCEPTED);
-            request.setCreatedAt(new Timestamp(System.currentTimeMillis()));
 
-            friendRequestsRepository.save(request);
+            // Flush first: the edge insert reads the accepted row back from friend_requests
+            friendRequestsRepository.saveAndFlush(request);
+            friendshipRepository.insertEdgesForAcceptedRequests(List.of(requestId), new Timestamp(System.currentTimeMillis()));
+            eventPublisher.publishEvent(FriendshipChangedEvent.of(
+                    request.getSender().getUserId(), request.getReceiver().getUserId(), true));
 
-            response.put("success", true);
-            response.put("message", "Friend request accepted");
-            response.put("request", friendRequestsConversion.fromEntity(request));
+            return FriendRequestResponse.ok("Friend request accepted", friendRequestsConversion.fromEntity(request));
 
-        } catch (ResourceNotFoundException e) {
-            response.put("success", false);
-            response.put("error", e.getMessage());
-            log.warn(e.getMessage());
         } catch (Exception e) {
-            response.put("success", false);
-            response.put("error", "Failed to accept friend request: " + e.getMessage());
             log.error("Error accepting friend request", e);
+            return FriendRequestResponse.failed("Failed to accept friend request: " + e.getMessage());
         }
-
-        return response;
     }
 
     /**
      * Reject a friend request
      *
      * @param requestId Friend request ID
-     * @return Map containing success status and details
+     * @return Success status and details
      */
     @Transactional
-    public Map<String, Object> rejectFriendRequest(Integer requestId) {
-        Map<String, Object> response = new HashMap<>();
-
+    public FriendRequestResponse rejectFriendRequest(Integer requestId) {
         try {
             log.info("Rejecting friend request with ID: {}", requestId);
 
-            FriendRequests request = friendRequestsRepository.findById(requestId)
-                .orElseThrow(() -> new ResourceNotFoundException("Friend request not found with ID: " + requestId));
+            // The response shows both users
+            FriendRequests request = friendRequestsRepository.findWithUsersById(requestId).orElse(null);
+            if (request == null) {
+                log.warn("Friend request not found with ID: {}", requestId);
+                return FriendRequestResponse.failed("Friend request not found with ID: " + requestId);
+            }
 
             // Only PENDING requests can be rejected
             if (request.getStatus() != FriendStatus.PENDING) {
-                response.put("success", false);
-                response.put("error", "Friend request is not pending");
-                return response;
+                return FriendRequestResponse.failed("Friend request is not pending");
             }
 
-            // Update status
+            // Update status; created_at keeps the time the request was sent
             request.setStatus(FriendStatus.REJECTED);
-            request.setCreatedAt(new Timestamp(System.currentTimeMillis()));
 
             friendRequestsRepository.save(request);
+            eventPublisher.publishEvent(FriendRequestChangedEvent.of(
+                    request.getSender().getUserId(), request.getReceiver().getUserId()));
 
-            response.put("success", true);
-            response.put("message", "Friend request rejected");
-            response.put("request", friendRequestsConversion.fromEntity(request));
+            return FriendRequestResponse.ok("Friend request rejected", friendRequestsConversion.fromEntity(request));
 
-        } catch (ResourceNotFoundException e) {
-            response.put("success", false);
-            response.put("error", e.getMessage());
-            log.warn(e.getMessage());
         } catch (Exception e) {
-            response.put("success", false);
-            response.put("error", "Failed to reject friend request: " + e.getMessage());
             log.error("Error rejecting friend request", e);
+            return FriendRequestResponse.failed("Failed to reject friend request: " + e.getMessage());
         }
-
-        return response;
     }
 
     /**
      * Cancel a friend request that was sent
      *
      * @param requestId Friend request ID
-     * @return Map containing success status and details
+     * @return Success status and details
      */
     @Transactional
-    public Map<String, Object> cancelFriendRequest(Integer requestId) {
-        Map<String, Object> response = new HashMap<>();
-
+    public FriendRequestResponse cancelFriendRequest(Integer requestId) {
         try {
             log.info("Cancelling friend request with ID: {}", requestId);
 
-            FriendRequests request = friendRequestsRepository.findById(requestId)
-                .orElseThrow(() -> new ResourceNotFoundException("Friend request not found with ID: " + requestId));
+            FriendRequests request = friendRequestsRepository.findById(requestId).orElse(null);
+            if (request == null) {
+                log.warn("Friend request not found with ID: {}", requestId);
+                return FriendRequestResponse.failed("Friend request not found with ID: " + requestId);
+            }
 
             // Only PENDING requests can be cancelled
             if (request.getStatus() != FriendStatus.PENDING) {
-                response.put("success", false);
-                response.put("error", "Friend request is not pending");
-                return response;
+                return FriendRequestResponse.failed("Friend request is not pending");
             }
 
             // Delete the request
             friendRequestsRepository.delete(request);
+            eventPublisher.publishEvent(FriendRequestChangedEvent.of(
+                    request.getSender().getUserId(), request.getReceiver().getUserId()));
 
-            response.put("success", true);
-            response.put("message", "Friend request cancelled");
+            return FriendRequestResponse.ok("Friend request cancelled", null);
 
-        } catch (ResourceNotFoundException e) {
-            response.put("success", false);
-            response.put("error", e.getMessage());
-            log.warn(e.getMessage());
         } catch (Exception e) {
-            response.put("success", false);
-            response.put("error", "Failed to cancel friend request: " + e.getMessage());
             log.error("Error cancelling friend request", e);
+            return FriendRequestResponse.failed("Failed to cancel friend request: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Accept or reject many pending requests received by a user at once.
+     * Ownership and status are checked by one locking query and the transition is one UPDATE;
+     * accepted requests get their friendship edges in one INSERT and a single aggregated event.
+     *
+     * @param userId Receiver of the requests (the current user)
+     * @param requestIds Requests to respond to, or null for every pending request
+     * @param status ACCEPTED or REJECTED
+     * @return Success status, the processed request IDs and the skipped ones
+     */
+    @Transactional
+    public FriendRequestBatchResponse respondToFriendRequests(Integer userId, List<Integer> requestIds, FriendStatus status) {
+        try {
+            log.info("Bulk {} of friend requests for user {}", status, userId);
+
+            if (userId == null) {
+                return FriendRequestBatchResponse.failed("Invalid user ID");
+            }
+            if (status != FriendStatus.ACCEPTED && status != FriendStatus.REJECTED) {
+                return FriendRequestBatchResponse.failed("Friend requests can only be accepted or rejected");
+            }
+            if (requestIds != null && requestIds.isEmpty()) {
+                return FriendRequestBatchResponse.failed("No request IDs given");
+            }
+            if (requestIds != null && requestIds.size() > maxBulkSize) {
+                return FriendRequestBatchResponse.failed("At most " + maxBulkSize + " requests per call");
+            }
+
+            List<FriendRequestRefDto> owned = requestIds == null
+                ? friendRequestsRepository.lockAllPendingRequestsForReceiver(userId)
+                : friendRequestsRepository.lockPendingRequestsForReceiver(userId, requestIds);
+            List<Integer> processed = owned.stream().map(FriendRequestRefDto::requestId).toList();
+
+            if (!processed.isEmpty()) {
+                Timestamp now = new Timestamp(System.currentTimeMillis());
+                friendRequestsRepository.updatePendingRequestsStatus(processed, status);
+
+                List<Integer> senderIds = owned.stream().map(FriendRequestRefDto::senderId).toList();
+                if (status == FriendStatus.ACCEPTED) {
+                    friendshipRepository.insertEdgesForAcceptedRequests(processed, now);
+                    eventPublisher.publishEvent(new FriendshipChangedEvent(userId, senderIds, true));
+                } else {
+                    eventPublisher.publishEvent(new FriendRequestChangedEvent(userId, senderIds));
+                }
+            }
+
+            Set<Integer> skipped = null;
+            if (requestIds != null) {
+                skipped = new LinkedHashSet<>(requestIds);
+                processed.forEach(skipped::remove);
+            }
+            return FriendRequestBatchResponse.responded(processed.size() + " friend request(s) "
+                    + (status == FriendStatus.ACCEPTED ? "accepted" : "rejected"), processed, skipped);
+
+        } catch (Exception e) {
+            // Do not commit half of a bulk transition
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            log.error("Error in bulk friend request update", e);
+            return FriendRequestBatchResponse.failed("Failed to update friend requests: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Send friend requests from one user to several others in one transaction.
+     * The existing rows are locked and read in one query, every recipient is upserted by one statement that
+     * also skips unknown and deleted users, and one aggregated event covers the requests that changed.
+     *
+     * @param fromUserId Sender user ID
+     * @param toUserIds Recipient user IDs
+     * @return Success status, the outcome per recipient and the skipped IDs
+     */
+    @Transactional
+    public FriendRequestBatchResponse sendFriendRequests(Integer fromUserId, List<Integer> toUserIds) {
+        try {
+            log.info("Sending friend requests from user {} to users {}", fromUserId, toUserIds);
+
+            if (fromUserId == null || toUserIds == null || toUserIds.isEmpty()) {
+                return FriendRequestBatchResponse.failed("Invalid user IDs");
+            }
+            if (toUserIds.size() > maxBulkSize) {
+                return FriendRequestBatchResponse.failed("At most " + maxBulkSize + " recipients per call");
+            }
+
+            if (userRepository.isDeleted(fromUserId)) {
+                return FriendRequestBatchResponse.failed("User not found with ID: " + fromUserId);
+            }
+
+            Set<Integer> recipients = new LinkedHashSet<>(toUserIds);
+            recipients.remove(fromUserId);
+            recipients.remove(null);
+
+            Map<Integer, FriendRequestOutcome> results = new LinkedHashMap<>();
+            if (!recipients.isEmpty()) {
+                // Rows as they were before the upsert, locked so the outcomes below are what it did
+                Map<Integer, FriendRequestStateDto> before = new HashMap<>();
+                for (FriendRequestStateDto state : friendRequestsRepository.lockRequestsBetween(fromUserId, recipients)) {
+                    before.put(state.otherUserId(fromUserId), state);
+                }
+
+                friendRequestsRepository.upsertPendingRequests(
+                        fromUserId, recipients, new Timestamp(System.currentTimeMillis()));
+
+                // Recipients the upsert skipped (unknown or deleted) have no row with an active user
+                Set<Integer> included = new HashSet<>();
+                for (FriendRequestStateDto state : friendRequestsRepository.findRequestsWithActiveUsers(fromUserId, recipients)) {
+                    included.add(state.otherUserId(fromUserId));
+                }
+
+                List<Integer> changed = new ArrayList<>();
+                for (Integer toUserId : recipients) {
+                    if (included.contains(toUserId)) {
+                        FriendRequestOutcome outcome = outcomeOf(fromUserId, before.get(toUserId));
+                        results.put(toUserId, outcome);
+                        if (outcome == FriendRequestOutcome.SENT || outcome == FriendRequestOutcome.RESENT) {
+                            changed.add(toUserId);
+                        }
+                    }
+                }
+                if (!changed.isEmpty()) {
+                    eventPublisher.publishEvent(new FriendRequestChangedEvent(fromUserId, changed));
+                }
+            }
+
+            Set<Integer> skipped = new LinkedHashSet<>(toUserIds);
+            skipped.removeAll(results.keySet());
+
+            return FriendRequestBatchResponse.sent(results, skipped);
+
+        } catch (Exception e) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            log.error("Error sending friend requests", e);
+            return FriendRequestBatchResponse.failed("Failed to send friend requests: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Outcome of the bulk upsert for a recipient, given the pair's row before it ran (null if there was none)
+     */
+    private static FriendRequestOutcome outcomeOf(Integer fromUserId, FriendRequestStateDto before) {
+        if (before == null) {
+            return FriendRequestOutcome.SENT;
         }
+        return switch (before.status()) {
+            case REJECTED -> FriendRequestOutcome.RESENT;
+            case ACCEPTED -> FriendRequestOutcome.ALREADY_FRIENDS;
+            case PENDING -> fromUserId.equals(before.senderId())
+                    ? FriendRequestOutcome.ALREADY_SENT
+                    : FriendRequestOutcome.ALREADY_RECEIVED;
+        };
+    }
 
-        return response;
+    /**
+     * Convert a request read by the upsert, loading both users now rather than while the response is written
+     */
+    private FriendRequestsDto withUsers(FriendRequests request) {
+        FriendRequestsDto dto = friendRequestsConversion.fromEntity(request);
+        dto.setSender(Hibernate.unproxy(request.getSender(), User.class));
+        dto.setReceiver(Hibernate.unproxy(request.getReceiver(), User.class));
+        return dto;
     }
 }
@@ -1,18 +1,31 @@
 package com.ma.message_apps.service;
 
+import com.ma.message_apps.dto.ActionResponse;
+import com.ma.message_apps.dto.FriendsResponse;
+import com.ma.message_apps.dto.PendingFriendRequestDto;
+import com.ma.message_apps.dto.PendingFriendRequestsResponse;
 import com.ma.message_apps.dto.UserDto;
+import com.ma.message_apps.dto.UserResponse;
 import com.ma.message_apps.entity.User;
-import com.ma.message_apps.exception.ResourceNotFoundException;
+import com.ma.message_apps.entity.FriendRequests;
+import com.ma.message_apps.enumDto.FriendRequestOutcome;
+import com.ma.message_apps.enumDto.FriendStatus;
+import com.ma.message_apps.event.FriendRequestChangedEvent;
+import com.ma.message_apps.event.FriendshipChangedEvent;
 import com.ma.message_apps.mapper.UserConversion;
 import com.ma.message_apps.repository.FriendRequestsRepository;
+import com.ma.message_apps.repository.FriendshipRepository;
 import com.ma.message_apps.repository.UserRepository;
 import jakarta.servlet.http.HttpSession;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Timestamp;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -24,17 +37,29 @@ import java.util.Map;
 public class FriendService {
 
     private final FriendRequestsRepository friendRequestsRepository;
+    private final FriendshipRepository friendshipRepository;
     private final UserRepository userRepository;
     private final UserConversion userConversion;
+    private final FriendRequestService friendRequestService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MutualFriendService mutualFriendService;
 
     @Autowired
     public FriendService(
             FriendRequestsRepository friendRequestsRepository,
+            FriendshipRepository friendshipRepository,
             UserRepository userRepository,
-            UserConversion userConversion) {
+            UserConversion userConversion,
+            FriendRequestService friendRequestService,
+            ApplicationEventPublisher eventPublisher,
+            MutualFriendService mutualFriendService) {
         this.friendRequestsRepository = friendRequestsRepository;
+        this.friendshipRepository = friendshipRepository;
         this.userRepository = userRepository;
         this.userConversion = userConversion;
+        this.friendRequestService = friendRequestService;
+        this.eventPublisher = eventPublisher;
+        this.mutualFriendService = mutualFriendService;
     }
 
     /**
@@ -42,42 +67,31 @@ public class FriendService {
      *
      * @param session HTTP session
      * @param specifiedUserId Optional user ID (if null, uses session user)
-     * @return Map containing success status and friends list
+     * @return Success status and friends list
      */
-    public Map<String, Object> getFriendsList(HttpSession session, Integer specifiedUserId) {
-        Map<String, Object> response = new HashMap<>();
-        List<UserDto> friendsList = new ArrayList<>();
-
+    public FriendsResponse getFriendsList(HttpSession session, Integer specifiedUserId) {
         try {
-            // Don't modify this variable after initialization if used in lambda
-            final Integer userId;
+            Integer userId = specifiedUserId;
 
             // If no specified user ID, try to get from session
-            if (specifiedUserId == null) {
-                Object userIdObj = session.getAttribute("userId");
-                if (userIdObj == null || !(userIdObj instanceof Integer)) {
-                    response.put("success", true);
-                    response.put("friends", friendsList);
-                    response.put("message", "No authenticated user in session");
-                    return response;
+            if (userId == null) {
+                if (!(session.getAttribute("userId") instanceof Integer sessionUserId)) {
+                    return FriendsResponse.ok("No authenticated user in session", List.of());
                 }
-                userId = (Integer) userIdObj;
-            } else {
-                userId = specifiedUserId;
+                userId = sessionUserId;
             }
 
             // Validate user exists
-            User user = userRepository.findById(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("User not found with ID: " + userId));
+            if (!userRepository.existsById(userId)) {
+                log.warn("User not found with ID: {}", userId);
+                return FriendsResponse.failed("User not found with ID: " + userId);
+            }
 
             // Get friends from repository
-            List<User> friends = friendRequestsRepository.findAcceptedFriends(userId);
-
-            if (friends == null) {
-                friends = new ArrayList<>();
-            }
+            List<User> friends = friendshipRepository.findFriendsOf(userId);
 
             // Convert to DTOs - using a safer approach to handle potential nulls
+            List<UserDto> friendsList = new ArrayList<>(friends.size());
             for (User friend : friends) {
                 if (friend != null) {
                     try {
@@ -91,22 +105,13 @@ public class FriendService {
                 }
             }
 
-            response.put("success", true);
-            response.put("friends", friendsList);
-
             log.info("Retrieved {} friends for user ID: {}", friendsList.size(), userId);
+            return FriendsResponse.ok(null, friendsList);
 
-        } catch (ResourceNotFoundException e) {
-            response.put("success", false);
-            response.put("error", e.getMessage());
-            log.warn(e.getMessage());
         } catch (Exception e) {
-            response.put("success", false);
-            response.put("error", "Failed to retrieve friends list: " + e.getMessage());
             log.error("Error retrieving friends list", e);
+            return FriendsResponse.failed("Failed to retrieve friends list: " + e.getMessage());
         }
-
-        return response;
     }
 
     /**
@@ -118,12 +123,10 @@ public class FriendService {
      */
     public boolean areFriends(Integer userId1, Integer userId2) {
         try {
-            List<User> friendsOfUser1 = friendRequestsRepository.findAcceptedFriends(userId1);
-            if (friendsOfUser1 == null) {
+            if (userId1 == null || userId2 == null) {
                 return false;
             }
-            return friendsOfUser1.stream()
-                .anyMatch(user -> user != null && user.getUserId() != null && user.getUserId().equals(userId2));
+            return friendshipRepository.existsByUserIdAndFriendId(userId1, userId2);
         } catch (Exception e) {
             log.error("Error checking friendship: " + e.getMessage());
             return false;
@@ -134,16 +137,12 @@ public class FriendService {
      * Find a user by username or email
      *
      * @param usernameOrEmail The username or email to search for
-     * @return Map containing success status and user data if found
+     * @return Success status and user data if found
      */
-    public Map<String, Object> findUserByUsernameOrEmail(String usernameOrEmail) {
-        Map<String, Object> response = new HashMap<>();
-
+    public UserResponse findUserByUsernameOrEmail(String usernameOrEmail) {
         try {
             if (usernameOrEmail == null || usernameOrEmail.trim().isEmpty()) {
-                response.put("success", false);
-                response.put("error", "Username or email cannot be empty");
-                return response;
+                return UserResponse.failed("Username or email cannot be empty");
             }
 
             // First try to find by username
@@ -157,9 +156,7 @@ public class FriendService {
             }
 
             if (user == null) {
-                response.put("success", false);
-                response.put("error", "User not found");
-                return response;
+                return UserResponse.failed("User not found");
             }
 
             // Convert to DTO
@@ -170,16 +167,12 @@ public class FriendService {
                 userDto.setPasswordHash(null);
             }
 
-            response.put("success", true);
-            response.put("user", userDto);
+            return UserResponse.ok(null, userDto);
 
         } catch (Exception e) {
-            response.put("success", false);
-            response.put("error", "Error finding user: " + e.getMessage());
             log.error("Error finding user by username/email", e);
+            return UserResponse.failed("Error finding user: " + e.getMessage());
         }
-
-        return response;
     }
 
     /**
@@ -187,176 +180,174 @@ public class FriendService {
      *
      * @param fromUserId The user ID sending the request
      * @param toUserId The user ID receiving the request
-     * @return Map containing success status and request details
+     * @return Success status and result details
      */
-    public Map<String, Object> sendFriendRequest(Integer fromUserId, Integer toUserId) {
-        Map<String, Object> response = new HashMap<>();
-
+    @Transactional
+    public ActionResponse sendFriendRequest(Integer fromUserId, Integer toUserId) {
         try {
             // Validate user IDs
             if (fromUserId == null || toUserId == null) {
-                response.put("success", false);
-                response.put("error", "Invalid user IDs");
-                return response;
+                return ActionResponse.failed("Invalid user IDs");
             }
 
-            // Check if users exist
-            User fromUser = userRepository.findById(fromUserId)
-                .orElseThrow(() -> new ResourceNotFoundException("Sender user not found"));
-
-            User toUser = userRepository.findById(toUserId)
-                .orElseThrow(() -> new ResourceNotFoundException("Recipient user not found"));
-
-            // Check if users are already friends
-            if (areFriends(fromUserId, toUserId)) {
-                response.put("success", false);
-                response.put("error", "Users are already friends");
-                return response;
+            if (fromUserId.equals(toUserId)) {
+                return ActionResponse.failed("Cannot send friend request to yourself");
             }
-
-            // Check if there's already a pending request
-            boolean existingRequest = friendRequestsRepository.existsPendingRequest(fromUserId, toUserId);
-            if (existingRequest) {
-                response.put("success", false);
-                response.put("error", "Friend request already sent");
-                return response;
+            for (Integer userId : List.of(fromUserId, toUserId)) {
+                if (userRepository.isDeleted(userId)) {
+                    return ActionResponse.failed("User not found with ID: " + userId);
+                }
             }
 
-            // Create friend request
-            boolean requestCreated = friendRequestsRepository.createFriendRequest(fromUserId, toUserId);
+            // Single upsert decides the transition; unknown users are rejected by the foreign keys
+            FriendRequestOutcome outcome = friendRequestService.upsertFriendRequest(fromUserId, toUserId).outcome();
 
-            if (requestCreated) {
-                response.put("success", true);
-                response.put("message", "Friend request sent successfully");
-            } else {
-                response.put("success", false);
-                response.put("error", "Failed to send friend request");
-            }
+            return switch (outcome) {
+                case SENT, RESENT -> ActionResponse.ok("Friend request sent successfully");
+                case ALREADY_FRIENDS -> ActionResponse.failed("Users are already friends");
+                case ALREADY_SENT -> ActionResponse.failed("Friend request already sent");
+                case ALREADY_RECEIVED -> ActionResponse.failed("This user has already sent you a friend request");
+            };
 
-        } catch (ResourceNotFoundException e) {
-            response.put("success", false);
-            response.put("error", e.getMessage());
-            log.warn(e.getMessage());
+        } catch (DataIntegrityViolationException e) {
+            // Unknown sender/recipient - let the transaction roll back and GlobalExceptionHandler answer 404
+            throw e;
         } catch (Exception e) {
-            response.put("success", false);
-            response.put("error", "Error sending friend request: " + e.getMessage());
             log.error("Error sending friend request", e);
+            return ActionResponse.failed("Error sending friend request: " + e.getMessage());
         }
-
-        return response;
     }
 
     /**
      * Get pending friend requests for a user
      *
      * @param userId The user ID to get requests for
-     * @return Map containing success status and list of requests
+     * @return Success status and list of requests
      */
-    public Map<String, Object> getFriendRequests(Integer userId) {
-        Map<String, Object> response = new HashMap<>();
-
+    public PendingFriendRequestsResponse getFriendRequests(Integer userId) {
         try {
             // Validate user ID
             if (userId == null) {
-                response.put("success", false);
-                response.put("error", "Invalid user ID");
-                return response;
+                return PendingFriendRequestsResponse.failed("Invalid user ID");
             }
 
             // Check if user exists
-            userRepository.findById(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("User not found with ID: " + userId));
+            if (!userRepository.existsById(userId)) {
+                log.warn("User not found with ID: {}", userId);
+                return PendingFriendRequestsResponse.failed("User not found with ID: " + userId);
+            }
 
             // Get friend requests
-            List<Map<String, Object>> requests = friendRequestsRepository.findPendingRequestsForUser(userId);
+            List<PendingFriendRequestDto> requests = friendRequestsRepository.findPendingRequestsForUser(userId);
 
-            response.put("success", true);
-            response.put("requests", requests);
+            // Add mutual friend counts from the in-memory graph (no per-row queries)
+            Map<Integer, Integer> mutualFriends = mutualFriendService.countMutualFriends(userId,
+                    requests.stream().map(PendingFriendRequestDto::senderId).toList());
+            requests = requests.stream()
+                    .map(request -> request.withMutualFriends(mutualFriends.get(request.senderId())))
+                    .toList();
+
+            return PendingFriendRequestsResponse.ok(requests);
 
-        } catch (ResourceNotFoundException e) {
-            response.put("success", false);
-            response.put("error", e.getMessage());
-            log.warn(e.getMessage());
         } catch (Exception e) {
-            response.put("success", false);
-            response.put("error", "Error retrieving friend requests: " + e.getMessage());
             log.error("Error retrieving friend requests", e);
+            return PendingFriendRequestsResponse.failed("Error retrieving friend requests: " + e.getMessage());
         }
-
-        return response;
     }
 
     /**
      * Accept a friend request
      *
+     * @param userId The current user, who must be the receiver of the request
      * @param requestId The ID of the friend request to accept
-     * @return Map containing success status and result details
+     * @return Success status and result details
      */
-    public Map<String, Object> acceptFriendRequest(Integer requestId) {
-        Map<String, Object> response = new HashMap<>();
-
+    @Transactional
+    public ActionResponse acceptFriendRequest(Integer userId, Integer requestId) {
         try {
             // Validate request ID
             if (requestId == null) {
-                response.put("success", false);
-                response.put("error", "Invalid request ID");
-                return response;
+                return ActionResponse.failed("Invalid request ID");
             }
 
-            // Update the request status in the database
-            boolean updated = friendRequestsRepository.updateFriendRequestStatus(requestId, com.ma.message_apps.enumDto.FriendStatus.ACCEPTED);
-
-            if (updated) {
-                response.put("success", true);
-                response.put("message", "Friend request accepted");
-            } else {
-                response.put("success", false);
-                response.put("error", "Failed to accept friend request");
+            // Only a pending request, and only by its receiver; anything else leaves the row untouched
+            int updated = friendRequestsRepository.answerPendingRequest(requestId, userId, FriendStatus.ACCEPTED);
+            if (updated != 1) {
+                return ActionResponse.failed("No pending friend request with ID " + requestId + " for this user");
             }
 
+            friendshipRepository.insertEdgesForAcceptedRequests(List.of(requestId), new Timestamp(System.currentTimeMillis()));
+            FriendRequests request = friendRequestsRepository.findById(requestId).orElseThrow();
+            eventPublisher.publishEvent(FriendshipChangedEvent.of(
+                    request.getSender().getUserId(), request.getReceiver().getUserId(), true));
+            return ActionResponse.ok("Friend request accepted");
+
         } catch (Exception e) {
-            response.put("success", false);
-            response.put("error", "Error accepting friend request: " + e.getMessage());
             log.error("Error accepting friend request", e);
+            return ActionResponse.failed("Error accepting friend request: " + e.getMessage());
         }
-
-        return response;
     }
 
     /**
      * Reject a friend request
      *
+     * @param userId The current user, who must be the receiver of the request
      * @param requestId The ID of the friend request to reject
-     * @return Map containing success status and result details
+     * @return Success status and result details
      */
-    public Map<String, Object> rejectFriendRequest(Integer requestId) {
-        Map<String, Object> response = new HashMap<>();
-
+    @Transactional
+    public ActionResponse rejectFriendRequest(Integer userId, Integer requestId) {
         try {
             // Validate request ID
             if (requestId == null) {
-                response.put("success", false);
-                response.put("error", "Invalid request ID");
-                return response;
+                return ActionResponse.failed("Invalid request ID");
             }
 
-            // Update the request status in the database
-            boolean updated = friendRequestsRepository.updateFriendRequestStatus(requestId, com.ma.message_apps.enumDto.FriendStatus.REJECTED);
-
-            if (updated) {
-                response.put("success", true);
-                response.put("message", "Friend request rejected");
-            } else {
-                response.put("success", false);
-                response.put("error", "Failed to reject friend request");
+            int updated = friendRequestsRepository.answerPendingRequest(requestId, userId, FriendStatus.REJECTED);
+            if (updated != 1) {
+                return ActionResponse.failed("No pending friend request with ID " + requestId + " for this user");
             }
 
+            friendRequestsRepository.findById(requestId).ifPresent(request ->
+                    eventPublisher.publishEvent(FriendRequestChangedEvent.of(
+                            request.getSender().getUserId(), request.getReceiver().getUserId())));
+            return ActionResponse.ok("Friend request rejected");
+
         } catch (Exception e) {
-            response.put("success", false);
-            response.put("error", "Error rejecting friend request: " + e.getMessage());
             log.error("Error rejecting friend request", e);
+            return ActionResponse.failed("Error rejecting friend request: " + e.getMessage());
         }
+    }
+
+    /**
+     * Remove a friend. Deletes both friendship edges and the request row for the pair,
+     * so either user can send a new request later.
+     *
+     * @param userId The user removing the friend
+     * @param friendId The friend to remove
+     * @return Success status and result details
+     */
+    @Transactional
+    public ActionResponse removeFriend(Integer userId, Integer friendId) {
+        try {
+            if (userId == null || friendId == null) {
+                return ActionResponse.failed("Invalid user IDs");
+            }
+
+            int removed = friendshipRepository.deleteEdges(userId, friendId);
+            if (removed == 0) {
+                return ActionResponse.failed("Users are not friends");
+            }
+
+            friendRequestsRepository.deleteByUserPair(Math.min(userId, friendId), Math.max(userId, friendId));
+            eventPublisher.publishEvent(FriendshipChangedEvent.of(userId, friendId, false));
+
+            log.info("User {} removed friend {}", userId, friendId);
+            return ActionResponse.ok("Friend removed");
 
-        return response;
+        } catch (Exception e) {
+            log.error("Error removing friend", e);
+            return ActionResponse.failed("Error removing friend: " + e.getMessage());
+        }
     }
 }
@@ -0,0 +1,272 @@
+package com.ma.message_apps.service;
+
+import com.ma.message_apps.dto.FriendSuggestionDto;
+import com.ma.message_apps.entity.User;
+import com.ma.message_apps.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * "People you may know": ranks friends of friends by the number of friends they share with the user.
+ * Works entirely on the in-memory {@link FriendGraph}; only the final page of users is read from the database.
+ */
+@Service
+@Slf4j
+public class FriendSuggestionService {
+
+    private final FriendGraph friendGraph;
+    private final UserRepository userRepository;
+    private final ForkJoinPool pool;
+    private final int parallelThreshold;
+
+    @Autowired
+    public FriendSuggestionService(
+            FriendGraph friendGraph,
+            UserRepository userRepository,
+            @Value("${app.friends.suggestions.parallelism:0}") int parallelism,
+            @Value("${app.friends.suggestions.parallel-threshold:64}") int parallelThreshold) {
+        this.friendGraph = friendGraph;
+        this.userRepository = userRepository;
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Get friend suggestions for a user
+     *
+     * @param userId User ID
+     * @param limit Maximum number of suggestions
+     * @return Map containing success status and suggestions, best first
+     */
+    public Map<String, Object> getSuggestions(Integer userId, int limit) {
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            if (userId == null) {
+                response.put("success", false);
+                response.put("error", "Invalid user ID");
+                return response;
+            }
+            if (limit <= 0) {
+                response.put("success", false);
+                response.put("error", "Limit must be positive");
+                return response;
+            }
+
+            long start = System.nanoTime();
+            int[] ranked = rank(userId, limit);
+            log.debug("Ranked friend suggestions for user {} in {} us", userId, (System.nanoTime() - start) / 1000);
+
+            List<FriendSuggestionDto> suggestions = toDtos(ranked);
+            response.put("success", true);
+            response.put("suggestions", suggestions);
+
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("error", "Error computing friend suggestions: " + e.getMessage());
+            log.error("Error computing friend suggestions", e);
+        }
+
+        return response;
+    }
+
+    /**
+     * Count mutual friends for every two-hop candidate and keep the top {@code limit}.
+     *
+     * @return pairs of (candidate ID, mutual count), best first
+     */
+    private int[] rank(int userId, int limit) {
+        FriendGraph.Neighbors friends = friendGraph.friendsOf(userId);
+        if (friends.size() == 0) {
+            return new int[0];
+        }
+
+        CountTask task = new CountTask(friends, 0, friends.size());
+        Counts mutual = friends.size() <= parallelThreshold ? task.compute() : pool.invoke(task);
+
+        // Min-heap of the best candidates so far: lowest count (then highest ID) on top
+        PriorityQueue<int[]> top = new PriorityQueue<>(limit + 1,
+                Comparator.<int[]>comparingInt(c -> c[1]).thenComparing(c -> -c[0]));
+        for (int slot = 0; slot < mutual.keys.length; slot++) {
+            int candidate = mutual.keys[slot];
+            // The user and their existing friends are never suggested
+            if (candidate == Counts.FREE || candidate == userId
+                    || Arrays.binarySearch(friends.ids(), friends.from(), friends.to(), candidate) >= 0) {
+                continue;
+            }
+            int count = mutual.values[slot];
+            if (top.size() == limit) {
+                int[] worst = top.peek();
+                if (count < worst[1] || (count == worst[1] && candidate > worst[0])) {
+                    continue;
+                }
+            }
+            top.offer(new int[]{candidate, count});
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+
+        int[] ranked = new int[top.size() * 2];
+        for (int i = top.size() - 1; i >= 0; i--) {
+            int[] best = top.poll();
+            ranked[i * 2] = best[0];
+            ranked[i * 2 + 1] = best[1];
+        }
+        return ranked;
+    }
+
+    private List<FriendSuggestionDto> toDtos(int[] ranked) {
+        List<Integer> ids = new ArrayList<>(ranked.length / 2);
+        for (int i = 0; i < ranked.length; i += 2) {
+            ids.add(ranked[i]);
+        }
+        Map<Integer, String> usernames = new HashMap<>();
+        for (User user : userRepository.findAllById(ids)) {
+            usernames.put(user.getUserId(), user.getUsername());
+        }
+
+        List<FriendSuggestionDto> suggestions = new ArrayList<>(ids.size());
+        for (int i = 0; i < ranked.length; i += 2) {
+            String username = usernames.get(ranked[i]);
+            if (username != null) {
+                suggestions.add(new FriendSuggestionDto(ranked[i], username, ranked[i + 1]));
+            }
+        }
+        return suggestions;
+    }
+
+    /**
+     * Walks the friend lists of friends[from, to) and counts how often each candidate appears.
+     * Each task fills its own counts and the halves are merged on join, so no state is shared between threads.
+     */
+    private final class CountTask extends RecursiveTask<Counts> {
+
+        private final FriendGraph.Neighbors friends;
+        private final int from;
+        private final int to;
+
+        CountTask(FriendGraph.Neighbors friends, int from, int to) {
+            this.friends = friends;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Counts compute() {
+            if (to - from > parallelThreshold) {
+                int mid = (from + to) >>> 1;
+                CountTask left = new CountTask(friends, from, mid);
+                left.fork();
+                Counts right = new CountTask(friends, mid, to).compute();
+                Counts leftResult = left.join();
+                // Fold the smaller table into the larger one
+                if (leftResult.size < right.size) {
+                    right.addAll(leftResult);
+                    return right;
+                }
+                leftResult.addAll(right);
+                return leftResult;
+            }
+
+            Counts counts = new Counts(64);
+            for (int i = from; i < to; i++) {
+                FriendGraph.Neighbors friendsOfFriend = friendGraph.friendsOf(friends.get(i));
+                for (int j = 0; j < friendsOfFriend.size(); j++) {
+                    counts.add(friendsOfFriend.get(j), 1);
+                }
+            }
+            return counts;
+        }
+    }
+
+    /**
+     * Open-addressing map from candidate ID to mutual-friend count (linear probing, power-of-two capacity).
+     * Sized by the candidates actually seen rather than by the highest user ID.
+     */
+    static final class Counts {
+
+        static final int FREE = -1;
+
+        int[] keys;
+        int[] values;
+        int size;
+
+        Counts(int expected) {
+            int capacity = 16;
+            while (capacity < expected * 2) {
+                capacity <<= 1;
+            }
+            keys = new int[capacity];
+            Arrays.fill(keys, FREE);
+            values = new int[capacity];
+        }
+
+        int get(int key) {
+            int mask = keys.length - 1;
+            for (int slot = hash(key) & mask; keys[slot] != FREE; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+            }
+            return 0;
+        }
+
+        void add(int key, int delta) {
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+            }
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (keys[slot] != FREE) {
+                if (keys[slot] == key) {
+                    values[slot] += delta;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = delta;
+            size++;
+        }
+
+        void addAll(Counts other) {
+            for (int slot = 0; slot < other.keys.length; slot++) {
+                if (other.keys[slot] != FREE) {
+                    add(other.keys[slot], other.values[slot]);
+                }
+            }
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new int[oldKeys.length * 2];
+            Arrays.fill(keys, FREE);
+            values = new int[oldValues.length * 2];
+            size = 0;
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldKeys[slot] != FREE) {
+                    add(oldKeys[slot], oldValues[slot]);
+                }
+            }
+        }
+
+        private static int hash(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
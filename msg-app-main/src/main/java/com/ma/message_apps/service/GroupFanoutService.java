@@ -0,0 +1,69 @@
+package com.ma.message_apps.service;
+
+import com.ma.message_apps.enumDto.GroupFanoutStrategy;
+import com.ma.message_apps.event.GroupMessageSentEvent;
+import com.ma.message_apps.repository.GroupMemberRepository;
+import com.ma.message_apps.websocket.GroupMessageFrame;
+import com.ma.message_apps.websocket.ServerFrame;
+import com.ma.message_apps.websocket.WebSocketSessionRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+
+/**
+ * Delivers committed group messages.
+ * Small groups are pushed to the sockets of online members (one frame, encoded once per codec);
+ * large groups are pull-on-read, so a send costs the same whatever the group size.
+ */
+@Service
+@Slf4j
+public class GroupFanoutService {
+
+    private final GroupMemberRepository groupMemberRepository;
+    private final WebSocketSessionRegistry sessionRegistry;
+    private final int pushMaxMembers;
+
+    @Autowired
+    public GroupFanoutService(
+            GroupMemberRepository groupMemberRepository,
+            WebSocketSessionRegistry sessionRegistry,
+            @Value("${app.groups.push-max-members:50}") int pushMaxMembers) {
+        this.groupMemberRepository = groupMemberRepository;
+        this.sessionRegistry = sessionRegistry;
+        this.pushMaxMembers = pushMaxMembers;
+    }
+
+    /**
+     * Pick the delivery strategy for a group of the given size
+     */
+    public GroupFanoutStrategy strategyFor(int memberCount) {
+        return memberCount <= pushMaxMembers ? GroupFanoutStrategy.PUSH : GroupFanoutStrategy.PULL;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onGroupMessageSent(GroupMessageSentEvent event) {
+        if (strategyFor(event.memberCount()) == GroupFanoutStrategy.PULL) {
+            return;
+        }
+        try {
+            List<Integer> memberIds = groupMemberRepository.findUserIdsByGroupId(event.message().groupId());
+            // Each encoding is built at most once, by the first session that needs it
+            ServerFrame frame = new GroupMessageFrame(event.message());
+            int delivered = 0;
+            for (Integer memberId : memberIds) {
+                if (!sessionRegistry.isOnline(memberId)) {
+                    continue;
+                }
+                delivered += sessionRegistry.sendToUser(memberId, frame);
+            }
+            log.debug("Group message {} pushed to {} sessions", event.message().messageId(), delivered);
+        } catch (Exception e) {
+            // Members still get the message from history; a failed push must not surface to the sender
+            log.error("Error pushing group message {}", event.message().messageId(), e);
+        }
+    }
+}
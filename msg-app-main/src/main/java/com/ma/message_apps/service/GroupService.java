@@ -0,0 +1,365 @@
+package com.ma.message_apps.service;
+
+import com.ma.message_apps.dto.GroupDto;
+import com.ma.message_apps.dto.GroupMessageDto;
+import com.ma.message_apps.dto.UserStatusDto;
+import com.ma.message_apps.entity.ChatGroup;
+import com.ma.message_apps.entity.GroupMessage;
+import com.ma.message_apps.entity.User;
+import com.ma.message_apps.enumDto.UserStatus;
+import com.ma.message_apps.event.GroupMessageSentEvent;
+import com.ma.message_apps.exception.ResourceNotFoundException;
+import com.ma.message_apps.repository.ChatGroupRepository;
+import com.ma.message_apps.repository.GroupMemberRepository;
+import com.ma.message_apps.repository.GroupMessageRepository;
+import com.ma.message_apps.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.util.*;
+
+/**
+ * Service for group conversations.
+ * A message is one row in group_messages plus a cursor bump for the sender, regardless of group size;
+ * unread state is derived from each member's read cursor.
+ */
+@Service
+@Slf4j
+public class GroupService {
+
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
+    // group_messages.message_text is a varchar(255)
+    private static final int MAX_MESSAGE_LENGTH = 255;
+
+    private final ChatGroupRepository chatGroupRepository;
+    private final GroupMemberRepository groupMemberRepository;
+    private final GroupMessageRepository groupMessageRepository;
+    private final UserRepository userRepository;
+    private final GroupFanoutService groupFanoutService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    public GroupService(
+            ChatGroupRepository chatGroupRepository,
+            GroupMemberRepository groupMemberRepository,
+            GroupMessageRepository groupMessageRepository,
+            UserRepository userRepository,
+            GroupFanoutService groupFanoutService,
+            ApplicationEventPublisher eventPublisher) {
+        this.chatGroupRepository = chatGroupRepository;
+        this.groupMemberRepository = groupMemberRepository;
+        this.groupMessageRepository = groupMessageRepository;
+        this.userRepository = userRepository;
+        this.groupFanoutService = groupFanoutService;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Create a group owned by a user
+     *
+     * @param ownerId User creating the group (becomes a member)
+     * @param name Group name
+     * @param memberIds Initial members besides the owner (unknown and deleted accounts are ignored)
+     * @return Map containing success status and the group
+     */
+    @Transactional
+    public Map<String, Object> createGroup(Integer ownerId, String name, List<Integer> memberIds) {
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            if (name == null || name.trim().isEmpty()) {
+                response.put("success", false);
+                response.put("error", "Group name cannot be empty");
+                return response;
+            }
+            if (userRepository.isDeleted(ownerId)) {
+                response.put("success", false);
+                response.put("error", "User not found with ID: " + ownerId);
+                return response;
+            }
+
+            Timestamp now = new Timestamp(System.currentTimeMillis());
+            ChatGroup group = chatGroupRepository.save(
+                    new ChatGroup(null, name.trim(), userRepository.getReferenceById(ownerId), 0, now));
+
+            Set<Integer> members = new LinkedHashSet<>();
+            members.add(ownerId);
+            if (memberIds != null) {
+                members.addAll(memberIds);
+            }
+            int added = groupMemberRepository.addMembers(group.getGroupId(), members, now);
+            chatGroupRepository.adjustMemberCount(group.getGroupId(), added);
+
+            log.info("User {} created group {} with {} members", ownerId, group.getGroupId(), added);
+            response.put("success", true);
+            response.put("group", new GroupDto(group.getGroupId(), group.getName(), ownerId, added, now, 0L,
+                    groupFanoutService.strategyFor(added)));
+
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("error", "Failed to create group: " + e.getMessage());
+            log.error("Error creating group", e);
+        }
+
+        return response;
+    }
+
+    /**
+     * Get the groups of a user with unread counts
+     *
+     * @param userId User ID
+     * @return List of groups
+     */
+    public List<GroupDto> getGroupsForUser(Integer userId) {
+        return groupMemberRepository.findGroupsForUser(userId).stream()
+                .map(g -> new GroupDto(g.groupId(), g.name(), g.ownerId(), g.memberCount(), g.createdAt(),
+                        g.unreadCount(), groupFanoutService.strategyFor(g.memberCount())))
+                .toList();
+    }
+
+    /**
+     * Get the members of a group
+     *
+     * @param groupId Group ID
+     * @param userId User asking (must be a member)
+     * @return Map containing success status and the members
+     */
+    public Map<String, Object> getMembers(Integer groupId, Integer userId) {
+        Map<String, Object> response = new HashMap<>();
+
+        if (!groupMemberRepository.existsByGroupIdAndUserId(groupId, userId)) {
+            response.put("success", false);
+            response.put("error", "You are not a member of this group");
+            return response;
+        }
+
+        List<UserStatusDto> members = new ArrayList<>();
+        for (User user : userRepository.findAllById(groupMemberRepository.findUserIdsByGroupId(groupId))) {
+            members.add(UserStatusDto.fromUserIdAndStatus(user.getUserId(), user.getUsername(),
+                    user.getStatus() != null ? user.getStatus() : UserStatus.OFFLINE));
+        }
+        response.put("success", true);
+        response.put("members", members);
+        return response;
+    }
+
+    /**
+     * Add members to a group (owner only)
+     *
+     * @param groupId Group ID
+     * @param actingUserId User performing the change
+     * @param userIds Users to add (unknown IDs, deleted accounts and existing members are ignored)
+     * @return Map containing success status and the number of members added
+     */
+    @Transactional
+    public Map<String, Object> addMembers(Integer groupId, Integer actingUserId, List<Integer> userIds) {
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            ChatGroup group = chatGroupRepository.findById(groupId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Group not found with ID: " + groupId));
+
+            if (!group.getOwner().getUserId().equals(actingUserId)) {
+                response.put("success", false);
+                response.put("error", "Only the group owner can add members");
+                return response;
+            }
+            if (userIds == null || userIds.isEmpty()) {
+                response.put("success", false);
+                response.put("error", "No user IDs given");
+                return response;
+            }
+
+            int added = groupMemberRepository.addMembers(groupId, new LinkedHashSet<>(userIds),
+                    new Timestamp(System.currentTimeMillis()));
+            if (added > 0) {
+                chatGroupRepository.adjustMemberCount(groupId, added);
+            }
+
+            response.put("success", true);
+            response.put("added", added);
+
+        } catch (ResourceNotFoundException e) {
+            response.put("success", false);
+            response.put("error", e.getMessage());
+            log.warn(e.getMessage());
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("error", "Failed to add members: " + e.getMessage());
+            log.error("Error adding group members", e);
+        }
+
+        return response;
+    }
+
+    /**
+     * Remove a member from a group. Members can remove themselves; the owner can remove anyone.
+     *
+     * @param groupId Group ID
+     * @param actingUserId User performing the change
+     * @param userId Member to remove
+     * @return Map containing success status
+     */
+    @Transactional
+    public Map<String, Object> removeMember(Integer groupId, Integer actingUserId, Integer userId) {
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            ChatGroup group = chatGroupRepository.findById(groupId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Group not found with ID: " + groupId));
+
+            if (!actingUserId.equals(userId) && !group.getOwner().getUserId().equals(actingUserId)) {
+                response.put("success", false);
+                response.put("error", "Only the group owner can remove other members");
+                return response;
+            }
+
+            int removed = groupMemberRepository.removeMember(groupId, userId);
+            if (removed == 0) {
+                response.put("success", false);
+                response.put("error", "User is not a member of this group");
+                return response;
+            }
+            chatGroupRepository.adjustMemberCount(groupId, -removed);
+
+            response.put("success", true);
+            response.put("message", "Member removed");
+
+        } catch (ResourceNotFoundException e) {
+            response.put("success", false);
+            response.put("error", e.getMessage());
+            log.warn(e.getMessage());
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("error", "Failed to remove member: " + e.getMessage());
+            log.error("Error removing group member", e);
+        }
+
+        return response;
+    }
+
+    /**
+     * Post a message to a group
+     *
+     * @param groupId Group ID
+     * @param senderId Sender (must be a member)
+     * @param content Message content
+     * @return Map containing success status and the stored message
+     */
+    @Transactional
+    public Map<String, Object> sendMessage(Integer groupId, Integer senderId, String content) {
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            if (content == null || content.trim().isEmpty()) {
+                response.put("success", false);
+                response.put("error", "Message content cannot be empty");
+                return response;
+            }
+            if (content.length() > MAX_MESSAGE_LENGTH) {
+                response.put("success", false);
+                response.put("error", "Message is too long (at most " + MAX_MESSAGE_LENGTH + " characters)");
+                return response;
+            }
+            if (!groupMemberRepository.existsByGroupIdAndUserId(groupId, senderId)) {
+                response.put("success", false);
+                response.put("error", "You are not a member of this group");
+                return response;
+            }
+
+            ChatGroup group = chatGroupRepository.findById(groupId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Group not found with ID: " + groupId));
+            User sender = userRepository.findById(senderId)
+                    .filter(u -> u.getDeletedAt() == null)
+                    .orElseThrow(() -> new ResourceNotFoundException("User not found with ID: " + senderId));
+
+            GroupMessage message = groupMessageRepository.save(
+                    new GroupMessage(null, group, sender, content, new Timestamp(System.currentTimeMillis())));
+            // The sender has read their own message
+            groupMemberRepository.advanceReadCursor(groupId, senderId, message.getMessageId());
+
+            GroupMessageDto dto = new GroupMessageDto(message.getMessageId(), groupId, senderId,
+                    sender.getUsername(), message.getMessageText(), message.getCreatedAt());
+            eventPublisher.publishEvent(new GroupMessageSentEvent(dto, group.getMemberCount()));
+
+            response.put("success", true);
+            response.put("message", dto);
+
+        } catch (ResourceNotFoundException e) {
+            response.put("success", false);
+            response.put("error", e.getMessage());
+            log.warn(e.getMessage());
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("error", "Failed to send group message: " + e.getMessage());
+            log.error("Error sending group message", e);
+        }
+
+        return response;
+    }
+
+    /**
+     * Get a page of group messages, oldest first.
+     * With afterId the page starts right after that message (catching up); otherwise it ends
+     * right before beforeId, or at the newest message when neither is given.
+     *
+     * @param groupId Group ID
+     * @param userId User asking (must be a member)
+     * @param afterId Return messages after this ID (optional)
+     * @param beforeId Return messages before this ID (optional)
+     * @param limit Page size (optional)
+     * @return Map containing success status and the messages
+     */
+    public Map<String, Object> getMessages(Integer groupId, Integer userId, Integer afterId, Integer beforeId, Integer limit) {
+        Map<String, Object> response = new HashMap<>();
+
+        if (!groupMemberRepository.existsByGroupIdAndUserId(groupId, userId)) {
+            response.put("success", false);
+            response.put("error", "You are not a member of this group");
+            return response;
+        }
+
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        List<GroupMessageDto> messages;
+        if (afterId != null) {
+            messages = groupMessageRepository.findAfter(groupId, afterId, PageRequest.ofSize(pageSize));
+        } else {
+            messages = new ArrayList<>(groupMessageRepository.findBefore(groupId,
+                    beforeId != null ? beforeId : Integer.MAX_VALUE, PageRequest.ofSize(pageSize)));
+            Collections.reverse(messages);
+        }
+
+        response.put("success", true);
+        response.put("messages", messages);
+        return response;
+    }
+
+    /**
+     * Mark everything up to a message as read
+     *
+     * @param groupId Group ID
+     * @param userId Member
+     * @param messageId Last message read
+     * @return Map containing success status
+     */
+    @Transactional
+    public Map<String, Object> markRead(Integer groupId, Integer userId, Integer messageId) {
+        Map<String, Object> response = new HashMap<>();
+
+        if (!groupMemberRepository.existsByGroupIdAndUserId(groupId, userId)) {
+            response.put("success", false);
+            response.put("error", "You are not a member of this group");
+            return response;
+        }
+
+        groupMemberRepository.advanceReadCursor(groupId, userId, messageId);
+        response.put("success", true);
+        return response;
+    }
+}
@@ -0,0 +1,433 @@
+package com.ma.message_apps.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Cold storage for direct messages moved out of the messages table by {@link MessageArchiver}.
+ *
+ * Each month has an append-only data file of deflate-compressed blocks and an index file with one
+ * fixed-size entry per block. A block holds messages of a single conversation in sequence order, so
+ * the index is sparse (one entry per block, not per message) and a conversation's history is read by
+ * seeking straight to its blocks. The index of every month is kept in memory, keyed by conversation.
+ *
+ * Data is forced to disk before its index entry, and an index entry before the rows are deleted from
+ * the table. A batch interrupted after the write is archived again by the next run; readers drop the
+ * duplicate message IDs.
+ *
+ * The conversations of a deleted account are removed month by month: their blocks are overwritten with
+ * zeros in place and left out of a rewritten index, so the offsets of every other block stay valid.
+ */
+@Component
+@Slf4j
+public class MessageArchive {
+
+    // userLow, userHigh, firstSeq, lastSeq, firstMessageId, lastMessageId, offset, length
+    private static final int INDEX_ENTRY_SIZE = 4 + 4 + 8 + 8 + 4 + 4 + 8 + 4;
+    private static final int MAX_BLOCK_MESSAGES = 256;
+    private static final String PREFIX = "messages-";
+    private static final String UNDATED = "undated";
+
+    private final Path dir;
+    private final Map<Long, List<Block>> blocksByConversation = new ConcurrentHashMap<>();
+
+    @Autowired
+    public MessageArchive(@Value("${app.archive.messages.dir:data/archive/messages}") String dir) {
+        this.dir = Paths.get(dir);
+    }
+
+    /**
+     * A message as stored in the archive
+     */
+    public record ArchivedMessage(
+            int messageId,
+            int senderId,
+            int receiverId,
+            Long seq,
+            Timestamp createdAt,
+            Boolean isRead,
+            String messageText,
+            String clientMessageId) {
+
+        int userLowId() {
+            return Math.min(senderId, receiverId);
+        }
+
+        int userHighId() {
+            return Math.max(senderId, receiverId);
+        }
+
+        long seqOrZero() {
+            return seq == null ? 0 : seq;
+        }
+    }
+
+    private record Block(String month, int userLowId, int userHighId, long firstSeq, long lastSeq,
+                         int firstMessageId, int lastMessageId, long offset, int length) {
+    }
+
+    /**
+     * Load the indexes of the months archived so far
+     */
+    @PostConstruct
+    public void loadIndex() {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        int blocks = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, PREFIX + "*.idx")) {
+            for (Path indexFile : files) {
+                String name = indexFile.getFileName().toString();
+                String month = name.substring(PREFIX.length(), name.length() - ".idx".length());
+                long dataLength = Files.exists(dataFile(month)) ? Files.size(dataFile(month)) : 0;
+                byte[] index = Files.readAllBytes(indexFile);
+                ByteBuffer buffer = ByteBuffer.wrap(index);
+                // A torn last entry (crash while appending) is ignored
+                while (buffer.remaining() >= INDEX_ENTRY_SIZE) {
+                    Block block = new Block(month, buffer.getInt(), buffer.getInt(), buffer.getLong(), buffer.getLong(),
+                            buffer.getInt(), buffer.getInt(), buffer.getLong(), buffer.getInt());
+                    if (block.offset() + block.length() <= dataLength) {
+                        addBlock(block);
+                        blocks++;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read message archive index in " + dir, e);
+        }
+        log.info("Message archive: {} blocks of {} conversations loaded from {}", blocks, blocksByConversation.size(), dir);
+    }
+
+    /**
+     * Append messages to the files of the months they were created in.
+     * Returns once data and index are on disk.
+     *
+     * @param messages Messages in message ID order
+     */
+    public synchronized void append(List<ArchivedMessage> messages) throws IOException {
+        Files.createDirectories(dir);
+
+        // month -> conversation -> messages, each conversation in sequence order
+        Map<String, Map<Long, List<ArchivedMessage>>> byMonth = new TreeMap<>();
+        for (ArchivedMessage message : messages) {
+            byMonth.computeIfAbsent(monthOf(message.createdAt()), m -> new LinkedHashMap<>())
+                    .computeIfAbsent(key(message.userLowId(), message.userHighId()), k -> new ArrayList<>())
+                    .add(message);
+        }
+
+        List<Block> written = new ArrayList<>();
+        for (Map.Entry<String, Map<Long, List<ArchivedMessage>>> month : byMonth.entrySet()) {
+            try (FileChannel data = FileChannel.open(dataFile(month.getKey()),
+                         StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                 FileChannel index = FileChannel.open(indexFile(month.getKey()),
+                         StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                long offset = data.size();
+                List<Block> blocks = new ArrayList<>();
+                for (List<ArchivedMessage> conversation : month.getValue().values()) {
+                    conversation.sort(Comparator.comparingLong(ArchivedMessage::seqOrZero)
+                            .thenComparingInt(ArchivedMessage::messageId));
+                    for (int from = 0; from < conversation.size(); from += MAX_BLOCK_MESSAGES) {
+                        List<ArchivedMessage> chunk = conversation.subList(from, Math.min(from + MAX_BLOCK_MESSAGES, conversation.size()));
+                        byte[] bytes = encode(chunk);
+                        writeFully(data, ByteBuffer.wrap(bytes));
+                        ArchivedMessage first = chunk.get(0);
+                        ArchivedMessage last = chunk.get(chunk.size() - 1);
+                        blocks.add(new Block(month.getKey(), first.userLowId(), first.userHighId(),
+                                first.seqOrZero(), last.seqOrZero(),
+                                chunk.stream().mapToInt(ArchivedMessage::messageId).min().orElseThrow(),
+                                chunk.stream().mapToInt(ArchivedMessage::messageId).max().orElseThrow(),
+                                offset, bytes.length));
+                        offset += bytes.length;
+                    }
+                }
+                data.force(false);
+
+                ByteBuffer entries = ByteBuffer.allocate(blocks.size() * INDEX_ENTRY_SIZE);
+                for (Block block : blocks) {
+                    entries.putInt(block.userLowId()).putInt(block.userHighId())
+                            .putLong(block.firstSeq()).putLong(block.lastSeq())
+                            .putInt(block.firstMessageId()).putInt(block.lastMessageId())
+                            .putLong(block.offset()).putInt(block.length());
+                }
+                entries.flip();
+                writeFully(index, entries);
+                index.force(false);
+                written.addAll(blocks);
+            }
+        }
+        written.forEach(this::addBlock);
+    }
+
+    /**
+     * Archived messages of a conversation between two sequence numbers. Blocks outside the range are
+     * skipped on the in-memory index, so asking for a range the archive has nothing in reads no file.
+     *
+     * @param userLowId Lower user ID of the pair
+     * @param userHighId Higher user ID of the pair
+     * @param afterSeq Only messages with a higher sequence number (Long.MIN_VALUE for no lower bound)
+     * @param beforeSeq Only messages with a lower sequence number
+     * @param limit Maximum number of messages; the newest ones are kept
+     * @return Messages in sequence order
+     */
+    public List<ArchivedMessage> read(int userLowId, int userHighId, long afterSeq, long beforeSeq, int limit)
+            throws IOException {
+        List<Block> blocks = blocksByConversation.get(key(userLowId, userHighId));
+        if (blocks == null) {
+            return List.of();
+        }
+        List<Block> candidates;
+        synchronized (blocks) {
+            candidates = new ArrayList<>(blocks);
+        }
+
+        // Newest blocks first, until enough messages are collected
+        TreeMap<Long, ArchivedMessage> bySeq = new TreeMap<>();
+        Set<Integer> seen = new HashSet<>();
+        for (int i = candidates.size() - 1; i >= 0 && bySeq.size() < limit; i--) {
+            Block block = candidates.get(i);
+            if (block.firstSeq() >= beforeSeq || block.lastSeq() <= afterSeq) {
+                continue;
+            }
+            for (ArchivedMessage message : readBlock(block)) {
+                if (message.seqOrZero() < beforeSeq && message.seqOrZero() > afterSeq && seen.add(message.messageId())) {
+                    bySeq.put(message.seqOrZero() == 0 ? -message.messageId() : message.seqOrZero(), message);
+                }
+            }
+        }
+        List<ArchivedMessage> result = new ArrayList<>(bySeq.values());
+        return result.size() > limit ? result.subList(result.size() - limit, result.size()) : result;
+    }
+
+    /**
+     * Delete the files of every month before the given one
+     *
+     * @return number of months dropped
+     */
+    public synchronized int dropMonthsBefore(YearMonth month) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return 0;
+        }
+        String limit = month.toString();
+        Set<String> dropped = new TreeSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, PREFIX + "*.{dat,idx}")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String fileMonth = name.substring(PREFIX.length(), name.lastIndexOf('.'));
+                if (!UNDATED.equals(fileMonth) && fileMonth.compareTo(limit) < 0) {
+                    dropped.add(fileMonth);
+                }
+            }
+        }
+        if (dropped.isEmpty()) {
+            return 0;
+        }
+        // Forget the blocks before the files go, so no reader seeks into a deleted file
+        for (List<Block> blocks : blocksByConversation.values()) {
+            synchronized (blocks) {
+                blocks.removeIf(block -> dropped.contains(block.month()));
+            }
+        }
+        blocksByConversation.values().removeIf(List::isEmpty);
+        for (String fileMonth : dropped) {
+            Files.deleteIfExists(indexFile(fileMonth));
+            Files.deleteIfExists(dataFile(fileMonth));
+        }
+        return dropped.size();
+    }
+
+    /**
+     * Remove the conversations of a user from the oldest archived month that still holds one
+     *
+     * @return number of blocks removed; 0 once nothing of the user is left
+     */
+    public synchronized int removeConversationsOf(int userId) throws IOException {
+        String month = null;
+        for (Map.Entry<Long, List<Block>> conversation : blocksByConversation.entrySet()) {
+            if (involves(conversation.getKey(), userId)) {
+                synchronized (conversation.getValue()) {
+                    for (Block block : conversation.getValue()) {
+                        if (month == null || block.month().compareTo(month) < 0) {
+                            month = block.month();
+                        }
+                    }
+                }
+            }
+        }
+        if (month == null) {
+            return 0;
+        }
+
+        // Forget the blocks first, so no reader seeks into the zeroed bytes
+        String target = month;
+        List<Block> removed = new ArrayList<>();
+        for (Map.Entry<Long, List<Block>> conversation : blocksByConversation.entrySet()) {
+            if (involves(conversation.getKey(), userId)) {
+                List<Block> blocks = conversation.getValue();
+                synchronized (blocks) {
+                    blocks.stream().filter(block -> block.month().equals(target)).forEach(removed::add);
+                    blocks.removeIf(block -> block.month().equals(target));
+                }
+            }
+        }
+        blocksByConversation.values().removeIf(List::isEmpty);
+
+        // Data first: if the index rewrite is lost, the next run finds the blocks again and finishes
+        try (FileChannel data = FileChannel.open(dataFile(target), StandardOpenOption.WRITE)) {
+            for (Block block : removed) {
+                ByteBuffer zeros = ByteBuffer.allocate(block.length());
+                long position = block.offset();
+                while (zeros.hasRemaining()) {
+                    position += data.write(zeros, position);
+                }
+            }
+            data.force(false);
+        }
+
+        ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(indexFile(target)));
+        ByteBuffer kept = ByteBuffer.allocate(index.remaining());
+        byte[] entry = new byte[INDEX_ENTRY_SIZE];
+        while (index.remaining() >= INDEX_ENTRY_SIZE) {
+            index.get(entry);
+            ByteBuffer fields = ByteBuffer.wrap(entry);
+            if (!involves(key(fields.getInt(), fields.getInt()), userId)) {
+                kept.put(entry);
+            }
+        }
+        kept.flip();
+        Path temp = dir.resolve(PREFIX + target + ".idx.tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(out, kept);
+            out.force(false);
+        }
+        Files.move(temp, indexFile(target), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return removed.size();
+    }
+
+    private static boolean involves(long conversation, int userId) {
+        return (int) (conversation >>> 32) == userId || (int) conversation == userId;
+    }
+
+    private void addBlock(Block block) {
+        List<Block> blocks = blocksByConversation.computeIfAbsent(key(block.userLowId(), block.userHighId()),
+                k -> new ArrayList<>());
+        synchronized (blocks) {
+            blocks.add(block);
+            blocks.sort(Comparator.comparingLong(Block::firstSeq).thenComparingInt(Block::firstMessageId));
+        }
+    }
+
+    private List<ArchivedMessage> readBlock(Block block) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(block.length());
+        try (FileChannel data = FileChannel.open(dataFile(block.month()), StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (data.read(buffer, block.offset() + buffer.position()) < 0) {
+                    throw new EOFException("Archive block past the end of " + dataFile(block.month()));
+                }
+            }
+        }
+        return decode(buffer.array());
+    }
+
+    private static byte[] encode(List<ArchivedMessage> messages) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            out.writeInt(messages.size());
+            for (ArchivedMessage message : messages) {
+                out.writeInt(message.messageId());
+                out.writeInt(message.senderId());
+                out.writeInt(message.receiverId());
+                out.writeLong(message.seq() == null ? -1 : message.seq());
+                out.writeLong(message.createdAt() == null ? Long.MIN_VALUE : message.createdAt().getTime());
+                out.writeByte(message.isRead() == null ? -1 : message.isRead() ? 1 : 0);
+                writeString(out, message.messageText());
+                writeString(out, message.clientMessageId());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<ArchivedMessage> decode(byte[] block) throws IOException {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(block)))) {
+            int count = in.readInt();
+            List<ArchivedMessage> messages = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int messageId = in.readInt();
+                int senderId = in.readInt();
+                int receiverId = in.readInt();
+                long seq = in.readLong();
+                long createdAt = in.readLong();
+                byte isRead = in.readByte();
+                messages.add(new ArchivedMessage(messageId, senderId, receiverId,
+                        seq < 0 ? null : seq,
+                        createdAt == Long.MIN_VALUE ? null : new Timestamp(createdAt),
+                        isRead < 0 ? null : isRead == 1,
+                        readString(in), readString(in)));
+            }
+            return messages;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private Path dataFile(String month) {
+        return dir.resolve(PREFIX + month + ".dat");
+    }
+
+    private Path indexFile(String month) {
+        return dir.resolve(PREFIX + month + ".idx");
+    }
+
+    private static String monthOf(Timestamp createdAt) {
+        return createdAt == null ? UNDATED : YearMonth.from(createdAt.toInstant().atOffset(ZoneOffset.UTC)).toString();
+    }
+
+    private static long key(int userLowId, int userHighId) {
+        return ((long) userLowId << 32) | (userHighId & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,185 @@
+package com.ma.message_apps.service;
+
+import com.ma.message_apps.entity.PurgeCheckpoint;
+import com.ma.message_apps.repository.MessageRepository;
+import com.ma.message_apps.repository.PendingDeliveryRepository;
+import com.ma.message_apps.repository.PurgeCheckpointRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves direct messages of past months from the messages table to the {@link MessageArchive}, so the
+ * table (and its indexes) only holds the recent, frequently read months.
+ *
+ * Works like {@link MessageRetentionPurger}: it walks the primary key from its checkpoint in small
+ * batches, and for each batch appends the rows to the archive files, then deletes them by primary key
+ * in a short transaction that also advances the checkpoint. Message IDs grow with creation time, so the
+ * walk stops at the first message of a month that is still kept in the table.
+ *
+ * With a retention period configured, archive months that ended before it are deleted as a whole.
+ */
+@Component
+@Slf4j
+public class MessageArchiver {
+
+    private static final String JOB = "archive";
+
+    private final MessageRepository messageRepository;
+    private final PendingDeliveryRepository pendingDeliveryRepository;
+    private final PurgeCheckpointRepository purgeCheckpointRepository;
+    private final MessageArchive messageArchive;
+    private final MessageBodyStore messageBodyStore;
+    private final ConversationTailCache conversationTailCache;
+    private final TransactionTemplate transaction;
+    private final int keepMonths;
+    private final long retentionMs;
+    private final int batchSize;
+    private final long pauseMs;
+    private final long maxRunMs;
+
+    private final Counter archivedCounter;
+    private final Timer batchTimer;
+
+    @Autowired
+    public MessageArchiver(
+            MessageRepository messageRepository,
+            PendingDeliveryRepository pendingDeliveryRepository,
+            PurgeCheckpointRepository purgeCheckpointRepository,
+            MessageArchive messageArchive,
+            MessageBodyStore messageBodyStore,
+            ConversationTailCache conversationTailCache,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${app.archive.messages.after-months:0}") int keepMonths,
+            @Value("${app.retention.messages.days:0}") long retentionDays,
+            @Value("${app.archive.messages.batch-size:1000}") int batchSize,
+            @Value("${app.archive.messages.pause-ms:100}") long pauseMs,
+            @Value("${app.archive.messages.max-run-ms:10000}") long maxRunMs) {
+        this.messageRepository = messageRepository;
+        this.pendingDeliveryRepository = pendingDeliveryRepository;
+        this.purgeCheckpointRepository = purgeCheckpointRepository;
+        this.messageArchive = messageArchive;
+        this.messageBodyStore = messageBodyStore;
+        this.conversationTailCache = conversationTailCache;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.keepMonths = keepMonths;
+        this.retentionMs = retentionDays * 86_400_000L;
+        this.batchSize = batchSize;
+        this.pauseMs = pauseMs;
+        this.maxRunMs = maxRunMs;
+        this.archivedCounter = Counter.builder("messages.archived")
+                .description("Messages moved from the messages table to the archive")
+                .register(meterRegistry);
+        this.batchTimer = Timer.builder("messages.archive.batch")
+                .description("Time spent archiving one batch of messages")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Archive the messages of months older than the configured number for up to the run's time budget
+     * (no-op when archiving is disabled)
+     */
+    @Scheduled(initialDelayString = "${app.archive.messages.interval-ms:3600000}",
+               fixedDelayString = "${app.archive.messages.interval-ms:3600000}")
+    public void archive() {
+        if (keepMonths <= 0) {
+            return;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            YearMonth firstKept = YearMonth.now(ZoneOffset.UTC).minusMonths(keepMonths);
+            Timestamp cutoff = Timestamp.from(firstKept.atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC));
+            PurgeCheckpoint checkpoint = purgeCheckpointRepository.findById(JOB)
+                    .orElseGet(() -> new PurgeCheckpoint(JOB, 0L, 0L, cutoff));
+
+            long archived = 0;
+            boolean more = true;
+            while (more && System.currentTimeMillis() - start < maxRunMs) {
+                List<Object[]> rows = messageRepository.findForArchiveAfter(
+                        checkpoint.getLastId().intValue(), PageRequest.ofSize(batchSize));
+                List<Object[]> due = new ArrayList<>(rows.size());
+                List<Integer> truncatedIds = new ArrayList<>();
+                for (Object[] row : rows) {
+                    Timestamp createdAt = (Timestamp) row[4];
+                    if (createdAt != null && !createdAt.before(cutoff)) {
+                        more = false;
+                        break;
+                    }
+                    due.add(row);
+                    if (Boolean.TRUE.equals(row[8])) {
+                        truncatedIds.add((Integer) row[0]);
+                    }
+                }
+                // The archive takes the full text; the message_bodies rows go with the messages (FK cascade)
+                Map<Integer, String> bodies = truncatedIds.isEmpty() ? Map.of() : messageBodyStore.loadAll(truncatedIds);
+                List<MessageArchive.ArchivedMessage> batch = new ArrayList<>(due.size());
+                for (Object[] row : due) {
+                    batch.add(new MessageArchive.ArchivedMessage((Integer) row[0], (Integer) row[1], (Integer) row[2],
+                            (Long) row[3], (Timestamp) row[4], (Boolean) row[5],
+                            bodies.getOrDefault((Integer) row[0], (String) row[6]), (String) row[7]));
+                }
+                if (rows.size() < batchSize) {
+                    more = false;
+                }
+                if (batch.isEmpty()) {
+                    break;
+                }
+
+                int moved = batchTimer.recordCallable(() -> {
+                    messageArchive.append(batch);
+                    List<Integer> ids = batch.stream().map(MessageArchive.ArchivedMessage::messageId).toList();
+                    return transaction.execute(status -> {
+                        int n = messageRepository.deleteByMessageIds(ids);
+                        checkpoint.setLastId(ids.get(ids.size() - 1).longValue());
+                        checkpoint.setPurged(checkpoint.getPurged() + n);
+                        checkpoint.setUpdatedAt(new Timestamp(System.currentTimeMillis()));
+                        purgeCheckpointRepository.save(checkpoint);
+                        return n;
+                    });
+                });
+                archived += moved;
+                archivedCounter.increment(moved);
+
+                if (more && pauseMs > 0) {
+                    Thread.sleep(pauseMs);
+                }
+            }
+
+            if (archived > 0) {
+                conversationTailCache.dropOlderThan(cutoff);
+                int orphaned = transaction.execute(status -> pendingDeliveryRepository.deleteOrphaned());
+                log.info("Message archive: {} messages older than {} archived in {} ms ({} pending deliveries dropped), checkpoint {}",
+                        archived, firstKept, System.currentTimeMillis() - start, orphaned, checkpoint.getLastId());
+            }
+
+            if (retentionMs > 0) {
+                // Months that ended before the retention cutoff hold nothing that may be kept
+                YearMonth expired = YearMonth.from(new Timestamp(start - retentionMs).toInstant().atOffset(ZoneOffset.UTC));
+                int dropped = messageArchive.dropMonthsBefore(expired);
+                if (dropped > 0) {
+                    log.info("Message archive: {} months before {} deleted", dropped, expired);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Error archiving messages", e);
+        }
+    }
+}
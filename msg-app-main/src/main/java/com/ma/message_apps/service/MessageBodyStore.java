@@ -0,0 +1,134 @@
+package com.ma.message_apps.service;
+
+import com.ma.message_apps.entity.Message;
+import com.ma.message_apps.entity.MessageBody;
+import com.ma.message_apps.repository.MessageBodyRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Splits message texts between the messages row and message_bodies.
+ *
+ * Texts up to the inline length are stored as they are. Longer ones keep a preview inline (so lists,
+ * pushes and the sync feed never carry more than that) with the truncated flag set, and the full text
+ * goes to message_bodies, deflate-compressed, to be fetched on demand.
+ */
+@Component
+public class MessageBodyStore {
+
+    private static final String ELLIPSIS = "…";
+
+    private final MessageBodyRepository messageBodyRepository;
+    private final int inlineLength;
+    private final int maxLength;
+
+    @Autowired
+    public MessageBodyStore(
+            MessageBodyRepository messageBodyRepository,
+            @Value("${app.messages.inline-length:255}") int inlineLength,
+            @Value("${app.messages.max-length:65536}") int maxLength) {
+        this.messageBodyRepository = messageBodyRepository;
+        this.inlineLength = inlineLength;
+        this.maxLength = maxLength;
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * Whether a text is too long to be stored inline
+     */
+    public boolean overflows(String text) {
+        return text.length() > inlineLength;
+    }
+
+    /**
+     * The start of a long text, short enough for messages.message_text, ending in an ellipsis
+     */
+    public String preview(String text) {
+        int end = inlineLength - ELLIPSIS.length();
+        if (Character.isHighSurrogate(text.charAt(end - 1))) {
+            end--;
+        }
+        return text.substring(0, end) + ELLIPSIS;
+    }
+
+    /**
+     * Store the full text of a message saved with a preview
+     */
+    public void store(Message message, String text) {
+        messageBodyRepository.save(new MessageBody(null, message, compress(text), text.length()));
+    }
+
+    /**
+     * Full text of a truncated message, or null if it has none
+     */
+    public String load(Integer messageId) {
+        return messageBodyRepository.findById(messageId)
+                .map(body -> decompress(body.getBody(), body.getLength()))
+                .orElse(null);
+    }
+
+    /**
+     * Full texts of several truncated messages, by message ID
+     */
+    public Map<Integer, String> loadAll(Collection<Integer> messageIds) {
+        Map<Integer, String> texts = new HashMap<>();
+        for (MessageBody body : messageBodyRepository.findAllById(messageIds)) {
+            texts.put(body.getMessageId(), decompress(body.getBody(), body.getLength()));
+        }
+        return texts;
+    }
+
+    private static byte[] compress(String text) {
+        byte[] input = text.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 2 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static String decompress(byte[] body, int length) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(body);
+            // UTF-8 takes at most three bytes per UTF-16 unit
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length * 3);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated message body");
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toString(StandardCharsets.UTF_8);
+        } catch (DataFormatException | IOException e) {
+            throw new UncheckedIOException(new IOException("Corrupt message body", e));
+        } finally {
+            inflater.end();
+        }
+    }
+}
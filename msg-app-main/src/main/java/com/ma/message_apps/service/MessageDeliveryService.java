@@ -0,0 +1,160 @@
+package com.ma.message_apps.service;
+
+import com.ma.message_apps.dto.DirectMessageDto;
+import com.ma.message_apps.event.AccountDeletedEvent;
+import com.ma.message_apps.event.MessageSentEvent;
+import com.ma.message_apps.event.ThumbnailFinishedEvent;
+import com.ma.message_apps.websocket.ClientConnection;
+import com.ma.message_apps.websocket.DirectMessageFrame;
+import com.ma.message_apps.websocket.PendingMessagesFrame;
+import com.ma.message_apps.websocket.ServerFrame;
+import com.ma.message_apps.websocket.ThumbnailFrame;
+import com.ma.message_apps.websocket.WebSocketSessionRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.socket.CloseStatus;
+
+import java.util.List;
+
+/**
+ * Pushes committed one-to-one messages to the open sessions of both participants
+ * (the sender's other tabs included). Every frame carries the conversation sequence number,
+ * so a client that sees a jump knows exactly which range to fetch from the resume endpoint.
+ *
+ * Messages for a receiver without an open session go to the {@link OfflineDeliveryQueue} and are
+ * sent as one "pending" frame when the receiver connects; the client acks the last message ID and
+ * gets the next batch, if any.
+ */
+@Service
+@Slf4j
+public class MessageDeliveryService {
+
+    private final WebSocketSessionRegistry sessionRegistry;
+    private final OfflineDeliveryQueue offlineDeliveryQueue;
+    private final int batchSize;
+
+    @Autowired
+    public MessageDeliveryService(
+            WebSocketSessionRegistry sessionRegistry,
+            OfflineDeliveryQueue offlineDeliveryQueue,
+            @Value("${app.delivery.offline.batch-size:200}") int batchSize) {
+        this.sessionRegistry = sessionRegistry;
+        this.offlineDeliveryQueue = offlineDeliveryQueue;
+        this.batchSize = batchSize;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageSent(MessageSentEvent event) {
+        DirectMessageDto message = event.message();
+        boolean receiverOnline = sessionRegistry.isOnline(message.receiverId());
+        boolean senderOnline = sessionRegistry.isOnline(message.senderId());
+        if (!receiverOnline) {
+            offlineDeliveryQueue.enqueue(message.receiverId(), message);
+        }
+        if (!receiverOnline && !senderOnline) {
+            return;
+        }
+        try {
+            ServerFrame frame = new DirectMessageFrame(message);
+            if (receiverOnline && sessionRegistry.sendToUser(message.receiverId(), frame) == 0) {
+                // Every session turned out to be dead
+                offlineDeliveryQueue.enqueue(message.receiverId(), message);
+            }
+            if (senderOnline && !message.senderId().equals(message.receiverId())) {
+                sessionRegistry.sendToUser(message.senderId(), frame);
+            }
+        } catch (Exception e) {
+            // The message is stored; clients pick it up through the resume endpoint
+            log.error("Error pushing message {}", message.messageId(), e);
+        }
+    }
+
+    /**
+     * Tell both participants that the thumbnail of an attachment they have is ready (or failed).
+     * Only open sessions get it; the history carries the thumbnail state anyway.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onThumbnailFinished(ThumbnailFinishedEvent event) {
+        try {
+            ServerFrame frame = new ThumbnailFrame(event);
+            sessionRegistry.sendToUser(event.receiverId(), frame);
+            if (!event.senderId().equals(event.receiverId())) {
+                sessionRegistry.sendToUser(event.senderId(), frame);
+            }
+        } catch (Exception e) {
+            log.error("Error pushing thumbnail of attachment {}", event.attachmentId(), e);
+        }
+    }
+
+    /**
+     * Disconnect the sessions of a deleted account
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAccountDeleted(AccountDeletedEvent event) {
+        int closed = sessionRegistry.closeAll(event.userId(), CloseStatus.POLICY_VIOLATION.withReason("Account deleted"));
+        if (closed > 0) {
+            log.info("Closed {} sessions of deleted user {}", closed, event.userId());
+        }
+    }
+
+    /**
+     * Disconnect the sessions opened from an HTTP session that is being logged out
+     */
+    public void disconnect(Integer userId, String httpSessionId) {
+        int closed = sessionRegistry.closeForHttpSession(userId, httpSessionId, CloseStatus.NORMAL.withReason("Logged out"));
+        if (closed > 0) {
+            log.info("Closed {} sessions of user {} on logout", closed, userId);
+        }
+    }
+
+    /**
+     * Send the next batch of pending messages to a freshly connected session
+     */
+    public void drain(ClientConnection connection) {
+        try {
+            ServerFrame frame = pendingFrame(connection.userId());
+            if (frame != null) {
+                sessionRegistry.send(connection, frame);
+            }
+        } catch (Exception e) {
+            log.error("Error draining pending deliveries for user {}", connection.userId(), e);
+        }
+    }
+
+    /**
+     * Send the next batch of pending messages to every open session of a user (e.g. right after login)
+     */
+    public void drainToOpenSessions(Integer userId) {
+        if (!sessionRegistry.isOnline(userId)) {
+            return;
+        }
+        try {
+            ServerFrame frame = pendingFrame(userId);
+            if (frame != null) {
+                sessionRegistry.sendToUser(userId, frame);
+            }
+        } catch (Exception e) {
+            log.error("Error draining pending deliveries for user {}", userId, e);
+        }
+    }
+
+    /**
+     * Trim everything the client acknowledged and continue with the next batch
+     */
+    public void acknowledge(ClientConnection connection, Integer upToMessageId) {
+        offlineDeliveryQueue.acknowledge(connection.userId(), upToMessageId);
+        drain(connection);
+    }
+
+    private ServerFrame pendingFrame(Integer userId) {
+        List<DirectMessageDto> pending = offlineDeliveryQueue.peek(userId, batchSize + 1);
+        if (pending.isEmpty()) {
+            return null;
+        }
+        boolean hasMore = pending.size() > batchSize;
+        return new PendingMessagesFrame(hasMore ? pending.subList(0, batchSize) : pending, hasMore);
+    }
+}
@@ -0,0 +1,157 @@
+package com.ma.message_apps.service;
+
+import com.ma.message_apps.entity.PurgeCheckpoint;
+import com.ma.message_apps.repository.MessageRepository;
+import com.ma.message_apps.repository.PendingDeliveryRepository;
+import com.ma.message_apps.repository.PurgeCheckpointRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletes direct messages older than the retention period.
+ *
+ * A single {@code DELETE ... WHERE created_at < ?} would lock every matching row and fill the undo log
+ * for as long as it runs. Instead the purger walks the primary key from its checkpoint in small batches:
+ * it reads the next IDs without locking, deletes the expired ones by primary key in a short transaction
+ * that also advances the checkpoint, and pauses between batches so the write path keeps its share of the
+ * server. Each run stops after a time budget and the next one continues from the checkpoint.
+ *
+ * Message IDs grow with creation time, so the walk stops at the first message that has not expired yet.
+ * Conversation counters (conversation_sequences) are left alone, so numbering continues after a purge and
+ * resuming clients simply see no messages below the oldest kept one. Offline deliveries that pointed at
+ * purged messages are removed at the end of each run, and cached conversations holding them are unloaded.
+ */
+@Component
+@Slf4j
+public class MessageRetentionPurger {
+
+    private static final String JOB = "messages";
+
+    private final MessageRepository messageRepository;
+    private final PendingDeliveryRepository pendingDeliveryRepository;
+    private final PurgeCheckpointRepository purgeCheckpointRepository;
+    private final ConversationTailCache conversationTailCache;
+    private final TransactionTemplate transaction;
+    private final long retentionMs;
+    private final int batchSize;
+    private final long pauseMs;
+    private final long maxRunMs;
+
+    private final Counter purgedCounter;
+    private final Timer batchTimer;
+    private final AtomicLong checkpointId = new AtomicLong();
+
+    @Autowired
+    public MessageRetentionPurger(
+            MessageRepository messageRepository,
+            PendingDeliveryRepository pendingDeliveryRepository,
+            PurgeCheckpointRepository purgeCheckpointRepository,
+            ConversationTailCache conversationTailCache,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${app.retention.messages.days:0}") long retentionDays,
+            @Value("${app.retention.messages.batch-size:500}") int batchSize,
+            @Value("${app.retention.messages.pause-ms:100}") long pauseMs,
+            @Value("${app.retention.messages.max-run-ms:10000}") long maxRunMs) {
+        this.messageRepository = messageRepository;
+        this.pendingDeliveryRepository = pendingDeliveryRepository;
+        this.purgeCheckpointRepository = purgeCheckpointRepository;
+        this.conversationTailCache = conversationTailCache;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.retentionMs = retentionDays * 86_400_000L;
+        this.batchSize = batchSize;
+        this.pauseMs = pauseMs;
+        this.maxRunMs = maxRunMs;
+        this.purgedCounter = Counter.builder("messages.purged")
+                .description("Messages deleted by the retention purge")
+                .register(meterRegistry);
+        this.batchTimer = Timer.builder("messages.purge.batch")
+                .description("Time spent deleting one retention purge batch")
+                .register(meterRegistry);
+        Gauge.builder("messages.purge.checkpoint", checkpointId, AtomicLong::get)
+                .description("Highest message ID the retention purge has handled")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Purge expired messages for up to the run's time budget (no-op when retention is disabled)
+     */
+    @Scheduled(initialDelayString = "${app.retention.messages.interval-ms:60000}",
+               fixedDelayString = "${app.retention.messages.interval-ms:60000}")
+    public void purge() {
+        if (retentionMs <= 0) {
+            return;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            Timestamp cutoff = new Timestamp(start - retentionMs);
+            PurgeCheckpoint checkpoint = purgeCheckpointRepository.findById(JOB)
+                    .orElseGet(() -> new PurgeCheckpoint(JOB, 0L, 0L, cutoff));
+            checkpointId.set(checkpoint.getLastId());
+
+            long purged = 0;
+            boolean more = true;
+            while (more && System.currentTimeMillis() - start < maxRunMs) {
+                List<Object[]> rows = messageRepository.findIdsAndCreatedAtAfter(
+                        checkpoint.getLastId().intValue(), PageRequest.ofSize(batchSize));
+                List<Integer> expired = new ArrayList<>(rows.size());
+                for (Object[] row : rows) {
+                    Timestamp createdAt = (Timestamp) row[1];
+                    if (createdAt != null && !createdAt.before(cutoff)) {
+                        more = false;
+                        break;
+                    }
+                    expired.add((Integer) row[0]);
+                }
+                if (rows.size() < batchSize) {
+                    more = false;
+                }
+                if (expired.isEmpty()) {
+                    break;
+                }
+
+                int deleted = batchTimer.record(() -> transaction.execute(status -> {
+                    int n = messageRepository.deleteByMessageIds(expired);
+                    checkpoint.setLastId(expired.get(expired.size() - 1).longValue());
+                    checkpoint.setPurged(checkpoint.getPurged() + n);
+                    checkpoint.setUpdatedAt(new Timestamp(System.currentTimeMillis()));
+                    purgeCheckpointRepository.save(checkpoint);
+                    return n;
+                }));
+                purged += deleted;
+                purgedCounter.increment(deleted);
+                checkpointId.set(checkpoint.getLastId());
+
+                if (more && pauseMs > 0) {
+                    Thread.sleep(pauseMs);
+                }
+            }
+
+            if (purged > 0) {
+                conversationTailCache.dropOlderThan(cutoff);
+                int orphaned = transaction.execute(status -> pendingDeliveryRepository.deleteOrphaned());
+                log.info("Retention purge: {} messages older than {} deleted in {} ms ({} pending deliveries dropped), checkpoint {}",
+                        purged, cutoff, System.currentTimeMillis() - start, orphaned, checkpoint.getLastId());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Error purging expired messages", e);
+        }
+    }
+}
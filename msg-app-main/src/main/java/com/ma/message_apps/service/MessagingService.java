@@ -1,26 +1,34 @@
 package com.ma.message_apps.service;
 
+import com.ma.message_apps.dto.AttachmentDto;
+import com.ma.message_apps.dto.DirectMessageDto;
 import com.ma.message_apps.dto.MessageDto;
+import com.ma.message_apps.dto.SendMessageResponse;
 import com.ma.message_apps.dto.UserDto;
 import com.ma.message_apps.entity.Message;
 import com.ma.message_apps.entity.User;
+import com.ma.message_apps.event.MessageSentEvent;
+import com.ma.message_apps.event.MessagesReadEvent;
 import com.ma.message_apps.exception.ResourceNotFoundException;
 import com.ma.message_apps.mapper.MessageConversion;
 import com.ma.message_apps.mapper.UserConversion;
-import com.ma.message_apps.repository.FriendRequestsRepository;
+import com.ma.message_apps.repository.ConversationSequenceRepository;
+import com.ma.message_apps.repository.FriendshipRepository;
 import com.ma.message_apps.repository.MessageRepository;
 import com.ma.message_apps.repository.UserRepository;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
 import java.sql.Timestamp;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.stream.Collectors;
 
 /**
@@ -30,24 +38,51 @@ import java.util.stream.Collectors;
 @Slf4j
 public class MessagingService {
 
+    private static final int DEFAULT_RESUME_LIMIT = 100;
+    private static final int MAX_RESUME_LIMIT = 500;
+    private static final int MAX_CLIENT_MESSAGE_ID_LENGTH = 64;
+    private static final int DEFAULT_HISTORY_LIMIT = 50;
+    private static final int MAX_HISTORY_LIMIT = 500;
+
     private final UserRepository userRepository;
-    private final FriendRequestsRepository friendRequestsRepository;
+    private final FriendshipRepository friendshipRepository;
     private final MessageRepository messageRepository;
+    private final ConversationSequenceRepository conversationSequenceRepository;
     private final UserConversion userConversion;
     private final MessageConversion messageConversion;
+    private final RecentSendCache recentSendCache;
+    private final ConversationTailCache conversationTailCache;
+    private final MessageArchive messageArchive;
+    private final MessageBodyStore messageBodyStore;
+    private final AttachmentService attachmentService;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Autowired
     public MessagingService(
             UserRepository userRepository,
-            FriendRequestsRepository friendRequestsRepository,
+            FriendshipRepository friendshipRepository,
             MessageRepository messageRepository,
+            ConversationSequenceRepository conversationSequenceRepository,
             UserConversion userConversion,
-            MessageConversion messageConversion) {
+            MessageConversion messageConversion,
+            RecentSendCache recentSendCache,
+            ConversationTailCache conversationTailCache,
+            MessageArchive messageArchive,
+            MessageBodyStore messageBodyStore,
+            AttachmentService attachmentService,
+            ApplicationEventPublisher eventPublisher) {
         this.userRepository = userRepository;
-        this.friendRequestsRepository = friendRequestsRepository;
+        this.friendshipRepository = friendshipRepository;
         this.messageRepository = messageRepository;
+        this.conversationSequenceRepository = conversationSequenceRepository;
         this.userConversion = userConversion;
         this.messageConversion = messageConversion;
+        this.recentSendCache = recentSendCache;
+        this.conversationTailCache = conversationTailCache;
+        this.messageArchive = messageArchive;
+        this.messageBodyStore = messageBodyStore;
+        this.attachmentService = attachmentService;
+        this.eventPublisher = eventPublisher;
     }
 
     /**
@@ -64,24 +99,31 @@ public class MessagingService {
         userRepository.findById(userId)
             .orElseThrow(() -> new ResourceNotFoundException("User not found with ID: " + userId));
 
-        List<User> friends = friendRequestsRepository.findAcceptedFriends(userId);
+        List<User> friends = friendshipRepository.findFriendsOf(userId);
         return friends.stream()
             .map(userConversion::toUserDto)
             .collect(Collectors.toList());
     }
 
     /**
-     * Get messages between two users
+     * Get messages between two users, including those already moved to the {@link MessageArchive}.
+     * Without paging parameters the whole conversation is returned; with them, the messages just
+     * before a sequence number, for scrolling back. Pages the {@link ConversationTailCache} holds are
+     * answered from memory.
      *
      * @param userId1 First user ID
      * @param userId2 Second user ID
+     * @param beforeSeq Only messages before this sequence number (optional, default: the newest)
+     * @param limit Maximum number of messages when paging (optional)
      * @param session HTTP session for authorization
      * @param request HTTP request for logging
-     * @return List of message DTOs
+     * @return List of message DTOs in conversation order
      */
     public List<MessageDto> getMessagesBetweenUsers(
             Integer userId1,
             Integer userId2,
+            Long beforeSeq,
+            Integer limit,
             HttpSession session,
             HttpServletRequest request) {
         log.info("Service: Retrieving messages between users {} and {}", userId1, userId2);
@@ -93,84 +135,330 @@ public class MessagingService {
         User user2 = userRepository.findById(userId2)
             .orElseThrow(() -> new ResourceNotFoundException("User not found with ID: " + userId2));
 
-        // Get messages in both directions
-        List<Message> messages = messageRepository.findMessagesBetweenUsers(userId1, userId2);
+        int userLowId = Math.min(userId1, userId2);
+        int userHighId = Math.max(userId1, userId2);
+        boolean paged = beforeSeq != null || limit != null;
+        int pageSize = !paged ? Integer.MAX_VALUE
+            : limit == null ? DEFAULT_HISTORY_LIMIT : Math.max(1, Math.min(limit, MAX_HISTORY_LIMIT));
+        long before = beforeSeq == null ? Long.MAX_VALUE : beforeSeq;
 
-        return messages.stream()
-            .map(messageConversion::toMessageDto)
-            .collect(Collectors.toList());
+        // Get messages in both directions, in conversation order
+        List<MessageDto> messages;
+        List<ConversationTailCache.Entry> cached = conversationTailCache.page(userLowId, userHighId, before, pageSize,
+            count -> loadTail(userLowId, userHighId, count));
+        if (cached != null) {
+            Map<Integer, List<AttachmentDto>> attachments = attachmentService.attachmentsOf(cached.stream()
+                .filter(ConversationTailCache.Entry::hasAttachments)
+                .map(ConversationTailCache.Entry::messageId)
+                .toList());
+            messages = cached.stream()
+                .map(e -> e.toMessageDto(user1, user2, attachments))
+                .collect(Collectors.toCollection(ArrayList::new));
+        } else {
+            List<Message> recent;
+            if (paged) {
+                recent = new ArrayList<>(messageRepository.findBeforeSeq(
+                    userLowId, userHighId, before, PageRequest.ofSize(pageSize)));
+                Collections.reverse(recent);
+            } else {
+                recent = messageRepository.findMessagesBetweenUsers(userLowId, userHighId);
+            }
+            Map<Integer, List<AttachmentDto>> attachments = attachmentService.attachmentsOf(
+                recent.stream().map(Message::getMessageId).toList());
+            messages = recent.stream()
+                .map(messageConversion::toMessageDto)
+                .collect(Collectors.toCollection(ArrayList::new));
+            messages.forEach(m -> m.setAttachments(attachments.getOrDefault(m.getMessageId(), List.of())));
+        }
+
+        // Older months may have been moved to the archive. Messages with attachments stay in the table,
+        // so archived messages can sit between table rows; both are merged by seq. A full page only
+        // needs archived messages newer than its oldest one, which the archive index rules out in memory.
+        long archivedAfter = messages.size() < pageSize || messages.get(0).getSeq() == null
+            ? Long.MIN_VALUE : messages.get(0).getSeq();
+        try {
+            // The archive keeps full texts, so archived messages are never truncated; messages with
+            // attachments are never archived
+            List<MessageArchive.ArchivedMessage> archived =
+                messageArchive.read(userLowId, userHighId, archivedAfter, before, pageSize);
+            if (!archived.isEmpty()) {
+                Set<Integer> shown = messages.stream().map(MessageDto::getMessageId).collect(Collectors.toSet());
+                archived.stream()
+                    .filter(m -> !shown.contains(m.messageId()))
+                    .map(m -> new MessageDto(m.messageId(),
+                        m.senderId() == user1.getUserId() ? user1 : user2,
+                        m.receiverId() == user1.getUserId() ? user1 : user2,
+                        m.messageText(), false, m.isRead(), m.createdAt(), m.seq(), m.clientMessageId(), List.of()))
+                    .forEach(messages::add);
+                messages.sort(Comparator.comparing(MessageDto::getSeq, Comparator.nullsFirst(Comparator.naturalOrder()))
+                    .thenComparing(MessageDto::getMessageId));
+                if (messages.size() > pageSize) {
+                    messages = new ArrayList<>(messages.subList(messages.size() - pageSize, messages.size()));
+                }
+            }
+        } catch (IOException e) {
+            // The recent part is still worth showing
+            log.error("Error reading archived messages between users {} and {}", userId1, userId2, e);
+        }
+        return messages;
+    }
+
+    /**
+     * The newest messages of a conversation for the {@link ConversationTailCache}, newest first
+     */
+    private List<ConversationTailCache.Entry> loadTail(int userLowId, int userHighId, int count) {
+        List<Message> newest = messageRepository.findBeforeSeq(
+            userLowId, userHighId, Long.MAX_VALUE, PageRequest.ofSize(count));
+        Set<Integer> withAttachments = attachmentService.attachmentsOf(
+            newest.stream().map(Message::getMessageId).toList()).keySet();
+        return newest.stream()
+            .map(m -> ConversationTailCache.Entry.of(m, withAttachments.contains(m.getMessageId())))
+            .toList();
     }
 
     /**
-     * Send a message from one user to another
+     * Send a message from one user to another.
+     * A send that repeats a client message ID the sender already used returns the stored message
+     * instead of inserting (and delivering) it again.
      *
      * @param fromUserId Sender user ID
      * @param toUserId Recipient user ID
      * @param content Message content
+     * @param clientMessageId ID chosen by the client and reused when it retries (optional)
+     * @param attachmentIds Complete, unsent uploads of the sender to send with the message (optional)
      * @param session HTTP session for authorization
      * @param request HTTP request for logging
-     * @return Map containing success status and message details
+     * @return Success status, message details and whether it was a repeat
      */
     @Transactional
-    public Map<String, Object> sendMessage(
+    public SendMessageResponse sendMessage(
             Integer fromUserId,
             Integer toUserId,
             String content,
+            String clientMessageId,
+            List<Integer> attachmentIds,
             HttpSession session,
             HttpServletRequest request) {
-        Map<String, Object> response = new HashMap<>();
-
         try {
             log.info("Service: Sending message from user {} to user {}", fromUserId, toUserId);
 
-            // Validate content
-            if (content == null || content.trim().isEmpty()) {
-                response.put("success", false);
-                response.put("error", "Message content cannot be empty");
-                return response;
+            // Validate content; a message with attachments may have no text
+            boolean hasAttachments = attachmentIds != null && !attachmentIds.isEmpty();
+            if (content == null) {
+                content = "";
+            }
+            if (content.trim().isEmpty() && !hasAttachments) {
+                return SendMessageResponse.failed("Message content cannot be empty");
+            }
+            if (content.length() > messageBodyStore.getMaxLength()) {
+                return SendMessageResponse.failed("Message is too long (at most " + messageBodyStore.getMaxLength() + " characters)");
+            }
+            if (clientMessageId != null && (clientMessageId.isBlank() || clientMessageId.length() > MAX_CLIENT_MESSAGE_ID_LENGTH)) {
+                return SendMessageResponse.failed("clientMessageId must be 1 to " + MAX_CLIENT_MESSAGE_ID_LENGTH + " characters");
             }
 
-            // Get sender user
-            User fromUser = userRepository.findById(fromUserId)
-                .orElseThrow(() -> new ResourceNotFoundException("Sender not found with ID: " + fromUserId));
+            // Recent repeats are answered from memory; older ones hit uk_messages_sender_client_id on insert
+            MessageDto previous = clientMessageId == null ? null : recentSendCache.find(fromUserId, clientMessageId);
+            if (previous != null) {
+                log.info("Service: Message {} from user {} already stored, not sending again", clientMessageId, fromUserId);
+                return SendMessageResponse.duplicate(previous);
+            }
 
-            // Get recipient user
-            User toUser = userRepository.findById(toUserId)
-                .orElseThrow(() -> new ResourceNotFoundException("Recipient not found with ID: " + toUserId));
+            // Both users come from the second-level cache (no query once it is warm) and are what the
+            // response and the recent-send cache show. Deleted accounts take no new messages while their
+            // rows are being removed.
+            User fromUser = userRepository.findById(fromUserId).filter(user -> user.getDeletedAt() == null).orElse(null);
+            if (fromUser == null) {
+                return SendMessageResponse.failed("User not found with ID: " + fromUserId);
+            }
+            User toUser = userRepository.findById(toUserId).filter(user -> user.getDeletedAt() == null).orElse(null);
+            if (toUser == null) {
+                return SendMessageResponse.failed("User not found with ID: " + toUserId);
+            }
+
+            if (hasAttachments) {
+                String error = attachmentService.checkSendable(fromUserId, attachmentIds);
+                if (error != null) {
+                    // A retry of a send that went through finds its attachments already sent with it
+                    if (clientMessageId != null) {
+                        SendMessageResponse sent = findSentMessage(fromUserId, clientMessageId);
+                        if (sent.success()) {
+                            return sent;
+                        }
+                    }
+                    return SendMessageResponse.failed(error);
+                }
+            }
 
             // Verify these users are friends (optional based on your requirements)
             /*
-            boolean areFriends = !friendRequestsRepository
-                .findAcceptedFriendship(fromUserId, toUserId).isEmpty();
+            boolean areFriends = friendshipRepository
+                .existsByUserIdAndFriendId(fromUserId, toUserId);
             if (!areFriends) {
-                response.put("success", false);
-                response.put("error", "Cannot send message to a non-friend user");
-                return response;
+                return SendMessageResponse.failed("Cannot send message to a non-friend user");
             }
             */
 
-            // Create and save message
+            // Create and save message. Allocating the sequence number locks the conversation's counter
+            // row until this transaction commits, so concurrent sends in the conversation wait for the
+            // insert, body store and attachment linking below - and commit in sequence order.
             Message message = new Message();
             message.setSender(fromUser);
             message.setReceiver(toUser);
-            message.setMessageText(content);
+            // A long text keeps only a preview in the row; the full text is compressed into message_bodies
+            boolean truncated = messageBodyStore.overflows(content);
+            message.setMessageText(truncated ? messageBodyStore.preview(content) : content);
+            message.setTruncated(truncated);
             message.setCreatedAt(new Timestamp(System.currentTimeMillis()));
+            message.setClientMessageId(clientMessageId);
+            message.setSeq(conversationSequenceRepository.nextSeq(
+                Math.min(fromUserId, toUserId), Math.max(fromUserId, toUserId)));
 
             Message savedMessage = messageRepository.save(message);
+            if (truncated) {
+                messageBodyStore.store(savedMessage, content);
+            }
+            List<AttachmentDto> attachments = hasAttachments
+                ? attachmentService.linkToMessage(fromUserId, attachmentIds, savedMessage)
+                : List.of();
 
-            response.put("success", true);
-            response.put("message", messageConversion.toMessageDto(savedMessage));
+            eventPublisher.publishEvent(new MessageSentEvent(new DirectMessageDto(
+                savedMessage.getMessageId(), savedMessage.getSeq(), fromUserId, toUserId,
+                savedMessage.getMessageText(), savedMessage.getCreatedAt(), truncated)));
 
-        } catch (ResourceNotFoundException e) {
-            response.put("success", false);
-            response.put("error", e.getMessage());
-            log.warn(e.getMessage());
+            MessageDto messageDto = messageConversion.toMessageDto(savedMessage);
+            messageDto.setAttachments(attachments);
+            if (clientMessageId != null) {
+                recentSendCache.rememberAfterCommit(fromUserId, clientMessageId, messageDto);
+            }
+            conversationTailCache.appendAfterCommit(Math.min(fromUserId, toUserId), Math.max(fromUserId, toUserId),
+                ConversationTailCache.Entry.of(savedMessage, !attachments.isEmpty()));
+
+            return SendMessageResponse.sent(messageDto);
+
+        } catch (DataIntegrityViolationException e) {
+            // A concurrent retry stored the same client message ID first, or a concurrent send took the
+            // attachments - let the transaction roll back; the controller or GlobalExceptionHandler answers
+            throw e;
         } catch (Exception e) {
-            response.put("success", false);
-            response.put("error", "Failed to send message: " + e.getMessage());
             log.error("Error sending message", e);
+            return SendMessageResponse.failed("Failed to send message: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get the message a sender already stored under a client message ID
+     *
+     * @param senderId Sender user ID
+     * @param clientMessageId ID the client chose for the message
+     * @return The stored message (marked as a repeat), or an error if there is none
+     */
+    public SendMessageResponse findSentMessage(Integer senderId, String clientMessageId) {
+        MessageDto message = recentSendCache.find(senderId, clientMessageId);
+        if (message == null) {
+            message = messageRepository.findByClientMessageId(senderId, clientMessageId)
+                .map(messageConversion::toMessageDto)
+                .orElse(null);
+            if (message != null) {
+                message.setAttachments(attachmentService.attachmentsOf(List.of(message.getMessageId()))
+                    .getOrDefault(message.getMessageId(), List.of()));
+            }
+        }
+        if (message == null) {
+            return SendMessageResponse.failed("Message not found with client message ID: " + clientMessageId);
+        }
+        return SendMessageResponse.duplicate(message);
+    }
+
+    /**
+     * Get the full text of a message, for messages listed with a truncated preview
+     *
+     * @param userId Current user ID (must be the sender or the receiver)
+     * @param messageId Message ID
+     * @return Map containing success status and the full text
+     * @throws ResourceNotFoundException if the message does not exist or the user is not part of its conversation
+     */
+    public Map<String, Object> getMessageBody(Integer userId, Integer messageId) {
+        Map<String, Object> response = new HashMap<>();
+
+        Message message = messageRepository.findById(messageId)
+            .filter(m -> userId.equals(m.getSender().getUserId()) || userId.equals(m.getReceiver().getUserId()))
+            .orElseThrow(() -> new ResourceNotFoundException("Message not found with ID: " + messageId));
+        String text = Boolean.TRUE.equals(message.getTruncated()) ? messageBodyStore.load(messageId) : null;
+
+        response.put("success", true);
+        response.put("messageId", messageId);
+        response.put("messageText", text != null ? text : message.getMessageText());
+        return response;
+    }
+
+    /**
+     * Get the messages of a conversation that come after a sequence number the client already has.
+     * Used to fill a gap or catch up after a reconnect without reloading the whole history.
+     *
+     * @param userId Current user ID
+     * @param otherUserId The other side of the conversation
+     * @param afterSeq Last sequence number the client has (0 for none)
+     * @param limit Maximum number of messages (optional)
+     * @return Map containing success status, the messages, the conversation's last sequence number and whether more remain
+     */
+    public Map<String, Object> resumeConversation(Integer userId, Integer otherUserId, Long afterSeq, Integer limit) {
+        Map<String, Object> response = new HashMap<>();
+
+        if (afterSeq == null || afterSeq < 0) {
+            response.put("success", false);
+            response.put("error", "afterSeq must be zero or positive");
+            return response;
+        }
+
+        int userLowId = Math.min(userId, otherUserId);
+        int userHighId = Math.max(userId, otherUserId);
+        int pageSize = limit == null ? DEFAULT_RESUME_LIMIT : Math.max(1, Math.min(limit, MAX_RESUME_LIMIT));
+
+        // Read the head first: everything up to it is committed, so the page below cannot skip anything
+        long lastSeq = conversationSequenceRepository.findLastSeq(userLowId, userHighId).orElse(0L);
+        List<DirectMessageDto> messages = messageRepository.findAfterSeq(
+            userLowId, userHighId, afterSeq, PageRequest.ofSize(pageSize));
+
+        response.put("success", true);
+        response.put("messages", messages);
+        response.put("lastSeq", lastSeq);
+        response.put("hasMore", !messages.isEmpty() && messages.get(messages.size() - 1).seq() < lastSeq);
+        return response;
+    }
+
+    /**
+     * Mark the messages received in a conversation as read, up to a sequence number.
+     * The sender learns about it through its next sync.
+     *
+     * @param userId Current user ID (the reader)
+     * @param otherUserId The other side of the conversation
+     * @param upToSeq Last sequence number the reader has seen
+     * @return Map containing success status and the number of messages marked
+     */
+    @Transactional
+    public Map<String, Object> markConversationRead(Integer userId, Integer otherUserId, Long upToSeq) {
+        Map<String, Object> response = new HashMap<>();
+
+        if (upToSeq == null || upToSeq <= 0) {
+            response.put("success", false);
+            response.put("error", "upToSeq must be positive");
+            return response;
+        }
+
+        int userLowId = Math.min(userId, otherUserId);
+        int userHighId = Math.max(userId, otherUserId);
+        int marked = messageRepository.markRead(userLowId, userHighId, userId, upToSeq);
+        if (marked > 0) {
+            conversationTailCache.markReadAfterCommit(userLowId, userHighId, userId, upToSeq);
+        }
+        if (marked > 0 && !userId.equals(otherUserId)) {
+            long lastSeq = conversationSequenceRepository.findLastSeq(userLowId, userHighId).orElse(upToSeq);
+            eventPublisher.publishEvent(new MessagesReadEvent(userId, otherUserId, Math.min(upToSeq, lastSeq)));
         }
 
+        response.put("success", true);
+        response.put("marked", marked);
         return response;
     }
 
@@ -0,0 +1,86 @@
+package com.ma.message_apps.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Mutual friend counts, computed on the in-memory {@link FriendGraph} without touching the database
+ */
+@Service
+@Slf4j
+public class MutualFriendService {
+
+    private final FriendGraph friendGraph;
+    private final int maxBatchSize;
+
+    @Autowired
+    public MutualFriendService(
+            FriendGraph friendGraph,
+            @Value("${app.friends.mutual.max-batch-size:500}") int maxBatchSize) {
+        this.friendGraph = friendGraph;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Count mutual friends between a user and each of the given users
+     *
+     * @param userId User ID
+     * @param otherUserIds Users to compare against
+     * @return Mutual friend count per other user ID, in the order given
+     */
+    public Map<Integer, Integer> countMutualFriends(Integer userId, Collection<Integer> otherUserIds) {
+        Map<Integer, Integer> counts = new LinkedHashMap<>();
+        if (userId == null) {
+            return counts;
+        }
+        for (Integer otherUserId : otherUserIds) {
+            if (otherUserId != null && !counts.containsKey(otherUserId)) {
+                counts.put(otherUserId, friendGraph.mutualFriendCount(userId, otherUserId));
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Count mutual friends between a user and a batch of other users
+     *
+     * @param userId User ID
+     * @param otherUserIds Users to compare against
+     * @return Map containing success status and the counts keyed by user ID
+     */
+    public Map<String, Object> getMutualFriendCounts(Integer userId, List<Integer> otherUserIds) {
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            if (userId == null) {
+                response.put("success", false);
+                response.put("error", "Invalid user ID");
+                return response;
+            }
+            if (otherUserIds == null || otherUserIds.isEmpty()) {
+                response.put("success", false);
+                response.put("error", "No user IDs given");
+                return response;
+            }
+            if (otherUserIds.size() > maxBatchSize) {
+                response.put("success", false);
+                response.put("error", "At most " + maxBatchSize + " user IDs per request");
+                return response;
+            }
+
+            response.put("success", true);
+            response.put("mutualFriends", countMutualFriends(userId, otherUserIds));
+
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("error", "Error counting mutual friends: " + e.getMessage());
+            log.error("Error counting mutual friends", e);
+        }
+
+        return response;
+    }
+}
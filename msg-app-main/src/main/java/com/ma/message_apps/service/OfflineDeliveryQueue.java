@@ -0,0 +1,191 @@
+package com.ma.message_apps.service;
+
+import com.ma.message_apps.dto.DirectMessageDto;
+import com.ma.message_apps.event.AccountDeletedEvent;
+import com.ma.message_apps.repository.PendingDeliveryRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Messages waiting for users who had no open socket when they were sent.
+ *
+ * Each user's queue lives in memory up to a per-user bound (and a global one); anything beyond
+ * spills to pending_deliveries. Entries stay queued until the client acknowledges them, so a
+ * connection that drops mid-drain simply gets the same batch again. On shutdown the in-memory
+ * part is written out too, so a deploy does not lose pending messages.
+ */
+@Component
+@Slf4j
+public class OfflineDeliveryQueue {
+
+    private static final Comparator<DirectMessageDto> BY_MESSAGE_ID = Comparator.comparing(DirectMessageDto::messageId);
+
+    private final PendingDeliveryRepository pendingDeliveryRepository;
+    private final TransactionTemplate newTransaction;
+    private final int maxPerUser;
+    private final int maxTotal;
+
+    private final Map<Integer, List<DirectMessageDto>> queues = new ConcurrentHashMap<>();
+    private final AtomicInteger inMemory = new AtomicInteger();
+
+    // Users that may have rows in pending_deliveries; everyone else is drained without a query
+    private final Set<Integer> spilledUsers = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public OfflineDeliveryQueue(
+            PendingDeliveryRepository pendingDeliveryRepository,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.delivery.offline.max-per-user:100}") int maxPerUser,
+            @Value("${app.delivery.offline.max-total:100000}") int maxTotal) {
+        this.pendingDeliveryRepository = pendingDeliveryRepository;
+        // Callers run after the sending transaction committed, so writes need a transaction of their own
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.maxPerUser = maxPerUser;
+        this.maxTotal = maxTotal;
+    }
+
+    /**
+     * Pick up entries left in the table by a previous run
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadSpilledUsers() {
+        spilledUsers.addAll(pendingDeliveryRepository.findUserIdsWithPending());
+        if (!spilledUsers.isEmpty()) {
+            log.info("{} users have pending deliveries from a previous run", spilledUsers.size());
+        }
+    }
+
+    /**
+     * Queue a message for an offline user
+     */
+    public void enqueue(Integer userId, DirectMessageDto message) {
+        boolean[] kept = {false};
+        queues.compute(userId, (id, queue) -> {
+            if (queue == null) {
+                queue = new ArrayList<>();
+            }
+            if (queue.size() < maxPerUser && inMemory.get() < maxTotal) {
+                queue.add(message);
+                inMemory.incrementAndGet();
+                kept[0] = true;
+            }
+            return queue.isEmpty() ? null : queue;
+        });
+        if (!kept[0]) {
+            spill(userId, List.of(message.messageId()));
+        }
+    }
+
+    /**
+     * Oldest pending messages of a user, without removing them
+     *
+     * @param userId User ID
+     * @param max Maximum number of messages
+     * @return Messages in message ID order (per conversation this is also sequence order)
+     */
+    public List<DirectMessageDto> peek(Integer userId, int max) {
+        List<DirectMessageDto> pending = new ArrayList<>();
+        queues.computeIfPresent(userId, (id, queue) -> {
+            pending.addAll(queue);
+            return queue;
+        });
+        if (spilledUsers.contains(userId)) {
+            Set<Integer> seen = new HashSet<>();
+            pending.forEach(m -> seen.add(m.messageId()));
+            for (DirectMessageDto stored : pendingDeliveryRepository.findPending(userId, PageRequest.ofSize(max))) {
+                if (seen.add(stored.messageId())) {
+                    pending.add(stored);
+                }
+            }
+        }
+        pending.sort(BY_MESSAGE_ID);
+        return pending.size() > max ? pending.subList(0, max) : pending;
+    }
+
+    /**
+     * Drop everything up to and including an acknowledged message
+     */
+    public void acknowledge(Integer userId, Integer upToMessageId) {
+        queues.computeIfPresent(userId, (id, queue) -> {
+            int before = queue.size();
+            queue.removeIf(m -> m.messageId() <= upToMessageId);
+            inMemory.addAndGet(queue.size() - before);
+            return queue.isEmpty() ? null : queue;
+        });
+        if (spilledUsers.contains(userId)) {
+            newTransaction.executeWithoutResult(status -> pendingDeliveryRepository.deleteUpTo(userId, upToMessageId));
+            // Remove first, then re-check, so a concurrent spill is never forgotten
+            spilledUsers.remove(userId);
+            if (pendingDeliveryRepository.existsByUserId(userId)) {
+                spilledUsers.add(userId);
+            }
+        }
+    }
+
+    /**
+     * Forget the in-memory queue of a deleted account; its table rows go with the account's other data
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAccountDeleted(AccountDeletedEvent event) {
+        List<DirectMessageDto> queue = queues.remove(event.userId());
+        if (queue != null) {
+            inMemory.addAndGet(-queue.size());
+        }
+        spilledUsers.remove(event.userId());
+    }
+
+    /**
+     * Number of messages waiting for a user
+     */
+    public long pendingCount(Integer userId) {
+        List<DirectMessageDto> queue = queues.get(userId);
+        long count = queue == null ? 0 : queue.size();
+        if (spilledUsers.contains(userId)) {
+            count += pendingDeliveryRepository.countByUserId(userId);
+        }
+        return count;
+    }
+
+    /**
+     * Write the in-memory queues out before shutting down
+     */
+    @PreDestroy
+    public void spillAll() {
+        int users = 0;
+        for (Integer userId : new ArrayList<>(queues.keySet())) {
+            List<DirectMessageDto> queue = queues.remove(userId);
+            if (queue != null && !queue.isEmpty()) {
+                spill(userId, queue.stream().map(DirectMessageDto::messageId).toList());
+                users++;
+            }
+        }
+        if (users > 0) {
+            log.info("Saved pending deliveries of {} users", users);
+        }
+    }
+
+    private void spill(Integer userId, List<Integer> messageIds) {
+        try {
+            newTransaction.executeWithoutResult(status -> pendingDeliveryRepository.insertAll(userId, messageIds));
+            spilledUsers.add(userId);
+        } catch (Exception e) {
+            // The messages are still in their conversations; the client finds them on resume
+            log.error("Error saving pending deliveries for user {}", userId, e);
+        }
+    }
+}
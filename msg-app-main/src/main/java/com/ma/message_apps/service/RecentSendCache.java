@@ -0,0 +1,108 @@
+package com.ma.message_apps.service;
+
+import com.ma.message_apps.dto.MessageDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Messages sent recently, by sender and client message ID, so a retried send is answered without
+ * touching the database.
+ *
+ * Each sender keeps at most a fixed number of entries, and only for the dedup window; senders beyond
+ * the global bound are simply not cached. Anything not found here is still caught by the unique
+ * (sender_id, client_message_id) index, so the cache only has to be fast, not complete.
+ */
+@Component
+public class RecentSendCache {
+
+    private final long windowNanos;
+    private final int maxPerSender;
+    private final int maxSenders;
+
+    private final Map<Integer, Map<String, Entry>> bySender = new ConcurrentHashMap<>();
+
+    @Autowired
+    public RecentSendCache(
+            @Value("${app.messages.dedup.window-ms:600000}") long windowMs,
+            @Value("${app.messages.dedup.max-per-sender:100}") int maxPerSender,
+            @Value("${app.messages.dedup.max-senders:10000}") int maxSenders) {
+        this.windowNanos = windowMs * 1_000_000L;
+        this.maxPerSender = maxPerSender;
+        this.maxSenders = maxSenders;
+    }
+
+    /**
+     * The message a sender stored under a client message ID within the window, or null
+     */
+    public MessageDto find(Integer senderId, String clientMessageId) {
+        Map<String, Entry> sent = bySender.get(senderId);
+        if (sent == null) {
+            return null;
+        }
+        Entry entry;
+        synchronized (sent) {
+            entry = sent.get(clientMessageId);
+        }
+        return entry == null || System.nanoTime() - entry.at >= windowNanos ? null : entry.message;
+    }
+
+    /**
+     * Remember a sent message once the current transaction commits, so a rolled-back send is never replayed
+     */
+    public void rememberAfterCommit(Integer senderId, String clientMessageId, MessageDto message) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            remember(senderId, clientMessageId, message);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                remember(senderId, clientMessageId, message);
+            }
+        });
+    }
+
+    /**
+     * Drop entries that left the window and senders with nothing left
+     */
+    @Scheduled(fixedDelayString = "${app.messages.dedup.window-ms:600000}")
+    public void sweep() {
+        long now = System.nanoTime();
+        bySender.entrySet().removeIf(e -> {
+            Map<String, Entry> sent = e.getValue();
+            synchronized (sent) {
+                sent.values().removeIf(entry -> now - entry.at >= windowNanos);
+                return sent.isEmpty();
+            }
+        });
+    }
+
+    private void remember(Integer senderId, String clientMessageId, MessageDto message) {
+        Map<String, Entry> sent = bySender.get(senderId);
+        if (sent == null) {
+            if (bySender.size() >= maxSenders) {
+                return;
+            }
+            sent = bySender.computeIfAbsent(senderId, id -> new LinkedHashMap<>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > maxPerSender;
+                }
+            });
+        }
+        synchronized (sent) {
+            sent.put(clientMessageId, new Entry(message, System.nanoTime()));
+        }
+    }
+
+    private record Entry(MessageDto message, long at) {
+    }
+}
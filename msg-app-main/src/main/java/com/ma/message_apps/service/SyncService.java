@@ -0,0 +1,168 @@
+package com.ma.message_apps.service;
+
+import com.ma.message_apps.dto.ConversationCursorDto;
+import com.ma.message_apps.dto.RelationshipDto;
+import com.ma.message_apps.dto.UserStatusDto;
+import com.ma.message_apps.entity.FriendRequests;
+import com.ma.message_apps.entity.User;
+import com.ma.message_apps.entity.UserChange;
+import com.ma.message_apps.enumDto.UserStatus;
+import com.ma.message_apps.repository.FriendRequestsRepository;
+import com.ma.message_apps.repository.FriendshipRepository;
+import com.ma.message_apps.repository.UserChangeHeadRepository;
+import com.ma.message_apps.repository.UserChangeRepository;
+import com.ma.message_apps.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+
+/**
+ * Answers "what changed for me since token T" from the {@link UserChangeLog}.
+ *
+ * The token is the last change log sequence number the client has seen. Entries only name what changed;
+ * the response carries the current state of each: the last sequence number of conversations with new
+ * messages, how far the other side has read, the current relationship with users whose friendship or
+ * friend request changed, and the current status of friends whose presence changed.
+ * A client without a usable token gets {@code reset}: it reloads everything and continues from the token returned.
+ */
+@Service
+@Slf4j
+public class SyncService {
+
+    private static final int DEFAULT_SYNC_LIMIT = 500;
+    private static final int MAX_SYNC_LIMIT = 1000;
+
+    private final UserChangeHeadRepository userChangeHeadRepository;
+    private final UserChangeRepository userChangeRepository;
+    private final UserRepository userRepository;
+    private final FriendshipRepository friendshipRepository;
+    private final FriendRequestsRepository friendRequestsRepository;
+
+    @Autowired
+    public SyncService(
+            UserChangeHeadRepository userChangeHeadRepository,
+            UserChangeRepository userChangeRepository,
+            UserRepository userRepository,
+            FriendshipRepository friendshipRepository,
+            FriendRequestsRepository friendRequestsRepository) {
+        this.userChangeHeadRepository = userChangeHeadRepository;
+        this.userChangeRepository = userChangeRepository;
+        this.userRepository = userRepository;
+        this.friendshipRepository = friendshipRepository;
+        this.friendRequestsRepository = friendRequestsRepository;
+    }
+
+    /**
+     * Get the changes for a user after a sync token
+     *
+     * @param userId Current user ID
+     * @param since Token from the previous sync (null on first load)
+     * @param limit Maximum number of change log entries to consume (optional)
+     * @return Map containing success status, the new token, whether the client must reload (reset),
+     *         whether more changes remain, and the changed state
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> sync(Integer userId, Long since, Integer limit) {
+        Map<String, Object> response = new HashMap<>();
+
+        if (since != null && since < 0) {
+            response.put("success", false);
+            response.put("error", "since must be zero or positive");
+            return response;
+        }
+
+        long head = userChangeHeadRepository.findLastSeq(userId).orElse(0L);
+        // No token, or one from a log that no longer exists
+        if (since == null || since > head) {
+            response.put("success", true);
+            response.put("reset", true);
+            response.put("token", head);
+            response.put("hasMore", false);
+            return response;
+        }
+
+        int pageSize = limit == null ? DEFAULT_SYNC_LIMIT : Math.max(1, Math.min(limit, MAX_SYNC_LIMIT));
+        List<UserChange> page = userChangeRepository.findAfter(userId, since, PageRequest.ofSize(pageSize + 1));
+        boolean hasMore = page.size() > pageSize;
+        if (hasMore) {
+            page = page.subList(0, pageSize);
+        }
+
+        // Later entries win; compaction may not have dropped the earlier ones yet
+        Map<Integer, Long> conversations = new LinkedHashMap<>();
+        Map<Integer, Long> reads = new LinkedHashMap<>();
+        Set<Integer> relationships = new LinkedHashSet<>();
+        Set<Integer> presence = new LinkedHashSet<>();
+        for (UserChange change : page) {
+            switch (change.getKind()) {
+                case MESSAGE -> conversations.merge(change.getSubjectId(), change.getSubjectSeq(), Math::max);
+                case READ -> reads.merge(change.getSubjectId(), change.getSubjectSeq(), Math::max);
+                case RELATIONSHIP -> relationships.add(change.getSubjectId());
+                case PRESENCE -> presence.add(change.getSubjectId());
+            }
+        }
+
+        Set<Integer> userIds = new HashSet<>(relationships);
+        userIds.addAll(presence);
+        Map<Integer, User> users = new HashMap<>();
+        if (!userIds.isEmpty()) {
+            for (User user : userRepository.findAllById(userIds)) {
+                users.put(user.getUserId(), user);
+            }
+        }
+
+        response.put("success", true);
+        response.put("reset", false);
+        response.put("token", page.isEmpty() ? since : page.get(page.size() - 1).getSeq());
+        response.put("hasMore", hasMore);
+        response.put("conversations", toCursors(conversations));
+        response.put("readReceipts", toCursors(reads));
+        response.put("relationships", toRelationships(userId, relationships, users));
+        response.put("presence", presence.stream()
+                .map(users::get)
+                .filter(Objects::nonNull)
+                .map(user -> UserStatusDto.fromUserIdAndStatus(user.getUserId(), user.getUsername(), statusOf(user)))
+                .toList());
+        return response;
+    }
+
+    private static List<ConversationCursorDto> toCursors(Map<Integer, Long> seqByUser) {
+        return seqByUser.entrySet().stream()
+                .map(entry -> new ConversationCursorDto(entry.getKey(), entry.getValue()))
+                .toList();
+    }
+
+    private List<RelationshipDto> toRelationships(Integer userId, Set<Integer> otherUserIds, Map<Integer, User> users) {
+        if (otherUserIds.isEmpty()) {
+            return List.of();
+        }
+        Set<Integer> friends = new HashSet<>(friendshipRepository.findFriendIdsAmong(userId, otherUserIds));
+        Map<Integer, FriendRequests> pending = new HashMap<>();
+        for (FriendRequests request : friendRequestsRepository.findPendingBetween(userId, otherUserIds)) {
+            Integer senderId = request.getSender().getUserId();
+            pending.put(senderId.equals(userId) ? request.getReceiver().getUserId() : senderId, request);
+        }
+
+        List<RelationshipDto> result = new ArrayList<>(otherUserIds.size());
+        for (Integer otherUserId : otherUserIds) {
+            User user = users.get(otherUserId);
+            FriendRequests request = pending.get(otherUserId);
+            result.add(new RelationshipDto(
+                    otherUserId,
+                    user != null ? user.getUsername() : null,
+                    user != null ? statusOf(user).name().toLowerCase() : null,
+                    friends.contains(otherUserId),
+                    request != null ? request.getRequestId() : null,
+                    request != null ? !request.getSender().getUserId().equals(userId) : null));
+        }
+        return result;
+    }
+
+    private static UserStatus statusOf(User user) {
+        return user.getStatus() != null ? user.getStatus() : UserStatus.OFFLINE;
+    }
+}
@@ -0,0 +1,269 @@
+package com.ma.message_apps.service;
+
+import com.ma.message_apps.entity.Attachment;
+import com.ma.message_apps.enumDto.ThumbnailStatus;
+import com.ma.message_apps.event.ThumbnailFinishedEvent;
+import com.ma.message_apps.repository.AttachmentRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.imageio.*;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders thumbnails of image attachments on a small worker pool, off the request threads.
+ *
+ * Uploads of images are queued when their last chunk is in. The pool has a fixed number of threads and
+ * a bounded queue; what does not fit stays PENDING in the attachments table and is queued again by the
+ * periodic retry, which also picks up work lost to a restart. A thumbnail is rendered once per content
+ * (stored next to the blob), and every attachment with that content gets it. For attachments already
+ * sent, a {@link ThumbnailFinishedEvent} tells both participants.
+ *
+ * Images are decoded with source subsampling, so a large photo never lands in the heap at full size.
+ */
+@Service
+@Slf4j
+public class ThumbnailService {
+
+    private static final float JPEG_QUALITY = 0.8f;
+
+    private final AttachmentRepository attachmentRepository;
+    private final BlobStore blobStore;
+    private final TransactionTemplate transaction;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int size;
+    private final long maxPixels;
+    private final int queueSize;
+
+    private final ThreadPoolExecutor workers;
+    // Hashes queued or being rendered, so a burst of identical uploads renders once
+    private final Set<String> queued = ConcurrentHashMap.newKeySet();
+    private final Timer renderTimer;
+
+    @Autowired
+    public ThumbnailService(
+            AttachmentRepository attachmentRepository,
+            BlobStore blobStore,
+            PlatformTransactionManager transactionManager,
+            ApplicationEventPublisher eventPublisher,
+            MeterRegistry meterRegistry,
+            @Value("${app.attachments.thumbnails.size:320}") int size,
+            @Value("${app.attachments.thumbnails.max-pixels:100000000}") long maxPixels,
+            @Value("${app.attachments.thumbnails.threads:2}") int threads,
+            @Value("${app.attachments.thumbnails.queue-size:100}") int queueSize) {
+        this.attachmentRepository = attachmentRepository;
+        this.blobStore = blobStore;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.size = size;
+        this.maxPixels = maxPixels;
+        this.queueSize = queueSize;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+                    Thread thread = new Thread(runnable, "thumbnail-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.renderTimer = Timer.builder("attachments.thumbnail.render")
+                .description("Time spent rendering one thumbnail")
+                .register(meterRegistry);
+        Gauge.builder("attachments.thumbnail.queued", workers, executor -> executor.getQueue().size())
+                .description("Thumbnails waiting for a worker")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Whether attachments of a content type get a thumbnail
+     */
+    public boolean supports(String contentType) {
+        return contentType.startsWith("image/") && ImageIO.getImageReadersByMIMEType(contentType).hasNext();
+    }
+
+    /**
+     * Queue the thumbnail of a content for rendering. Never blocks: with the queue full the work is
+     * left to the next retry.
+     */
+    public void request(String sha256) {
+        if (!queued.add(sha256)) {
+            return;
+        }
+        try {
+            workers.execute(() -> render(sha256));
+        } catch (RejectedExecutionException e) {
+            queued.remove(sha256);
+            log.debug("Thumbnail queue full, {} left for the retry", sha256);
+        }
+    }
+
+    /**
+     * Queue thumbnails still pending, as far as the queue has room
+     */
+    @Scheduled(initialDelayString = "${app.attachments.thumbnails.retry-ms:60000}",
+               fixedDelayString = "${app.attachments.thumbnails.retry-ms:60000}")
+    public void retryPending() {
+        try {
+            int room = workers.getQueue().remainingCapacity();
+            if (room == 0) {
+                return;
+            }
+            for (String sha256 : attachmentRepository.findPendingThumbnailHashes(PageRequest.ofSize(Math.min(room, queueSize)))) {
+                request(sha256);
+            }
+        } catch (Exception e) {
+            log.error("Error queueing pending thumbnails", e);
+        }
+    }
+
+    private void render(String sha256) {
+        ThumbnailStatus status;
+        Dimension dimension = null;
+        try {
+            Path thumbnail = blobStore.thumbnailPath(sha256);
+            // Another attachment with the same content may have had it rendered already
+            dimension = Files.exists(thumbnail) ? readSize(thumbnail) : renderTimer.recordCallable(() -> write(sha256));
+            status = ThumbnailStatus.READY;
+        } catch (Exception e) {
+            log.warn("Cannot render thumbnail of blob {}: {}", sha256, e.getMessage());
+            status = ThumbnailStatus.FAILED;
+        } finally {
+            queued.remove(sha256);
+        }
+
+        try {
+            finish(sha256, status, dimension);
+        } catch (Exception e) {
+            // Still PENDING; the retry finds the thumbnail on disk
+            log.error("Error saving thumbnail state of blob {}", sha256, e);
+        }
+    }
+
+    private void finish(String sha256, ThumbnailStatus status, Dimension dimension) {
+        Integer width = dimension == null ? null : dimension.width;
+        Integer height = dimension == null ? null : dimension.height;
+        transaction.executeWithoutResult(tx -> {
+            List<Attachment> waiting = attachmentRepository.findPendingThumbnails(sha256);
+            if (waiting.isEmpty()) {
+                return;
+            }
+            attachmentRepository.finishThumbnails(waiting.stream().map(Attachment::getAttachmentId).toList(),
+                    status, width, height);
+            // Delivered after commit; attachments not sent yet show the thumbnail with their message
+            for (Attachment attachment : waiting) {
+                if (attachment.getMessage() != null) {
+                    eventPublisher.publishEvent(new ThumbnailFinishedEvent(attachment.getAttachmentId(),
+                            attachment.getMessage().getMessageId(), attachment.getMessage().getSender().getUserId(),
+                            attachment.getMessage().getReceiver().getUserId(), status == ThumbnailStatus.READY,
+                            width, height));
+                }
+            }
+        });
+    }
+
+    /**
+     * Decode the blob at a reduced resolution, scale it to fit the thumbnail box and store it as JPEG
+     */
+    private Dimension write(String sha256) throws IOException {
+        BufferedImage source;
+        try (ImageInputStream in = ImageIO.createImageInputStream(blobStore.blobPath(sha256).toFile())) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Not a supported image");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    throw new IOException("Image too large (" + width + "x" + height + ")");
+                }
+                // Keep at least twice the thumbnail size for a smooth downscale
+                int step = Math.max(1, Math.max(width, height) / (size * 2));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                source = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        double scale = Math.min(1.0, (double) size / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+        BufferedImage thumbnail = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = thumbnail.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            // JPEG has no transparency
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+
+        Path file = blobStore.newTempFile();
+        try {
+            ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+            try (ImageOutputStream out = ImageIO.createImageOutputStream(file.toFile())) {
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(JPEG_QUALITY);
+                writer.setOutput(out);
+                writer.write(null, new IIOImage(thumbnail, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+            blobStore.storeThumbnail(sha256, file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        return new Dimension(width, height);
+    }
+
+    private static Dimension readSize(Path image) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(image.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                throw new IOException("Not a supported image");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+}
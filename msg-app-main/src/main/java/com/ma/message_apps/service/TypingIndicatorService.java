@@ -0,0 +1,160 @@
+package com.ma.message_apps.service;
+
+import com.ma.message_apps.websocket.ServerFrame;
+import com.ma.message_apps.websocket.TypingFrame;
+import com.ma.message_apps.websocket.WebSocketSessionRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Relays "is typing" state between the two participants of a conversation.
+ *
+ * Nothing here touches the database: state lives in one small object per (typist, receiver) pair,
+ * and the two frames a pair can produce are built once and reused. Whatever the client sends,
+ * the receiver gets at most one frame per pair per interval; a change that arrives sooner is held
+ * and flushed by the sweeper. A typist that goes quiet for the TTL is reported as stopped and
+ * forgotten, so closed tabs never leave an indicator on.
+ *
+ * Only friends see each other typing; the check runs against the in-memory {@link FriendGraph}, and
+ * frames naming anyone else are dropped before any state is created.
+ */
+@Service
+@Slf4j
+public class TypingIndicatorService {
+
+    private final WebSocketSessionRegistry sessionRegistry;
+    private final FriendGraph friendGraph;
+    private final long intervalNanos;
+    private final long ttlNanos;
+    private final long ttlMs;
+
+    private final Map<Long, TypingState> states = new ConcurrentHashMap<>();
+
+    @Autowired
+    public TypingIndicatorService(
+            WebSocketSessionRegistry sessionRegistry,
+            FriendGraph friendGraph,
+            @Value("${app.typing.interval-ms:1000}") long intervalMs,
+            @Value("${app.typing.ttl-ms:5000}") long ttlMs) {
+        this.sessionRegistry = sessionRegistry;
+        this.friendGraph = friendGraph;
+        this.intervalNanos = intervalMs * 1_000_000L;
+        this.ttlNanos = ttlMs * 1_000_000L;
+        this.ttlMs = ttlMs;
+    }
+
+    /**
+     * Record a typing update from a client; ignored unless the two users are friends
+     *
+     * @param fromUserId User who is (or stopped) typing
+     * @param toUserId Other participant of the conversation
+     * @param typing true while typing, false once stopped
+     */
+    public void update(int fromUserId, int toUserId, boolean typing) {
+        if (fromUserId == toUserId) {
+            return;
+        }
+        // A stop is still let through, so an unfriended typist's indicator goes off
+        if (typing && !friendGraph.areFriends(fromUserId, toUserId)) {
+            return;
+        }
+        long now = System.nanoTime();
+        long key = key(fromUserId, toUserId);
+        TypingState state = states.get(key);
+        if (state == null) {
+            // Nobody to tell, and no stop to send later
+            if (!typing || !sessionRegistry.isOnline(toUserId)) {
+                return;
+            }
+            state = states.computeIfAbsent(key, k -> new TypingState(fromUserId, toUserId, ttlMs));
+        }
+        ServerFrame frame;
+        synchronized (state) {
+            state.wanted = typing;
+            if (typing) {
+                state.lastActivity = now;
+            }
+            frame = state.frameToSend(now, intervalNanos, ttlNanos);
+        }
+        send(state, frame);
+    }
+
+    /**
+     * Flush held changes and expire typists that went quiet
+     */
+    @Scheduled(fixedDelayString = "${app.typing.interval-ms:1000}")
+    public void sweep() {
+        long now = System.nanoTime();
+        Iterator<TypingState> it = states.values().iterator();
+        while (it.hasNext()) {
+            TypingState state = it.next();
+            ServerFrame frame;
+            boolean remove;
+            synchronized (state) {
+                if (state.wanted && now - state.lastActivity >= ttlNanos) {
+                    state.wanted = false;
+                }
+                frame = state.frameToSend(now, intervalNanos, ttlNanos);
+                remove = !state.wanted && !state.sent && frame == null;
+            }
+            send(state, frame);
+            if (remove) {
+                it.remove();
+            }
+        }
+    }
+
+    private void send(TypingState state, ServerFrame frame) {
+        if (frame != null) {
+            sessionRegistry.sendToUser(state.toUserId, frame);
+        }
+    }
+
+    private static long key(int fromUserId, int toUserId) {
+        return ((long) fromUserId << 32) | (toUserId & 0xFFFFFFFFL);
+    }
+
+    /**
+     * What the receiver was last told, and what the typist wants them to know
+     */
+    private static final class TypingState {
+
+        final int toUserId;
+        final ServerFrame startFrame;
+        final ServerFrame stopFrame;
+
+        boolean wanted;
+        boolean sent;
+        long lastActivity;
+        long lastSent = Long.MIN_VALUE / 2;
+
+        TypingState(int fromUserId, int toUserId, long ttlMs) {
+            this.toUserId = toUserId;
+            this.startFrame = new TypingFrame(fromUserId, true, ttlMs);
+            this.stopFrame = new TypingFrame(fromUserId, false, ttlMs);
+        }
+
+        /**
+         * The frame due now, if any. A start is repeated every half TTL so the receiver's own expiry
+         * does not fire while the typist is still going.
+         */
+        ServerFrame frameToSend(long now, long intervalNanos, long ttlNanos) {
+            if (now - lastSent < intervalNanos) {
+                return null;
+            }
+            if (wanted == sent && !(wanted && now - lastSent >= ttlNanos / 2)) {
+                return null;
+            }
+            sent = wanted;
+            lastSent = now;
+            return wanted ? startFrame : stopFrame;
+        }
+    }
+}
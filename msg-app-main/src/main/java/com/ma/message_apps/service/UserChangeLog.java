@@ -0,0 +1,164 @@
+package com.ma.message_apps.service;
+
+import com.ma.message_apps.dto.DirectMessageDto;
+import com.ma.message_apps.enumDto.ChangeKind;
+import com.ma.message_apps.event.FriendRequestChangedEvent;
+import com.ma.message_apps.event.FriendshipChangedEvent;
+import com.ma.message_apps.event.MessageSentEvent;
+import com.ma.message_apps.event.MessagesReadEvent;
+import com.ma.message_apps.event.UserStatusChangedEvent;
+import com.ma.message_apps.repository.UserChangeHeadRepository;
+import com.ma.message_apps.repository.UserChangeRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Per-user append-only log of what changed for that user: conversations with new messages,
+ * read receipts, friendship and friend request changes, and friends' presence. Read by the sync endpoint.
+ *
+ * Entries are written before the originating transaction commits, so they exist exactly when the change
+ * does, and are numbered from a per-user head row that stays locked until then; a client holding
+ * sequence number n therefore never misses an entry numbered below it.
+ *
+ * The log is compacted by key: only the latest entry per (user, kind, subject) is kept, which bounds
+ * each log by the number of people the user interacts with.
+ */
+@Service
+@Slf4j
+public class UserChangeLog {
+
+    private final UserChangeHeadRepository userChangeHeadRepository;
+    private final UserChangeRepository userChangeRepository;
+    private final TransactionTemplate transaction;
+    private final int compactBatchUsers;
+
+    @Autowired
+    public UserChangeLog(
+            UserChangeHeadRepository userChangeHeadRepository,
+            UserChangeRepository userChangeRepository,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.sync.compact-batch-users:1000}") int compactBatchUsers) {
+        this.userChangeHeadRepository = userChangeHeadRepository;
+        this.userChangeRepository = userChangeRepository;
+        // Joins the publishing transaction; starts one for publishers that have none
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.compactBatchUsers = compactBatchUsers;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onMessageSent(MessageSentEvent event) {
+        DirectMessageDto message = event.message();
+        transaction.executeWithoutResult(status ->
+                appendForPair(ChangeKind.MESSAGE, message.senderId(), message.receiverId(), message.seq()));
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onMessagesRead(MessagesReadEvent event) {
+        transaction.executeWithoutResult(status -> {
+            List<Integer> sender = List.of(event.senderId());
+            userChangeHeadRepository.bump(sender);
+            userChangeRepository.append(sender, ChangeKind.READ.name(), event.readerId(), event.upToSeq(), now());
+        });
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onFriendshipChanged(FriendshipChangedEvent event) {
+        transaction.executeWithoutResult(status -> appendRelationships(event.userId(), event.friendIds()));
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onFriendRequestChanged(FriendRequestChangedEvent event) {
+        transaction.executeWithoutResult(status -> appendRelationships(event.userId(), event.otherUserIds()));
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onUserStatusChanged(UserStatusChangedEvent event) {
+        transaction.executeWithoutResult(status -> {
+            userChangeHeadRepository.bumpFriendsOf(event.userId());
+            userChangeRepository.appendForFriendsOf(event.userId(), ChangeKind.PRESENCE.name(), now());
+        });
+    }
+
+    /**
+     * Drop entries superseded by a newer one with the same key, a range of users per transaction
+     */
+    @Scheduled(initialDelayString = "${app.sync.compact-ms:600000}", fixedDelayString = "${app.sync.compact-ms:600000}")
+    public void compact() {
+        try {
+            Integer maxUserId = userChangeRepository.findMaxUserId();
+            if (maxUserId == null) {
+                return;
+            }
+            long start = System.currentTimeMillis();
+            int removed = 0;
+            for (int from = 0; from <= maxUserId; from += compactBatchUsers) {
+                int fromUserId = from;
+                Integer deleted = transaction.execute(status ->
+                        userChangeRepository.deleteSuperseded(fromUserId, fromUserId + compactBatchUsers - 1));
+                removed += deleted == null ? 0 : deleted;
+            }
+            if (removed > 0) {
+                log.info("Change log compacted: {} superseded entries removed in {} ms",
+                        removed, System.currentTimeMillis() - start);
+            }
+        } catch (Exception e) {
+            log.error("Error compacting change log", e);
+        }
+    }
+
+    private void appendForPair(ChangeKind kind, Integer userId1, Integer userId2, Long subjectSeq) {
+        userChangeHeadRepository.bump(List.of(userId1, userId2));
+        userChangeRepository.appendForPair(userId1, userId2, kind.name(), subjectSeq, now());
+    }
+
+    /**
+     * One entry for each other user in the user's log, and one about the user in each of theirs
+     */
+    private void appendRelationships(Integer userId, List<Integer> otherUserIds) {
+        if (userId == null || otherUserIds == null) {
+            return;
+        }
+        // Each entry of the user's log needs its own sequence number
+        Set<Integer> distinct = new LinkedHashSet<>(otherUserIds);
+        distinct.remove(userId);
+        distinct.remove(null);
+        otherUserIds = new ArrayList<>(distinct);
+        if (otherUserIds.isEmpty()) {
+            return;
+        }
+        if (otherUserIds.size() == 1) {
+            appendForPair(ChangeKind.RELATIONSHIP, userId, otherUserIds.get(0), null);
+            return;
+        }
+        Timestamp now = now();
+        // Lock every head in one ordered statement first; the user's further bumps only touch a row already held
+        List<Integer> everyone = new ArrayList<>(otherUserIds);
+        everyone.add(userId);
+        userChangeHeadRepository.bump(everyone);
+        userChangeRepository.append(otherUserIds, ChangeKind.RELATIONSHIP.name(), userId, null, now);
+        List<Integer> self = List.of(userId);
+        for (int i = 0; i < otherUserIds.size(); i++) {
+            if (i > 0) {
+                userChangeHeadRepository.bump(self);
+            }
+            userChangeRepository.append(self, ChangeKind.RELATIONSHIP.name(), otherUserIds.get(i), null, now);
+        }
+    }
+
+    private static Timestamp now() {
+        return new Timestamp(System.currentTimeMillis());
+    }
+}
@@ -1,15 +1,21 @@
 package com.ma.message_apps.service;
 
+import com.ma.message_apps.dto.ActionResponse;
 import com.ma.message_apps.dto.UserDto;
+import com.ma.message_apps.dto.UserResponse;
 import com.ma.message_apps.dto.UserStatusDto;
 import com.ma.message_apps.entity.User;
 import com.ma.message_apps.enumDto.UserStatus;
+import com.ma.message_apps.event.AccountDeletedEvent;
+import com.ma.message_apps.event.UserStatusChangedEvent;
 import com.ma.message_apps.exception.ResourceNotFoundException;
 import com.ma.message_apps.mapper.UserConversion;
 import com.ma.message_apps.repository.UserRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.sql.Timestamp;
 import java.util.*;
@@ -24,11 +30,19 @@ public class UserService {
 
     private final UserRepository userRepository;
     private final UserConversion userConversion;
+    private final MutualFriendService mutualFriendService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final AccountDeletionService accountDeletionService;
 
     @Autowired
-    public UserService(UserRepository userRepository, UserConversion userConversion) {
+    public UserService(UserRepository userRepository, UserConversion userConversion,
+                       MutualFriendService mutualFriendService, ApplicationEventPublisher eventPublisher,
+                       AccountDeletionService accountDeletionService) {
         this.userRepository = userRepository;
         this.userConversion = userConversion;
+        this.mutualFriendService = mutualFriendService;
+        this.eventPublisher = eventPublisher;
+        this.accountDeletionService = accountDeletionService;
     }
 
     /**
@@ -45,12 +59,22 @@ public class UserService {
     }
 
     /**
-     * Find users by username or email
+     * Find users by username or email, including the number of friends the result shares with the viewer
      *
      * @param query Search query (username or email)
+     * @param viewerId ID of the user searching (may be null)
      * @return Map containing search results
      */
-    public Map<String, Object> findUsersByUsernameOrEmail(String query) {
+    public Map<String, Object> findUsersByUsernameOrEmail(String query, Integer viewerId) {
+        Map<String, Object> response = findUsers(query);
+        if (viewerId != null && response.get("user") instanceof UserDto user && !viewerId.equals(user.getUserId())) {
+            response.put("mutualFriends",
+                    mutualFriendService.countMutualFriends(viewerId, List.of(user.getUserId())).get(user.getUserId()));
+        }
+        return response;
+    }
+
+    private Map<String, Object> findUsers(String query) {
         Map<String, Object> response = new HashMap<>();
 
         try {
@@ -63,7 +87,7 @@ public class UserService {
             }
 
             // Try exact match first
-            Optional<User> exactMatch = userRepository.findByUsername(query);
+            Optional<User> exactMatch = userRepository.findByUsername(query).filter(u -> u.getDeletedAt() == null);
             if (exactMatch.isPresent()) {
                 response.put("success", true);
                 response.put("user", userConversion.toUserDto(exactMatch.get()));
@@ -71,7 +95,7 @@ public class UserService {
             }
 
             // Try email exact match
-            exactMatch = userRepository.findByEmail(query);
+            exactMatch = userRepository.findByEmail(query).filter(u -> u.getDeletedAt() == null);
             if (exactMatch.isPresent()) {
                 response.put("success", true);
                 response.put("user", userConversion.toUserDto(exactMatch.get()));
@@ -79,7 +103,9 @@ public class UserService {
             }
 
             // Do partial search
-            List<User> users = userRepository.findByUsernameContainingOrEmailContaining(query, query);
+            List<User> users = userRepository.findByUsernameContainingOrEmailContaining(query, query).stream()
+                    .filter(u -> u.getDeletedAt() == null)
+                    .toList();
 
             if (users.isEmpty()) {
                 response.put("success", false);
@@ -131,6 +157,7 @@ public class UserService {
         }
 
         return users.stream()
+                .filter(user -> user.getDeletedAt() == null)
                 .map(userConversion::toUserDto)
                 .collect(Collectors.toList());
     }
@@ -140,25 +167,24 @@ public class UserService {
      *
      * @param userId User ID
      * @param userDto Updated user information
-     * @return Map containing update results
+     * @return Update result and the updated user
      */
-    public Map<String, Object> updateUserProfile(Integer userId, UserDto userDto) {
-        Map<String, Object> response = new HashMap<>();
-
+    public UserResponse updateUserProfile(Integer userId, UserDto userDto) {
         try {
             log.info("Updating profile for user ID: {}", userId);
 
-            User user = userRepository.findById(userId)
-                    .orElseThrow(() -> new ResourceNotFoundException("User not found with ID: " + userId));
+            User user = userRepository.findById(userId).orElse(null);
+            if (user == null) {
+                log.warn("User not found with ID: {}", userId);
+                return UserResponse.failed("User not found with ID: " + userId);
+            }
 
             // Update fields - only if they're provided in the DTO
             if (userDto.getUsername() != null && !userDto.getUsername().isEmpty()) {
                 // Check if username is already taken by another user
                 Optional<User> existingUser = userRepository.findByUsername(userDto.getUsername());
                 if (existingUser.isPresent() && !existingUser.get().getUserId().equals(userId)) {
-                    response.put("success", false);
-                    response.put("error", "Username already taken");
-                    return response;
+                    return UserResponse.failed("Username already taken");
                 }
                 user.setUsername(userDto.getUsername());
             }
@@ -167,9 +193,7 @@ public class UserService {
                 // Check if email is already taken by another user
                 Optional<User> existingUser = userRepository.findByEmail(userDto.getEmail());
                 if (existingUser.isPresent() && !existingUser.get().getUserId().equals(userId)) {
-                    response.put("success", false);
-                    response.put("error", "Email already taken");
-                    return response;
+                    return UserResponse.failed("Email already taken");
                 }
                 user.setEmail(userDto.getEmail());
             }
@@ -182,59 +206,51 @@ public class UserService {
             // Update other profile fields as needed
 
             User updatedUser = userRepository.save(user);
-            response.put("success", true);
-            response.put("message", "Profile updated successfully");
-            response.put("user", userConversion.toUserDto(updatedUser));
+            return UserResponse.ok("Profile updated successfully", userConversion.toUserDto(updatedUser));
 
-        } catch (ResourceNotFoundException e) {
-            response.put("success", false);
-            response.put("error", e.getMessage());
-            log.warn(e.getMessage());
         } catch (Exception e) {
-            response.put("success", false);
-            response.put("error", "Failed to update profile: " + e.getMessage());
             log.error("Error updating user profile", e);
+            return UserResponse.failed("Failed to update profile: " + e.getMessage());
         }
-
-        return response;
     }
 
     /**
-     * Delete a user account
+     * Delete a user account.
+     * The account is marked deleted and can no longer sign in right away; its messages, friend requests,
+     * friendships and groups are removed in the background by {@link AccountDeletionService}.
      *
      * @param userId User ID
-     * @return Map containing deletion results
+     * @return Deletion result
      */
-    public Map<String, Object> deleteUserAccount(Integer userId) {
-        Map<String, Object> response = new HashMap<>();
-
+    @Transactional
+    public ActionResponse deleteUserAccount(Integer userId) {
         try {
             log.info("Deleting user account with ID: {}", userId);
 
             User user = userRepository.findById(userId)
-                    .orElseThrow(() -> new ResourceNotFoundException("User not found with ID: " + userId));
-
-            // Note: In a real system, you might want to:
-            // 1. Check for foreign key constraints
-            // 2. Implement soft delete instead of hard delete
-            // 3. Archive user data for compliance reasons
+                    .filter(u -> u.getDeletedAt() == null)
+                    .orElse(null);
+            if (user == null) {
+                log.warn("User not found with ID: {}", userId);
+                return ActionResponse.failed("User not found with ID: " + userId);
+            }
 
-            userRepository.delete(user);
+            UserStatus previousStatus = user.getStatus();
+            user.setDeletedAt(new Timestamp(System.currentTimeMillis()));
+            user.setStatus(UserStatus.OFFLINE);
+            userRepository.save(user);
+            accountDeletionService.schedule(userId);
+            if (previousStatus != UserStatus.OFFLINE) {
+                eventPublisher.publishEvent(new UserStatusChangedEvent(userId, UserStatus.OFFLINE));
+            }
+            eventPublisher.publishEvent(new AccountDeletedEvent(userId));
 
-            response.put("success", true);
-            response.put("message", "Account deleted successfully");
+            return ActionResponse.ok("Account deleted successfully");
 
-        } catch (ResourceNotFoundException e) {
-            response.put("success", false);
-            response.put("error", e.getMessage());
-            log.warn(e.getMessage());
         } catch (Exception e) {
-            response.put("success", false);
-            response.put("error", "Failed to delete account: " + e.getMessage());
             log.error("Error deleting user account", e);
+            return ActionResponse.failed("Failed to delete account: " + e.getMessage());
         }
-
-        return response;
     }
 
     /**
@@ -254,14 +270,18 @@ public class UserService {
                         .orElseThrow(() -> new ResourceNotFoundException("User not found with username/email: " + username)));
 
         // Validate password (plain text comparison - not secure but removes security dependency)
-        if (!password.equals(user.getPasswordHash())) {
+        if (!password.equals(user.getPasswordHash()) || user.getDeletedAt() != null) {
             log.warn("Invalid password attempt for user: {}", username);
             throw new ResourceNotFoundException("Invalid username or password");
         }
 
         // Update user status to online
+        UserStatus previousStatus = user.getStatus();
         user.setStatus(com.ma.message_apps.enumDto.UserStatus.ONLINE);
         user = userRepository.save(user);
+        if (previousStatus != UserStatus.ONLINE) {
+            eventPublisher.publishEvent(new UserStatusChangedEvent(user.getUserId(), UserStatus.ONLINE));
+        }
 
         log.info("User {} authenticated successfully", username);
         return userConversion.toUserDto(user);
@@ -337,8 +357,12 @@ public class UserService {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new ResourceNotFoundException("User not found with ID: " + userId));
 
+        UserStatus previousStatus = user.getStatus();
         user.setStatus(status);
         userRepository.save(user);
+        if (previousStatus != status) {
+            eventPublisher.publishEvent(new UserStatusChangedEvent(userId, status));
+        }
 
         log.info("Updated status for user {}: {}", userId, status);
 
@@ -0,0 +1,109 @@
+package com.ma.message_apps.websocket;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Arrays;
+
+/**
+ * Growable buffer for {@link FrameCodec#BINARY_V1} records. Reused per connection, so encoding a frame
+ * allocates nothing beyond the final copy handed to the websocket.
+ */
+final class BinaryFrameWriter {
+
+    private byte[] buf = new byte[256];
+    private int length;
+    private int recordStart = -1;
+
+    void reset() {
+        length = 0;
+        recordStart = -1;
+    }
+
+    void beginRecord(byte type) {
+        recordStart = length;
+        writeByte(type);
+    }
+
+    /**
+     * Prefix the record just written with its length
+     */
+    void endRecord() {
+        int payload = length - recordStart;
+        int prefix = varintSize(payload);
+        ensure(prefix);
+        System.arraycopy(buf, recordStart, buf, recordStart + prefix, payload);
+        int end = length + prefix;
+        length = recordStart;
+        writeVarint(payload);
+        length = end;
+        recordStart = -1;
+    }
+
+    void writeByte(int value) {
+        ensure(1);
+        buf[length++] = (byte) value;
+    }
+
+    void writeBoolean(boolean value) {
+        writeByte(value ? 1 : 0);
+    }
+
+    void writeVarint(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buf[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[length++] = (byte) value;
+    }
+
+    void writeId(Integer id) {
+        writeVarint(id == null ? 0 : id);
+    }
+
+    void writeTimestamp(Timestamp timestamp) {
+        writeVarint(timestamp == null ? 0 : timestamp.getTime());
+    }
+
+    void writeString(String value) {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, length, bytes.length);
+        length += bytes.length;
+    }
+
+    /**
+     * Username field: the name the first time a connection sees this user ID (or after it changed), 0 afterwards
+     */
+    void writeUsername(ClientConnection connection, Integer userId, String username) {
+        if (username == null || !connection.internUsername(userId, username)) {
+            writeVarint(0);
+            return;
+        }
+        byte[] bytes = username.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length + 1L);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, length, bytes.length);
+        length += bytes.length;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buf, length);
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, length + extra));
+        }
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+}
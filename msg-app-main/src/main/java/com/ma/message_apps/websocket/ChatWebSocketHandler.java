@@ -0,0 +1,133 @@
+package com.ma.message_apps.websocket;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ma.message_apps.service.MessageDeliveryService;
+import com.ma.message_apps.service.TypingIndicatorService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.util.UriComponentsBuilder;
+
+/**
+ * Server side of the dashboard's persistent connection (/ws).
+ * The HTTP session's userId is copied into the socket attributes at handshake time;
+ * connections without a logged-in user are refused.
+ *
+ * The client may ask for a compact server-to-client encoding with /ws?codec=n (see {@link FrameCodec});
+ * the first frame it receives is a text "hello" naming the codec in use. Client frames are always JSON:
+ * {"type":"ping"}, {"type":"ack","upTo":messageId} for a received "pending" batch,
+ * and {"type":"typing","to":userId,"typing":true|false}. Frames are read with the streaming parser
+ * since typing updates arrive far more often than anything else.
+ */
+@Component
+@Slf4j
+public class ChatWebSocketHandler extends TextWebSocketHandler {
+
+    static final String USER_ID_ATTRIBUTE = "userId";
+    static final String CODEC_PARAMETER = "codec";
+
+    private final WebSocketSessionRegistry sessionRegistry;
+    private final MessageDeliveryService messageDeliveryService;
+    private final TypingIndicatorService typingIndicatorService;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public ChatWebSocketHandler(
+            WebSocketSessionRegistry sessionRegistry,
+            MessageDeliveryService messageDeliveryService,
+            TypingIndicatorService typingIndicatorService,
+            ObjectMapper objectMapper) {
+        this.sessionRegistry = sessionRegistry;
+        this.messageDeliveryService = messageDeliveryService;
+        this.typingIndicatorService = typingIndicatorService;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        Integer userId = userId(session);
+        if (userId == null) {
+            session.close(CloseStatus.POLICY_VIOLATION.withReason("Not logged in"));
+            return;
+        }
+        int codecVersion = FrameCodec.negotiate(session.getUri() == null ? null
+                : UriComponentsBuilder.fromUri(session.getUri()).build().getQueryParams().getFirst(CODEC_PARAMETER));
+        ClientConnection connection = sessionRegistry.register(userId, session, codecVersion);
+        if (connection == null) {
+            return;
+        }
+        log.debug("Websocket session {} opened for user {} with codec {}", session.getId(), userId, codecVersion);
+        messageDeliveryService.drain(connection);
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        Integer userId = userId(session);
+        String type = null;
+        int to = -1;
+        int upTo = -1;
+        boolean typing = false;
+        try (JsonParser parser = objectMapper.getFactory().createParser(message.getPayload())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "type" -> type = parser.getValueAsString();
+                    case "to" -> to = parser.getValueAsInt(-1);
+                    case "upTo" -> upTo = parser.getValueAsInt(-1);
+                    case "typing" -> typing = parser.getValueAsBoolean();
+                    default -> parser.skipChildren();
+                }
+            }
+        } catch (Exception e) {
+            log.debug("Ignoring malformed frame from user {}", userId);
+            return;
+        }
+        if (type == null) {
+            return;
+        }
+        switch (type) {
+            case "typing" -> {
+                if (to > 0) {
+                    typingIndicatorService.update(userId, to, typing);
+                }
+            }
+            case "ping" -> {
+                ClientConnection connection = sessionRegistry.find(userId, session);
+                if (connection != null) {
+                    sessionRegistry.send(connection, PongFrame.INSTANCE);
+                }
+            }
+            case "ack" -> {
+                ClientConnection connection = sessionRegistry.find(userId, session);
+                if (connection != null && upTo > 0) {
+                    messageDeliveryService.acknowledge(connection, upTo);
+                }
+            }
+            default -> log.debug("Ignoring frame of unknown type from user {}", userId);
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        Integer userId = userId(session);
+        if (userId != null) {
+            sessionRegistry.unregister(userId, session);
+            log.debug("Websocket session {} closed for user {}: {}", session.getId(), userId, status);
+        }
+    }
+
+    static Integer userId(WebSocketSession session) {
+        Object userId = session.getAttributes().get(USER_ID_ATTRIBUTE);
+        return userId instanceof Integer id ? id : null;
+    }
+}
@@ -0,0 +1,67 @@
+package com.ma.message_apps.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One open websocket of a user: the thread-safe session, the codec negotiated at connect time,
+ * and the per-connection state of the binary codec.
+ */
+public final class ClientConnection {
+
+    private final Integer userId;
+    private final WebSocketSession session;
+    private final int codecVersion;
+
+    // Binary codec only; guarded by this
+    private final Map<Integer, String> internedUsernames = new HashMap<>();
+    private final BinaryFrameWriter writer = new BinaryFrameWriter();
+
+    ClientConnection(Integer userId, WebSocketSession session, int codecVersion) {
+        this.userId = userId;
+        this.session = session;
+        this.codecVersion = codecVersion;
+    }
+
+    public Integer userId() {
+        return userId;
+    }
+
+    public WebSocketSession session() {
+        return session;
+    }
+
+    public int codecVersion() {
+        return codecVersion;
+    }
+
+    void send(ServerFrame frame, ObjectMapper objectMapper) throws IOException {
+        if (codecVersion == FrameCodec.JSON) {
+            session.sendMessage(frame.asText(objectMapper));
+        } else if (!frame.usesConnectionState()) {
+            // Shared bytes, but a fresh buffer per send: the container advances its position while writing
+            session.sendMessage(new BinaryMessage(frame.asSharedBinary()));
+        } else {
+            // Encode and enqueue in one step, so a username always reaches the client before the frames that omit it
+            synchronized (this) {
+                writer.reset();
+                frame.writeBinary(writer, this);
+                session.sendMessage(new BinaryMessage(writer.toByteArray()));
+            }
+        }
+    }
+
+    /**
+     * Remember the username sent for a user ID
+     *
+     * @return true if the client does not have this name yet and it must be written out
+     */
+    boolean internUsername(Integer userId, String username) {
+        return !username.equals(internedUsernames.put(userId, username));
+    }
+}
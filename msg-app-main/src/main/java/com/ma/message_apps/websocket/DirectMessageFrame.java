@@ -0,0 +1,39 @@
+package com.ma.message_apps.websocket;
+
+import com.ma.message_apps.dto.DirectMessageDto;
+
+import java.util.Map;
+
+/**
+ * A one-to-one message, pushed to both participants: {"type":"message","message":{...}}
+ */
+public final class DirectMessageFrame extends ServerFrame {
+
+    private final DirectMessageDto message;
+
+    public DirectMessageFrame(DirectMessageDto message) {
+        this.message = message;
+    }
+
+    @Override
+    protected Map<String, Object> toJson() {
+        return Map.of("type", "message", "message", message);
+    }
+
+    @Override
+    void writeBinary(BinaryFrameWriter out, ClientConnection connection) {
+        write(out, message);
+    }
+
+    static void write(BinaryFrameWriter out, DirectMessageDto message) {
+        out.beginRecord(FrameCodec.MESSAGE);
+        out.writeId(message.messageId());
+        out.writeVarint(message.seq() == null ? 0 : message.seq());
+        out.writeId(message.senderId());
+        out.writeId(message.receiverId());
+        out.writeTimestamp(message.createdAt());
+        out.writeString(message.messageText());
+        out.writeBoolean(Boolean.TRUE.equals(message.truncated()));
+        out.endRecord();
+    }
+}
@@ -0,0 +1,55 @@
+package com.ma.message_apps.websocket;
+
+/**
+ * Wire formats of server-to-client frames.
+ *
+ * The client asks for a codec version with the {@code codec} query parameter of the /ws URL and the
+ * server answers with a JSON {"type":"hello","codec":n} text frame carrying the version it will use
+ * (the highest one both sides support; 0 when the client asked for none).
+ *
+ * Version 1 sends binary websocket messages made of length-prefixed records:
+ * <pre>
+ *   record   := varint(length) type payload
+ *   MESSAGE       messageId seq senderId receiverId createdAtMillis text truncated
+ *   PENDING       hasMore count            (followed by count MESSAGE records in the same websocket message)
+ *   GROUP_MESSAGE messageId groupId senderId username createdAtMillis text
+ *   TYPING        fromUserId typing ttlMs
+ *   PONG
+ *   THUMBNAIL     attachmentId messageId ready width height
+ * </pre>
+ * Numbers are unsigned LEB128 varints, booleans one byte, text a varint byte length plus UTF-8.
+ * A username is sent once per user ID per connection as (length + 1) followed by the bytes; later
+ * frames send 0 and the client reuses the name it already has. Unknown record types are skipped
+ * using their length, so new types (and new trailing fields of a record) can be added without a
+ * version bump.
+ */
+public final class FrameCodec {
+
+    public static final int JSON = 0;
+    public static final int BINARY_V1 = 1;
+    public static final int LATEST = BINARY_V1;
+
+    static final byte MESSAGE = 1;
+    static final byte PENDING = 2;
+    static final byte GROUP_MESSAGE = 3;
+    static final byte TYPING = 4;
+    static final byte PONG = 5;
+    static final byte THUMBNAIL = 6;
+
+    private FrameCodec() {
+    }
+
+    /**
+     * Pick the codec for a connection from the version the client asked for
+     */
+    public static int negotiate(String requested) {
+        if (requested == null) {
+            return JSON;
+        }
+        try {
+            return Math.max(JSON, Math.min(Integer.parseInt(requested), LATEST));
+        } catch (NumberFormatException e) {
+            return JSON;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.ma.message_apps.websocket;
+
+import com.ma.message_apps.dto.GroupMessageDto;
+
+import java.util.Map;
+
+/**
+ * A message posted to a push-delivered group: {"type":"group_message","message":{...}}.
+ * In binary form the sender's username is sent only the first time a connection sees that sender.
+ */
+public final class GroupMessageFrame extends ServerFrame {
+
+    private final GroupMessageDto message;
+
+    public GroupMessageFrame(GroupMessageDto message) {
+        this.message = message;
+    }
+
+    @Override
+    protected Map<String, Object> toJson() {
+        return Map.of("type", "group_message", "message", message);
+    }
+
+    @Override
+    boolean usesConnectionState() {
+        return true;
+    }
+
+    @Override
+    void writeBinary(BinaryFrameWriter out, ClientConnection connection) {
+        out.beginRecord(FrameCodec.GROUP_MESSAGE);
+        out.writeId(message.messageId());
+        out.writeId(message.groupId());
+        out.writeId(message.senderId());
+        out.writeUsername(connection, message.senderId(), message.senderUsername());
+        out.writeTimestamp(message.createdAt());
+        out.writeString(message.messageText());
+        out.endRecord();
+    }
+}
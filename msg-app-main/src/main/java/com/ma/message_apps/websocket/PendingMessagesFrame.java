@@ -0,0 +1,37 @@
+package com.ma.message_apps.websocket;
+
+import com.ma.message_apps.dto.DirectMessageDto;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A batch of messages queued while the user was offline:
+ * {"type":"pending","messages":[...],"hasMore":bool}. The client acks the last message ID to get the next batch.
+ */
+public final class PendingMessagesFrame extends ServerFrame {
+
+    private final List<DirectMessageDto> messages;
+    private final boolean hasMore;
+
+    public PendingMessagesFrame(List<DirectMessageDto> messages, boolean hasMore) {
+        this.messages = messages;
+        this.hasMore = hasMore;
+    }
+
+    @Override
+    protected Map<String, Object> toJson() {
+        return Map.of("type", "pending", "messages", messages, "hasMore", hasMore);
+    }
+
+    @Override
+    void writeBinary(BinaryFrameWriter out, ClientConnection connection) {
+        out.beginRecord(FrameCodec.PENDING);
+        out.writeBoolean(hasMore);
+        out.writeVarint(messages.size());
+        out.endRecord();
+        for (DirectMessageDto message : messages) {
+            DirectMessageFrame.write(out, message);
+        }
+    }
+}
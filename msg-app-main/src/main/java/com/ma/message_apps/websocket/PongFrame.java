@@ -0,0 +1,25 @@
+package com.ma.message_apps.websocket;
+
+import java.util.Map;
+
+/**
+ * Answer to a client ping: {"type":"pong"}
+ */
+public final class PongFrame extends ServerFrame {
+
+    public static final PongFrame INSTANCE = new PongFrame();
+
+    private PongFrame() {
+    }
+
+    @Override
+    protected Map<String, Object> toJson() {
+        return Map.of("type", "pong");
+    }
+
+    @Override
+    void writeBinary(BinaryFrameWriter out, ClientConnection connection) {
+        out.beginRecord(FrameCodec.PONG);
+        out.endRecord();
+    }
+}
@@ -0,0 +1,57 @@
+package com.ma.message_apps.websocket;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.web.socket.TextMessage;
+
+import java.util.Map;
+
+/**
+ * An event pushed to clients, encodable as JSON text or as {@link FrameCodec#BINARY_V1} records.
+ * The JSON form, and the binary form when it does not depend on the connection, are built once
+ * and shared by every session the frame is sent to.
+ */
+public abstract class ServerFrame {
+
+    private volatile TextMessage text;
+    private volatile byte[] binary;
+
+    /**
+     * JSON body, including its "type"
+     */
+    protected abstract Map<String, Object> toJson();
+
+    /**
+     * Append this frame's records
+     *
+     * @param connection The receiving connection, for per-connection state such as interned usernames
+     */
+    abstract void writeBinary(BinaryFrameWriter out, ClientConnection connection);
+
+    /**
+     * Whether {@link #writeBinary} reads or updates per-connection state
+     */
+    boolean usesConnectionState() {
+        return false;
+    }
+
+    TextMessage asText(ObjectMapper objectMapper) throws JsonProcessingException {
+        TextMessage result = text;
+        if (result == null) {
+            result = new TextMessage(objectMapper.writeValueAsString(toJson()));
+            text = result;
+        }
+        return result;
+    }
+
+    byte[] asSharedBinary() {
+        byte[] result = binary;
+        if (result == null) {
+            BinaryFrameWriter out = new BinaryFrameWriter();
+            writeBinary(out, null);
+            result = out.toByteArray();
+            binary = result;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,44 @@
+package com.ma.message_apps.websocket;
+
+import com.ma.message_apps.event.ThumbnailFinishedEvent;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thumbnail of an attachment finished: {"type":"thumbnail","attachmentId":n,"messageId":n,"ready":bool,
+ * "width":n,"height":n}; the size is only sent when ready. The client fetches the image itself.
+ */
+public final class ThumbnailFrame extends ServerFrame {
+
+    private final ThumbnailFinishedEvent thumbnail;
+
+    public ThumbnailFrame(ThumbnailFinishedEvent thumbnail) {
+        this.thumbnail = thumbnail;
+    }
+
+    @Override
+    protected Map<String, Object> toJson() {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("type", "thumbnail");
+        json.put("attachmentId", thumbnail.attachmentId());
+        json.put("messageId", thumbnail.messageId());
+        json.put("ready", thumbnail.ready());
+        if (thumbnail.ready()) {
+            json.put("width", thumbnail.width());
+            json.put("height", thumbnail.height());
+        }
+        return json;
+    }
+
+    @Override
+    void writeBinary(BinaryFrameWriter out, ClientConnection connection) {
+        out.beginRecord(FrameCodec.THUMBNAIL);
+        out.writeVarint(thumbnail.attachmentId());
+        out.writeVarint(thumbnail.messageId());
+        out.writeBoolean(thumbnail.ready());
+        out.writeVarint(thumbnail.ready() ? thumbnail.width() : 0);
+        out.writeVarint(thumbnail.ready() ? thumbnail.height() : 0);
+        out.endRecord();
+    }
+}
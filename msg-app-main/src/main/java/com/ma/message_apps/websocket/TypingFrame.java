@@ -0,0 +1,42 @@
+package com.ma.message_apps.websocket;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Typing state of the other participant: {"type":"typing","from":userId,"typing":bool,"ttlMs":n}.
+ * The TTL is only sent with a start; the receiver clears the indicator itself when it runs out.
+ */
+public final class TypingFrame extends ServerFrame {
+
+    private final int fromUserId;
+    private final boolean typing;
+    private final long ttlMs;
+
+    public TypingFrame(int fromUserId, boolean typing, long ttlMs) {
+        this.fromUserId = fromUserId;
+        this.typing = typing;
+        this.ttlMs = ttlMs;
+    }
+
+    @Override
+    protected Map<String, Object> toJson() {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("type", "typing");
+        json.put("from", fromUserId);
+        json.put("typing", typing);
+        if (typing) {
+            json.put("ttlMs", ttlMs);
+        }
+        return json;
+    }
+
+    @Override
+    void writeBinary(BinaryFrameWriter out, ClientConnection connection) {
+        out.beginRecord(FrameCodec.TYPING);
+        out.writeVarint(fromUserId);
+        out.writeBoolean(typing);
+        out.writeVarint(typing ? ttlMs : 0);
+        out.endRecord();
+    }
+}
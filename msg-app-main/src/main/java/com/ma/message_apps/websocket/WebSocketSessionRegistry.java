@@ -0,0 +1,182 @@
+package com.ma.message_apps.websocket;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.server.support.HttpSessionHandshakeInterceptor;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Open websocket connections by user ID. A user can have several (one per tab or device).
+ * Sessions are wrapped so that any thread can send to them.
+ */
+@Component
+@Slf4j
+public class WebSocketSessionRegistry {
+
+    private static final int SEND_TIME_LIMIT_MS = 10_000;
+    private static final int BUFFER_SIZE_LIMIT = 512 * 1024;
+
+    private final ObjectMapper objectMapper;
+    private final Map<Integer, Map<String, ClientConnection>> connectionsByUser = new ConcurrentHashMap<>();
+
+    @Autowired
+    public WebSocketSessionRegistry(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Register a newly opened session and tell the client which codec it will get
+     *
+     * @param codecVersion Negotiated {@link FrameCodec} version
+     * @return The connection to use for sending, or null if the session broke during the hello
+     */
+    public ClientConnection register(Integer userId, WebSocketSession session, int codecVersion) {
+        ClientConnection connection = new ClientConnection(userId,
+                new ConcurrentWebSocketSessionDecorator(session, SEND_TIME_LIMIT_MS, BUFFER_SIZE_LIMIT), codecVersion);
+        // Inside compute, so a concurrent unregister cannot drop the map between creating and filling it
+        connectionsByUser.compute(userId, (id, connections) -> {
+            connections = connections == null ? new ConcurrentHashMap<>() : connections;
+            connections.put(session.getId(), connection);
+            return connections;
+        });
+        try {
+            // Always text, so a client can read it before it knows the codec
+            connection.session().sendMessage(
+                    new TextMessage("{\"type\":\"hello\",\"codec\":" + codecVersion + "}"));
+            return connection;
+        } catch (IOException | IllegalStateException e) {
+            drop(connection, e);
+            return null;
+        }
+    }
+
+    /**
+     * Forget a closed session
+     */
+    public void unregister(Integer userId, WebSocketSession session) {
+        connectionsByUser.computeIfPresent(userId, (id, connections) -> {
+            connections.remove(session.getId());
+            return connections.isEmpty() ? null : connections;
+        });
+    }
+
+    /**
+     * Close and forget every session of a user
+     *
+     * @return number of sessions closed
+     */
+    public int closeAll(Integer userId, CloseStatus status) {
+        Map<String, ClientConnection> connections = connectionsByUser.remove(userId);
+        if (connections == null) {
+            return 0;
+        }
+        for (ClientConnection connection : connections.values()) {
+            try {
+                connection.session().close(status);
+            } catch (IOException ignored) {
+                // already gone
+            }
+        }
+        return connections.size();
+    }
+
+    /**
+     * Close and forget the sessions a user opened from one HTTP session (on logout)
+     *
+     * @return number of sessions closed
+     */
+    public int closeForHttpSession(Integer userId, String httpSessionId, CloseStatus status) {
+        Map<String, ClientConnection> connections = connectionsByUser.get(userId);
+        if (connections == null) {
+            return 0;
+        }
+        int closed = 0;
+        for (ClientConnection connection : connections.values()) {
+            WebSocketSession session = connection.session();
+            if (httpSessionId.equals(session.getAttributes().get(HttpSessionHandshakeInterceptor.HTTP_SESSION_ID_ATTR_NAME))) {
+                unregister(userId, session);
+                try {
+                    session.close(status);
+                } catch (IOException ignored) {
+                    // already gone
+                }
+                closed++;
+            }
+        }
+        return closed;
+    }
+
+    /**
+     * The connection registered for a raw session, or null if it is not (or no longer) registered
+     */
+    public ClientConnection find(Integer userId, WebSocketSession session) {
+        Map<String, ClientConnection> connections = connectionsByUser.get(userId);
+        return connections == null ? null : connections.get(session.getId());
+    }
+
+    /**
+     * Check if a user has at least one open session
+     */
+    public boolean isOnline(Integer userId) {
+        return connectionsByUser.containsKey(userId);
+    }
+
+    /**
+     * Send a frame to every open session of a user, each in the codec it negotiated
+     *
+     * @return number of sessions the frame was written to
+     */
+    public int sendToUser(Integer userId, ServerFrame frame) {
+        Map<String, ClientConnection> connections = connectionsByUser.get(userId);
+        if (connections == null) {
+            return 0;
+        }
+        int sent = 0;
+        for (ClientConnection connection : connections.values()) {
+            if (send(connection, frame)) {
+                sent++;
+            }
+        }
+        return sent;
+    }
+
+    /**
+     * Send a frame to one connection, dropping it if it is broken or too slow
+     *
+     * @return true if the frame was written
+     */
+    public boolean send(ClientConnection connection, ServerFrame frame) {
+        try {
+            connection.send(frame, objectMapper);
+            return true;
+        } catch (JsonProcessingException e) {
+            // The frame is bad, not the connection
+            log.error("Error serializing {} for user {}", frame.getClass().getSimpleName(), connection.userId(), e);
+            return false;
+        } catch (IOException | IllegalStateException e) {
+            drop(connection, e);
+            return false;
+        }
+    }
+
+    private void drop(ClientConnection connection, Exception cause) {
+        WebSocketSession session = connection.session();
+        log.debug("Dropping websocket session {} of user {}: {}", session.getId(), connection.userId(), cause.getMessage());
+        unregister(connection.userId(), session);
+        try {
+            session.close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException ignored) {
+            // already gone
+        }
+    }
+}
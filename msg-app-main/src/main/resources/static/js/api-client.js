@@ -120,6 +120,26 @@ const ApiClient = {
             });
         },
 
+        /**
+         * Accept every pending friend request of the current user
+         * @returns {Promise} Bulk result
+         */
+        acceptAllFriendRequests() {
+            return ApiClient.request('/api/friend-requests/accept-all', {
+                method: 'POST'
+            });
+        },
+
+        /**
+         * Reject every pending friend request of the current user
+         * @returns {Promise} Bulk result
+         */
+        rejectAllFriendRequests() {
+            return ApiClient.request('/api/friend-requests/reject-all', {
+                method: 'POST'
+            });
+        },
+
         /**
          * Reject a friend request
          * @param {number} requestId - Friend request ID
@@ -138,6 +158,15 @@ const ApiClient = {
          */
         findUser(query) {
             return ApiClient.request(`/api/friends/find?query=${encodeURIComponent(query)}`);
+        },
+
+        /**
+         * Count mutual friends between the current user and each of the given users
+         * @param {number[]} userIds - User IDs to compare against
+         * @returns {Promise} Counts keyed by user ID
+         */
+        getMutualFriends(userIds) {
+            return ApiClient.request(`/api/friends/mutual?ids=${userIds.join(',')}`);
         }
     },
 
@@ -147,10 +176,35 @@ const ApiClient = {
          * Get chat messages between current user and another user
          * @param {number} currentUserId - Current user ID
          * @param {number} otherUserId - Other user ID
-         * @returns {Promise} Chat messages
+         * @param {number} beforeSeq - Only messages before this sequence number (optional)
+         * @param {number} limit - Maximum number of messages, the newest first kept (optional)
+         * @returns {Promise} Chat messages in order
+         */
+        getChatMessages(currentUserId, otherUserId, beforeSeq, limit) {
+            const params = new URLSearchParams();
+            if (beforeSeq) params.append('beforeSeq', beforeSeq);
+            if (limit) params.append('limit', limit);
+            const query = params.toString();
+            return ApiClient.request(`/api/messages/${currentUserId}/${otherUserId}${query ? '?' + query : ''}`);
+        },
+
+        /**
+         * Get the full text of a message listed with a truncated preview
+         * @param {number} messageId - Message ID
+         * @returns {Promise} Message ID and full text
          */
-        getChatMessages(currentUserId, otherUserId) {
-            return ApiClient.request(`/api/messages/${currentUserId}/${otherUserId}`);
+        getMessageBody(messageId) {
+            return ApiClient.request(`/api/messages/${messageId}/body`);
+        },
+
+        /**
+         * Get the messages of a conversation after the last sequence number already shown
+         * @param {number} withUserId - Other user ID
+         * @param {number} afterSeq - Last sequence number the client has (0 for none)
+         * @returns {Promise} Messages in order, lastSeq and hasMore
+         */
+        resumeConversation(withUserId, afterSeq) {
+            return ApiClient.request(`/api/messages/resume?withUserId=${withUserId}&afterSeq=${afterSeq}`);
         },
 
         /**
@@ -158,16 +212,116 @@ const ApiClient = {
          * @param {number} fromUserId - Sender user ID
          * @param {number} toUserId - Recipient user ID
          * @param {string} content - Message content
+         * @param {string} clientMessageId - ID reused when the same message is sent again (optional)
+         * @param {number[]} attachmentIds - Uploaded attachments to send with the message (optional)
          * @returns {Promise} Send result
          */
-        sendMessage(fromUserId, toUserId, content) {
+        sendMessage(fromUserId, toUserId, content, clientMessageId, attachmentIds) {
+            let body = `fromUserId=${fromUserId}&toUserId=${toUserId}&content=${encodeURIComponent(content)}`;
+            if (clientMessageId) {
+                body += `&clientMessageId=${encodeURIComponent(clientMessageId)}`;
+            }
+            if (attachmentIds && attachmentIds.length) {
+                body += `&attachmentIds=${attachmentIds.join(',')}`;
+            }
             return ApiClient.request('/api/messages/send', {
                 method: 'POST',
                 headers: {
                     'Content-Type': 'application/x-www-form-urlencoded'
                 },
-                body: `fromUserId=${fromUserId}&toUserId=${toUserId}&content=${encodeURIComponent(content)}`
+                body: body
+            });
+        },
+
+        /**
+         * Mark the messages received in a conversation as read
+         * @param {number} withUserId - Other user ID
+         * @param {number} upToSeq - Last sequence number shown
+         * @returns {Promise} Number of messages marked
+         */
+        markRead(withUserId, upToSeq) {
+            return ApiClient.request(`/api/messages/read?withUserId=${withUserId}&upToSeq=${upToSeq}`, {
+                method: 'POST'
+            });
+        }
+    },
+
+    // Attachment APIs
+    attachments: {
+        /**
+         * Start the upload of a file
+         * @param {File} file - File to upload
+         * @returns {Promise} The attachment (nothing received yet) and the largest chunk accepted
+         */
+        create(file) {
+            const body = `fileName=${encodeURIComponent(file.name)}&contentType=${encodeURIComponent(file.type)}&size=${file.size}`;
+            return ApiClient.request('/api/attachments', {
+                method: 'POST',
+                headers: {
+                    'Content-Type': 'application/x-www-form-urlencoded'
+                },
+                body: body
             });
+        },
+
+        /**
+         * Upload a chunk of a file, starting where the upload stands
+         * @param {number} attachmentId - Attachment ID
+         * @param {number} offset - Position of the chunk in the file
+         * @param {Blob} chunk - Chunk bytes
+         * @returns {Promise} The attachment, complete after the last chunk
+         */
+        uploadChunk(attachmentId, offset, chunk) {
+            return ApiClient.request(`/api/attachments/${attachmentId}/content?offset=${offset}`, {
+                method: 'PUT',
+                headers: {
+                    'Content-Type': 'application/octet-stream'
+                },
+                body: chunk
+            });
+        },
+
+        /**
+         * Get an attachment; for an unfinished upload, received is where it resumes
+         * @param {number} attachmentId - Attachment ID
+         * @returns {Promise} The attachment
+         */
+        get(attachmentId) {
+            return ApiClient.request(`/api/attachments/${attachmentId}`);
+        },
+
+        /**
+         * URL the content of an attachment is downloaded from
+         * @param {number} attachmentId - Attachment ID
+         * @returns {string} Download URL
+         */
+        contentUrl(attachmentId) {
+            return `/api/attachments/${attachmentId}/content`;
+        },
+
+        /**
+         * Upload a whole file in chunks; after a failed chunk it waits and resumes where the server got to
+         * @param {File} file - File to upload
+         * @returns {Promise} The complete attachment, to send with a message
+         */
+        async upload(file) {
+            const created = await ApiClient.attachments.create(file);
+            if (!created || !created.success) return created;
+            let attachment = created.attachment;
+            let failures = 0;
+            while (!attachment.complete) {
+                try {
+                    const response = await ApiClient.attachments.uploadChunk(attachment.attachmentId, attachment.received,
+                        file.slice(attachment.received, attachment.received + created.chunkSize));
+                    attachment = response.attachment;
+                    failures = 0;
+                } catch (error) {
+                    if (++failures > 5) throw error;
+                    await new Promise(resolve => setTimeout(resolve, 1000 * failures));
+                    attachment = (await ApiClient.attachments.get(attachment.attachmentId)).attachment;
+                }
+            }
+            return { success: true, attachment: attachment };
         }
     },
 
@@ -207,6 +361,18 @@ const ApiClient = {
         }
     },
 
+    // Change feed APIs
+    sync: {
+        /**
+         * Get what changed for the current user since a sync token
+         * @param {number|null} since - Token from the previous call (null on first load)
+         * @returns {Promise} New token, reset flag, hasMore and the changes
+         */
+        getChanges(since) {
+            return ApiClient.request(since == null ? '/api/sync' : `/api/sync?since=${since}`);
+        }
+    },
+
     /**
      * Redirect to login page with optional message
      * @param {string} message - Optional message to display after redirection
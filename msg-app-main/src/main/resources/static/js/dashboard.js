@@ -48,9 +48,24 @@ document.addEventListener('DOMContentLoaded', function() {
     
     // Shared variables for chat functionality
     let selectedContactId = null;
-    let chatPollingInterval = null;
-    let contactsRefreshInterval = null; // New variable for contacts auto-refresh
-    const CONTACTS_REFRESH_INTERVAL = 5000; // Refresh contacts every 15 seconds
+    let chatLastSeq = 0; // Highest conversation sequence number shown for the selected contact
+    let chatReadSeq = 0; // Highest of our messages the selected contact has read
+    let chatReadSentSeq = 0; // Highest received message we reported as read
+    let chatResumeInFlight = false;
+    let chatFirstSeq = 0; // Lowest conversation sequence number shown; older pages are loaded on scroll
+    let chatHistoryDone = false;
+    let chatHistoryInFlight = false;
+    const CHAT_PAGE_SIZE = 50;
+    let unsentMessage = null; // Last message whose send failed, kept with its client message ID for the retry
+    let socket = null;
+    let socketRetryDelay = 1000;
+    let typingSentAt = 0; // When we last told the server we are typing
+    let typingHideTimer = null;
+    const TYPING_THROTTLE = 1000;
+    let syncToken = null; // Change feed position; null until the first sync
+    let syncTimer = null;
+    let syncInFlight = false;
+    const SYNC_INTERVAL = 5000;
 
     // Initialize the dashboard
     initDashboard();
@@ -68,14 +83,13 @@ document.addEventListener('DOMContentLoaded', function() {
             // Load friends list
             await loadFriends();
             
-            // Load chat contacts
-            loadChatContacts();
-
-            // Load friend requests
-            loadFriendRequests();
+            // Chat contacts and friend requests are loaded by the first sync (it always asks for a reload)
 
             // Set up event listeners
             setupEventListeners();
+
+            // Open the push connection
+            connectSocket();
             
             hideLoading();
             dashboardContent.style.display = 'block';
@@ -234,8 +248,8 @@ document.addEventListener('DOMContentLoaded', function() {
         // Set up chat form
         setupChatForm();
 
-        // Start the auto-refresh for contacts
-        startContactsAutoRefresh();
+        // Follow the change feed
+        startSync();
     }
 
     /**
@@ -268,13 +282,7 @@ document.addEventListener('DOMContentLoaded', function() {
                             document.getElementById('chat-form').style.display = 'none';
                             document.getElementById('chat-with-label').textContent = 'Select a contact to chat';
                             document.getElementById('chat-messages').innerHTML = '<div class="text-center p-5 text-muted">Select a contact to start chatting</div>';
-                            stopChatPolling();
-
-                            // Start auto-refresh for contacts when chat tab is active
-                            startContactsAutoRefresh();
-                        } else {
-                            // Stop auto-refresh for contacts when leaving chat tab
-                            stopContactsAutoRefresh();
+                            selectedContactId = null;
                         }
                     });
                 } catch (e) {
@@ -455,9 +463,13 @@ document.addEventListener('DOMContentLoaded', function() {
                            <button class="btn btn-danger btn-sm" onclick="rejectFriendRequest(${requestId})">Reject</button>`
                         : '';
 
+                    const mutual = req.mutualFriends
+                        ? ` <small class="text-muted">(${req.mutualFriends} mutual friend${req.mutualFriends === 1 ? '' : 's'})</small>`
+                        : '';
+
                     const row = document.createElement('tr');
                     row.innerHTML = `
-                        <td>${senderName}</td>
+                        <td>${senderName}${mutual}</td>
                         <td>${typeof req.status === 'object' && req.status.name ? req.status.name : req.status}</td>
                         <td>${actions}</td>
                     `;
@@ -504,6 +516,31 @@ document.addEventListener('DOMContentLoaded', function() {
             });
     };
 
+    window.acceptAllFriendRequests = function() {
+        ApiClient.friends.acceptAllFriendRequests()
+            .then(response => {
+                showNotification(response.message || 'Friend requests accepted', 'success');
+                loadFriendRequests();
+                loadChatContacts();
+            })
+            .catch(error => {
+                console.error("Error accepting friend requests:", error);
+                showNotification('Failed to accept friend requests', 'error');
+            });
+    };
+
+    window.rejectAllFriendRequests = function() {
+        ApiClient.friends.rejectAllFriendRequests()
+            .then(response => {
+                showNotification(response.message || 'Friend requests rejected', 'info');
+                loadFriendRequests();
+            })
+            .catch(error => {
+                console.error("Error rejecting friend requests:", error);
+                showNotification('Failed to reject friend requests', 'error');
+            });
+    };
+
     // --- Send Friend Request Form Logic ---
     const sendFriendForm = document.getElementById('send-friend-form');
     if (sendFriendForm) {
@@ -559,55 +596,273 @@ document.addEventListener('DOMContentLoaded', function() {
     // --- Chat Tab Logic ---
 
     /**
-     * Starts polling for new chat messages
-     * @param {number} contactId - The contact ID to poll messages for
+     * Opens the websocket used for pushed messages, reconnecting with backoff when it drops.
+     * After a reconnect the open conversation is caught up from the last sequence number shown.
+     */
+    function connectSocket() {
+        const protocol = window.location.protocol === 'https:' ? 'wss:' : 'ws:';
+        // Ask for the binary codec; the server's "hello" says which one we actually got
+        socket = new WebSocket(`${protocol}//${window.location.host}/ws?codec=${FrameCodec.VERSION}`);
+        socket.binaryType = 'arraybuffer';
+        const codecState = FrameCodec.newState();
+
+        socket.addEventListener('open', () => {
+            socketRetryDelay = 1000;
+            if (selectedContactId) {
+                resumeChatMessages(selectedContactId);
+            }
+        });
+
+        socket.addEventListener('message', event => {
+            let frames;
+            try {
+                frames = typeof event.data === 'string'
+                    ? [JSON.parse(event.data)]
+                    : FrameCodec.decode(event.data, codecState);
+            } catch (e) {
+                console.error('Invalid socket frame:', e);
+                return;
+            }
+            frames.forEach(handleSocketFrame);
+        });
+
+        socket.addEventListener('close', () => {
+            setTimeout(connectSocket, socketRetryDelay);
+            socketRetryDelay = Math.min(socketRetryDelay * 2, 30000);
+        });
+    }
+
+    /**
+     * Dispatches one decoded server frame
+     * @param {Object} frame - Frame with its type and payload
      */
-    function startChatPolling(contactId) {
-        if (chatPollingInterval) clearInterval(chatPollingInterval);
-        chatPollingInterval = setInterval(() => {
-            loadChatMessages(contactId);
-        }, 3000); // Poll every 3 seconds
+    function handleSocketFrame(frame) {
+        if (frame.type === 'message') {
+            handlePushedMessage(frame.message);
+        } else if (frame.type === 'pending') {
+            handlePendingMessages(frame.messages);
+        } else if (frame.type === 'typing') {
+            handleTypingFrame(frame);
+        } else if (frame.type === 'thumbnail') {
+            handleThumbnailFrame(frame);
+        }
     }
 
     /**
-     * Stops polling for chat messages
+     * Shows the thumbnail of an attachment of the open conversation once it has been rendered
+     * @param {Object} frame - Thumbnail frame with attachmentId, ready, width and height
      */
-    function stopChatPolling() {
-        if (chatPollingInterval) clearInterval(chatPollingInterval);
-        chatPollingInterval = null;
+    function handleThumbnailFrame(frame) {
+        if (!frame.ready) return;
+        const link = document.querySelector(`#chat-messages .chat-attachment[data-attachment-id="${frame.attachmentId}"]`);
+        if (!link || link.querySelector('img')) return;
+        link.prepend(chatThumbnailImage(`/api/attachments/${frame.attachmentId}/thumbnail`, frame.width, frame.height));
     }
 
     /**
-     * Starts the auto-refresh interval for contacts list
+     * Applies a pushed message to the open conversation.
+     * A sequence number past the next expected one means frames were missed; fetch exactly that range.
+     * @param {Object} msg - Pushed message with seq, senderId and receiverId
      */
-    function startContactsAutoRefresh() {
-        // Clear any existing interval first
-        stopContactsAutoRefresh();
+    function handlePushedMessage(msg) {
+        const otherId = msg.senderId === window.currentUserId ? msg.receiverId : msg.senderId;
+        if (otherId !== selectedContactId) return;
 
-        // Only start auto-refresh if we're on the chat tab
-        if (!document.getElementById('chat').classList.contains('show')) return;
+        if (msg.seq <= chatLastSeq) return; // already shown
+        if (msg.seq === chatLastSeq + 1 && !chatResumeInFlight) {
+            appendChatMessages([msg]);
+        } else {
+            resumeChatMessages(selectedContactId);
+        }
+    }
 
-        console.log(`Starting auto-refresh for contacts (every ${CONTACTS_REFRESH_INTERVAL/1000}s)`);
-        contactsRefreshInterval = setInterval(() => {
-            // Only refresh if we're on the chat tab
-            if (document.getElementById('chat').classList.contains('show')) {
-                console.log("Auto-refreshing contacts list...");
-                loadChatContacts(true); // true means it's an auto-refresh
+    /**
+     * Tells the open conversation's contact that we are (or stopped) typing.
+     * Throttled here as well; the server coalesces whatever gets through.
+     * @param {boolean} typing - Whether we are typing
+     */
+    function sendTyping(typing) {
+        if (!selectedContactId || !socket || socket.readyState !== WebSocket.OPEN) return;
+        const now = Date.now();
+        if (typing && now - typingSentAt < TYPING_THROTTLE) return;
+        if (!typing && typingSentAt === 0) return;
+        typingSentAt = typing ? now : 0;
+        socket.send(JSON.stringify({ type: 'typing', to: selectedContactId, typing }));
+    }
+
+    /**
+     * Shows or hides the contact's typing indicator; it hides itself once the TTL runs out
+     * @param {Object} frame - Typing frame with from, typing and ttlMs
+     */
+    function handleTypingFrame(frame) {
+        const indicator = document.getElementById('typing-indicator');
+        if (!indicator || frame.from !== selectedContactId) return;
+        if (typingHideTimer) clearTimeout(typingHideTimer);
+        typingHideTimer = null;
+        if (frame.typing) {
+            indicator.classList.remove('d-none');
+            typingHideTimer = setTimeout(() => indicator.classList.add('d-none'), frame.ttlMs || 5000);
+        } else {
+            indicator.classList.add('d-none');
+        }
+    }
+
+    /**
+     * Applies a batch of messages that arrived while we were offline, then acks it so the server
+     * can drop them and send the next batch
+     * @param {Array} messages - Pending messages in order
+     */
+    function handlePendingMessages(messages) {
+        if (!messages || !messages.length) return;
+        let elsewhere = 0;
+        messages.forEach(msg => {
+            const otherId = msg.senderId === window.currentUserId ? msg.receiverId : msg.senderId;
+            if (otherId === selectedContactId) {
+                handlePushedMessage(msg);
+            } else {
+                elsewhere++;
             }
-        }, CONTACTS_REFRESH_INTERVAL);
+        });
+        if (elsewhere > 0) {
+            showNotification(`You have ${elsewhere} new message${elsewhere === 1 ? '' : 's'}`, 'info');
+        }
+        if (socket && socket.readyState === WebSocket.OPEN) {
+            socket.send(JSON.stringify({ type: 'ack', upTo: messages[messages.length - 1].messageId }));
+        }
+    }
+
+    /**
+     * Fetches and appends the messages after the last sequence number shown
+     * @param {number} contactId - The contact ID of the open conversation
+     */
+    function resumeChatMessages(contactId) {
+        if (chatResumeInFlight) return;
+        chatResumeInFlight = true;
+        ApiClient.messages.resumeConversation(contactId, chatLastSeq)
+            .then(response => {
+                chatResumeInFlight = false;
+                if (!response || !response.success || contactId !== selectedContactId) return;
+                appendChatMessages(response.messages);
+                if (response.hasMore) {
+                    resumeChatMessages(contactId);
+                }
+            })
+            .catch(error => {
+                chatResumeInFlight = false;
+                console.error('Error resuming chat messages:', error);
+            });
+    }
+
+    /**
+     * Starts following the change feed. One call every few seconds replaces the separate
+     * contacts, status and chat reloads; the first call asks for a full load and returns the starting token.
+     */
+    function startSync() {
+        if (syncTimer) clearInterval(syncTimer);
+        runSync();
+        syncTimer = setInterval(runSync, SYNC_INTERVAL);
+    }
+
+    /**
+     * Fetches and applies what changed since the last token, continuing while the server has more
+     */
+    function runSync() {
+        if (syncInFlight) return;
+        syncInFlight = true;
+        ApiClient.sync.getChanges(syncToken)
+            .then(response => {
+                syncInFlight = false;
+                if (!response || !response.success) return;
+                syncToken = response.token;
+                if (response.reset) {
+                    // No usable token (first load, or the server's log was reset): reload everything
+                    loadChatContacts(true);
+                    loadFriendRequests();
+                    return;
+                }
+                applySyncChanges(response);
+                if (response.hasMore) {
+                    runSync();
+                }
+            })
+            .catch(error => {
+                syncInFlight = false;
+                console.error('Error syncing changes:', error);
+            });
+    }
+
+    /**
+     * Applies one page of the change feed to the UI
+     * @param {Object} changes - conversations, readReceipts, relationships and presence
+     */
+    function applySyncChanges(changes) {
+        if (changes.relationships && changes.relationships.length) {
+            // Friend list edits and request changes are rare; reload the affected lists
+            loadFriends();
+            loadChatContacts(true);
+            loadFriendRequests();
+        }
+
+        (changes.presence || []).forEach(({ userId, status }) => updateContactStatus(userId, status));
+
+        (changes.conversations || []).forEach(({ withUserId, seq }) => {
+            if (withUserId === selectedContactId) {
+                if (seq > chatLastSeq) resumeChatMessages(selectedContactId);
+            } else if (withUserId !== window.currentUserId) {
+                const badge = document.querySelector(`.contact-list-item[data-user-id="${withUserId}"] .contact-unread`);
+                if (badge) badge.classList.remove('d-none');
+            }
+        });
+
+        (changes.readReceipts || []).forEach(({ withUserId, seq }) => {
+            if (withUserId === selectedContactId) markChatRead(seq);
+        });
     }
 
     /**
-     * Stops the auto-refresh interval for contacts list
+     * Shows a contact's new status in the contacts list and, if open, the chat header
+     * @param {number} userId - Contact user ID
+     * @param {string} status - online, away or offline
      */
-    function stopContactsAutoRefresh() {
-        if (contactsRefreshInterval) {
-            console.log("Stopping contacts auto-refresh");
-            clearInterval(contactsRefreshInterval);
-            contactsRefreshInterval = null;
+    function updateContactStatus(userId, status) {
+        appState.contactStatuses[userId] = status;
+        const label = status.charAt(0).toUpperCase() + status.slice(1);
+
+        const item = document.querySelector(`.contact-list-item[data-user-id="${userId}"]`);
+        if (item) {
+            item.querySelector('.status-badge').className = `status-badge status-${status}`;
+            item.querySelector('.contact-status .status-indicator').className = `status-indicator status-${status}`;
+            item.querySelector('.contact-status span:last-child').textContent = label;
+        }
+
+        if (userId === selectedContactId) {
+            const statusIndicator = document.getElementById('contact-status-indicator');
+            const statusText = document.getElementById('contact-status-text');
+            if (statusIndicator && statusText) {
+                statusIndicator.querySelector('.status-indicator').className = `status-indicator status-${status}`;
+                statusText.textContent = label;
+            }
+        }
+
+        const onlineCountElement = document.getElementById('online-count');
+        if (onlineCountElement) {
+            const onlineCount = document.querySelectorAll('.contact-list-item .status-badge.status-online').length;
+            onlineCountElement.textContent = `${onlineCount} online`;
         }
     }
 
+    /**
+     * Shows our messages up to a sequence number as seen by the selected contact
+     * @param {number} seq - Last sequence number the contact has read
+     */
+    function markChatRead(seq) {
+        if (seq < chatReadSeq) return;
+        chatReadSeq = seq;
+        document.querySelectorAll('#chat-messages .chat-read').forEach(el => {
+            el.classList.toggle('d-none', Number(el.dataset.seq) > chatReadSeq);
+        });
+    }
+
     /**
      * Loads chat contacts (friends) list
      * @param {boolean} isAutoRefresh - Whether this is an automatic refresh (to preserve selection)
@@ -705,7 +960,7 @@ document.addEventListener('DOMContentLoaded', function() {
                                 <span class="status-badge status-${status}"></span>
                             </div>
                             <div class="contact-info">
-                                <div class="contact-name">${contactName}</div>
+                                <div class="contact-name">${contactName} <span class="badge bg-primary contact-unread d-none">new</span></div>
                                 <div class="contact-status">
                                     <span class="status-indicator status-${status}"></span>
                                     <span>${status.charAt(0).toUpperCase() + status.slice(1)}</span>
@@ -714,6 +969,8 @@ document.addEventListener('DOMContentLoaded', function() {
                         `;
 
                         item.addEventListener('click', function() {
+                            sendTyping(false);
+                            document.getElementById('typing-indicator').classList.add('d-none');
                             selectedContactId = contact.userId;
                             document.getElementById('chat-with-label').textContent = `Chat with ${contactName}`;
 
@@ -733,8 +990,8 @@ document.addEventListener('DOMContentLoaded', function() {
                             }
 
                             document.getElementById('chat-form').style.display = 'flex';
+                            item.querySelector('.contact-unread').classList.add('d-none');
                             loadChatMessages(selectedContactId);
-                            startChatPolling(selectedContactId);
 
                             // Remove active from all contacts
                             document.querySelectorAll('.contact-list-item').forEach(el => {
@@ -803,34 +1060,7 @@ document.addEventListener('DOMContentLoaded', function() {
         updateStatusDisplay(appState.userStatus);
         updateFooterStatus(appState.userStatus);
 
-        // In a real app, you'd set up WebSocket or periodic checking
-        // for other users' status updates here
-
-        // For demo purposes, simulate occasional status changes for contacts
-        setInterval(() => {
-            simulateContactStatusChanges();
-        }, 30000); // Every 30 seconds
-    }
-
-    /**
-     * Simulates status changes for demo purposes
-     * In a real app, this would be replaced with server notifications
-     */
-    function simulateContactStatusChanges() {
-        if (!appState.friends || !appState.friends.length) return;
-
-        const statuses = ['online', 'away', 'offline'];
-        const contactToUpdate = appState.friends[Math.floor(Math.random() * appState.friends.length)];
-
-        if (contactToUpdate && contactToUpdate.userId) {
-            const newStatus = statuses[Math.floor(Math.random() * statuses.length)];
-            appState.contactStatuses[contactToUpdate.userId] = newStatus;
-
-            // If chat contacts are visible, update the display
-            if (document.getElementById('chat').classList.contains('active')) {
-                loadChatContacts();
-            }
-        }
+        // Contacts' status changes arrive through the change feed (see applySyncChanges)
     }
 
     /**
@@ -838,40 +1068,23 @@ document.addEventListener('DOMContentLoaded', function() {
      * @param {number} contactId - The contact ID to load messages for
      */
     function loadChatMessages(contactId) {
-        ApiClient.messages.getChatMessages(window.currentUserId, contactId)
+        chatLastSeq = 0;
+        chatReadSeq = 0;
+        chatReadSentSeq = 0;
+        chatFirstSeq = 0;
+        chatHistoryDone = false;
+        ApiClient.messages.getChatMessages(window.currentUserId, contactId, null, CHAT_PAGE_SIZE)
             .then(messages => {
                 const chatMessages = document.getElementById('chat-messages');
                 chatMessages.innerHTML = '';
                 if (!messages || !messages.length) {
+                    chatHistoryDone = true;
                     chatMessages.innerHTML = '<div class="text-center p-5 text-muted">No messages yet.</div>';
                     return;
                 }
-                messages.forEach(msg => {
-                    // Use sender.userId to determine who sent the message
-                    const isOwn = msg.sender && msg.sender.userId === window.currentUserId;
-                    let date = msg.createdAt;
-                    // If date is a string and not null, format it
-                    let formattedDate = '';
-                    if (date) {
-                        try {
-                            formattedDate = new Date(date).toLocaleString();
-                        } catch (e) {
-                            formattedDate = date;
-                        }
-                    }
-                    const messageClass = isOwn ? 'chat-message-own' : 'chat-message-other';
-                    const senderName = msg.sender && msg.sender.username ? msg.sender.username : 'Unknown';
-                    chatMessages.innerHTML += `
-                        <div class="${messageClass}">
-                            <div class="chat-message-header">
-                                <span class="chat-sender">${isOwn ? 'You' : senderName}</span>
-                                <span class="chat-date">${formattedDate}</span>
-                            </div>
-                            <div class="chat-message-body">${msg.messageText}</div>
-                        </div>
-                    `;
-                });
-                chatMessages.scrollTop = chatMessages.scrollHeight;
+                chatFirstSeq = messages[0].seq || 0;
+                chatHistoryDone = messages.length < CHAT_PAGE_SIZE;
+                appendChatMessages(messages);
             })
             .catch(error => {
                 console.error('Error loading chat messages:', error);
@@ -880,22 +1093,220 @@ document.addEventListener('DOMContentLoaded', function() {
             });
     }
 
+    /**
+     * Loads the page of messages before the oldest one shown (archived months included)
+     * and puts it on top without moving what the user is looking at
+     */
+    function loadOlderChatMessages() {
+        if (chatHistoryInFlight || chatHistoryDone || !selectedContactId || chatFirstSeq <= 1) return;
+        const contactId = selectedContactId;
+        chatHistoryInFlight = true;
+        ApiClient.messages.getChatMessages(window.currentUserId, contactId, chatFirstSeq, CHAT_PAGE_SIZE)
+            .then(messages => {
+                chatHistoryInFlight = false;
+                if (contactId !== selectedContactId) return;
+                if (!messages || !messages.length) {
+                    chatHistoryDone = true;
+                    return;
+                }
+                chatHistoryDone = messages.length < CHAT_PAGE_SIZE;
+                chatFirstSeq = messages[0].seq || 0;
+                const chatMessages = document.getElementById('chat-messages');
+                const previousHeight = chatMessages.scrollHeight;
+                chatMessages.insertAdjacentHTML('afterbegin', messages.map(chatMessageHtml).join(''));
+                chatMessages.scrollTop = chatMessages.scrollHeight - previousHeight;
+                markChatRead(chatReadSeq);
+            })
+            .catch(error => {
+                chatHistoryInFlight = false;
+                console.error('Error loading older chat messages:', error);
+            });
+    }
+
+    /**
+     * Appends messages to the open conversation, skipping any already shown
+     * @param {Array} messages - Messages in sequence order (full history entries or pushed/resumed ones)
+     */
+    function appendChatMessages(messages) {
+        const chatMessages = document.getElementById('chat-messages');
+        if (!messages || !messages.length) return;
+        if (chatLastSeq === 0) {
+            chatMessages.innerHTML = '';
+        }
+        let lastReceivedSeq = 0;
+        messages.forEach(msg => {
+            if (msg.seq != null) {
+                if (msg.seq <= chatLastSeq) return;
+                chatLastSeq = msg.seq;
+            }
+            const isOwn = isOwnChatMessage(msg);
+            if (!isOwn && msg.seq != null) {
+                lastReceivedSeq = msg.seq;
+            } else if (isOwn && msg.isRead && msg.seq > chatReadSeq) {
+                chatReadSeq = msg.seq;
+            }
+            chatMessages.innerHTML += chatMessageHtml(msg);
+        });
+        markChatRead(chatReadSeq);
+        chatMessages.scrollTop = chatMessages.scrollHeight;
+
+        // Let the sender know how far we've read
+        if (lastReceivedSeq > chatReadSentSeq && selectedContactId) {
+            chatReadSentSeq = lastReceivedSeq;
+            ApiClient.messages.markRead(selectedContactId, lastReceivedSeq)
+                .catch(error => console.error('Error marking messages as read:', error));
+        }
+    }
+
+    /**
+     * Whether a message of the open conversation was sent by the current user
+     * @param {Object} msg - History entries carry the sender object, pushed and resumed ones only its ID
+     */
+    function isOwnChatMessage(msg) {
+        const senderId = msg.sender ? msg.sender.userId : msg.senderId;
+        return senderId === window.currentUserId;
+    }
+
+    /**
+     * Renders one message of the open conversation
+     * @param {Object} msg - Message (full history entry or pushed/resumed one)
+     * @returns {string} HTML of the message
+     */
+    function chatMessageHtml(msg) {
+        const isOwn = isOwnChatMessage(msg);
+        let date = msg.createdAt;
+        // If date is a string and not null, format it
+        let formattedDate = '';
+        if (date) {
+            try {
+                formattedDate = new Date(date).toLocaleString();
+            } catch (e) {
+                formattedDate = date;
+            }
+        }
+        const messageClass = isOwn ? 'chat-message-own' : 'chat-message-other';
+        const senderName = msg.sender && msg.sender.username
+            ? msg.sender.username
+            : document.getElementById('chat-with-label').textContent.replace('Chat with ', '') || 'Unknown';
+        return `
+            <div class="${messageClass}">
+                <div class="chat-message-header">
+                    <span class="chat-sender">${isOwn ? 'You' : senderName}</span>
+                    <span class="chat-date">${formattedDate}</span>
+                </div>
+                <div class="chat-message-body">${msg.messageText}</div>
+                ${msg.truncated ? `<a href="#" class="chat-show-full small" data-message-id="${msg.messageId}">Show full message</a>` : ''}
+                ${(msg.attachments || []).map(chatAttachmentHtml).join('')}
+                ${isOwn && msg.seq != null ? `<small class="chat-read text-muted d-none" data-seq="${msg.seq}">Seen</small>` : ''}
+            </div>
+        `;
+    }
+
+    /**
+     * Renders a download link for an attachment of a message
+     * @param {Object} attachment - Attachment of the message
+     * @returns {string} HTML of the link
+     */
+    function chatAttachmentHtml(attachment) {
+        const link = document.createElement('a');
+        link.className = 'chat-attachment small d-block';
+        link.href = ApiClient.attachments.contentUrl(attachment.attachmentId);
+        link.target = '_blank';
+        link.rel = 'noopener';
+        link.dataset.attachmentId = attachment.attachmentId;
+        link.textContent = `${attachment.fileName} (${Math.max(1, Math.round(attachment.size / 1024))} KB)`;
+        // The full image is only fetched when the link is opened
+        if (attachment.thumbnailUrl) {
+            link.prepend(chatThumbnailImage(attachment.thumbnailUrl, attachment.thumbnailWidth, attachment.thumbnailHeight));
+        }
+        return link.outerHTML;
+    }
+
+    /**
+     * Creates the image element of an attachment thumbnail, sized up front so the list does not jump
+     * @param {string} url - Thumbnail URL
+     * @param {number} width - Thumbnail width
+     * @param {number} height - Thumbnail height
+     * @returns {HTMLImageElement} The image
+     */
+    function chatThumbnailImage(url, width, height) {
+        const image = document.createElement('img');
+        image.className = 'chat-thumbnail d-block rounded mb-1';
+        image.src = url;
+        image.width = width;
+        image.height = height;
+        image.loading = 'lazy';
+        image.alt = '';
+        return image;
+    }
+
+    /**
+     * Replaces the preview of a long message with its full text
+     * @param {HTMLElement} link - The "Show full message" link of the message
+     */
+    function showFullChatMessage(link) {
+        ApiClient.messages.getMessageBody(link.dataset.messageId)
+            .then(response => {
+                if (!response || !response.success) return;
+                link.parentElement.querySelector('.chat-message-body').textContent = response.messageText;
+                link.remove();
+            })
+            .catch(error => {
+                console.error('Error loading message:', error);
+                showNotification('Could not load the full message.', 'error');
+            });
+    }
+
+    /**
+     * A fresh client message ID for a message about to be sent
+     */
+    function newClientMessageId() {
+        if (window.crypto && crypto.randomUUID) {
+            return crypto.randomUUID();
+        }
+        return Date.now().toString(36) + '-' + Math.random().toString(36).slice(2);
+    }
+
     /**
      * Setup chat form submission handler
      */
     function setupChatForm() {
         const chatForm = document.getElementById('chat-form');
         if (chatForm) {
+            const chatInput = document.getElementById('chat-input');
+            chatInput.addEventListener('input', () => sendTyping(chatInput.value.length > 0));
+            const chatMessages = document.getElementById('chat-messages');
+            chatMessages.addEventListener('scroll', () => {
+                if (chatMessages.scrollTop === 0) loadOlderChatMessages();
+            });
+            chatMessages.addEventListener('click', e => {
+                const link = e.target.closest('.chat-show-full');
+                if (!link) return;
+                e.preventDefault();
+                showFullChatMessage(link);
+            });
+            chatInput.addEventListener('blur', () => sendTyping(false));
+
             chatForm.addEventListener('submit', function(e) {
                 e.preventDefault();
                 const input = document.getElementById('chat-input');
                 const message = input.value.trim();
                 if (!message || !selectedContactId) return;
+                sendTyping(false);
 
-                ApiClient.messages.sendMessage(window.currentUserId, selectedContactId, message)
-                    .then(() => {
+                // Sending the same text again after a failure reuses its ID, so the server stores it only once
+                if (!unsentMessage || unsentMessage.toUserId !== selectedContactId || unsentMessage.text !== message) {
+                    unsentMessage = { toUserId: selectedContactId, text: message, clientMessageId: newClientMessageId() };
+                }
+
+                ApiClient.messages.sendMessage(window.currentUserId, selectedContactId, message, unsentMessage.clientMessageId)
+                    .then(response => {
+                        unsentMessage = null;
                         input.value = '';
-                        loadChatMessages(selectedContactId);
+                        // The push frame for our own message may arrive first; either way only the gap is fetched
+                        if (response && response.message && response.message.seq > chatLastSeq) {
+                            resumeChatMessages(selectedContactId);
+                        }
                     })
                     .catch(error => {
                         console.error('Error sending message:', error);
@@ -0,0 +1,156 @@
+/**
+ * Frame Codec - Decodes the compact binary websocket frames (codec 1)
+ * Binary messages hold length-prefixed records; each is turned back into the object
+ * the JSON codec would have sent, so the rest of the dashboard handles both the same way.
+ * Layout is documented in FrameCodec.java.
+ */
+
+const FrameCodec = {
+    VERSION: 1,
+
+    MESSAGE: 1,
+    PENDING: 2,
+    GROUP_MESSAGE: 3,
+    TYPING: 4,
+    PONG: 5,
+    THUMBNAIL: 6,
+
+    /**
+     * Per-connection decoder state; create a new one for every socket
+     * @returns {Object} - State holding the usernames interned by the server
+     */
+    newState() {
+        return { usernames: new Map() };
+    },
+
+    /**
+     * Decodes one binary websocket message
+     * @param {ArrayBuffer} buffer - Message payload
+     * @param {Object} state - Decoder state of this connection
+     * @returns {Array} - Frames in the shape of their JSON counterparts
+     */
+    decode(buffer, state) {
+        const reader = new FrameReader(new Uint8Array(buffer));
+        const frames = [];
+        let pending = null;
+
+        while (reader.hasMore()) {
+            const length = reader.varint();
+            const end = reader.pos + length;
+            const type = reader.byte();
+
+            if (type === this.MESSAGE) {
+                const msg = reader.directMessage(end);
+                if (pending && pending.remaining > 0) {
+                    pending.frame.messages.push(msg);
+                    pending.remaining--;
+                } else {
+                    frames.push({ type: 'message', message: msg });
+                }
+            } else if (type === this.PENDING) {
+                const frame = { type: 'pending', hasMore: reader.byte() === 1, messages: [] };
+                pending = { frame, remaining: reader.varint() };
+                frames.push(frame);
+            } else if (type === this.GROUP_MESSAGE) {
+                frames.push({ type: 'group_message', message: reader.groupMessage(state) });
+            } else if (type === this.TYPING) {
+                const from = reader.varint();
+                const typing = reader.byte() === 1;
+                const ttlMs = reader.varint();
+                frames.push(typing ? { type: 'typing', from, typing, ttlMs } : { type: 'typing', from, typing });
+            } else if (type === this.PONG) {
+                frames.push({ type: 'pong' });
+            } else if (type === this.THUMBNAIL) {
+                const attachmentId = reader.varint();
+                const messageId = reader.varint();
+                const ready = reader.byte() === 1;
+                const width = reader.varint();
+                const height = reader.varint();
+                frames.push(ready
+                    ? { type: 'thumbnail', attachmentId, messageId, ready, width, height }
+                    : { type: 'thumbnail', attachmentId, messageId, ready });
+            }
+            // Unknown record types are skipped
+            reader.pos = end;
+        }
+        return frames;
+    }
+};
+
+/**
+ * Cursor over the bytes of one binary message
+ */
+class FrameReader {
+    constructor(bytes) {
+        this.bytes = bytes;
+        this.pos = 0;
+    }
+
+    hasMore() {
+        return this.pos < this.bytes.length;
+    }
+
+    byte() {
+        return this.bytes[this.pos++];
+    }
+
+    /**
+     * Unsigned LEB128; multiplication instead of shifts keeps values above 2^31 (timestamps) exact
+     */
+    varint() {
+        let result = 0;
+        let scale = 1;
+        let b;
+        do {
+            b = this.bytes[this.pos++];
+            result += (b & 0x7f) * scale;
+            scale *= 128;
+        } while (b & 0x80);
+        return result;
+    }
+
+    string() {
+        return this.utf8(this.varint());
+    }
+
+    utf8(length) {
+        const text = FrameReader.decoder.decode(this.bytes.subarray(this.pos, this.pos + length));
+        this.pos += length;
+        return text;
+    }
+
+    /**
+     * @param {number} end - Position after the record; fields added later are only read when present
+     */
+    directMessage(end) {
+        return {
+            messageId: this.varint(),
+            seq: this.varint(),
+            senderId: this.varint(),
+            receiverId: this.varint(),
+            createdAt: this.varint(),
+            messageText: this.string(),
+            truncated: this.pos < end && this.byte() === 1
+        };
+    }
+
+    groupMessage(state) {
+        const messageId = this.varint();
+        const groupId = this.varint();
+        const senderId = this.varint();
+        const nameLength = this.varint();
+        if (nameLength > 0) {
+            state.usernames.set(senderId, this.utf8(nameLength - 1));
+        }
+        return {
+            messageId,
+            groupId,
+            senderId,
+            senderUsername: state.usernames.get(senderId),
+            createdAt: this.varint(),
+            messageText: this.string()
+        };
+    }
+}
+
+FrameReader.decoder = new TextDecoder();
@@ -0,0 +1,143 @@
+package com.ma.message_apps.service;
+
+import com.ma.message_apps.event.AccountDeletedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConversationTailCacheTest {
+
+    private static ConversationTailCache cache(int conversations, int capacity, int admitAfter) {
+        return new ConversationTailCache(new SimpleMeterRegistry(), conversations, capacity, admitAfter);
+    }
+
+    private static ConversationTailCache.Entry entry(long seq) {
+        return new ConversationTailCache.Entry((int) seq, seq, 1, 2, "m" + seq, false, false,
+                new Timestamp(seq * 1000), null, false);
+    }
+
+    /**
+     * Loader over seqs 1..last, answering newest first like the table query
+     */
+    private static IntFunction<List<ConversationTailCache.Entry>> table(long last, AtomicInteger loads) {
+        return limit -> {
+            loads.incrementAndGet();
+            List<ConversationTailCache.Entry> newestFirst = new ArrayList<>();
+            for (long seq = last; seq >= 1 && newestFirst.size() < limit; seq--) {
+                newestFirst.add(entry(seq));
+            }
+            return newestFirst;
+        };
+    }
+
+    private static List<Long> seqs(List<ConversationTailCache.Entry> page) {
+        return page.stream().map(ConversationTailCache.Entry::seq).toList();
+    }
+
+    @Test
+    void admitsConversationOnlyOnceReadOftenEnough() {
+        ConversationTailCache cache = cache(10, 4, 2);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertThat(cache.page(1, 2, Long.MAX_VALUE, 10, table(3, loads))).isNull();
+        assertThat(loads).hasValue(0);
+
+        assertThat(seqs(cache.page(1, 2, Long.MAX_VALUE, 10, table(3, loads)))).containsExactly(1L, 2L, 3L);
+        assertThat(seqs(cache.page(1, 2, 3, 1, table(3, loads)))).containsExactly(2L);
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void servesOnlyPagesTheRingCoversCompletely() {
+        ConversationTailCache cache = cache(10, 4, 1);
+        AtomicInteger loads = new AtomicInteger();
+
+        // Ten messages in the table, the ring holds the newest four: 7..10
+        assertThat(seqs(cache.page(1, 2, Long.MAX_VALUE, 4, table(10, loads)))).containsExactly(7L, 8L, 9L, 10L);
+        assertThat(seqs(cache.page(1, 2, 10, 2, table(10, loads)))).containsExactly(8L, 9L);
+        // Seq 6 and older are not cached, so the page goes to the table
+        assertThat(cache.page(1, 2, 9, 4, table(10, loads))).isNull();
+    }
+
+    @Test
+    void appendWrapsAroundDroppingTheOldest() {
+        ConversationTailCache cache = cache(10, 4, 1);
+        AtomicInteger loads = new AtomicInteger();
+        cache.page(1, 2, Long.MAX_VALUE, 4, table(4, loads));
+
+        for (long seq = 5; seq <= 9; seq++) {
+            cache.appendAfterCommit(1, 2, entry(seq));
+        }
+
+        assertThat(seqs(cache.page(1, 2, Long.MAX_VALUE, 4, table(9, loads)))).containsExactly(6L, 7L, 8L, 9L);
+        assertThat(seqs(cache.page(1, 2, Long.MAX_VALUE, 2, table(9, loads)))).containsExactly(8L, 9L);
+        assertThat(cache.page(1, 2, 7, 2, table(9, loads))).isNull();
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void appendKeepsSeqOrderAndIgnoresRepeats() {
+        ConversationTailCache cache = cache(10, 8, 1);
+        AtomicInteger loads = new AtomicInteger();
+        cache.page(1, 2, Long.MAX_VALUE, 8, table(3, loads));
+
+        cache.appendAfterCommit(1, 2, entry(5));
+        cache.appendAfterCommit(1, 2, entry(4));
+        cache.appendAfterCommit(1, 2, entry(5));
+        cache.appendAfterCommit(1, 2, entry(3));
+
+        assertThat(seqs(cache.page(1, 2, Long.MAX_VALUE, 8, table(5, loads)))).containsExactly(1L, 2L, 3L, 4L, 5L);
+    }
+
+    @Test
+    void shortConversationIsCompleteAndServesOlderPages() {
+        ConversationTailCache cache = cache(10, 8, 1);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertThat(seqs(cache.page(1, 2, Long.MAX_VALUE, 2, table(3, loads)))).containsExactly(2L, 3L);
+        assertThat(seqs(cache.page(1, 2, 2, 5, table(3, loads)))).containsExactly(1L);
+        assertThat(cache.page(1, 2, 1, 5, table(3, loads))).isEmpty();
+    }
+
+    @Test
+    void fullCacheAdmitsOnlyConversationsReadMoreThanTheEldest() {
+        ConversationTailCache cache = cache(1, 4, 1);
+        AtomicInteger loadsA = new AtomicInteger();
+        AtomicInteger loadsB = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(cache.page(1, 2, Long.MAX_VALUE, 1, table(3, loadsA))).isNotNull();
+        }
+        // B is read less often than A so far: not admitted
+        for (int i = 0; i < 3; i++) {
+            assertThat(cache.page(3, 4, Long.MAX_VALUE, 1, table(3, loadsB))).isNull();
+        }
+        assertThat(cache.page(3, 4, Long.MAX_VALUE, 1, table(3, loadsB))).isNotNull();
+
+        // A was evicted and is not read often enough to come back straight away
+        assertThat(cache.page(1, 2, Long.MAX_VALUE, 1, table(3, loadsA))).isNull();
+        assertThat(loadsA).hasValue(1);
+        assertThat(loadsB).hasValue(1);
+    }
+
+    @Test
+    void forgetsConversationsOfDeletedAccount() {
+        ConversationTailCache cache = cache(10, 4, 1);
+        AtomicInteger loads = new AtomicInteger();
+        cache.page(1, 2, Long.MAX_VALUE, 4, table(3, loads));
+        cache.page(2, 3, Long.MAX_VALUE, 4, table(3, loads));
+
+        cache.onAccountDeleted(new AccountDeletedEvent(1));
+        cache.page(1, 2, Long.MAX_VALUE, 4, table(3, loads));
+        cache.page(2, 3, Long.MAX_VALUE, 4, table(3, loads));
+
+        assertThat(loads).hasValue(3);
+    }
+}
@@ -0,0 +1,141 @@
+package com.ma.message_apps.service;
+
+import com.ma.message_apps.event.FriendshipChangedEvent;
+import com.ma.message_apps.repository.FriendshipRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class FriendGraphTest {
+
+    private static final int USERS = 60;
+
+    /**
+     * A graph loaded into the CSR snapshot from the given undirected edges
+     */
+    static FriendGraph loaded(List<int[]> edges, int compactThreshold) {
+        TreeSet<List<Integer>> directed = new TreeSet<>((a, b) -> a.get(0).equals(b.get(0))
+                ? Integer.compare(a.get(1), b.get(1)) : Integer.compare(a.get(0), b.get(0)));
+        for (int[] edge : edges) {
+            directed.add(List.of(edge[0], edge[1]));
+            directed.add(List.of(edge[1], edge[0]));
+        }
+        List<Object[]> rows = new ArrayList<>();
+        for (List<Integer> edge : directed) {
+            rows.add(new Object[]{edge.get(0), edge.get(1)});
+        }
+
+        FriendshipRepository repository = mock(FriendshipRepository.class);
+        when(repository.streamAllEdges()).thenReturn(rows.stream());
+        FriendGraph graph = new FriendGraph(repository, mock(PlatformTransactionManager.class), compactThreshold);
+        graph.reload();
+        return graph;
+    }
+
+    static List<int[]> randomEdges(long seed) {
+        Random random = new Random(seed);
+        List<int[]> edges = new ArrayList<>();
+        for (int a = 1; a <= USERS; a++) {
+            for (int b = a + 1; b <= USERS; b++) {
+                // Skewed degrees, so small lists are intersected with much larger ones
+                if (random.nextInt(USERS) < (a % 10 == 0 ? 40 : 6)) {
+                    edges.add(new int[]{a, b});
+                }
+            }
+        }
+        return edges;
+    }
+
+    static Set<Integer> friendSet(FriendGraph graph, int userId) {
+        FriendGraph.Neighbors friends = graph.friendsOf(userId);
+        Set<Integer> result = new HashSet<>();
+        for (int i = 0; i < friends.size(); i++) {
+            result.add(friends.get(i));
+        }
+        return result;
+    }
+
+    private static void assertConsistent(FriendGraph graph, Set<List<Integer>> expected) {
+        for (int a = 0; a <= USERS + 1; a++) {
+            FriendGraph.Neighbors friends = graph.friendsOf(a);
+            for (int i = 1; i < friends.size(); i++) {
+                assertThat(friends.get(i)).isGreaterThan(friends.get(i - 1));
+            }
+            for (int b = 0; b <= USERS + 1; b++) {
+                assertThat(graph.areFriends(a, b)).isEqualTo(expected.contains(List.of(a, b)));
+                Set<Integer> common = friendSet(graph, a);
+                common.retainAll(friendSet(graph, b));
+                assertThat(graph.mutualFriendCount(a, b)).as("mutual friends of %d and %d", a, b)
+                        .isEqualTo(common.size());
+            }
+        }
+    }
+
+    @Test
+    void intersectsNeighbourListsOfTheSnapshot() {
+        List<int[]> edges = randomEdges(42);
+        Set<List<Integer>> expected = new HashSet<>();
+        for (int[] edge : edges) {
+            expected.add(List.of(edge[0], edge[1]));
+            expected.add(List.of(edge[1], edge[0]));
+        }
+
+        assertConsistent(loaded(edges, 10_000), expected);
+    }
+
+    @Test
+    void mutualFriendCountOfKnownGraph() {
+        // 1 and 2 share 3, 4 and 5; 6 is a friend of 1 only
+        FriendGraph graph = loaded(List.of(new int[]{1, 3}, new int[]{1, 4}, new int[]{1, 5}, new int[]{1, 6},
+                new int[]{2, 3}, new int[]{2, 4}, new int[]{2, 5}, new int[]{2, 7}), 10_000);
+
+        assertThat(graph.mutualFriendCount(1, 2)).isEqualTo(3);
+        assertThat(graph.mutualFriendCount(2, 1)).isEqualTo(3);
+        assertThat(graph.mutualFriendCount(6, 7)).isZero();
+        assertThat(graph.mutualFriendCount(1, 99)).isZero();
+        assertThat(graph.areFriends(1, 6)).isTrue();
+        assertThat(graph.areFriends(1, 2)).isFalse();
+    }
+
+    @Test
+    void changesAreVisibleThroughOverlayAndAfterCompaction() {
+        List<int[]> edges = randomEdges(7);
+        Set<List<Integer>> expected = new HashSet<>();
+        for (int[] edge : edges) {
+            expected.add(List.of(edge[0], edge[1]));
+            expected.add(List.of(edge[1], edge[0]));
+        }
+        // A low threshold, so the overlay is folded into a new CSR several times along the way
+        FriendGraph graph = loaded(edges, 8);
+
+        Random random = new Random(11);
+        for (int i = 0; i < 200; i++) {
+            int a = 1 + random.nextInt(USERS + 1);
+            int b = 1 + random.nextInt(USERS + 1);
+            if (a == b) {
+                continue;
+            }
+            boolean created = random.nextBoolean();
+            graph.onFriendshipChanged(FriendshipChangedEvent.of(a, b, created));
+            if (created) {
+                expected.add(List.of(a, b));
+                expected.add(List.of(b, a));
+            } else {
+                expected.remove(List.of(a, b));
+                expected.remove(List.of(b, a));
+            }
+        }
+
+        assertConsistent(graph, expected);
+    }
+}
@@ -0,0 +1,110 @@
+package com.ma.message_apps.service;
+
+import com.ma.message_apps.dto.FriendSuggestionDto;
+import com.ma.message_apps.entity.User;
+import com.ma.message_apps.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class FriendSuggestionServiceTest {
+
+    @SuppressWarnings("unchecked")
+    private static FriendSuggestionService service(FriendGraph graph, int parallelThreshold) {
+        UserRepository users = mock(UserRepository.class);
+        when(users.findAllById(anyIterable())).thenAnswer(call -> {
+            List<User> found = new ArrayList<>();
+            for (Integer id : (Iterable<Integer>) call.getArgument(0)) {
+                User user = new User();
+                user.setUserId(id);
+                user.setUsername("user" + id);
+                found.add(user);
+            }
+            return found;
+        });
+        return new FriendSuggestionService(graph, users, 4, parallelThreshold);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<FriendSuggestionDto> suggestions(FriendSuggestionService service, int userId, int limit) {
+        Map<String, Object> response = service.getSuggestions(userId, limit);
+        assertThat(response).containsEntry("success", true);
+        return (List<FriendSuggestionDto>) response.get("suggestions");
+    }
+
+    /**
+     * Friends of friends ranked by mutual friends (then lowest ID), counted the slow way
+     */
+    private static List<FriendSuggestionDto> expected(FriendGraph graph, int userId, int limit) {
+        Set<Integer> friends = FriendGraphTest.friendSet(graph, userId);
+        Map<Integer, Integer> counts = new HashMap<>();
+        for (int friend : friends) {
+            for (int candidate : FriendGraphTest.friendSet(graph, friend)) {
+                if (candidate != userId && !friends.contains(candidate)) {
+                    counts.merge(candidate, 1, Integer::sum);
+                }
+            }
+        }
+        return counts.entrySet().stream()
+                .sorted(Map.Entry.<Integer, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(limit)
+                .map(e -> new FriendSuggestionDto(e.getKey(), "user" + e.getKey(), e.getValue()))
+                .toList();
+    }
+
+    @Test
+    void ranksFriendsOfFriendsByMutualFriends() {
+        FriendGraph graph = FriendGraphTest.loaded(List.of(new int[]{1, 2}, new int[]{1, 3},
+                new int[]{2, 4}, new int[]{3, 4}, new int[]{3, 5}, new int[]{2, 3}), 10_000);
+
+        List<FriendSuggestionDto> result = suggestions(service(graph, 64), 1, 10);
+
+        assertThat(result).extracting(FriendSuggestionDto::userId).containsExactly(4, 5);
+        assertThat(result).extracting(FriendSuggestionDto::mutualFriends).containsExactly(2, 1);
+    }
+
+    @Test
+    void parallelCountingMatchesSequentialCounting() {
+        FriendGraph graph = FriendGraphTest.loaded(FriendGraphTest.randomEdges(3), 10_000);
+        // Threshold 1 splits the work down to single friends, merging many partial counts
+        FriendSuggestionService parallel = service(graph, 1);
+        FriendSuggestionService sequential = service(graph, Integer.MAX_VALUE);
+
+        for (int userId = 1; userId <= 60; userId++) {
+            List<FriendSuggestionDto> expected = expected(graph, userId, 15);
+            assertThat(suggestions(parallel, userId, 15)).as("user %d", userId)
+                    .containsExactlyElementsOf(expected);
+            assertThat(suggestions(sequential, userId, 15)).as("user %d", userId)
+                    .containsExactlyElementsOf(expected);
+        }
+    }
+
+    @Test
+    void countsGrowPastTheirInitialCapacity() {
+        FriendSuggestionService.Counts counts = new FriendSuggestionService.Counts(4);
+        for (int round = 1; round <= 3; round++) {
+            for (int key = 0; key < 1000; key += 3) {
+                counts.add(key, 1);
+            }
+        }
+        FriendSuggestionService.Counts other = new FriendSuggestionService.Counts(4);
+        other.add(0, 5);
+        other.add(1, 2);
+        counts.addAll(other);
+
+        assertThat(counts.size).isEqualTo(335);
+        assertThat(counts.get(0)).isEqualTo(8);
+        assertThat(counts.get(1)).isEqualTo(2);
+        assertThat(counts.get(999)).isEqualTo(3);
+        assertThat(counts.get(998)).isZero();
+    }
+}
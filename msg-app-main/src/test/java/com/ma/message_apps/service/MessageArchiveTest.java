@@ -0,0 +1,151 @@
+package com.ma.message_apps.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageArchiveTest {
+
+    private static final long JANUARY = LocalDateTime.of(2024, 1, 10, 12, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+    private static final long FEBRUARY = LocalDateTime.of(2024, 2, 10, 12, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+
+    @TempDir
+    Path dir;
+
+    private MessageArchive open() {
+        MessageArchive archive = new MessageArchive(dir.toString());
+        archive.loadIndex();
+        return archive;
+    }
+
+    private static MessageArchive.ArchivedMessage message(int messageId, int senderId, int receiverId, long seq, long createdAt) {
+        return new MessageArchive.ArchivedMessage(messageId, senderId, receiverId, seq, new Timestamp(createdAt),
+                seq % 2 == 0, "message " + messageId, null);
+    }
+
+    /**
+     * count messages of the conversation 1-2 from the given ID and seq on, alternating senders, one minute apart from a start time
+     */
+    private static List<MessageArchive.ArchivedMessage> conversation(int firstId, long firstSeq, int count, long start) {
+        List<MessageArchive.ArchivedMessage> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            messages.add(message(firstId + i, i % 2 == 0 ? 1 : 2, i % 2 == 0 ? 2 : 1, firstSeq + i, start + i * 60_000L));
+        }
+        return messages;
+    }
+
+    private static List<Long> seqs(List<MessageArchive.ArchivedMessage> messages) {
+        return messages.stream().map(MessageArchive.ArchivedMessage::seq).toList();
+    }
+
+    @Test
+    void roundTripsEveryField() throws IOException {
+        MessageArchive archive = open();
+        MessageArchive.ArchivedMessage full = new MessageArchive.ArchivedMessage(7, 2, 1, 3L,
+                new Timestamp(JANUARY), true, "héllo 👋", "client-7");
+        MessageArchive.ArchivedMessage sparse = new MessageArchive.ArchivedMessage(8, 1, 2, 4L,
+                null, null, "", null);
+
+        archive.append(List.of(full, sparse));
+
+        assertThat(archive.read(1, 2, Long.MIN_VALUE, Long.MAX_VALUE, 10)).containsExactlyInAnyOrder(full, sparse);
+        assertThat(archive.read(2, 3, Long.MIN_VALUE, Long.MAX_VALUE, 10)).isEmpty();
+    }
+
+    @Test
+    void readsSeqRangeAcrossBlocksAndKeepsTheNewest() throws IOException {
+        MessageArchive archive = open();
+        // 600 messages: three blocks in January, then 100 more in February
+        archive.append(conversation(1, 1, 600, JANUARY));
+        archive.append(conversation(601, 601, 100, FEBRUARY));
+
+        assertThat(seqs(archive.read(1, 2, Long.MIN_VALUE, 501, 3))).containsExactly(498L, 499L, 500L);
+        assertThat(seqs(archive.read(1, 2, 254, 259, 10))).containsExactly(255L, 256L, 257L, 258L);
+        assertThat(seqs(archive.read(1, 2, 598, 603, 10))).containsExactly(599L, 600L, 601L, 602L);
+        assertThat(archive.read(1, 2, Long.MIN_VALUE, 1, 10)).isEmpty();
+        assertThat(archive.read(1, 2, 700, Long.MAX_VALUE, 10)).isEmpty();
+    }
+
+    @Test
+    void rangeOutsideEveryBlockReadsNoFile() throws IOException {
+        MessageArchive archive = open();
+        archive.append(conversation(1, 1, 300, JANUARY));
+        archive.append(conversation(301, 301, 10, FEBRUARY));
+        Files.delete(dir.resolve("messages-2024-01.dat"));
+
+        // Only the February block overlaps, so the missing January file is never opened
+        assertThat(seqs(archive.read(1, 2, 305, Long.MAX_VALUE, 100))).containsExactly(306L, 307L, 308L, 309L, 310L);
+    }
+
+    @Test
+    void indexIsReloadedFromDiskAndRepeatedBatchesAreReadOnce() throws IOException {
+        MessageArchive archive = open();
+        List<MessageArchive.ArchivedMessage> batch = conversation(1, 1, 20, JANUARY);
+        archive.append(batch);
+        // An interrupted run archives the same rows again
+        archive.append(batch.subList(10, 20));
+
+        MessageArchive reopened = open();
+
+        assertThat(reopened.read(1, 2, Long.MIN_VALUE, Long.MAX_VALUE, 100)).containsExactlyElementsOf(batch);
+    }
+
+    @Test
+    void tornIndexEntryIsIgnored() throws IOException {
+        MessageArchive archive = open();
+        archive.append(conversation(1, 1, 5, JANUARY));
+        Path index = dir.resolve("messages-2024-01.idx");
+        Files.write(index, new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+
+        assertThat(seqs(open().read(1, 2, Long.MIN_VALUE, Long.MAX_VALUE, 10))).containsExactly(1L, 2L, 3L, 4L, 5L);
+    }
+
+    @Test
+    void removesConversationsOfUserMonthByMonth() throws IOException {
+        MessageArchive archive = open();
+        List<MessageArchive.ArchivedMessage> january = new ArrayList<>(conversation(1, 1, 10, JANUARY));
+        january.add(message(11, 1, 4, 1, JANUARY));
+        january.add(message(12, 4, 3, 1, JANUARY));
+        archive.append(january);
+        archive.append(List.of(message(13, 4, 1, 2, FEBRUARY)));
+        long dataLength = Files.size(dir.resolve("messages-2024-01.dat"));
+
+        assertThat(archive.removeConversationsOf(4)).isEqualTo(2);
+        assertThat(archive.read(1, 4, Long.MIN_VALUE, Long.MAX_VALUE, 10)).extracting(MessageArchive.ArchivedMessage::messageId)
+                .containsExactly(13);
+        assertThat(archive.removeConversationsOf(4)).isEqualTo(1);
+        assertThat(archive.removeConversationsOf(4)).isZero();
+
+        // Blocks are zeroed in place, so the offsets of the other conversations stay valid
+        assertThat(Files.size(dir.resolve("messages-2024-01.dat"))).isEqualTo(dataLength);
+        MessageArchive reopened = open();
+        assertThat(reopened.read(1, 4, Long.MIN_VALUE, Long.MAX_VALUE, 10)).isEmpty();
+        assertThat(reopened.read(3, 4, Long.MIN_VALUE, Long.MAX_VALUE, 10)).isEmpty();
+        assertThat(seqs(reopened.read(1, 2, Long.MIN_VALUE, Long.MAX_VALUE, 100))).hasSize(10);
+        assertThat(reopened.removeConversationsOf(4)).isZero();
+    }
+
+    @Test
+    void dropsMonthsBeforeCutoff() throws IOException {
+        MessageArchive archive = open();
+        archive.append(conversation(1, 1, 5, JANUARY));
+        archive.append(conversation(6, 6, 5, FEBRUARY));
+
+        assertThat(archive.dropMonthsBefore(YearMonth.of(2024, 2))).isEqualTo(1);
+
+        assertThat(seqs(archive.read(1, 2, Long.MIN_VALUE, Long.MAX_VALUE, 100))).containsExactly(6L, 7L, 8L, 9L, 10L);
+        assertThat(dir.resolve("messages-2024-01.dat")).doesNotExist();
+    }
+}
@@ -0,0 +1,283 @@
+package com.ma.message_apps.websocket;
+
+import com.ma.message_apps.dto.DirectMessageDto;
+import com.ma.message_apps.dto.GroupMessageDto;
+import com.ma.message_apps.event.ThumbnailFinishedEvent;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the records written by the server against the layout static/js/frame-codec.js decodes
+ */
+class BinaryFrameWriterTest {
+
+    private static byte[] encode(ClientConnection connection, ServerFrame... frames) {
+        BinaryFrameWriter out = new BinaryFrameWriter();
+        for (ServerFrame frame : frames) {
+            frame.writeBinary(out, connection);
+        }
+        return out.toByteArray();
+    }
+
+    private static DirectMessageDto message(int messageId, long seq, String text, long createdAt) {
+        return new DirectMessageDto(messageId, seq, 2, 3, text, new Timestamp(createdAt), false);
+    }
+
+    @Test
+    void directMessageRecordHasDocumentedLayout() {
+        byte[] bytes = encode(null, new DirectMessageFrame(
+                new DirectMessageDto(1, 300L, 2, 3, "hé", new Timestamp(1000), true)));
+
+        assertThat(bytes).containsExactly(
+                13,                              // record length
+                FrameCodec.MESSAGE,
+                1,                               // messageId
+                0xAC - 256, 0x02,                // seq 300 as LEB128
+                2, 3,                            // senderId, receiverId
+                0xE8 - 256, 0x07,                // createdAt 1000
+                3, 'h', 0xC3 - 256, 0xA9 - 256,  // UTF-8 byte length, then the bytes
+                1);                              // truncated
+    }
+
+    @Test
+    void pendingBatchDecodesAsOneFrameWithItsMessages() {
+        DirectMessageDto first = message(10, 1, "one", 1_700_000_000_123L);
+        DirectMessageDto second = message(11, 2, "two", 1_700_000_000_456L);
+
+        List<Map<String, Object>> frames = FrameReader.decode(encode(null,
+                new PendingMessagesFrame(List.of(first, second), true),
+                new DirectMessageFrame(message(12, 3, "live", 1_700_000_000_789L))));
+
+        assertThat(frames).hasSize(2);
+        assertThat(frames.get(0)).containsEntry("type", "pending").containsEntry("hasMore", true);
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> batch = (List<Map<String, Object>>) frames.get(0).get("messages");
+        assertThat(batch).extracting(m -> m.get("messageId")).containsExactly(10L, 11L);
+        // Timestamps above 2^31 survive the client's multiply-based varint decoding
+        assertThat(batch.get(0)).containsEntry("createdAt", 1_700_000_000_123L).containsEntry("messageText", "one");
+        assertThat(frames.get(1)).containsEntry("type", "message");
+    }
+
+    @Test
+    void longRecordGetsMultiByteLengthPrefix() {
+        String text = "x".repeat(500);
+        byte[] bytes = encode(null, new DirectMessageFrame(message(1, 1, text, 5)),
+                PongFrame.INSTANCE);
+
+        assertThat(bytes[0] & 0x80).isNotZero();
+        List<Map<String, Object>> frames = FrameReader.decode(bytes);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> decoded = (Map<String, Object>) frames.get(0).get("message");
+        assertThat(decoded).containsEntry("messageText", text).containsEntry("truncated", false);
+        assertThat(frames.get(1)).containsEntry("type", "pong");
+    }
+
+    @Test
+    void groupSenderNameIsSentOncePerConnection() {
+        ClientConnection connection = new ClientConnection(5, null, FrameCodec.BINARY_V1);
+        GroupMessageDto message = new GroupMessageDto(1, 9, 4, "dave", "hi", new Timestamp(7));
+
+        byte[] first = encode(connection, new GroupMessageFrame(message));
+        byte[] second = encode(connection, new GroupMessageFrame(message));
+        byte[] renamed = encode(connection, new GroupMessageFrame(
+                new GroupMessageDto(2, 9, 4, "david", "hey", new Timestamp(8))));
+
+        assertThat(second.length).isEqualTo(first.length - "dave".length());
+        Map<Integer, String> usernames = new HashMap<>();
+        assertThat(FrameReader.decode(first, usernames).get(0).get("message")).isEqualTo(Map.of(
+                "messageId", 1L, "groupId", 9L, "senderId", 4L, "senderUsername", "dave",
+                "createdAt", 7L, "messageText", "hi"));
+        assertThat(FrameReader.decode(second, usernames).get(0).get("message"))
+                .isEqualTo(FrameReader.decode(first, new HashMap<>()).get(0).get("message"));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> decoded = (Map<String, Object>) FrameReader.decode(renamed, usernames).get(0).get("message");
+        assertThat(decoded).containsEntry("senderUsername", "david");
+    }
+
+    @Test
+    void typingAndThumbnailRecordsDropFieldsOnlyMeaningfulWhenSet() {
+        List<Map<String, Object>> frames = FrameReader.decode(encode(null,
+                new TypingFrame(7, true, 6000),
+                new TypingFrame(7, false, 6000),
+                new ThumbnailFrame(new ThumbnailFinishedEvent(3, 40, 1, 2, true, 320, 200)),
+                new ThumbnailFrame(new ThumbnailFinishedEvent(4, 41, 1, 2, false, null, null))));
+
+        assertThat(frames).containsExactly(
+                Map.of("type", "typing", "from", 7L, "typing", true, "ttlMs", 6000L),
+                Map.of("type", "typing", "from", 7L, "typing", false),
+                Map.of("type", "thumbnail", "attachmentId", 3L, "messageId", 40L, "ready", true,
+                        "width", 320L, "height", 200L),
+                Map.of("type", "thumbnail", "attachmentId", 4L, "messageId", 41L, "ready", false));
+    }
+
+    @Test
+    void unknownRecordTypesAndTrailingFieldsAreSkipped() {
+        BinaryFrameWriter out = new BinaryFrameWriter();
+        out.beginRecord((byte) 99);
+        out.writeString("from a newer server");
+        out.endRecord();
+        out.beginRecord(FrameCodec.TYPING);
+        out.writeVarint(8);
+        out.writeBoolean(true);
+        out.writeVarint(100);
+        out.writeString("field added later");
+        out.endRecord();
+        PongFrame.INSTANCE.writeBinary(out, null);
+
+        assertThat(FrameReader.decode(out.toByteArray())).containsExactly(
+                Map.of("type", "typing", "from", 8L, "typing", true, "ttlMs", 100L),
+                Map.of("type", "pong"));
+    }
+
+    @Test
+    void resetWriterStartsEmpty() {
+        BinaryFrameWriter out = new BinaryFrameWriter();
+        new DirectMessageFrame(message(1, 1, "x".repeat(1000), 1)).writeBinary(out, null);
+        out.reset();
+        PongFrame.INSTANCE.writeBinary(out, null);
+
+        assertThat(out.toByteArray()).containsExactly(1, FrameCodec.PONG);
+    }
+
+    /**
+     * Port of FrameCodec.decode in frame-codec.js: numbers are decoded with multiplication, as
+     * JavaScript does, and come back as longs
+     */
+    private static final class FrameReader {
+
+        private final byte[] bytes;
+        private int pos;
+
+        private FrameReader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        static List<Map<String, Object>> decode(byte[] bytes) {
+            return decode(bytes, new HashMap<>());
+        }
+
+        static List<Map<String, Object>> decode(byte[] bytes, Map<Integer, String> usernames) {
+            FrameReader reader = new FrameReader(bytes);
+            List<Map<String, Object>> frames = new ArrayList<>();
+            List<Map<String, Object>> pending = null;
+            long remaining = 0;
+
+            while (reader.pos < bytes.length) {
+                long length = reader.varint();
+                int end = reader.pos + (int) length;
+                int type = reader.unsignedByte();
+                Map<String, Object> frame = new LinkedHashMap<>();
+
+                if (type == FrameCodec.MESSAGE) {
+                    Map<String, Object> message = reader.directMessage(end);
+                    if (pending != null && remaining > 0) {
+                        pending.add(message);
+                        remaining--;
+                    } else {
+                        frame.put("type", "message");
+                        frame.put("message", message);
+                        frames.add(frame);
+                    }
+                } else if (type == FrameCodec.PENDING) {
+                    pending = new ArrayList<>();
+                    frame.put("type", "pending");
+                    frame.put("hasMore", reader.unsignedByte() == 1);
+                    frame.put("messages", pending);
+                    remaining = reader.varint();
+                    frames.add(frame);
+                } else if (type == FrameCodec.GROUP_MESSAGE) {
+                    frame.put("type", "group_message");
+                    frame.put("message", reader.groupMessage(usernames));
+                    frames.add(frame);
+                } else if (type == FrameCodec.TYPING) {
+                    frame.put("type", "typing");
+                    frame.put("from", reader.varint());
+                    boolean typing = reader.unsignedByte() == 1;
+                    frame.put("typing", typing);
+                    long ttlMs = reader.varint();
+                    if (typing) {
+                        frame.put("ttlMs", ttlMs);
+                    }
+                    frames.add(frame);
+                } else if (type == FrameCodec.PONG) {
+                    frame.put("type", "pong");
+                    frames.add(frame);
+                } else if (type == FrameCodec.THUMBNAIL) {
+                    frame.put("type", "thumbnail");
+                    frame.put("attachmentId", reader.varint());
+                    frame.put("messageId", reader.varint());
+                    boolean ready = reader.unsignedByte() == 1;
+                    frame.put("ready", ready);
+                    long width = reader.varint();
+                    long height = reader.varint();
+                    if (ready) {
+                        frame.put("width", width);
+                        frame.put("height", height);
+                    }
+                    frames.add(frame);
+                }
+                reader.pos = end;
+            }
+            return frames;
+        }
+
+        private int unsignedByte() {
+            return bytes[pos++] & 0xFF;
+        }
+
+        private long varint() {
+            double result = 0;
+            double scale = 1;
+            int b;
+            do {
+                b = unsignedByte();
+                result += (b & 0x7F) * scale;
+                scale *= 128;
+            } while ((b & 0x80) != 0);
+            return (long) result;
+        }
+
+        private String utf8(int length) {
+            String text = new String(bytes, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return text;
+        }
+
+        private Map<String, Object> directMessage(int end) {
+            Map<String, Object> message = new LinkedHashMap<>();
+            message.put("messageId", varint());
+            message.put("seq", varint());
+            message.put("senderId", varint());
+            message.put("receiverId", varint());
+            message.put("createdAt", varint());
+            message.put("messageText", utf8((int) varint()));
+            message.put("truncated", pos < end && unsignedByte() == 1);
+            return message;
+        }
+
+        private Map<String, Object> groupMessage(Map<Integer, String> usernames) {
+            Map<String, Object> message = new LinkedHashMap<>();
+            message.put("messageId", varint());
+            message.put("groupId", varint());
+            long senderId = varint();
+            message.put("senderId", senderId);
+            long nameLength = varint();
+            if (nameLength > 0) {
+                usernames.put((int) senderId, utf8((int) nameLength - 1));
+            }
+            message.put("senderUsername", usernames.get((int) senderId));
+            message.put("createdAt", varint());
+            message.put("messageText", utf8((int) varint()));
+            return message;
+        }
+    }
+}